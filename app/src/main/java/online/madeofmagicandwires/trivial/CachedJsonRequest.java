@@ -0,0 +1,130 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Volley GET request for a JSON object that is kept in the {@link ResponseCache}.
+ *
+ * The response is parsed on Volley's network thread and delivered as a cache entry,
+ * including its validators. When a cached entry is passed in, the request is made conditional
+ * on it; if the server replies the response has not been modified, that same entry is delivered.
+ */
+public class CachedJsonRequest extends Request<ResponseCache.Entry> {
+
+    private Response.Listener<ResponseCache.Entry> listener;
+    private final ResponseCache.Entry cached;
+
+    /**
+     * Standard constructor
+     *
+     * @param url the url to request
+     * @param cached the cached response to revalidate, or null for an unconditional request
+     * @param listener the listener to be called with the new or revalidated response
+     * @param errorListener the listener to be called when the request or parsing failed
+     */
+    public CachedJsonRequest(
+            @NonNull String url,
+            @Nullable ResponseCache.Entry cached,
+            @NonNull Response.Listener<ResponseCache.Entry> listener,
+            Response.ErrorListener errorListener) {
+        super(Method.GET, url, errorListener);
+        this.listener = listener;
+        this.cached = cached;
+        // the ResponseCache takes care of caching, so Volley shouldn't keep its own copy
+        setShouldCache(false);
+    }
+
+    /**
+     * Adds the validators of the cached response, if any
+     *
+     * @return the headers to send along with the request
+     */
+    @Override
+    public Map<String, String> getHeaders() {
+        Map<String, String> headers = new HashMap<>();
+        if(cached != null) {
+            if(cached.getEtag() != null) {
+                headers.put("If-None-Match", cached.getEtag());
+            }
+            if(cached.getLastModified() != null) {
+                headers.put("If-Modified-Since", cached.getLastModified());
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Parses the raw network response into a cache entry.
+     * Called on one of Volley's network threads.
+     *
+     * @param response the raw network response
+     * @return the new entry, the cached entry if it has not been modified,
+     *         or a {@link ParseError} wrapping what went wrong, including being rate limited
+     */
+    @Override
+    protected Response<ResponseCache.Entry> parseNetworkResponse(NetworkResponse response) {
+        long start = System.nanoTime();
+        if(cached != null && (response.notModified || response.statusCode == 304)) {
+            RequestMetrics.recordResponse(this, response, start);
+            return Response.success(cached, null);
+        }
+        try {
+            String body = new String(response.data, HttpHeaderParser.parseCharset(response.headers, "UTF-8"));
+            Map<String, String> headers = response.headers;
+            JSONObject json = new JSONObject(body);
+            ParseError rateLimited = VolleyRequestsHelper.rateLimitError(json);
+            if(rateLimited != null) {
+                return Response.error(rateLimited);
+            }
+            return Response.success(
+                    new ResponseCache.Entry(
+                            body,
+                            json,
+                            (headers != null) ? headers.get("ETag") : null,
+                            (headers != null) ? headers.get("Last-Modified") : null,
+                            System.currentTimeMillis()
+                    ),
+                    null
+            );
+        } catch (UnsupportedEncodingException | JSONException e) {
+            return Response.error(new ParseError(e));
+        } finally {
+            RequestMetrics.recordResponse(this, response, start);
+        }
+    }
+
+    /**
+     * Delivers the cache entry to the listener
+     *
+     * @param response the new or revalidated cache entry
+     */
+    @Override
+    protected void deliverResponse(ResponseCache.Entry response) {
+        if(listener != null) {
+            listener.onResponse(response);
+        }
+    }
+
+    /**
+     * Cancels the request and releases the listener
+     */
+    @Override
+    public void cancel() {
+        super.cancel();
+        listener = null;
+    }
+}
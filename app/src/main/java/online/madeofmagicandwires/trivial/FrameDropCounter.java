@@ -0,0 +1,89 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.MainThread;
+import android.view.Choreographer;
+
+/**
+ * Counts the frames dropped on the main thread while it is running,
+ * to check how much work such as handling responses takes away from drawing.
+ *
+ * A frame counts as dropped for every frame interval that passed without a new frame
+ * beyond the first, so a frame taking three intervals to draw counts as two dropped frames.
+ */
+class FrameDropCounter implements Choreographer.FrameCallback {
+
+    /** the frame interval of a 60Hz display, used until two frames have been seen **/
+    private static final long DEFAULT_INTERVAL_NS = 16_666_667L;
+
+    private final Choreographer choreographer;
+    private long lastFrameNs;
+    private long intervalNs;
+    private int frames;
+    private int dropped;
+    private boolean running;
+
+    /**
+     * Standard constructor; must be created on the main thread
+     */
+    @MainThread
+    FrameDropCounter() {
+        this.choreographer = Choreographer.getInstance();
+        this.intervalNs = DEFAULT_INTERVAL_NS;
+    }
+
+    /**
+     * Starts counting from the next frame on
+     */
+    @MainThread
+    void start() {
+        if(!running) {
+            running = true;
+            lastFrameNs = 0;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    /**
+     * Stops counting
+     */
+    @MainThread
+    void stop() {
+        running = false;
+        choreographer.removeFrameCallback(this);
+    }
+
+    /**
+     * Gets the amount of frames drawn while counting
+     * @return the amount of frames seen
+     */
+    int getFrames() {
+        return frames;
+    }
+
+    /**
+     * Gets the amount of frames dropped while counting
+     * @return the amount of frame intervals that passed without a frame
+     */
+    int getDropped() {
+        return dropped;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if(!running) {
+            return;
+        }
+        if(lastFrameNs != 0) {
+            long elapsed = frameTimeNanos - lastFrameNs;
+            if(frames == 1) {
+                // assume the first interval was not dropped, to adapt to the display's refresh rate
+                intervalNs = Math.min(elapsed, DEFAULT_INTERVAL_NS);
+            }
+            // round to the nearest interval, as vsync timestamps jitter
+            dropped += Math.max(0, (elapsed + intervalNs / 2) / intervalNs - 1);
+        }
+        lastFrameNs = frameTimeNanos;
+        frames++;
+        choreographer.postFrameCallback(this);
+    }
+}
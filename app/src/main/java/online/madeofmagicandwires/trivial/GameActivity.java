@@ -1,60 +1,97 @@
 package online.madeofmagicandwires.trivial;
 
+import android.arch.lifecycle.ViewModelProviders;
+import android.content.Intent;
+import android.support.annotation.MainThread;
 import android.support.annotation.Nullable;
-
 import android.support.v4.app.Fragment;
 import android.support.v4.app.FragmentTransaction;
 import android.support.v7.app.AppCompatActivity;
 import android.os.Bundle;
 import android.util.Log;
 
-import java.util.List;
-
 
-public class GameActivity extends AppCompatActivity implements
-        TriviaRequestHelper.SessionTokenResponseListener,
-        TriviaRequestHelper.QuestionResponseListener {
+public class GameActivity extends AppCompatActivity {
 
 
     public interface GameView {
+        @MainThread
         void showNextQuestion(TriviaQuestion question);
     }
     public static String GAME_FRAGMENT_TAG = "GAME_FRAGMENT";
 
+    private GameViewModel model;
 
     private TriviaGame game;
 
-    private TriviaRequestHelper request;
+    /** counts the frames dropped while the first questions are loaded, in debug builds **/
+    private FrameDropCounter frameDrops;
+
+    /** traces the time from initiating the game until its first question is shown **/
+    private Tracing.AsyncSection firstQuestionTrace;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_game);
 
-        FragmentTransaction changes = getSupportFragmentManager().beginTransaction();
-        changes.replace(R.id.game_fragment, GameFragment.newInstance(), GAME_FRAGMENT_TAG);
+        // a recreated activity gets its fragment back from the fragment manager
+        if(savedInstanceState == null) {
+            FragmentTransaction changes = getSupportFragmentManager().beginTransaction();
+            changes.replace(R.id.game_fragment, GameFragment.newInstance(), GAME_FRAGMENT_TAG);
 
-        changes.commit();
-        getSupportFragmentManager().executePendingTransactions();
+            changes.commit();
+            getSupportFragmentManager().executePendingTransactions();
+        }
 
-        initTriviaGame();
+        initTriviaGame(savedInstanceState);
 
 
     }
 
 
     /**
-     * Initiates the TriviaGame and TriviaRequestHelper
+     * Initiates the TriviaGame through the {@link GameViewModel} holding it;
+     * after a configuration change the game and its requests are simply carried over,
+     * and after the process was killed the game is restored from the saved instance state.
+     *
+     * @param savedInstanceState the saved instance state, if the activity is being recreated
+     * @see GameViewModel#start(Bundle) for how the questions are retrieved
      */
-    public void initTriviaGame(){
-        game = new TriviaGame(10, TriviaGame.Difficulty.ANY, TriviaGame.QuestionType.ANY);
-        request = TriviaRequestHelper.getInstance(getApplicationContext(), game);
-        request.requestSessionToken(this);
+    private void initTriviaGame(@Nullable Bundle savedInstanceState){
+        Tracing.beginSection("GameActivity.initTriviaGame");
+        try {
+            model = ViewModelProviders.of(this).get(GameViewModel.class);
+            if(model.start(savedInstanceState)) {
+                firstQuestionTrace = Tracing.beginAsyncSection("time to first question");
+                if(BuildConfig.DEBUG) {
+                    frameDrops = new FrameDropCounter();
+                    frameDrops.start();
+                }
+            }
+            game = model.getGame();
+            model.getQuestionsReady().observe(this, ready -> {
+                if(Boolean.TRUE.equals(ready)) {
+                    onQuestionsRetrieved();
+                } else if(Boolean.FALSE.equals(ready)) {
+                    onQuestionsFailed();
+                }
+            });
+        } finally {
+            Tracing.endSection();
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        super.onSaveInstanceState(outState);
+        model.saveState(outState);
     }
 
     /**
      * Initiates the game
      */
+    @MainThread
     public void startGame() {
         Log.d(getClass().getSimpleName(), "Started game!");
 
@@ -65,53 +102,104 @@ public class GameActivity extends AppCompatActivity implements
 
     }
 
-
     /**
-     * called when a TriviaDB session request has been successfully requeste
+     * Checks the player's answer to the current question and moves on to the next one,
+     * ending the game once there are no questions left; called by the {@link GameFragment}
+     * when an answer is chosen
      *
-     * @param token the session token retrieved
+     * @param answer the index of the chosen answer
+     * @see GameViewModel#answerQuestion(int)
      */
-    @Override
-    public void OnRequestTokenResponse(String token) {
-        Log.i(getClass().getName(), "Successfully retrieved session token '" + token + "'");
-        Log.d(getClass().getSimpleName(), "Requesting questions");
-        request.requestQuestions(game.getQuestionAmount(), this);
+    @MainThread
+    public void answerQuestion(int answer) {
+        if(game.isGameOver()) {
+            return;
+        }
+        if(model.answerQuestion(answer)) {
+            onGameOver();
+        } else {
+            Fragment gameFrag = getSupportFragmentManager().findFragmentById(R.id.game_fragment);
+            if(gameFrag instanceof GameFragment) {
+                ((GameFragment) gameFrag).showNextQuestion(game.getCurrentQuestion());
+            }
+        }
     }
 
-    @Override
-    public void OnResetTokenResponse(String token) {
-        Log.i(getClass().getName(), "Successfully reset session token '" + token + "'");
-
+    /**
+     * Shows the best scores of the game's mode, once the view model has recorded its score
+     */
+    private void onGameOver() {
+        int mode = HighscoreStore.modeOf(game);
+        model.recordScore()
+                .whenComplete((rank, error) -> {
+                    // the activity may have been recreated in the meantime, which then carries on
+                    if(isDestroyed()) {
+                        return;
+                    }
+                    if(rank != null) {
+                        Log.d(getClass().getSimpleName(), "Game over, ranked #" + rank);
+                    }
+                    Intent intent = new Intent(this, HighscoresActivity.class);
+                    intent.putExtra(HighscoresActivity.EXTRA_HIGHSCORE_MODE, mode);
+                    startActivity(intent);
+                    finish();
+                });
     }
 
     /**
-     * Called when a TriviaDB question request successfully resolved
-     *
-     * @param questions a {@link List} of {@link TriviaQuestion} objects
-     *                  representing the trivia questions that were retrieved from the TriviaDB
-     * @see TriviaRequestHelper#requestQuestions(int, TriviaRequestHelper.QuestionResponseListener)
+     * Called when the first questions of this game have been added to it,
+     * either from the local store or from the TriviaDB,
+     * or straight away when the activity is recreated after they were
      */
-    @Override
-    public void OnQuestionsResponse(List<TriviaQuestion> questions) {
-        Log.d(getClass().getSimpleName(), "Resolved question request");
-        game.setQuestions(questions);
+    private void onQuestionsRetrieved() {
+        if(frameDrops != null) {
+            frameDrops.stop();
+            Log.d(getClass().getSimpleName(), "Dropped " + frameDrops.getDropped() + " of "
+                    + (frameDrops.getFrames() + frameDrops.getDropped()) + " frames loading questions");
+            frameDrops = null;
+        }
 
+        if(game.isGameOver()) {
+            // the game ended just before the activity was recreated
+            onGameOver();
+            return;
+        }
         // if the game hasn't started yet, start it
         startGame();
+        if(firstQuestionTrace != null) {
+            firstQuestionTrace.end();
+            firstQuestionTrace = null;
+        }
     }
 
     /**
-     * called when an error occurs during a request to the OpenTrivia API
-     *
-     * @param lastRequest the endpoint of the request;
-     *                    note that this might not be entirely accurate due to async requests
-     * @param errorMsg    the error message included.
+     * Called when no questions could be loaded for this game,
+     * neither from the local store, the TriviaDB nor the question pack
      */
+    private void onQuestionsFailed() {
+        if(frameDrops != null) {
+            frameDrops.stop();
+            frameDrops = null;
+        }
+        if(firstQuestionTrace != null) {
+            firstQuestionTrace.end();
+            firstQuestionTrace = null;
+        }
+        Fragment gameFrag = getSupportFragmentManager().findFragmentById(R.id.game_fragment);
+        if(gameFrag instanceof GameFragment) {
+            ((GameFragment) gameFrag).showError(R.string.game_questions_error_text);
+        }
+    }
+
     @Override
-    public void OnErrorResponse(String lastRequest, @Nullable String errorMsg) {
-        Log.e(getClass().getSimpleName(), "request to " + lastRequest + " failed!");
-        if(errorMsg != null) {
-            Log.e(getClass().getSimpleName(), errorMsg);
+    protected void onDestroy() {
+        super.onDestroy();
+        if(frameDrops != null) {
+            frameDrops.stop();
+        }
+        if(firstQuestionTrace != null) {
+            firstQuestionTrace.end();
+            firstQuestionTrace = null;
         }
     }
 }
@@ -2,12 +2,18 @@ package online.madeofmagicandwires.trivial;
 
 
 import android.os.Bundle;
+import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.StringRes;
 import android.support.v4.app.Fragment;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
 
 
 /**
@@ -47,21 +53,59 @@ public class GameFragment extends Fragment implements GameActivity.GameView {
          return inflater.inflate(R.layout.fragment_game, container, false);
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        ListView answers = (ListView) view.findViewById(R.id.answers_container);
+        // positions in the list are positions in the question's answers
+        answers.setOnItemClickListener((parent, item, position, id) -> {
+            if(getActivity() instanceof GameActivity) {
+                ((GameActivity) getActivity()).answerQuestion(position);
+            }
+        });
+    }
 
-    // TODO: Bind new question
-    // isAdded makes sure getActivity and getView() are always available
-    @SuppressWarnings("ConstantConditions")
+
+    @MainThread
     @Override
     public void showNextQuestion(TriviaQuestion question) {
+        Tracing.beginSection("GameFragment.showNextQuestion");
+        try {
+            bindQuestion(question);
+        } finally {
+            Tracing.endSection();
+        }
+    }
+
+    /**
+     * Replaces the placeholder shown while the questions are loading with an error
+     *
+     * @param message the string resource of the error to show
+     */
+    @SuppressWarnings("ConstantConditions")
+    @MainThread
+    public void showError(@StringRes int message) {
+        if(!isAdded()) {
+            Log.e("showError", "Fragment was not added to an Activity");
+            return;
+        }
+        View view = getView();
+        ((TextView) view.findViewById(R.id.game_fragment_placeholder_text)).setText(message);
+        view.findViewById(R.id.game_fragment_placeholder_progress).setVisibility(View.GONE);
+    }
+
+    // isAdded makes sure getActivity and getView() are always available
+    @SuppressWarnings("ConstantConditions")
+    @MainThread
+    private void bindQuestion(TriviaQuestion question) {
         if(isAdded()) {
-            // use runOnUiThread as this might not be called from the main thread.
-            getActivity().runOnUiThread(() -> {
-                try{
-                    getView().findViewById(R.id.game_fragment_placeholder).setVisibility(View.GONE);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            });
+            // questions are parsed before they are delivered on the main thread, so no need to hop over
+            View view = getView();
+            view.findViewById(R.id.game_fragment_placeholder).setVisibility(View.GONE);
+            ((TextView) view.findViewById(R.id.question_text)).setText(question.getQuestion());
+            ListView answers = (ListView) view.findViewById(R.id.answers_container);
+            answers.setAdapter(new ArrayAdapter<>(
+                    answers.getContext(), android.R.layout.simple_list_item_1, question.getAnswers()));
         } else {
             Log.e("showNextQuestion", "Fragment was not added to an Activity");
         }
@@ -0,0 +1,384 @@
+package online.madeofmagicandwires.trivial;
+
+import android.app.Application;
+import android.arch.lifecycle.AndroidViewModel;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.content.res.AssetFileDescriptor;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the {@link TriviaGame} of a {@link GameActivity} and the requests filling it with questions,
+ * so they outlive the activity being recreated, such as when the screen is rotated;
+ * a recreated activity picks up the same game without any new requests or parsing.
+ *
+ * The game is also saved into the activity's instance state as a compact {@link QuestionCodec}
+ * snapshot of its settings, progress and questions, so it survives the process being killed
+ * while the app is in the background.
+ */
+public class GameViewModel extends AndroidViewModel {
+
+    /** key of the game snapshot in the instance state **/
+    private static final String STATE_GAME = "game_state";
+    /** key of whether the game's score was recorded, in the instance state **/
+    private static final String STATE_SCORE_RECORDED = "score_recorded";
+
+    /** time in seconds to wait for questions before giving up **/
+    private static final long QUESTIONS_TIMEOUT = 30;
+
+    /** name of the question pack, both in the assets and in the app's files **/
+    private static final String PACK_NAME = "questions.pack";
+    /** amount of questions an endless game is given from the question pack **/
+    private static final int PACK_ENDLESS_AMOUNT = 50;
+
+    private final MutableLiveData<Boolean> questionsReady;
+    /** the game and its fetcher are only touched on the main thread **/
+    private final Executor mainExecutor;
+
+    private TriviaGame game;
+    private QuestionStore store;
+    private QuestionHistory history;
+    private QuestionFetcher fetcher;
+    private QuestionPack pack;
+    private HighscoreStore highscores;
+    /** whether the score of the game has been handed to the HighscoreStore **/
+    private boolean scoreRecorded;
+    private CompletableFuture<Integer> scoreRecording;
+
+    /**
+     * Standard constructor, called by the ViewModelProvider
+     *
+     * @param application the application, for the request helper and question store
+     */
+    public GameViewModel(@NonNull Application application) {
+        super(application);
+        this.questionsReady = new MutableLiveData<>();
+        this.mainExecutor = new Handler(Looper.getMainLooper())::post;
+    }
+
+    /**
+     * Creates a view model playing a game that already has its questions, recording its score in a given store
+     *
+     * @param application the application
+     * @param game the game to play
+     * @param highscores the store to record the score of the game in
+     */
+    @VisibleForTesting
+    GameViewModel(@NonNull Application application, @NonNull TriviaGame game, @NonNull HighscoreStore highscores) {
+        this(application);
+        this.game = game;
+        this.highscores = highscores;
+    }
+
+    /**
+     * Starts the game, unless it has been started already by an earlier instance of the activity.
+     * A game saved in the instance state is restored rather than a new one started;
+     * questions matching the game's category, difficulty and type are drawn from the local store,
+     * falling back to fetching them from the OpenTriviaDB page by page if too few match or the game is endless,
+     * and from the bundled question pack if the OpenTriviaDB can't be reached either.
+     * Questions put in earlier games are left out, see {@link QuestionHistory}.
+     * A session token is acquired at the same time, so it is ready for either case;
+     * usually it is one saved during an earlier launch, so no request has to be waited on.
+     *
+     * @param savedInstanceState the activity's saved instance state, if it is being recreated
+     * @return true if the game was started, false if it was already
+     */
+    @MainThread
+    public boolean start(@Nullable Bundle savedInstanceState) {
+        if(game != null) {
+            return false;
+        }
+        Application app = getApplication();
+        game = restoreGame(savedInstanceState);
+        scoreRecorded = savedInstanceState != null && savedInstanceState.getBoolean(STATE_SCORE_RECORDED);
+        TriviaRequestHelper request = TriviaRequestHelper.getInstance(app, game);
+        store = QuestionStore.getInstance(app);
+        history = QuestionHistory.getInstance(app);
+        fetcher = new QuestionFetcher(request, game, history);
+
+        if(game.isGameOver() || game.getLoadedQuestionCount() > game.getQuestionIndex()) {
+            Log.d("GameViewModel", "Restored game at question " + game.getQuestionIndex());
+            fetcher.fetchAhead();
+            onQuestionsRetrieved();
+            return true;
+        }
+
+        CompletableFuture<String> token = request.acquireSessionTokenAsync();
+        // endless games can't be covered by the store
+        CompletableFuture<List<TriviaQuestion>> stored = (game.getQuestionAmount() != 0)
+                ? store.addQuestionsAsync(game, history, game.getQuestionAmount())
+                : CompletableFuture.completedFuture(null);
+        Tracing.AsyncSection storeTrace = Tracing.beginAsyncSection(
+                "QuestionStore.addQuestions", "local", game.getQuestionAmount());
+        stored.whenComplete((added, storeError) -> storeTrace.end());
+
+        CompletableFuture<Void> ready = stored
+                .handle((added, storeError) -> {
+                    if(added != null) {
+                        Log.d("GameViewModel", "Retrieved " + added.size() + " questions from local store");
+                        if(added.size() >= game.getQuestionAmount()) {
+                            return CompletableFuture.<Void>completedFuture(null);
+                        }
+                        Log.d("GameViewModel", "Local store had " + added.size()
+                                + " matching new questions, fetching the rest");
+                    }
+                    Log.d("GameViewModel", "Fetching questions from the TriviaDB");
+                    return token.thenCompose(t -> fetcher.start());
+                })
+                .thenCompose(future -> future);
+
+        TriviaRequestHelper.withTimeout(ready, QUESTIONS_TIMEOUT, TimeUnit.SECONDS)
+                .whenCompleteAsync((result, error) -> {
+                    if(error != null) {
+                        Log.e("GameViewModel", "could not retrieve questions: " + error.getMessage());
+                        // the pack takes over, so stop requesting pages
+                        fetcher.stop();
+                        if(playFromPack()) {
+                            onQuestionsRetrieved();
+                        } else {
+                            // nothing to play at all, so let the player know rather than wait forever
+                            onQuestionsFailed();
+                        }
+                    } else {
+                        onQuestionsRetrieved();
+                        // fill the local store for the next game
+                        store.refill();
+                    }
+                }, mainExecutor);
+        return true;
+    }
+
+    /**
+     * Gets the game being played
+     * @return the game, or null if it has not been started yet
+     */
+    public TriviaGame getGame() {
+        return game;
+    }
+
+    /**
+     * Gets whether the first questions of the game have been loaded; observed by the activity,
+     * so a recreated activity is told straight away if they were loaded before it was
+     *
+     * @return live data set to true once the game can be started,
+     *         or to false if no questions could be loaded from anywhere
+     */
+    public LiveData<Boolean> getQuestionsReady() {
+        return questionsReady;
+    }
+
+    /**
+     * Checks the player's answer to the current question and moves the game on to the next one,
+     * requesting more questions if needed during endless games.
+     * The game ends early if the next question could not be loaded.
+     *
+     * @param answer the position of the chosen answer in {@link TriviaQuestion#getAnswers()}
+     * @return true if the game is over, and its score should be recorded through {@link #recordScore()}
+     */
+    @MainThread
+    public boolean answerQuestion(int answer) {
+        if(game.isGameOver()) {
+            return true;
+        }
+        if(game.getCurrentQuestion().checkAnswer(answer)) {
+            game.addScore(1);
+        }
+        game.nextQuestion();
+        if(!game.isGameOver() && game.getQuestionIndex() >= game.getLoadedQuestionCount()) {
+            Log.e("GameViewModel", "Ran out of questions at question " + game.getQuestionIndex());
+            game.endGame();
+        }
+        if(!game.isGameOver()) {
+            fetchAhead();
+        }
+        return game.isGameOver();
+    }
+
+    /**
+     * Requests more questions if needed, as the player moves on through an endless game
+     */
+    @MainThread
+    public void fetchAhead() {
+        if(fetcher != null) {
+            fetcher.fetchAhead();
+        }
+    }
+
+    /**
+     * Records the final score of the game in the {@link HighscoreStore}, only the first time it is called;
+     * a recreated activity is handed the same outcome, so a game never takes two places on a leaderboard
+     *
+     * @return a future completed on the main thread with the rank of the game,
+     *         or with null if it was recorded before the process was killed
+     */
+    @MainThread
+    public CompletableFuture<Integer> recordScore() {
+        if(scoreRecording == null) {
+            if(scoreRecorded) {
+                scoreRecording = CompletableFuture.completedFuture(null);
+            } else {
+                scoreRecorded = true;
+                if(highscores == null) {
+                    highscores = HighscoreStore.getInstance(getApplication());
+                }
+                scoreRecording = highscores.recordAsync(game);
+            }
+        }
+        return scoreRecording;
+    }
+
+    /**
+     * Saves the game into the activity's instance state
+     *
+     * @param outState the bundle to save the game in
+     */
+    public void saveState(@NonNull Bundle outState) {
+        if(game == null) {
+            return;
+        }
+        outState.putByteArray(STATE_GAME, writeGame(game));
+        outState.putBoolean(STATE_SCORE_RECORDED, scoreRecorded);
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        if(fetcher != null) {
+            fetcher.stop();
+        }
+    }
+
+    /**
+     * Fills the game with questions from the bundled question pack, for when there are not enough stored
+     * and the OpenTriviaDB can't be reached, such as on the first launch without a connection;
+     * only questions matching the game's category, difficulty and type are picked
+     *
+     * @return true if the game has questions to play, false if there were none and no pack to take them from
+     */
+    private boolean playFromPack() {
+        boolean playable = game.getLoadedQuestionCount() > game.getQuestionIndex();
+        if(openQuestionPack() == null || pack.size() == 0) {
+            return playable;
+        }
+        // top up whatever the local store could give
+        int amount = (game.getQuestionAmount() != 0)
+                ? game.getQuestionAmount() - game.getLoadedQuestionCount()
+                : PACK_ENDLESS_AMOUNT - game.getLoadedQuestionCount();
+        if(amount <= 0) {
+            return playable;
+        }
+        String difficulty = TriviaGame.Difficulty.UNKNOWN.equals(game.getGameDifficulty())
+                ? TriviaGame.Difficulty.ANY
+                : game.getGameDifficulty();
+        List<TriviaQuestion> questions = pack.sample(
+                game.getGameCategoryId(), difficulty, game.getGameQuestionType(), amount, new Random());
+        Log.d("GameViewModel", "Playing " + questions.size() + " questions from the question pack");
+        List<TriviaQuestion> added;
+        Tracing.beginSection("TriviaGame.setQuestions", "pack", questions.size());
+        try {
+            added = game.addNewQuestions(questions, amount);
+        } finally {
+            Tracing.endSection();
+        }
+        // the pack holds too few questions to leave out played ones, but they still count as played
+        history.record(added);
+        return playable || !added.isEmpty();
+    }
+
+    /**
+     * Maps the question pack into memory, if it was not already; a pack placed in the app's files
+     * takes precedence over the one bundled in the assets
+     *
+     * @return the question pack, or null if there is none or it could not be opened
+     */
+    @Nullable
+    private QuestionPack openQuestionPack() {
+        if(pack != null) {
+            return pack;
+        }
+        Application app = getApplication();
+        try {
+            File file = new File(app.getFilesDir(), PACK_NAME);
+            if(file.exists()) {
+                pack = QuestionPack.open(file);
+                return pack;
+            }
+            // only works for assets stored uncompressed, see aaptOptions in the app's build.gradle;
+            // closing the stream closes the descriptor, but leaves the mapping in place
+            AssetFileDescriptor asset = app.getAssets().openFd(PACK_NAME);
+            try (FileInputStream in = asset.createInputStream()) {
+                pack = QuestionPack.map(in.getChannel(), asset.getStartOffset(), asset.getDeclaredLength());
+                return pack;
+            }
+        } catch (IOException e) {
+            Log.e("GameViewModel", "Could not open question pack: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void onQuestionsRetrieved() {
+        questionsReady.postValue(true);
+    }
+
+    private void onQuestionsFailed() {
+        questionsReady.postValue(false);
+    }
+
+    /**
+     * Restores the game saved in an instance state, or creates a new game if there is none
+     *
+     * @param savedInstanceState the saved instance state, if any
+     * @return the restored game, or a new game
+     */
+    private static TriviaGame restoreGame(@Nullable Bundle savedInstanceState) {
+        byte[] snapshot = (savedInstanceState != null) ? savedInstanceState.getByteArray(STATE_GAME) : null;
+        if(snapshot != null) {
+            try {
+                return readGame(snapshot);
+            } catch (IOException e) {
+                Log.e("GameViewModel", "Could not restore game: " + e.getMessage());
+            }
+        }
+        return new TriviaGame(10, TriviaGame.Difficulty.ANY, TriviaGame.QuestionType.ANY);
+    }
+
+    /**
+     * Writes a snapshot of a game: its settings, progress and every question loaded so far
+     *
+     * @param game the game to write
+     * @return the snapshot, in the {@link QuestionCodec} format
+     */
+    @VisibleForTesting
+    static byte[] writeGame(@NonNull TriviaGame game) {
+        return QuestionCodec.encodeGame(game);
+    }
+
+    /**
+     * Reads a game from a snapshot written by {@link #writeGame(TriviaGame)}
+     *
+     * @param snapshot the snapshot
+     * @return the game, at the question it was at
+     * @throws IOException when the snapshot could not be read or is of another version
+     */
+    @VisibleForTesting
+    static TriviaGame readGame(@NonNull byte[] snapshot) throws IOException {
+        return QuestionCodec.decodeGame(ByteBuffer.wrap(snapshot));
+    }
+}
@@ -0,0 +1,489 @@
+package online.madeofmagicandwires.trivial;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent store of the final scores of finished games.
+ *
+ * Every game is appended to a log file as a fixed size, checksummed record.
+ * Records are written right away, but only forced to disk once {@link #SYNC_BATCH} of them
+ * are waiting or {@link #SYNC_DELAY_MS} has passed, so recording a game never waits on the disk.
+ *
+ * In memory a {@link Leaderboard} is kept for every combination of mode, category and difficulty,
+ * as well as for any category and any difficulty, so scores can be ranked in O(log n) time.
+ * On startup they are rebuilt by reading through the log once.
+ * A log written in another format is moved aside rather than overwritten.
+ */
+public class HighscoreStore {
+
+    /**
+     * The modes games can be played in, each with their own leaderboards
+     */
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({Mode.CLASSIC, Mode.ENDLESS})
+    public @interface Mode {
+        /** games of a set amount of questions **/
+        int CLASSIC = 1;
+        /** games that go on until the player quits **/
+        int ENDLESS = 2;
+    }
+
+    /**
+     * A single finished game
+     */
+    public static final class Entry {
+
+        /** the final score of the game **/
+        public final int score;
+        /** the time the game finished, in milliseconds since the epoch **/
+        public final long timestamp;
+        public final @Mode int mode;
+        /** the OpenTriviaDB id of the category of the game, or {@link #ANY_CATEGORY} **/
+        public final int categoryId;
+        /** the difficulty of the game, or {@link TriviaGame.Difficulty#ANY} **/
+        public final @TriviaGame.Difficulty String difficulty;
+
+        Entry(int score, long timestamp, @Mode int mode, int categoryId, @Nullable String difficulty) {
+            this.score = score;
+            this.timestamp = timestamp;
+            this.mode = mode;
+            this.categoryId = categoryId;
+            this.difficulty = DIFFICULTIES[difficultyCode(difficulty)];
+        }
+    }
+
+    /** category id of games of any category **/
+    public static final int ANY_CATEGORY = -1;
+    /** amount of best games kept per leaderboard **/
+    public static final int TOP_SCORES = 100;
+
+    /** amount of records after which the log is forced to disk **/
+    static final int SYNC_BATCH = 32;
+    /** time after which a record is forced to disk at the latest, in milliseconds **/
+    static final long SYNC_DELAY_MS = 2000;
+
+    private static final String FILE_NAME = "highscores.log";
+    /** "HSL" followed by the format version **/
+    private static final int MAGIC = 0x48534C01;
+    private static final int HEADER_SIZE = 4;
+    /** checksum, timestamp, score, category, mode and difficulty **/
+    private static final int RECORD_SIZE = 4 + 8 + 4 + 4 + 1 + 1;
+    /** amount of records read from the log at once while loading **/
+    private static final int READ_BATCH = 4096;
+
+    /** difficulties by their code in the log; 0 is any difficulty **/
+    private static final String[] DIFFICULTIES = {
+            TriviaGame.Difficulty.ANY,
+            TriviaGame.Difficulty.EASY,
+            TriviaGame.Difficulty.MEDIUM,
+            TriviaGame.Difficulty.HARD
+    };
+
+    private static HighscoreStore instance;
+
+    private final File file;
+    private final ScheduledExecutorService ioExecutor;
+    private final Executor callbackExecutor;
+    private final Map<Long, Leaderboard> leaderboards;
+    private final ByteBuffer record;
+    private final CRC32 crc;
+
+    private boolean loaded;
+    /** whether the log is in another format and could not be moved aside, so must not be written to **/
+    private boolean foreignLog;
+    private int size;
+    private RandomAccessFile log;
+    private int unsynced;
+    private boolean syncScheduled;
+
+    /**
+     * Standard constructor
+     *
+     * @param file the log file scores are stored in; created if it does not exist yet
+     * @param callbackExecutor the executor results will be delivered on
+     */
+    HighscoreStore(@NonNull File file, @NonNull Executor callbackExecutor) {
+        this.file = file;
+        this.callbackExecutor = callbackExecutor;
+        this.ioExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.leaderboards = new HashMap<>();
+        this.record = ByteBuffer.allocate(RECORD_SIZE);
+        this.crc = new CRC32();
+        this.loaded = false;
+    }
+
+    /**
+     * Used to retrieve the HighscoreStore singleton;
+     * starts loading the recorded scores in the background on first use
+     *
+     * @param appContext the application context, needed to locate the log file
+     * @return the singleton HighscoreStore instance
+     */
+    public static HighscoreStore getInstance(@NonNull Context appContext) {
+        if(instance == null) {
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            instance = new HighscoreStore(
+                    new File(appContext.getFilesDir(), FILE_NAME),
+                    mainHandler::post
+            );
+            instance.ioExecutor.execute(instance::ensureLoaded);
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the mode a game is played in
+     *
+     * @param game the game to check
+     * @return {@link Mode#ENDLESS} if the game has no set amount of questions, otherwise {@link Mode#CLASSIC}
+     */
+    public static @Mode int modeOf(@NonNull TriviaGame game) {
+        return (game.getQuestionAmount() == 0) ? Mode.ENDLESS : Mode.CLASSIC;
+    }
+
+    /**
+     * Records the final score of a game in the background
+     *
+     * @param game the finished game
+     * @return a future completed on the main thread with the rank of the game
+     *         among the games of the same mode, category and difficulty,
+     *         or with an IOException if it could not be recorded
+     */
+    public CompletableFuture<Integer> recordAsync(@NonNull TriviaGame game) {
+        Entry entry = new Entry(
+                game.getScore(),
+                System.currentTimeMillis(),
+                modeOf(game),
+                game.getGameCategoryId(),
+                game.getGameDifficulty()
+        );
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        ioExecutor.execute(() -> {
+            try {
+                int rank = record(entry);
+                callbackExecutor.execute(() -> future.complete(rank));
+            } catch (IOException e) {
+                Log.e("HighscoreStore", "Could not record score: " + e.getMessage());
+                callbackExecutor.execute(() -> future.completeExceptionally(e));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Retrieves the best games of a leaderboard in the background
+     *
+     * @param mode the mode of the games
+     * @param categoryId the category of the games, or {@link #ANY_CATEGORY} for games of all categories
+     * @param difficulty the difficulty of the games, or null for games of all difficulties
+     * @param amount the maximum amount of games to retrieve, up to {@link #TOP_SCORES}
+     * @return a future completed on the main thread with the best games, best first
+     */
+    public CompletableFuture<List<Entry>> requestTopScoresAsync(
+            @Mode int mode,
+            int categoryId,
+            @Nullable @TriviaGame.Difficulty String difficulty,
+            int amount) {
+        CompletableFuture<List<Entry>> future = new CompletableFuture<>();
+        ioExecutor.execute(() -> {
+            List<Entry> scores = getTopScores(mode, categoryId, difficulty, amount);
+            callbackExecutor.execute(() -> future.complete(scores));
+        });
+        return future;
+    }
+
+    /**
+     * Ranks a score on a leaderboard in the background, without recording it
+     *
+     * @param mode the mode of the games
+     * @param categoryId the category of the games, or {@link #ANY_CATEGORY} for games of all categories
+     * @param difficulty the difficulty of the games, or null for games of all difficulties
+     * @param score the score to rank
+     * @return a future completed on the main thread with 1 plus the amount of games with a higher score
+     */
+    public CompletableFuture<Integer> requestRankAsync(
+            @Mode int mode,
+            int categoryId,
+            @Nullable @TriviaGame.Difficulty String difficulty,
+            int score) {
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        ioExecutor.execute(() -> {
+            int rank = rank(mode, categoryId, difficulty, score);
+            callbackExecutor.execute(() -> future.complete(rank));
+        });
+        return future;
+    }
+
+    /**
+     * Gets the amount of recorded games
+     *
+     * @return the amount of games in the log
+     */
+    synchronized int size() {
+        ensureLoaded();
+        return size;
+    }
+
+    /**
+     * Appends a game to the log and adds it to its leaderboards
+     *
+     * @param entry the finished game
+     * @return the rank of the game among the games of the same mode, category and difficulty
+     * @throws IOException when the game could not be written to the log
+     */
+    synchronized int record(@NonNull Entry entry) throws IOException {
+        ensureLoaded();
+        if(foreignLog) {
+            throw new IOException("highscore log " + file + " is of an unknown format");
+        }
+        if(log == null) {
+            log = new RandomAccessFile(file, "rw");
+            if(log.length() < HEADER_SIZE) {
+                log.setLength(0);
+                log.writeInt(MAGIC);
+            }
+            log.seek(HEADER_SIZE + (long) size * RECORD_SIZE);
+        }
+
+        record.clear();
+        record.position(4);
+        record.putLong(entry.timestamp)
+                .putInt(entry.score)
+                .putInt(entry.categoryId)
+                .put((byte) entry.mode)
+                .put(difficultyCode(entry.difficulty));
+        crc.reset();
+        crc.update(record.array(), 4, RECORD_SIZE - 4);
+        record.putInt(0, (int) crc.getValue());
+        log.write(record.array(), 0, RECORD_SIZE);
+
+        add(entry);
+        unsynced++;
+        if(unsynced >= SYNC_BATCH) {
+            sync();
+        } else if(!syncScheduled) {
+            syncScheduled = true;
+            ioExecutor.schedule(this::syncQuietly, SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+        return rank(entry.mode, entry.categoryId, entry.difficulty, entry.score);
+    }
+
+    /**
+     * Gets the best games of a leaderboard
+     *
+     * @see #requestTopScoresAsync(int, int, String, int)
+     */
+    synchronized List<Entry> getTopScores(
+            @Mode int mode,
+            int categoryId,
+            @Nullable String difficulty,
+            int amount) {
+        ensureLoaded();
+        Leaderboard leaderboard = leaderboards.get(key(mode, categoryId, difficultyCode(difficulty)));
+        return (leaderboard != null) ? leaderboard.getTopScores(amount) : Collections.<Entry>emptyList();
+    }
+
+    /**
+     * Ranks a score on a leaderboard
+     *
+     * @see #requestRankAsync(int, int, String, int)
+     */
+    synchronized int rank(@Mode int mode, int categoryId, @Nullable String difficulty, int score) {
+        ensureLoaded();
+        Leaderboard leaderboard = leaderboards.get(key(mode, categoryId, difficultyCode(difficulty)));
+        return (leaderboard != null) ? leaderboard.rank(score) : 1;
+    }
+
+    /**
+     * Forces all written records to disk
+     *
+     * @throws IOException when the log could not be synced
+     */
+    synchronized void sync() throws IOException {
+        if(log != null && unsynced > 0) {
+            log.getFD().sync();
+        }
+        unsynced = 0;
+    }
+
+    /**
+     * Forces all written records to disk and closes the log;
+     * it is opened again when the next game is recorded
+     *
+     * @throws IOException when the log could not be synced or closed
+     */
+    synchronized void close() throws IOException {
+        if(log != null) {
+            sync();
+            log.close();
+            log = null;
+        }
+    }
+
+    private synchronized void syncQuietly() {
+        syncScheduled = false;
+        try {
+            sync();
+        } catch (IOException e) {
+            Log.e("HighscoreStore", "Could not sync highscores: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuilds the leaderboards from the log the first time it is called.
+     * A record that was only partially written or is corrupt is cut off the end of the log,
+     * while a log with another magic number or format version is moved aside as a whole.
+     */
+    private synchronized void ensureLoaded() {
+        if(loaded) {
+            return;
+        }
+        loaded = true;
+        if(!file.exists()) {
+            return;
+        }
+
+        long validLength = 0;
+        boolean foreign = false;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * READ_BATCH);
+            buffer.limit(HEADER_SIZE);
+            boolean hasHeader = channel.read(buffer) == HEADER_SIZE;
+            foreign = hasHeader && buffer.getInt(0) != MAGIC;
+            if(hasHeader && !foreign) {
+                validLength = HEADER_SIZE;
+                buffer.clear();
+                boolean corrupt = false;
+                while (!corrupt && channel.read(buffer) > 0) {
+                    buffer.flip();
+                    while (buffer.remaining() >= RECORD_SIZE) {
+                        Entry entry = readRecord(buffer);
+                        if(entry == null) {
+                            corrupt = true;
+                            break;
+                        }
+                        add(entry);
+                        validLength += RECORD_SIZE;
+                    }
+                    buffer.compact();
+                }
+            }
+            if(!foreign && validLength != raf.length()) {
+                // partially written or corrupt record; drop everything after the last valid one
+                Log.w("HighscoreStore", "Truncating highscore log at byte " + validLength);
+                raf.setLength(validLength);
+            }
+        } catch (IOException e) {
+            Log.e("HighscoreStore", "Could not read highscore log: " + e.getMessage());
+        }
+
+        if(foreign) {
+            // written by another version of the app; keep it rather than truncating it
+            File aside = new File(file.getPath() + "." + System.currentTimeMillis());
+            if(file.renameTo(aside)) {
+                Log.w("HighscoreStore", "Moved highscore log of an unknown format to " + aside);
+            } else {
+                Log.e("HighscoreStore", "Could not move highscore log of an unknown format aside");
+                foreignLog = true;
+            }
+        }
+    }
+
+    /**
+     * Reads a single record, verifying its checksum
+     *
+     * @param buffer the buffer positioned at the start of the record
+     * @return the game stored in the record, or null if the record is corrupt
+     */
+    @Nullable
+    private Entry readRecord(ByteBuffer buffer) {
+        int start = buffer.position();
+        int checksum = buffer.getInt();
+        crc.reset();
+        crc.update(buffer.array(), buffer.arrayOffset() + start + 4, RECORD_SIZE - 4);
+        long timestamp = buffer.getLong();
+        int score = buffer.getInt();
+        int categoryId = buffer.getInt();
+        int mode = buffer.get();
+        int difficulty = buffer.get();
+        if(checksum != (int) crc.getValue() || difficulty < 0 || difficulty >= DIFFICULTIES.length) {
+            return null;
+        }
+        return new Entry(score, timestamp, mode, categoryId, DIFFICULTIES[difficulty]);
+    }
+
+    /**
+     * Adds a game to all leaderboards it belongs on
+     */
+    private void add(Entry entry) {
+        byte difficulty = difficultyCode(entry.difficulty);
+        leaderboard(key(entry.mode, entry.categoryId, difficulty)).add(entry);
+        if(difficulty != 0) {
+            leaderboard(key(entry.mode, entry.categoryId, (byte) 0)).add(entry);
+        }
+        if(entry.categoryId != ANY_CATEGORY) {
+            leaderboard(key(entry.mode, ANY_CATEGORY, difficulty)).add(entry);
+            if(difficulty != 0) {
+                leaderboard(key(entry.mode, ANY_CATEGORY, (byte) 0)).add(entry);
+            }
+        }
+        size++;
+    }
+
+    private Leaderboard leaderboard(long key) {
+        Leaderboard leaderboard = leaderboards.get(key);
+        if(leaderboard == null) {
+            leaderboard = new Leaderboard(TOP_SCORES);
+            leaderboards.put(key, leaderboard);
+        }
+        return leaderboard;
+    }
+
+    private static long key(int mode, int categoryId, byte difficulty) {
+        return ((long) mode << 40) | ((categoryId & 0xFFFFFFFFL) << 8) | difficulty;
+    }
+
+    /**
+     * Gets the code a difficulty is stored under, matching it regardless of case
+     *
+     * @param difficulty the difficulty of a game
+     * @return the index of the difficulty in {@link #DIFFICULTIES}, or 0 for any other difficulty
+     */
+    private static byte difficultyCode(@Nullable String difficulty) {
+        if(difficulty != null) {
+            String name = difficulty.toLowerCase(Locale.ROOT);
+            for(byte i=1;i<DIFFICULTIES.length;i++) {
+                if(DIFFICULTIES[i].toLowerCase(Locale.ROOT).equals(name)) {
+                    return i;
+                }
+            }
+        }
+        return 0;
+    }
+}
@@ -6,13 +6,17 @@ import android.os.Bundle;
 
 public class HighscoresActivity extends AppCompatActivity {
 
+    /** the {@link HighscoreStore.Mode} of the games to show the best scores of **/
+    public static final String EXTRA_HIGHSCORE_MODE = "HIGHSCORE_MODE";
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.highscores_activity);
         if (savedInstanceState == null) {
+            int mode = getIntent().getIntExtra(EXTRA_HIGHSCORE_MODE, HighscoreStore.Mode.CLASSIC);
             getSupportFragmentManager().beginTransaction()
-                    .replace(R.id.container, HighscoresFragment.newInstance())
+                    .replace(R.id.container, HighscoresFragment.newInstance(mode))
                     .commitNow();
         }
     }
@@ -7,12 +7,32 @@ import android.support.v4.app.Fragment;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+
+import java.util.ArrayList;
+import java.util.List;
 
 
 public class HighscoresFragment extends Fragment {
 
-    public static HighscoresFragment newInstance() {
-        return new HighscoresFragment();
+    private static final String ARG_MODE = "mode";
+    /** amount of best games to show **/
+    private static final int SHOWN_SCORES = 20;
+
+    /**
+     * Use this factory method to create a new instance of
+     * this fragment using the provided parameters.
+     *
+     * @param mode the {@link HighscoreStore.Mode} of the games to show
+     * @return A new instance of fragment HighscoresFragment.
+     */
+    public static HighscoresFragment newInstance(@HighscoreStore.Mode int mode) {
+        HighscoresFragment fragment = new HighscoresFragment();
+        Bundle args = new Bundle();
+        args.putInt(ARG_MODE, mode);
+        fragment.setArguments(args);
+        return fragment;
     }
 
     @Nullable
@@ -22,4 +42,35 @@ public class HighscoresFragment extends Fragment {
         return inflater.inflate(R.layout.highscores_fragment, container, false);
     }
 
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        ListView list = (ListView) view.findViewById(R.id.highscores_list);
+        list.setEmptyView(view.findViewById(R.id.highscores_empty));
+
+        int mode = (getArguments() != null)
+                ? getArguments().getInt(ARG_MODE, HighscoreStore.Mode.CLASSIC)
+                : HighscoreStore.Mode.CLASSIC;
+        HighscoreStore.getInstance(view.getContext().getApplicationContext())
+                .requestTopScoresAsync(mode, HighscoreStore.ANY_CATEGORY, TriviaGame.Difficulty.ANY, SHOWN_SCORES)
+                .thenAccept(this::showScores);
+    }
+
+    /**
+     * Fills the list with the best games
+     *
+     * @param scores the best games, best first
+     */
+    private void showScores(List<HighscoreStore.Entry> scores) {
+        ListView list = (getView() != null) ? (ListView) getView().findViewById(R.id.highscores_list) : null;
+        if(list == null) {
+            return;
+        }
+        List<String> rows = new ArrayList<>(scores.size());
+        for(int i=0;i<scores.size();i++) {
+            rows.add(getString(R.string.highscores_entry, i + 1, scores.get(i).score));
+        }
+        list.setAdapter(new ArrayAdapter<>(list.getContext(), android.R.layout.simple_list_item_1, rows));
+    }
+
 }
@@ -0,0 +1,86 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+
+import com.android.volley.ExecutorDelivery;
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.BasicNetwork;
+import com.android.volley.toolbox.HurlStack;
+import com.android.volley.toolbox.NoCache;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Transport sending requests over {@link java.net.HttpURLConnection}s through Volley's {@link HurlStack},
+ * without needing an Android context or main looper.
+ *
+ * Requests are sent from a fixed pool of network threads, without Volley's disk cache,
+ * and responses are delivered on the given executor; this makes it usable on a plain JVM,
+ * for example to run the request helpers against a local server in unit tests.
+ * It still goes through a Volley {@link RequestQueue}, as only Volley can have a {@link Request}
+ * parse its response; there is no transport bypassing Volley.
+ */
+public class HttpTransport implements Transport {
+
+    /** the default amount of network threads, the same as Volley's default **/
+    public static final int DEFAULT_THREADS = 4;
+
+    private final RequestQueue queue;
+    private final Executor delivery;
+
+    /**
+     * Standard constructor
+     *
+     * @param threads the amount of requests that can be sent at the same time
+     * @param delivery the executor the request listeners are called on
+     */
+    public HttpTransport(int threads, @NonNull Executor delivery) {
+        this.queue = new RequestQueue(
+                new NoCache(),
+                new BasicNetwork(new HurlStack()),
+                threads,
+                new ExecutorDelivery(delivery)
+        );
+        this.queue.start();
+        this.delivery = delivery;
+    }
+
+    /**
+     * Succinct constructor, using the default amount of network threads
+     *
+     * @param delivery the executor the request listeners are called on
+     */
+    public HttpTransport(@NonNull Executor delivery) {
+        this(DEFAULT_THREADS, delivery);
+    }
+
+    /**
+     * Sends a request from one of the network threads
+     *
+     * @param request the request to send
+     */
+    @Override
+    public void send(@NonNull Request<?> request) {
+        queue.add(request);
+    }
+
+    /**
+     * Gets the executor responses are delivered on
+     *
+     * @return the executor passed to the constructor
+     */
+    @NonNull
+    @Override
+    public Executor getDelivery() {
+        return delivery;
+    }
+
+    /**
+     * Stops the network threads
+     */
+    @Override
+    public void stop() {
+        queue.stop();
+    }
+}
@@ -0,0 +1,151 @@
+package online.madeofmagicandwires.trivial;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of non-negative values, such as latencies in microseconds or payload sizes in bytes,
+ * that can be recorded to from any thread without locking.
+ *
+ * Values are counted in log-linear buckets: every power of two is split into
+ * {@link #SUB_BUCKETS} buckets of equal width, so any value is reported within about 6%
+ * of what was recorded while the histogram stays a few kilobytes in size.
+ * Values above {@link #MAX_VALUE} are counted as {@link #MAX_VALUE}.
+ */
+class LatencyHistogram {
+
+    /**
+     * Summary of a histogram at a single moment
+     */
+    static final class Snapshot {
+        /** the amount of values recorded **/
+        final long count;
+        /** the sum of all values recorded **/
+        final long sum;
+        /** the median of the values recorded **/
+        final long p50;
+        /** the 99th percentile of the values recorded **/
+        final long p99;
+        /** the highest value recorded, exactly **/
+        final long max;
+
+        Snapshot(long count, long sum, long p50, long p99, long max) {
+            this.count = count;
+            this.sum = sum;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        @Override
+        public String toString() {
+            return "n=" + count + " p50=" + p50 + " p99=" + p99 + " max=" + max;
+        }
+    }
+
+    private static final int SUB_BITS = 4;
+    /** the amount of buckets every power of two is split into **/
+    static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /** the highest value that is told apart from higher ones; over 12 days in microseconds **/
+    static final long MAX_VALUE = (1L << 40) - 1;
+
+    private final AtomicLongArray counts;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final LongAccumulator max;
+
+    /**
+     * Standard constructor
+     */
+    LatencyHistogram() {
+        this.counts = new AtomicLongArray(bucketOf(MAX_VALUE) + 1);
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new LongAccumulator(Math::max, 0);
+    }
+
+    /**
+     * Records a value
+     *
+     * @param value the value to record; negative values are counted as 0
+     */
+    void record(long value) {
+        long clamped = Math.min(Math.max(value, 0), MAX_VALUE);
+        counts.incrementAndGet(bucketOf(clamped));
+        count.increment();
+        sum.add(clamped);
+        max.accumulate(clamped);
+    }
+
+    /**
+     * Summarises the values recorded so far
+     *
+     * @return the percentiles of the recorded values; all 0 if nothing was recorded
+     */
+    Snapshot snapshot() {
+        long[] copy = new long[counts.length()];
+        long total = 0;
+        for(int i=0;i<copy.length;i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        long highest = max.get();
+        return new Snapshot(
+                total,
+                sum.sum(),
+                Math.min(valueAt(copy, total, 0.5), highest),
+                Math.min(valueAt(copy, total, 0.99), highest),
+                highest
+        );
+    }
+
+    /**
+     * Finds the value below or at which a fraction of the values fall
+     *
+     * @return the highest value of the bucket the percentile falls in
+     */
+    private static long valueAt(long[] counts, long total, double fraction) {
+        if(total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * total));
+        long seen = 0;
+        for(int i=0;i<counts.length;i++) {
+            seen += counts[i];
+            if(seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    /**
+     * Gets the bucket a value is counted in
+     *
+     * @param value a value from 0 up to {@link #MAX_VALUE}
+     * @return the index of its bucket
+     */
+    static int bucketOf(long value) {
+        if(value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return ((shift + 1) << SUB_BITS) + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Gets the highest value counted in a bucket
+     *
+     * @param bucket the index of the bucket
+     * @return the highest value of the bucket
+     */
+    static long highestValueOf(int bucket) {
+        if(bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BITS) - 1;
+        long sub = (bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,105 @@
+package online.madeofmagicandwires.trivial;
+
+/**
+ * Multiple choice question that keeps the url encoded text it was parsed from,
+ * only decoding the question and answers the first time they are asked for.
+ * Questions that are fetched but never shown so never have their text decoded.
+ */
+class LazyMultipleChoiceQuestion extends MultipleChoiceQuestion {
+
+    private final String encodedQuestion;
+    private final String encodedRightAnswer;
+    private final String[] encodedWrongAnswers;
+
+    /**
+     * Standard constructor
+     *
+     * @param encodedQuestion the url encoded question to be asked
+     * @param encodedAnswer the url encoded answer to the question
+     * @param encodedWrongAnswers the url encoded wrong answers to add in the mix
+     * @param difficultyCode the code of the difficulty level of the question in the {@link QuestionDictionary}
+     * @param categoryIndex the index of the category the question belongs to in the {@link QuestionDictionary}
+     */
+    LazyMultipleChoiceQuestion(
+            String encodedQuestion,
+            String encodedAnswer,
+            String[] encodedWrongAnswers,
+            byte difficultyCode,
+            int categoryIndex) {
+        super(null, null, null, difficultyCode, categoryIndex);
+        this.encodedQuestion = encodedQuestion;
+        this.encodedRightAnswer = encodedAnswer;
+        this.encodedWrongAnswers = encodedWrongAnswers;
+    }
+
+    /**
+     * Decodes the question, the first time it is asked for
+     *
+     * @return a human-readable string of the actual question being asked
+     * @throws IllegalArgumentException when the question was not validly encoded
+     */
+    @Override
+    String loadQuestion() {
+        return TriviaQuestionParser.decodeResponseStr(encodedQuestion);
+    }
+
+    /**
+     * Decodes the correct answer, the first time it is asked for
+     *
+     * @return String containing the right answer to the question
+     * @throws IllegalArgumentException when the answer was not validly encoded
+     */
+    @Override
+    String loadRightAnswer() {
+        return TriviaQuestionParser.decodeResponseStr(encodedRightAnswer);
+    }
+
+    /**
+     * Decodes the wrong answers, the first time they are asked for
+     *
+     * @return the wrong answers, in their original order
+     * @throws IllegalArgumentException when one of the answers was not validly encoded
+     */
+    @Override
+    String[] loadWrongAnswers() {
+        String[] decoded = new String[encodedWrongAnswers.length];
+        for(int i=0;i<decoded.length;i++) {
+            decoded[i] = TriviaQuestionParser.decodeResponseStr(encodedWrongAnswers[i]);
+        }
+        return decoded;
+    }
+
+    /**
+     * Gets the amount of choices to choose from, without decoding any of them
+     *
+     * @return the right answer plus the amount of wrong answers
+     */
+    @Override
+    public int getAnswerCount() {
+        return encodedWrongAnswers.length + 1;
+    }
+
+    /**
+     * Gets the question as it was parsed, without decoding it
+     * @return the url encoded question
+     */
+    String getEncodedQuestion() {
+        return encodedQuestion;
+    }
+
+    /**
+     * Gets the right answer as it was parsed, without decoding it
+     * @return the url encoded right answer
+     */
+    String getEncodedRightAnswer() {
+        return encodedRightAnswer;
+    }
+
+    /**
+     * Gets the wrong answers as they were parsed, without decoding them
+     * @return the url encoded wrong answers, in their original order
+     */
+    String[] getEncodedWrongAnswers() {
+        return encodedWrongAnswers;
+    }
+}
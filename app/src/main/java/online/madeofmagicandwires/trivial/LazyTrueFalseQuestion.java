@@ -0,0 +1,46 @@
+package online.madeofmagicandwires.trivial;
+
+/**
+ * True or false question that keeps the url encoded text it was parsed from,
+ * only decoding the question the first time it is asked for.
+ */
+class LazyTrueFalseQuestion extends TrueFalseQuestion {
+
+    private final String encodedQuestion;
+
+    /**
+     * Standard constructor
+     *
+     * @param encodedQuestion the url encoded question to be asked
+     * @param correctAnswer the answer to the question
+     * @param difficultyCode the code of the difficulty level of the question in the {@link QuestionDictionary}
+     * @param categoryIndex the index of the category the question belongs to in the {@link QuestionDictionary}
+     */
+    LazyTrueFalseQuestion(
+            String encodedQuestion,
+            boolean correctAnswer,
+            byte difficultyCode,
+            int categoryIndex) {
+        super(null, correctAnswer, difficultyCode, categoryIndex);
+        this.encodedQuestion = encodedQuestion;
+    }
+
+    /**
+     * Decodes the question, the first time it is asked for
+     *
+     * @return a human-readable string of the actual question being asked
+     * @throws IllegalArgumentException when the question was not validly encoded
+     */
+    @Override
+    String loadQuestion() {
+        return TriviaQuestionParser.decodeResponseStr(encodedQuestion);
+    }
+
+    /**
+     * Gets the question as it was parsed, without decoding it
+     * @return the url encoded question
+     */
+    String getEncodedQuestion() {
+        return encodedQuestion;
+    }
+}
@@ -0,0 +1,140 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * In-memory ranking of the scores of a single leaderboard.
+ *
+ * Counts of every score are kept in a Fenwick tree, so adding a score and finding the rank
+ * of a score both take O(log s) time for a highest score s, however many games were recorded.
+ * Only the best {@link #getCapacity()} games are kept themselves, in a min-heap
+ * with the lowest of them on top, so they can be shown without sorting every game.
+ */
+class Leaderboard {
+
+    /**
+     * Orders games from worst to best; equal scores rank the earliest game first,
+     * as it was the first to reach that score
+     */
+    private static final Comparator<HighscoreStore.Entry> WORST_FIRST = (a, b) -> {
+        if(a.score != b.score) {
+            return Integer.compare(a.score, b.score);
+        }
+        return Long.compare(b.timestamp, a.timestamp);
+    };
+
+    private final int capacity;
+    private final PriorityQueue<HighscoreStore.Entry> top;
+    /** 1-based Fenwick tree of the amount of games per score; its size is always a power of two **/
+    private int[] tree;
+    private int count;
+
+    /**
+     * Standard constructor
+     *
+     * @param capacity the amount of best games to keep
+     */
+    Leaderboard(int capacity) {
+        this.capacity = capacity;
+        this.top = new PriorityQueue<>(capacity + 1, WORST_FIRST);
+        this.tree = new int[65];
+    }
+
+    /**
+     * Gets the amount of best games that are kept
+     * @return the maximum size of {@link #getTopScores(int)}
+     */
+    int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Gets the amount of games on the leaderboard
+     * @return the amount of games added
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Adds a game to the leaderboard
+     *
+     * @param entry the finished game; its score is counted as 0 if it is negative
+     */
+    void add(@NonNull HighscoreStore.Entry entry) {
+        int index = Math.max(entry.score, 0) + 1;
+        ensureSize(index);
+        for(int i=index;i<tree.length;i+=i&-i) {
+            tree[i]++;
+        }
+        count++;
+
+        if(top.size() < capacity) {
+            top.add(entry);
+        } else if(WORST_FIRST.compare(entry, top.peek()) > 0) {
+            top.poll();
+            top.add(entry);
+        }
+    }
+
+    /**
+     * Gets the rank a score has on the leaderboard
+     *
+     * @param score the score to rank
+     * @return 1 plus the amount of games with a higher score
+     */
+    int rank(int score) {
+        return count - countAtMost(score) + 1;
+    }
+
+    /**
+     * Gets the best games on the leaderboard
+     *
+     * @param amount the maximum amount of games to get
+     * @return the best games, best first; at most {@link #getCapacity()}
+     */
+    List<HighscoreStore.Entry> getTopScores(int amount) {
+        HighscoreStore.Entry[] entries = top.toArray(new HighscoreStore.Entry[0]);
+        Arrays.sort(entries, Collections.reverseOrder(WORST_FIRST));
+        List<HighscoreStore.Entry> result = new ArrayList<>(Math.min(amount, entries.length));
+        for(int i=0;i<entries.length && i<amount;i++) {
+            result.add(entries[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Counts the games with a score up to and including a score
+     */
+    private int countAtMost(int score) {
+        if(score < 0) {
+            return 0;
+        }
+        int sum = 0;
+        for(int i=Math.min(score + 1, tree.length - 1);i>0;i-=i&-i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Grows the tree to hold a 1-based index by doubling it.
+     * In a tree of a power of two size, the new last node covers every score and
+     * all other new nodes cover only scores above the old maximum,
+     * so the counts carry over without rebuilding the tree.
+     */
+    private void ensureSize(int index) {
+        while (index >= tree.length) {
+            int size = tree.length - 1;
+            tree = Arrays.copyOf(tree, size * 2 + 1);
+            tree[size * 2] = count;
+        }
+    }
+}
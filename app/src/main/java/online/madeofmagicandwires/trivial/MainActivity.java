@@ -57,7 +57,7 @@ public class MainActivity extends AppCompatActivity {
 
     public void showScores(View v) {
         Intent intent = new Intent(this, HighscoresActivity.class);
-        intent.putExtra("HIGHSCORE_MODE", 1);
+        intent.putExtra(HighscoresActivity.EXTRA_HIGHSCORE_MODE, HighscoreStore.Mode.CLASSIC);
         startActivity(intent);
     }
 
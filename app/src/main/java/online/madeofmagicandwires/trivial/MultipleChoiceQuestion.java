@@ -1,6 +1,5 @@
 package online.madeofmagicandwires.trivial;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -10,8 +9,14 @@ import java.util.List;
  */
 public class MultipleChoiceQuestion extends TriviaQuestion {
 
-    private String rightAnswer;
-    private String[] wrongAnswers;
+    /** the answers; for questions whose text is loaded when first asked for, null until then **/
+    private volatile String rightAnswer;
+    private volatile String[] wrongAnswers;
+
+    /** shuffled order of the answers; index 0 is the right answer, the rest the wrong ones **/
+    private volatile byte[] answerOrder;
+    /** the answers in their shuffled order, built the first time they are needed **/
+    private volatile List<String> answers;
 
 
     /**
@@ -35,6 +40,27 @@ public class MultipleChoiceQuestion extends TriviaQuestion {
     }
 
 
+    /**
+     * Constructor for questions whose difficulty and category are already in the {@link QuestionDictionary}
+     *
+     * @param aQuestion the question to be asked
+     * @param theAnswer the answer to the question
+     * @param theWrongAnswers a series of wrong answers to add in the mix
+     * @param difficultyCode the code of the difficulty level of the question
+     * @param categoryIndex the index of the category the question belongs to
+     */
+    MultipleChoiceQuestion(
+            String aQuestion,
+            String theAnswer,
+            String[] theWrongAnswers,
+            byte difficultyCode,
+            int categoryIndex) {
+        super(aQuestion, difficultyCode, categoryIndex);
+        this.rightAnswer = theAnswer;
+        this.wrongAnswers = theWrongAnswers;
+    }
+
+
     /**
      * Less verbose constructor, automatically sets the category to "Unknown"
      *
@@ -70,27 +96,97 @@ public class MultipleChoiceQuestion extends TriviaQuestion {
     }
 
     /**
-     * Returns all the choices to choose from, shuffled in a random order
+     * Returns all the choices to choose from, shuffled in a random order.
+     * The order is the same every time it is called for the same question.
      *
-     * @return a list of human-readable possible answers to the question
+     * @return an unmodifiable list of human-readable possible answers to the question
      */
     @Override
     public List<String> getAnswers() {
-        List<String> choices = new ArrayList<>();
-        choices.add(rightAnswer);
-        choices.addAll(Arrays.asList(wrongAnswers));
-        Collections.shuffle(choices);
-        return choices;
+        List<String> built = answers;
+        if(built == null) {
+            String[] choices = new String[getAnswerCount()];
+            for(int i=0;i<choices.length;i++) {
+                choices[i] = getAnswer(i);
+            }
+            built = Collections.unmodifiableList(Arrays.asList(choices));
+            answers = built;
+        }
+        return built;
+    }
+
+    /**
+     * Gets the amount of choices to choose from
+     *
+     * @return the right answer plus the amount of wrong answers
+     */
+    @Override
+    public int getAnswerCount() {
+        return getWrongAnswers().length + 1;
+    }
+
+    /**
+     * Gets a single choice, without building the list of all of them
+     *
+     * @param index the position of the answer in {@link #getAnswers()}
+     * @return the human-readable answer at that position
+     */
+    @Override
+    public String getAnswer(int index) {
+        int answer = answerOrder()[index];
+        return (answer == 0) ? getRightAnswer() : getWrongAnswers()[answer - 1];
     }
 
     /**
-     * Shows the correct answer
+     * Shows the correct answer, loaded through {@link #loadRightAnswer()} the first time it is called
+     * if it was not given to the constructor
      *
      * @return String containing the right answer to the question
      */
     @Override
     public String getRightAnswer() {
-        return this.rightAnswer;
+        String loaded = rightAnswer;
+        if(loaded == null) {
+            loaded = loadRightAnswer();
+            rightAnswer = loaded;
+        }
+        return loaded;
+    }
+
+    /**
+     * Gets the wrong answers to this question, in their original order,
+     * loaded through {@link #loadWrongAnswers()} the first time it is called if they were not given to the constructor
+     *
+     * @return the wrong answers mixed in with the right one
+     */
+    public String[] getWrongAnswers() {
+        String[] loaded = wrongAnswers;
+        if(loaded == null) {
+            loaded = loadWrongAnswers();
+            wrongAnswers = loaded;
+        }
+        return loaded;
+    }
+
+    /**
+     * Loads the right answer of a question whose text is only loaded when first asked for
+     *
+     * @return the human-readable right answer; null for questions that were given their answers
+     * @see #loadQuestion()
+     */
+    String loadRightAnswer() {
+        return null;
+    }
+
+    /**
+     * Loads the wrong answers of a question whose text is only loaded when first asked for
+     *
+     * @return the human-readable wrong answers, in their original order;
+     *         null for questions that were given their answers
+     * @see #loadQuestion()
+     */
+    String[] loadWrongAnswers() {
+        return null;
     }
 
     /**
@@ -101,6 +197,31 @@ public class MultipleChoiceQuestion extends TriviaQuestion {
      */
     @Override
     public <T extends Comparable> boolean checkAnswer(T answer) {
-        return answer.equals(rightAnswer);
+        return answer.equals(getRightAnswer());
+    }
+
+    /**
+     * Checks if the answer at the given position of {@link #getAnswers()} is the right one
+     *
+     * @param index the position of the answer chosen by the user
+     * @return true if it was the right answer, false if it wasn't
+     */
+    @Override
+    public boolean checkAnswer(int index) {
+        return answerOrder()[index] == 0;
+    }
+
+    /**
+     * Gets the shuffled order of the answers, shuffling them the first time it is needed
+     *
+     * @return the answer indices in their shuffled order
+     */
+    private byte[] answerOrder() {
+        byte[] order = answerOrder;
+        if(order == null) {
+            order = shuffleAnswerOrder(getAnswerCount(), answerSeed(getQuestion()));
+            answerOrder = order;
+        }
+        return order;
     }
 }
\ No newline at end of file
@@ -0,0 +1,211 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Decoder for RFC 3986 percent-encoded UTF-8 text, as returned by the OpenTriviaDB
+ * when requesting with encode=url3986.
+ *
+ * Unlike {@link java.net.URLDecoder} it leaves '+' as is, returns strings without escapes
+ * without copying them, and rejects malformed escapes and invalid UTF-8
+ * with an {@link IllegalArgumentException} rather than replacing or hiding them.
+ */
+public final class PercentDecoder {
+
+    private PercentDecoder() {
+        // static helper class, not to be instantiated
+    }
+
+    /**
+     * Decodes a percent-encoded string
+     *
+     * @param encoded the text to decode
+     * @return the decoded text; the same instance if it was a String without any escapes
+     * @throws IllegalArgumentException when the text contains a malformed escape or invalid UTF-8
+     */
+    public static String decode(@NonNull CharSequence encoded) {
+        int length = encoded.length();
+        int first = indexOfEscape(encoded, 0, length);
+        if(first < 0) {
+            return encoded.toString();
+        }
+
+        // decoding never makes text longer, so the input length is always enough
+        char[] out = new char[length];
+        int written = 0;
+        for(int i=0;i<first;i++) {
+            out[written++] = encoded.charAt(i);
+        }
+
+        byte[] run = null;
+        int i = first;
+        while (i < length) {
+            char c = encoded.charAt(i);
+            if(c != '%') {
+                out[written++] = c;
+                i++;
+                continue;
+            }
+            // collect a run of consecutive escapes, so multi-byte characters are decoded as a whole
+            if(run == null) {
+                run = new byte[(length - i) / 3];
+            }
+            int runLength = 0;
+            while (i < length && encoded.charAt(i) == '%') {
+                if(i + 2 >= length) {
+                    throw new IllegalArgumentException("incomplete escape at index " + i);
+                }
+                run[runLength++] = (byte) ((hexValue(encoded.charAt(i + 1), i + 1) << 4)
+                        | hexValue(encoded.charAt(i + 2), i + 2));
+                i += 3;
+            }
+            written = decodeUtf8(run, 0, runLength, out, written);
+        }
+        return new String(out, 0, written);
+    }
+
+    /**
+     * Decodes a percent-encoded range of UTF-8 bytes
+     *
+     * @param bytes the array holding the encoded text
+     * @param offset the index of the first byte to decode
+     * @param length the amount of bytes to decode
+     * @return the decoded text
+     * @throws IllegalArgumentException when the range contains a malformed escape or invalid UTF-8
+     */
+    public static String decode(@NonNull byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        if(offset < 0 || length < 0 || end > bytes.length) {
+            throw new IndexOutOfBoundsException("invalid range " + offset + "+" + length);
+        }
+
+        // unescape into a copy first, then decode the resulting UTF-8 as a whole
+        byte[] unescaped = new byte[length];
+        int unescapedLength = 0;
+        for(int i=offset;i<end;i++) {
+            byte b = bytes[i];
+            if(b == '%') {
+                if(i + 2 >= end) {
+                    throw new IllegalArgumentException("incomplete escape at index " + i);
+                }
+                b = (byte) ((hexValue((char) bytes[i + 1], i + 1) << 4) | hexValue((char) bytes[i + 2], i + 2));
+                i += 2;
+            }
+            unescaped[unescapedLength++] = b;
+        }
+
+        char[] out = new char[unescapedLength];
+        int written = decodeUtf8(unescaped, 0, unescapedLength, out, 0);
+        return new String(out, 0, written);
+    }
+
+    /**
+     * Finds the first escape in a range of text
+     *
+     * @param text the text to search
+     * @param from the index to start searching at
+     * @param to the index to stop searching at, exclusive
+     * @return the index of the first '%', or -1 if there is none
+     */
+    private static int indexOfEscape(CharSequence text, int from, int to) {
+        if(text instanceof String) {
+            int index = ((String) text).indexOf('%', from);
+            return (index < to) ? index : -1;
+        }
+        for(int i=from;i<to;i++) {
+            if(text.charAt(i) == '%') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the value of a single hexadecimal digit
+     *
+     * @param c the digit
+     * @param index the index of the digit, to report where the input was malformed
+     * @return the value of the digit, from 0 to 15
+     * @throws IllegalArgumentException when the character is not a hexadecimal digit
+     */
+    private static int hexValue(char c, int index) {
+        if(c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if(c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        if(c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        throw new IllegalArgumentException("invalid hex digit '" + c + "' at index " + index);
+    }
+
+    /**
+     * Decodes UTF-8 bytes into characters, rejecting overlong encodings,
+     * surrogate code points and truncated sequences
+     *
+     * @param in the bytes to decode
+     * @param offset the index of the first byte to decode
+     * @param length the amount of bytes to decode
+     * @param out the array to write the characters to
+     * @param written the index in out to start writing at
+     * @return the index in out after the last character written
+     * @throws IllegalArgumentException when the bytes are not valid UTF-8
+     */
+    private static int decodeUtf8(byte[] in, int offset, int length, char[] out, int written) {
+        int end = offset + length;
+        int i = offset;
+        while (i < end) {
+            int b = in[i] & 0xFF;
+            if(b < 0x80) {
+                out[written++] = (char) b;
+                i++;
+                continue;
+            }
+
+            int extra;
+            int codePoint;
+            int min;
+            if(b >= 0xC2 && b <= 0xDF) {
+                extra = 1;
+                codePoint = b & 0x1F;
+                min = 0x80;
+            } else if(b >= 0xE0 && b <= 0xEF) {
+                extra = 2;
+                codePoint = b & 0x0F;
+                min = 0x800;
+            } else if(b >= 0xF0 && b <= 0xF4) {
+                extra = 3;
+                codePoint = b & 0x07;
+                min = 0x10000;
+            } else {
+                throw new IllegalArgumentException("invalid UTF-8 lead byte 0x" + Integer.toHexString(b));
+            }
+            if(i + extra >= end) {
+                throw new IllegalArgumentException("truncated UTF-8 sequence");
+            }
+            for(int j=1;j<=extra;j++) {
+                int next = in[i + j] & 0xFF;
+                if((next & 0xC0) != 0x80) {
+                    throw new IllegalArgumentException("invalid UTF-8 continuation byte 0x"
+                            + Integer.toHexString(next));
+                }
+                codePoint = (codePoint << 6) | (next & 0x3F);
+            }
+            if(codePoint < min || codePoint > Character.MAX_CODE_POINT
+                    || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+                throw new IllegalArgumentException("invalid UTF-8 code point 0x" + Integer.toHexString(codePoint));
+            }
+
+            if(codePoint >= 0x10000) {
+                out[written++] = Character.highSurrogate(codePoint);
+                out[written++] = Character.lowSurrogate(codePoint);
+            } else {
+                out[written++] = (char) codePoint;
+            }
+            i += extra + 1;
+        }
+        return written;
+    }
+}
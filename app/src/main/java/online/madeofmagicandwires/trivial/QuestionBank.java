@@ -0,0 +1,574 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Columnar in-memory store of trivia questions.
+ *
+ * Rather than keeping an object graph per question, all text is stored as UTF-8 in a single
+ * byte arena addressed by offset and length arrays, and the type, difficulty and category
+ * of every question are kept in primitive arrays, using the codes of the {@link QuestionDictionary}.
+ * {@link TriviaQuestion} objects are only created when a question is asked for,
+ * as views that decode their text from the arena the first time it is needed.
+ * Questions that were parsed but not decoded yet are stored still url encoded,
+ * so they are only ever decoded if they are actually asked.
+ *
+ * Like {@link TriviaGame} a bank is not thread-safe, and should only be used from a single thread.
+ */
+public final class QuestionBank {
+
+    /** value to pass to {@link #select(int, int, int[])} to match questions of any category or difficulty **/
+    public static final int ANY = Integer.MIN_VALUE;
+
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private static final byte TYPE_MULTIPLE = 0;
+    private static final byte TYPE_TRUE = 1;
+    private static final byte TYPE_FALSE = 2;
+
+    // a column per question property
+    private byte[] types;
+    private byte[] difficulties;
+    private short[] categories;
+    /** the amount of strings of every question: the question, right answer and wrong answers **/
+    private byte[] stringCounts;
+    /** the index of the first string of every question **/
+    private int[] firstStrings;
+    /** whether the strings of every question are still url encoded **/
+    private boolean[] encoded;
+    private int size;
+
+    // every string's location in the arena
+    private int[] stringOffsets;
+    private int[] stringLengths;
+    private int stringCount;
+
+    private byte[] arena;
+    private int arenaSize;
+
+    /**
+     * Standard constructor; creates an empty bank
+     */
+    public QuestionBank() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty bank with room for a set amount of questions before it needs to grow
+     *
+     * @param capacity the amount of questions expected to be added
+     */
+    public QuestionBank(int capacity) {
+        capacity = Math.max(capacity, 1);
+        types = new byte[capacity];
+        difficulties = new byte[capacity];
+        categories = new short[capacity];
+        stringCounts = new byte[capacity];
+        firstStrings = new int[capacity];
+        encoded = new boolean[capacity];
+        stringOffsets = new int[capacity * 4];
+        stringLengths = new int[capacity * 4];
+        // roughly what an average multiple choice question takes up
+        arena = new byte[capacity * 128];
+    }
+
+    /**
+     * Gets the amount of questions in the bank
+     *
+     * @return the amount of questions added so far
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a question to the bank, copying its text into the arena
+     *
+     * @param question the question to add
+     * @return the index of the added question
+     * @throws IllegalArgumentException when the question has more answers than can be stored
+     */
+    public int add(@NonNull TriviaQuestion question) {
+        if(question instanceof MultipleChoiceView) {
+            MultipleChoiceView view = (MultipleChoiceView) question;
+            return add(view.bank, view.index);
+        }
+        if(question instanceof TrueFalseView) {
+            TrueFalseView view = (TrueFalseView) question;
+            return add(view.bank, view.index);
+        }
+        // copy the text of questions that have not been decoded yet as it is
+        boolean isEncoded;
+        String text;
+        String rightAnswer = null;
+        String[] wrongAnswers = null;
+        byte type;
+        if(question instanceof LazyMultipleChoiceQuestion) {
+            LazyMultipleChoiceQuestion lazy = (LazyMultipleChoiceQuestion) question;
+            isEncoded = true;
+            type = TYPE_MULTIPLE;
+            text = lazy.getEncodedQuestion();
+            rightAnswer = lazy.getEncodedRightAnswer();
+            wrongAnswers = lazy.getEncodedWrongAnswers();
+        } else if(question instanceof MultipleChoiceQuestion) {
+            isEncoded = false;
+            type = TYPE_MULTIPLE;
+            text = question.getQuestion();
+            rightAnswer = question.getRightAnswer();
+            wrongAnswers = ((MultipleChoiceQuestion) question).getWrongAnswers();
+        } else {
+            isEncoded = question instanceof LazyTrueFalseQuestion;
+            type = Boolean.parseBoolean(question.getRightAnswer()) ? TYPE_TRUE : TYPE_FALSE;
+            text = isEncoded ? ((LazyTrueFalseQuestion) question).getEncodedQuestion() : question.getQuestion();
+        }
+        if(wrongAnswers != null && wrongAnswers.length + 2 > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("too many answers to store: " + wrongAnswers.length);
+        }
+        int categoryIndex = question.getCategoryIndex();
+        if(categoryIndex > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("too many categories to store: " + categoryIndex);
+        }
+
+        ensureQuestionCapacity(size + 1);
+        int index = size;
+        types[index] = type;
+        difficulties[index] = question.getDifficultyCode();
+        categories[index] = (short) categoryIndex;
+        encoded[index] = isEncoded;
+        firstStrings[index] = stringCount;
+
+        addString(text);
+        if(wrongAnswers != null) {
+            addString(rightAnswer);
+            for(String wrongAnswer : wrongAnswers) {
+                addString(wrongAnswer);
+            }
+        }
+        stringCounts[index] = (byte) (stringCount - firstStrings[index]);
+        size++;
+        return index;
+    }
+
+    /**
+     * Adds a question of another bank, copying its columns and text without decoding it
+     *
+     * @param source the bank holding the question
+     * @param index the index of the question in the source bank
+     * @return the index of the added question
+     * @throws IndexOutOfBoundsException when there is no question under that index in the source bank
+     */
+    public int add(@NonNull QuestionBank source, int index) {
+        source.checkIndex(index);
+        ensureQuestionCapacity(size + 1);
+        int added = size;
+        types[added] = source.types[index];
+        difficulties[added] = source.difficulties[index];
+        categories[added] = source.categories[index];
+        encoded[added] = source.encoded[index];
+        stringCounts[added] = source.stringCounts[index];
+        firstStrings[added] = stringCount;
+
+        int first = source.firstStrings[index];
+        for(int i=0;i<source.stringCounts[index];i++) {
+            addBytes(source.arena, source.stringOffsets[first + i], source.stringLengths[first + i]);
+        }
+        size++;
+        return added;
+    }
+
+    /**
+     * Adds a question from text that is already encoded, such as read from a {@link QuestionCodec} buffer,
+     * copying the text straight from the buffer into the arena
+     *
+     * @param multipleChoice whether it is a multiple choice question
+     * @param answer the right answer of a true or false question
+     * @param isEncoded whether the text is still url encoded, rather than UTF-8
+     * @param difficultyCode the code of the difficulty in the {@link QuestionDictionary}
+     * @param categoryIndex the index of the category in the {@link QuestionDictionary}
+     * @param text the buffer holding the text; its position is left as it is
+     * @param offsets the absolute offset of every string of the question in the buffer:
+     *                the question, then the right answer and wrong answers of multiple choice questions
+     * @param lengths the amount of bytes of every string
+     * @param strings the amount of strings of the question
+     * @return the index of the added question
+     * @throws IllegalArgumentException when the question has more answers or categories than can be stored
+     */
+    int add(boolean multipleChoice, boolean answer, boolean isEncoded, byte difficultyCode, int categoryIndex,
+            @NonNull ByteBuffer text, int[] offsets, int[] lengths, int strings) {
+        if(strings > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("too many answers to store: " + (strings - 2));
+        }
+        if(categoryIndex > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("too many categories to store: " + categoryIndex);
+        }
+        ensureQuestionCapacity(size + 1);
+        int index = size;
+        if(multipleChoice) {
+            types[index] = TYPE_MULTIPLE;
+        } else {
+            types[index] = answer ? TYPE_TRUE : TYPE_FALSE;
+        }
+        difficulties[index] = difficultyCode;
+        categories[index] = (short) categoryIndex;
+        encoded[index] = isEncoded;
+        firstStrings[index] = stringCount;
+        stringCounts[index] = (byte) strings;
+
+        ByteBuffer source = text.duplicate();
+        for(int i=0;i<strings;i++) {
+            ensureStringCapacity(lengths[i]);
+            source.position(offsets[i]);
+            source.get(arena, arenaSize, lengths[i]);
+            stringOffsets[stringCount] = arenaSize;
+            stringLengths[stringCount] = lengths[i];
+            stringCount++;
+            arenaSize += lengths[i];
+        }
+        size++;
+        return index;
+    }
+
+    /**
+     * Adds several questions to the bank
+     *
+     * @param questions the questions to add, in order
+     */
+    public void addAll(@NonNull Collection<? extends TriviaQuestion> questions) {
+        ensureQuestionCapacity(size + questions.size());
+        for(TriviaQuestion question : questions) {
+            add(question);
+        }
+    }
+
+    /**
+     * Gets a question in the bank
+     *
+     * @param index the index of the question
+     * @return a new view of the question, which decodes its text from the bank when it is first needed
+     * @throws IndexOutOfBoundsException when there is no question under that index
+     */
+    public TriviaQuestion get(int index) {
+        checkIndex(index);
+        switch (types[index]) {
+            case TYPE_MULTIPLE:
+                return new MultipleChoiceView(this, index);
+            default:
+                return new TrueFalseView(this, index);
+        }
+    }
+
+    /**
+     * Gets the index of a question returned by {@link #get(int)}
+     *
+     * @param question the question
+     * @return the index of the question, or -1 if it is not a view of this bank
+     */
+    int indexOf(@NonNull TriviaQuestion question) {
+        if(question instanceof MultipleChoiceView && ((MultipleChoiceView) question).bank == this) {
+            return ((MultipleChoiceView) question).index;
+        }
+        if(question instanceof TrueFalseView && ((TrueFalseView) question).bank == this) {
+            return ((TrueFalseView) question).index;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks if a question is a multiple choice question, without creating a view of it
+     *
+     * @param index the index of the question
+     * @return true if it is a multiple choice question, false if it is a true or false question
+     * @throws IndexOutOfBoundsException when there is no question under that index
+     */
+    public boolean isMultipleChoice(int index) {
+        checkIndex(index);
+        return types[index] == TYPE_MULTIPLE;
+    }
+
+    /**
+     * Gets the category of a question, without creating a view of it
+     *
+     * @param index the index of the question
+     * @return the index of the category in the {@link QuestionDictionary}
+     * @throws IndexOutOfBoundsException when there is no question under that index
+     */
+    public int getCategoryIndex(int index) {
+        checkIndex(index);
+        return categories[index];
+    }
+
+    /**
+     * Gets the difficulty of a question, without creating a view of it
+     *
+     * @param index the index of the question
+     * @return the code of the difficulty in the {@link QuestionDictionary}
+     * @throws IndexOutOfBoundsException when there is no question under that index
+     */
+    public byte getDifficultyCode(int index) {
+        checkIndex(index);
+        return difficulties[index];
+    }
+
+    /**
+     * Gets the right answer of a true or false question, without creating a view of it
+     *
+     * @param index the index of the question
+     * @return true if the statement is true; false for false statements and multiple choice questions
+     * @throws IndexOutOfBoundsException when there is no question under that index
+     */
+    boolean isAnswerTrue(int index) {
+        checkIndex(index);
+        return types[index] == TYPE_TRUE;
+    }
+
+    /**
+     * Checks if the text of a question is still url encoded
+     *
+     * @param index the index of the question
+     * @return true if it is url encoded, false if it is UTF-8
+     * @throws IndexOutOfBoundsException when there is no question under that index
+     */
+    boolean isEncoded(int index) {
+        checkIndex(index);
+        return encoded[index];
+    }
+
+    /**
+     * Gets the amount of strings of a question: the question, and for multiple choice questions
+     * the right answer followed by the wrong answers
+     *
+     * @param index the index of the question
+     * @return the amount of strings of the question
+     * @throws IndexOutOfBoundsException when there is no question under that index
+     */
+    int getStringCount(int index) {
+        checkIndex(index);
+        return stringCounts[index];
+    }
+
+    /**
+     * Gets the arena holding the text of every question, to copy text out of without decoding it
+     *
+     * @return the arena; only valid until more questions are added
+     * @see #getStringOffset(int, int)
+     */
+    byte[] getArena() {
+        return arena;
+    }
+
+    /**
+     * Gets where a string of a question starts in the arena
+     *
+     * @param question the index of the question
+     * @param string the index of the string within the question
+     * @return the offset of the string in {@link #getArena()}
+     */
+    int getStringOffset(int question, int string) {
+        return stringOffsets[firstStrings[question] + string];
+    }
+
+    /**
+     * Gets the length of a string of a question in the arena
+     *
+     * @param question the index of the question
+     * @param string the index of the string within the question
+     * @return the amount of bytes of the string in {@link #getArena()}
+     */
+    int getStringLength(int question, int string) {
+        return stringLengths[firstStrings[question] + string];
+    }
+
+    /**
+     * Finds the questions of a category and difficulty, scanning only their columns
+     *
+     * @param categoryIndex the index of the category in the {@link QuestionDictionary}, or {@link #ANY}
+     * @param difficultyCode the code of the difficulty in the {@link QuestionDictionary}, or {@link #ANY}
+     * @param out the array to write the indices of matching questions to, in order
+     * @return the amount of indices written; at most the length of out
+     */
+    public int select(int categoryIndex, int difficultyCode, @NonNull int[] out) {
+        int found = 0;
+        for(int i=0;i<size && found<out.length;i++) {
+            if((categoryIndex == ANY || categories[i] == categoryIndex)
+                    && (difficultyCode == ANY || difficulties[i] == difficultyCode)) {
+                out[found++] = i;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Decodes a string of a question from the arena
+     *
+     * @param question the index of the question
+     * @param string the index of the string within the question
+     * @return the decoded string
+     * @throws IllegalArgumentException when the question was stored url encoded and was not validly encoded
+     */
+    private String getString(int question, int string) {
+        int index = firstStrings[question] + string;
+        if(encoded[question]) {
+            return PercentDecoder.decode(arena, stringOffsets[index], stringLengths[index]);
+        }
+        return new String(arena, stringOffsets[index], stringLengths[index], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends a string to the arena, encoding it as UTF-8 in place
+     *
+     * @param str the string to append
+     */
+    private void addString(String str) {
+        int length = str.length();
+        // every char takes up at most 3 bytes; surrogate pairs take up 4 for 2 chars
+        ensureStringCapacity(length * 3);
+
+        int start = arenaSize;
+        int pos = arenaSize;
+        for(int i=0;i<length;i++) {
+            char c = str.charAt(i);
+            if(c < 0x80) {
+                arena[pos++] = (byte) c;
+            } else if(c < 0x800) {
+                arena[pos++] = (byte) (0xC0 | (c >> 6));
+                arena[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if(Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(str.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, str.charAt(++i));
+                arena[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                arena[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                arena[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                arena[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if(Character.isSurrogate(c)) {
+                // unpaired surrogates can't be encoded, replace them like String.getBytes does
+                arena[pos++] = '?';
+            } else {
+                arena[pos++] = (byte) (0xE0 | (c >> 12));
+                arena[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                arena[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        stringOffsets[stringCount] = start;
+        stringLengths[stringCount] = pos - start;
+        stringCount++;
+        arenaSize = pos;
+    }
+
+    /**
+     * Appends already encoded text to the arena
+     *
+     * @param bytes the array holding the text
+     * @param offset the index of the first byte of the text
+     * @param length the amount of bytes of the text
+     */
+    private void addBytes(byte[] bytes, int offset, int length) {
+        ensureStringCapacity(length);
+        System.arraycopy(bytes, offset, arena, arenaSize, length);
+        stringOffsets[stringCount] = arenaSize;
+        stringLengths[stringCount] = length;
+        stringCount++;
+        arenaSize += length;
+    }
+
+    private void ensureStringCapacity(int maxLength) {
+        if(stringCount == stringOffsets.length) {
+            int capacity = grow(stringOffsets.length, stringCount + 1);
+            stringOffsets = Arrays.copyOf(stringOffsets, capacity);
+            stringLengths = Arrays.copyOf(stringLengths, capacity);
+        }
+        if(arenaSize + maxLength > arena.length) {
+            arena = Arrays.copyOf(arena, grow(arena.length, arenaSize + maxLength));
+        }
+    }
+
+    private void ensureQuestionCapacity(int required) {
+        if(required > types.length) {
+            int capacity = grow(types.length, required);
+            types = Arrays.copyOf(types, capacity);
+            difficulties = Arrays.copyOf(difficulties, capacity);
+            categories = Arrays.copyOf(categories, capacity);
+            stringCounts = Arrays.copyOf(stringCounts, capacity);
+            firstStrings = Arrays.copyOf(firstStrings, capacity);
+            encoded = Arrays.copyOf(encoded, capacity);
+        }
+    }
+
+    private static int grow(int current, int required) {
+        if(required < 0) {
+            throw new OutOfMemoryError("question bank too large");
+        }
+        long doubled = Math.min((long) current * 2, Integer.MAX_VALUE - 8);
+        return (int) Math.max(required, doubled);
+    }
+
+    private void checkIndex(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    /**
+     * Multiple choice question decoding its text from a bank when first needed
+     */
+    private static final class MultipleChoiceView extends MultipleChoiceQuestion {
+
+        private final QuestionBank bank;
+        private final int index;
+
+        MultipleChoiceView(QuestionBank bank, int index) {
+            super(null, null, null, bank.difficulties[index], bank.categories[index]);
+            this.bank = bank;
+            this.index = index;
+        }
+
+        @Override
+        String loadQuestion() {
+            return bank.getString(index, 0);
+        }
+
+        @Override
+        String loadRightAnswer() {
+            return bank.getString(index, 1);
+        }
+
+        @Override
+        String[] loadWrongAnswers() {
+            String[] decoded = new String[getAnswerCount() - 1];
+            for(int i=0;i<decoded.length;i++) {
+                decoded[i] = bank.getString(index, i + 2);
+            }
+            return decoded;
+        }
+
+        @Override
+        public int getAnswerCount() {
+            // the question itself is not one of the answers
+            return bank.stringCounts[index] - 1;
+        }
+    }
+
+    /**
+     * True or false question decoding its text from a bank when first needed
+     */
+    private static final class TrueFalseView extends TrueFalseQuestion {
+
+        private final QuestionBank bank;
+        private final int index;
+
+        TrueFalseView(QuestionBank bank, int index) {
+            super(null, bank.types[index] == TYPE_TRUE, bank.difficulties[index], bank.categories[index]);
+            this.bank = bank;
+            this.index = index;
+        }
+
+        @Override
+        String loadQuestion() {
+            return bank.getString(index, 0);
+        }
+    }
+}
@@ -0,0 +1,591 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Compact, versioned binary format for trivia questions and whole games,
+ * shared by saved games, stored questions and questions passed along in a Bundle.
+ *
+ * An encoding starts with a small header, followed by a table of every distinct string,
+ * so categories, difficulties and answers such as "True" that most questions share are stored once.
+ * Questions then only hold varint references into the table:
+ * <pre>
+ * header     'T' 'Q' version kind
+ * strings    varint count, then per string: varint length, bytes
+ * game       (kind GAME only) varint amount, zigzag category id, varint index, zigzag score,
+ *            flags, difficulty ref, question type ref
+ * questions  varint count, then per question: flags, difficulty ref, category ref,
+ *            varint string count (multiple choice only), string refs
+ * </pre>
+ * References are 0 for null and otherwise one more than the index in the table.
+ *
+ * Text is written exactly as a {@link QuestionBank} holds it, either UTF-8 or still url encoded,
+ * and read back by copying the bytes straight from the buffer into a bank,
+ * so neither encoding nor decoding builds a String per question or decodes any text.
+ * Questions are only decoded once they are asked, as with questions fresh from the OpenTriviaDB.
+ */
+public final class QuestionCodec {
+
+    /** the version written; encodings of other versions are rejected **/
+    static final int VERSION = 1;
+
+    private static final byte MAGIC_0 = 'T';
+    private static final byte MAGIC_1 = 'Q';
+    private static final byte KIND_QUESTIONS = 1;
+    private static final byte KIND_GAME = 2;
+
+    private static final int FLAG_TRUE_FALSE = 1;
+    private static final int FLAG_ANSWER_TRUE = 1 << 1;
+    private static final int FLAG_ENCODED = 1 << 2;
+    private static final int FLAG_GAME_OVER = 1;
+
+    /** marks a string of which the dictionary index has not been looked up yet **/
+    private static final int UNRESOLVED = Integer.MIN_VALUE;
+
+    private QuestionCodec() {
+        // static helper class, not to be instantiated
+    }
+
+    /**
+     * Encodes a list of questions
+     *
+     * @param questions the questions to encode
+     * @return the encoded questions
+     */
+    @NonNull
+    public static byte[] encodeQuestions(@NonNull Collection<? extends TriviaQuestion> questions) {
+        QuestionBank bank = new QuestionBank(questions.size());
+        bank.addAll(questions);
+        return encodeQuestions(bank);
+    }
+
+    /**
+     * Encodes every question of a bank, copying its text without decoding it
+     *
+     * @param bank the bank to encode
+     * @return the encoded questions
+     */
+    @NonNull
+    public static byte[] encodeQuestions(@NonNull QuestionBank bank) {
+        return encode(KIND_QUESTIONS, null, bank);
+    }
+
+    /**
+     * Encodes a game: its settings, progress and every question loaded so far
+     *
+     * @param game the game to encode
+     * @return the encoded game
+     */
+    @NonNull
+    public static byte[] encodeGame(@NonNull TriviaGame game) {
+        return encode(KIND_GAME, game, game.getQuestionBank());
+    }
+
+    /**
+     * Decodes questions encoded by {@link #encodeQuestions(QuestionBank)}
+     *
+     * @param buffer the buffer holding the encoding from its position on, such as a wrapped array
+     *               or a mapped file; its position is moved past the encoding
+     * @return a bank holding the decoded questions
+     * @throws IOException when the encoding is truncated, malformed, or of another version
+     */
+    @NonNull
+    public static QuestionBank decodeQuestions(@NonNull ByteBuffer buffer) throws IOException {
+        try {
+            Reader reader = new Reader(buffer, KIND_QUESTIONS);
+            return reader.readQuestions();
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated question encoding", e);
+        }
+    }
+
+    /**
+     * Decodes a game encoded by {@link #encodeGame(TriviaGame)}
+     *
+     * @param buffer the buffer holding the encoding from its position on;
+     *               its position is moved past the encoding
+     * @return the game, at the question it was at
+     * @throws IOException when the encoding is truncated, malformed, or of another version
+     */
+    @NonNull
+    public static TriviaGame decodeGame(@NonNull ByteBuffer buffer) throws IOException {
+        try {
+            Reader reader = new Reader(buffer, KIND_GAME);
+            int amount = reader.readVarint();
+            int category = reader.readZigZag();
+            int index = reader.readVarint();
+            int score = reader.readZigZag();
+            int flags = buffer.get();
+            String difficulty = reader.readTableString();
+            String type = reader.readTableString();
+            QuestionBank bank = reader.readQuestions();
+
+            TriviaGame game = new TriviaGame(amount, difficulty, type, category);
+            if(bank.size() > 0) {
+                game.setQuestionBank(bank);
+            }
+            game.setScore(score);
+            game.restoreProgress(index, (flags & FLAG_GAME_OVER) != 0);
+            return game;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("truncated game encoding", e);
+        }
+    }
+
+    /**
+     * Writes an encoding: the header, the string table, the game if any, then the questions
+     */
+    private static byte[] encode(byte kind, @Nullable TriviaGame game, @Nullable QuestionBank bank) {
+        QuestionDictionary dictionary = QuestionDictionary.getInstance();
+        int size = (bank != null) ? bank.size() : 0;
+        StringTable table = new StringTable(size * 4 + 2);
+
+        // look up every string once, so the questions can refer to them by index
+        int gameDifficulty = 0;
+        int gameType = 0;
+        if(game != null) {
+            gameDifficulty = table.add(game.getGameDifficulty());
+            gameType = table.add(game.getGameQuestionType());
+        }
+        int[] difficulties = new int[size];
+        int[] categories = new int[size];
+        // most questions share a few categories and difficulties, so look each of them up once
+        int[] difficultyRefs = new int[Byte.MAX_VALUE + 1];
+        int[] categoryRefs = new int[64];
+        int totalStrings = 0;
+        for(int i=0;i<size;i++) {
+            totalStrings += bank.getStringCount(i);
+        }
+        int[] strings = new int[totalStrings];
+        int next = 0;
+        for(int i=0;i<size;i++) {
+            byte difficulty = bank.getDifficultyCode(i);
+            if(difficulty >= 0) {
+                if(difficultyRefs[difficulty] == 0) {
+                    difficultyRefs[difficulty] = table.add(dictionary.getDifficulty(difficulty));
+                }
+                difficulties[i] = difficultyRefs[difficulty];
+            }
+            int category = bank.getCategoryIndex(i);
+            if(category >= 0) {
+                if(category >= categoryRefs.length) {
+                    categoryRefs = Arrays.copyOf(categoryRefs, Math.max(categoryRefs.length * 2, category + 1));
+                }
+                if(categoryRefs[category] == 0) {
+                    categoryRefs[category] = table.add(dictionary.getCategory(category));
+                }
+                categories[i] = categoryRefs[category];
+            }
+            byte[] arena = bank.getArena();
+            for(int j=0;j<bank.getStringCount(i);j++) {
+                strings[next++] = table.add(arena, bank.getStringOffset(i, j), bank.getStringLength(i, j));
+            }
+        }
+
+        Writer out = new Writer(table.getSize() + size * 8 + 32);
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeByte(VERSION);
+        out.writeByte(kind);
+        table.writeTo(out);
+        if(game != null) {
+            out.writeVarint(game.getQuestionAmount());
+            out.writeZigZag(game.getGameCategoryId());
+            out.writeVarint(game.getQuestionIndex());
+            out.writeZigZag(game.getScore());
+            out.writeByte(game.isGameOver() ? FLAG_GAME_OVER : 0);
+            out.writeVarint(gameDifficulty);
+            out.writeVarint(gameType);
+        }
+
+        out.writeVarint(size);
+        next = 0;
+        for(int i=0;i<size;i++) {
+            int flags = 0;
+            if(!bank.isMultipleChoice(i)) {
+                flags |= FLAG_TRUE_FALSE;
+                if(bank.isAnswerTrue(i)) {
+                    flags |= FLAG_ANSWER_TRUE;
+                }
+            }
+            if(bank.isEncoded(i)) {
+                flags |= FLAG_ENCODED;
+            }
+            out.writeByte(flags);
+            out.writeVarint(difficulties[i]);
+            out.writeVarint(categories[i]);
+            int count = bank.getStringCount(i);
+            if(bank.isMultipleChoice(i)) {
+                out.writeVarint(count);
+            }
+            for(int j=0;j<count;j++) {
+                out.writeVarint(strings[next++]);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Table of the distinct strings of an encoding, in order of first use.
+     * Strings are copied in as bytes and compared by their bytes,
+     * in an open addressing hash table of their indices
+     */
+    private static final class StringTable {
+        private byte[] data;
+        private int dataSize;
+        private int[] offsets;
+        private int[] lengths;
+        private int[] hashes;
+        private int count;
+        /** the index of every string plus one, by hash; 0 for empty slots **/
+        private int[] slots;
+
+        StringTable(int expected) {
+            this.data = new byte[Math.max(expected * 16, 64)];
+            this.offsets = new int[Math.max(expected, 4)];
+            this.lengths = new int[offsets.length];
+            this.hashes = new int[offsets.length];
+            this.slots = new int[Integer.highestOneBit(Math.max(expected, 4) * 2) * 2];
+        }
+
+        /**
+         * Gets the amount of bytes the table takes up in an encoding, roughly
+         */
+        int getSize() {
+            return dataSize + count * 2;
+        }
+
+        /**
+         * Adds a string to the table, if it was not in it yet
+         *
+         * @return the reference to the string
+         */
+        int add(@Nullable String str) {
+            if(str == null) {
+                return 0;
+            }
+            byte[] utf8 = str.getBytes(StandardCharsets.UTF_8);
+            return add(utf8, 0, utf8.length);
+        }
+
+        /**
+         * Adds a string of bytes to the table, if it was not in it yet
+         *
+         * @return the reference to the string
+         */
+        int add(byte[] source, int offset, int length) {
+            int hash = 1;
+            for(int i=offset;i<offset+length;i++) {
+                hash = 31 * hash + source[i];
+            }
+            int mask = slots.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (slots[slot] != 0) {
+                int index = slots[slot] - 1;
+                if(hashes[index] == hash && equals(index, source, offset, length)) {
+                    return index + 1;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            if(count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+                lengths = Arrays.copyOf(lengths, count * 2);
+                hashes = Arrays.copyOf(hashes, count * 2);
+            }
+            if(dataSize + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, dataSize + length));
+            }
+            System.arraycopy(source, offset, data, dataSize, length);
+            offsets[count] = dataSize;
+            lengths[count] = length;
+            hashes[count] = hash;
+            dataSize += length;
+            slots[slot] = ++count;
+            // keep the table at most half full
+            if(count * 2 > slots.length) {
+                rehash();
+            }
+            return count;
+        }
+
+        private boolean equals(int index, byte[] source, int offset, int length) {
+            if(lengths[index] != length) {
+                return false;
+            }
+            int start = offsets[index];
+            for(int i=0;i<length;i++) {
+                if(data[start + i] != source[offset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash() {
+            slots = new int[slots.length * 2];
+            int mask = slots.length - 1;
+            for(int i=0;i<count;i++) {
+                int slot = (hashes[i] ^ (hashes[i] >>> 16)) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = i + 1;
+            }
+        }
+
+        void writeTo(Writer out) {
+            out.writeVarint(count);
+            for(int i=0;i<count;i++) {
+                out.writeVarint(lengths[i]);
+                out.writeBytes(data, offsets[i], lengths[i]);
+            }
+        }
+    }
+
+    /**
+     * Growable byte array written to front to back
+     */
+    private static final class Writer {
+        private byte[] bytes;
+        private int size;
+
+        Writer(int capacity) {
+            this.bytes = new byte[Math.max(capacity, 16)];
+        }
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) b;
+        }
+
+        void writeBytes(byte[] source, int offset, int length) {
+            ensureCapacity(length);
+            System.arraycopy(source, offset, bytes, size, length);
+            size += length;
+        }
+
+        /**
+         * Writes a non-negative int in 7 bit groups, least significant first,
+         * with the high bit set on every byte but the last
+         */
+        void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Writes an int that may be negative, mapping small negative values to small varints
+         */
+        void writeZigZag(int value) {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+
+        private void ensureCapacity(int extra) {
+            if(size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Reads an encoding from a buffer, leaving the text in the buffer until it is copied into a bank
+     */
+    private static final class Reader {
+        private final ByteBuffer buffer;
+        private final QuestionDictionary dictionary;
+        private final int[] offsets;
+        private final int[] lengths;
+        // the dictionary index or code of every string used as a category or difficulty,
+        // looked up once per encoding; UNRESOLVED until then
+        private final int[] categoryIndices;
+        private final int[] difficultyCodes;
+
+        /**
+         * Reads the header and string table
+         *
+         * @throws IOException when the header does not match
+         */
+        Reader(ByteBuffer buffer, byte kind) throws IOException {
+            this.buffer = buffer;
+            this.dictionary = QuestionDictionary.getInstance();
+            if(buffer.get() != MAGIC_0 || buffer.get() != MAGIC_1) {
+                throw new IOException("not a question encoding");
+            }
+            int version = buffer.get() & 0xFF;
+            if(version != VERSION) {
+                throw new IOException("unknown question encoding version " + version);
+            }
+            int actualKind = buffer.get();
+            if(actualKind != kind) {
+                throw new IOException("expected encoding of kind " + kind + " but got " + actualKind);
+            }
+
+            int count = readCount();
+            offsets = new int[count];
+            lengths = new int[count];
+            for(int i=0;i<count;i++) {
+                int length = readCount();
+                if(length > buffer.remaining()) {
+                    throw new BufferUnderflowException();
+                }
+                offsets[i] = buffer.position();
+                lengths[i] = length;
+                // skip over the text, it's only copied out once a question refers to it
+                buffer.position(buffer.position() + length);
+            }
+            categoryIndices = new int[count];
+            difficultyCodes = new int[count];
+            Arrays.fill(categoryIndices, UNRESOLVED);
+            Arrays.fill(difficultyCodes, UNRESOLVED);
+        }
+
+        QuestionBank readQuestions() throws IOException {
+            int size = readCount();
+            QuestionBank bank = new QuestionBank(size);
+            int[] questionOffsets = new int[4];
+            int[] questionLengths = new int[4];
+            for(int i=0;i<size;i++) {
+                int flags = buffer.get();
+                boolean trueFalse = (flags & FLAG_TRUE_FALSE) != 0;
+                byte difficulty = readDifficulty();
+                int category = readCategory();
+                int strings = trueFalse ? 1 : readCount();
+                if(strings < 1 || (!trueFalse && strings < 2)) {
+                    throw new IOException("question " + i + " has " + strings + " strings");
+                }
+                if(strings > questionOffsets.length) {
+                    questionOffsets = new int[strings];
+                    questionLengths = new int[strings];
+                }
+                for(int j=0;j<strings;j++) {
+                    int index = checkRef(readVarint());
+                    questionOffsets[j] = offsets[index];
+                    questionLengths[j] = lengths[index];
+                }
+                try {
+                    bank.add(!trueFalse, (flags & FLAG_ANSWER_TRUE) != 0, (flags & FLAG_ENCODED) != 0,
+                            difficulty, category, buffer, questionOffsets, questionLengths, strings);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+            return bank;
+        }
+
+        /**
+         * Reads a reference to a string in the table and decodes the string
+         *
+         * @return the string, or null for a null reference
+         */
+        @Nullable
+        String readTableString() throws IOException {
+            int ref = readVarint();
+            if(ref == 0) {
+                return null;
+            }
+            return getString(checkRef(ref));
+        }
+
+        /**
+         * Reads a reference to a category, looking the category up in the dictionary once per encoding
+         *
+         * @return the index of the category in the dictionary
+         */
+        int readCategory() throws IOException {
+            int ref = readVarint();
+            if(ref == 0) {
+                return QuestionDictionary.NONE;
+            }
+            int index = checkRef(ref);
+            if(categoryIndices[index] == UNRESOLVED) {
+                categoryIndices[index] = dictionary.indexOfCategory(getString(index));
+            }
+            return categoryIndices[index];
+        }
+
+        /**
+         * Reads a reference to a difficulty, looking the difficulty up in the dictionary once per encoding
+         *
+         * @return the code of the difficulty in the dictionary
+         */
+        byte readDifficulty() throws IOException {
+            int ref = readVarint();
+            if(ref == 0) {
+                return QuestionDictionary.NONE;
+            }
+            int index = checkRef(ref);
+            if(difficultyCodes[index] == UNRESOLVED) {
+                try {
+                    difficultyCodes[index] = dictionary.codeOfDifficulty(getString(index));
+                } catch (IllegalStateException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+            return (byte) difficultyCodes[index];
+        }
+
+        private int checkRef(int ref) throws IOException {
+            if(ref < 1 || ref > offsets.length) {
+                throw new IOException("invalid string reference " + ref);
+            }
+            return ref - 1;
+        }
+
+        private String getString(int index) {
+            if(buffer.hasArray()) {
+                return new String(buffer.array(), buffer.arrayOffset() + offsets[index],
+                        lengths[index], StandardCharsets.UTF_8);
+            }
+            byte[] bytes = new byte[lengths[index]];
+            ByteBuffer source = buffer.duplicate();
+            source.position(offsets[index]);
+            source.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads a count of items taking up at least a byte each, which must fit in what is left of the buffer
+         */
+        int readCount() throws IOException {
+            int count = readVarint();
+            if(count < 0 || count > buffer.remaining()) {
+                throw new IOException("invalid count " + count);
+            }
+            return count;
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for(int shift=0;shift<32;shift+=7) {
+                byte b = buffer.get();
+                value |= (b & 0x7F) << shift;
+                if(b >= 0) {
+                    return value;
+                }
+            }
+            throw new IOException("varint too long");
+        }
+
+        int readZigZag() throws IOException {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
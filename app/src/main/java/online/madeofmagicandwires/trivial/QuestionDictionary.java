@@ -0,0 +1,177 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide dictionary of the category names and difficulties questions belong to.
+ *
+ * There are only a few dozen categories and a handful of difficulties, so instead of every
+ * {@link TriviaQuestion} holding its own copies of them, questions store the compact index
+ * the dictionary gave out for their category and difficulty, and resolve it through here.
+ * Indices are handed out in order of first use and never change while the process lives,
+ * so questions can be filtered by comparing them directly.
+ */
+public final class QuestionDictionary {
+
+    /** index representing a missing category or difficulty **/
+    public static final int NONE = -1;
+    /** the id of a category that is not known to the OpenTriviaDB **/
+    public static final int UNKNOWN_ID = -1;
+
+    private static QuestionDictionary instance;
+
+    private final List<String> categories;
+    private final List<Integer> categoryIds;
+    private final Map<String, Integer> categoryIndices;
+    private final Map<String, Integer> encodedCategoryIndices;
+    private final List<String> difficulties;
+    private final Map<String, Byte> difficultyCodes;
+
+    /**
+     * Standard constructor; creates an empty dictionary
+     */
+    QuestionDictionary() {
+        categories = new ArrayList<>();
+        categoryIds = new ArrayList<>();
+        categoryIndices = new HashMap<>();
+        encodedCategoryIndices = new HashMap<>();
+        difficulties = new ArrayList<>();
+        difficultyCodes = new HashMap<>();
+    }
+
+    /**
+     * Used to retrieve the QuestionDictionary singleton
+     *
+     * @return the process-wide dictionary
+     */
+    public static synchronized QuestionDictionary getInstance() {
+        if(instance == null) {
+            instance = new QuestionDictionary();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the index of a category, adding it to the dictionary if it was not in it yet
+     *
+     * @param name the human-readable name of the category
+     * @return the index of the category, or {@link #NONE} if name was null
+     */
+    public synchronized int indexOfCategory(@Nullable String name) {
+        if(name == null) {
+            return NONE;
+        }
+        Integer index = categoryIndices.get(name);
+        if(index == null) {
+            index = categories.size();
+            categories.add(name);
+            categoryIds.add(UNKNOWN_ID);
+            categoryIndices.put(name, index);
+        }
+        return index;
+    }
+
+    /**
+     * Gets the index of a url encoded category, decoding it only the first time it is seen
+     *
+     * @param encodedName the url encoded name of the category, as included in question responses
+     * @return the index of the category, or {@link #NONE} if encodedName was null
+     * @throws IllegalArgumentException when the name was not validly encoded
+     */
+    public synchronized int indexOfEncodedCategory(@Nullable String encodedName) {
+        if(encodedName == null) {
+            return NONE;
+        }
+        Integer index = encodedCategoryIndices.get(encodedName);
+        if(index == null) {
+            index = indexOfCategory(TriviaQuestionParser.decodeResponseStr(encodedName));
+            encodedCategoryIndices.put(encodedName, index);
+        }
+        return index;
+    }
+
+    /**
+     * Records the OpenTriviaDB id of a category, adding the category if it was not in the dictionary yet
+     *
+     * @param id the id the OpenTriviaDB uses for the category
+     * @param name the human-readable name of the category
+     * @return the index of the category
+     */
+    public synchronized int registerCategory(int id, @NonNull String name) {
+        int index = indexOfCategory(name);
+        categoryIds.set(index, id);
+        return index;
+    }
+
+    /**
+     * Gets the name of a category
+     *
+     * @param index the index of the category
+     * @return the human-readable name of the category, or null if index was {@link #NONE}
+     * @throws IndexOutOfBoundsException when no category has the given index
+     */
+    public synchronized String getCategory(int index) {
+        return (index == NONE) ? null : categories.get(index);
+    }
+
+    /**
+     * Gets the OpenTriviaDB id of a category
+     *
+     * @param index the index of the category
+     * @return the id of the category, or {@link #UNKNOWN_ID} if it was never registered
+     * @throws IndexOutOfBoundsException when no category has the given index
+     */
+    public synchronized int getCategoryId(int index) {
+        return (index == NONE) ? UNKNOWN_ID : categoryIds.get(index);
+    }
+
+    /**
+     * Gets the index of the category with an OpenTriviaDB id
+     *
+     * @param id the id the OpenTriviaDB uses for the category
+     * @return the index of the category, or {@link #NONE} if no category with that id was registered
+     */
+    public synchronized int indexOfCategoryId(int id) {
+        return (id == UNKNOWN_ID) ? NONE : categoryIds.indexOf(id);
+    }
+
+    /**
+     * Gets the code of a difficulty, adding it to the dictionary if it was not in it yet
+     *
+     * @param difficulty the difficulty, as included in the question
+     * @return the code of the difficulty, or {@link #NONE} if difficulty was null
+     * @throws IllegalStateException when more difficulties were added than fit in a byte
+     */
+    public synchronized byte codeOfDifficulty(@Nullable @TriviaGame.Difficulty String difficulty) {
+        if(difficulty == null) {
+            return NONE;
+        }
+        Byte code = difficultyCodes.get(difficulty);
+        if(code == null) {
+            if(difficulties.size() > Byte.MAX_VALUE) {
+                throw new IllegalStateException("too many difficulties: " + difficulty);
+            }
+            code = (byte) difficulties.size();
+            difficulties.add(difficulty);
+            difficultyCodes.put(difficulty, code);
+        }
+        return code;
+    }
+
+    /**
+     * Gets the difficulty belonging to a code
+     *
+     * @param code the code of the difficulty
+     * @return the difficulty, or null if code was {@link #NONE}
+     * @throws IndexOutOfBoundsException when no difficulty has the given code
+     */
+    public synchronized @TriviaGame.Difficulty String getDifficulty(byte code) {
+        return (code == NONE) ? null : difficulties.get(code);
+    }
+}
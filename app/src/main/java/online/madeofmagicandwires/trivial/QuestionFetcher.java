@@ -0,0 +1,189 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fetches the questions of a {@link TriviaGame} in pages of up to 50 questions,
+ * the maximum the OpenTriviaDB returns per request.
+ *
+ * Pages are requested with the session token of the {@link TriviaRequestHelper},
+ * with at most {@link #MAX_IN_FLIGHT} requests running at the same time,
+ * and are added to the game as soon as they arrive, so a game can start after the first page.
+ * Questions played in earlier games are left out, see {@link QuestionHistory}.
+ * Games with a fixed amount of questions are fetched up to that amount;
+ * endless games are kept {@link #LOOKAHEAD} questions ahead of the player.
+ *
+ * Must only be used from the main thread.
+ */
+public class QuestionFetcher implements TriviaRequestHelper.QuestionResponseListener {
+
+    /** the maximum amount of questions the API returns per request **/
+    public static final int PAGE_SIZE = 50;
+    /** the maximum amount of page requests running at the same time **/
+    public static final int MAX_IN_FLIGHT = 2;
+    /** the amount of unasked questions to keep loaded during endless games **/
+    public static final int LOOKAHEAD = 50;
+    /** the amount of pages in a row without new questions after which fetching is given up **/
+    public static final int MAX_EMPTY_PAGES = 3;
+
+    private final TriviaRequestHelper helper;
+    private final TriviaGame game;
+    private final QuestionHistory history;
+    private final CompletableFuture<Void> firstPage;
+
+    private int inFlight;
+    private int requestedAmount;
+    private int emptyPages;
+    private boolean stopped;
+
+    /**
+     * Standard constructor
+     *
+     * @param helper the request helper to fetch pages through, using its session token
+     * @param game the game to add the fetched questions to
+     * @param history the questions put in earlier games, which are left out of this one
+     */
+    public QuestionFetcher(@NonNull TriviaRequestHelper helper, @NonNull TriviaGame game,
+                           @NonNull QuestionHistory history) {
+        this.helper = helper;
+        this.game = game;
+        this.history = history;
+        this.firstPage = new CompletableFuture<>();
+        this.inFlight = 0;
+        this.requestedAmount = 0;
+        this.emptyPages = 0;
+        this.stopped = false;
+    }
+
+    /**
+     * Starts fetching questions for the game
+     *
+     * @return a future completed once the first page of questions has been added to the game,
+     *         or with a {@link TriviaRequestHelper.RequestFailedException} if it could not be fetched
+     */
+    public CompletableFuture<Void> start() {
+        fetchAhead();
+        return firstPage;
+    }
+
+    /**
+     * Requests new pages until enough questions are loaded or requested;
+     * should be called whenever the player moves on to the next question during endless games
+     */
+    public void fetchAhead() {
+        while (!stopped && inFlight < MAX_IN_FLIGHT) {
+            int amount = Math.min(PAGE_SIZE, getTarget() - game.getLoadedQuestionCount() - requestedAmount);
+            if(amount <= 0) {
+                return;
+            }
+            inFlight++;
+            requestedAmount += amount;
+            helper.requestQuestions(amount, new PageListener(amount));
+        }
+    }
+
+    /**
+     * Stops fetching new pages; pages already requested are still added to the game
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Gets the amount of questions that should be loaded at this point of the game
+     *
+     * @return the total amount of questions for fixed games,
+     *         or the current question plus the lookahead for endless games
+     */
+    private int getTarget() {
+        if(game.getQuestionAmount() != 0) {
+            return game.getQuestionAmount();
+        }
+        return game.getQuestionIndex() + LOOKAHEAD;
+    }
+
+    /**
+     * Adds a page of questions to the game, leaving out questions that are in the game already
+     * or were put in an earlier game, and records them in the history.
+     * A page adding nothing is followed by the next page,
+     * up to {@link #MAX_EMPTY_PAGES} in a row before fetching is given up
+     *
+     * @param questions the questions retrieved from the TriviaDB
+     */
+    @Override
+    public void OnQuestionsResponse(List<TriviaQuestion> questions) {
+        List<TriviaQuestion> fresh = history.leaveOutRepeats(questions);
+
+        // never load more than the game is going to ask
+        int room = (game.getQuestionAmount() != 0)
+                ? game.getQuestionAmount() - game.getLoadedQuestionCount()
+                : fresh.size();
+        List<TriviaQuestion> added;
+        Tracing.beginSection("TriviaGame.setQuestions", TriviaRequestHelper.EndPoint.TRIVIA, fresh.size());
+        try {
+            added = game.addNewQuestions(fresh, room);
+        } finally {
+            Tracing.endSection();
+        }
+        if(questions.size() > added.size()) {
+            Log.d("QuestionFetcher", "added " + added.size() + " of " + questions.size() + " questions, "
+                    + (questions.size() - fresh.size()) + " of them played before");
+        }
+        history.record(added);
+        emptyPages = added.isEmpty() ? emptyPages + 1 : 0;
+        if(game.getLoadedQuestionCount() > game.getQuestionIndex()) {
+            firstPage.complete(null);
+        } else if(emptyPages >= MAX_EMPTY_PAGES) {
+            OnErrorResponse(TriviaRequestHelper.EndPoint.TRIVIA,
+                    "no new questions in " + emptyPages + " pages");
+        }
+    }
+
+    /**
+     * Called when a page request has failed; stops fetching altogether
+     *
+     * @param lastRequest the endpoint of the request that failed
+     * @param errorMsg the error message included.
+     */
+    @Override
+    public void OnErrorResponse(String lastRequest, @Nullable String errorMsg) {
+        Log.e("QuestionFetcher", "page request to " + lastRequest + " failed: " + errorMsg);
+        stop();
+        firstPage.completeExceptionally(new TriviaRequestHelper.RequestFailedException(lastRequest, errorMsg));
+    }
+
+    /**
+     * Keeps track of a single page request
+     */
+    private class PageListener implements TriviaRequestHelper.QuestionResponseListener {
+
+        private final int amount;
+
+        PageListener(int amount) {
+            this.amount = amount;
+        }
+
+        @Override
+        public void OnQuestionsResponse(List<TriviaQuestion> questions) {
+            pageResolved();
+            QuestionFetcher.this.OnQuestionsResponse(questions);
+            fetchAhead();
+        }
+
+        @Override
+        public void OnErrorResponse(String lastRequest, @Nullable String errorMsg) {
+            pageResolved();
+            QuestionFetcher.this.OnErrorResponse(lastRequest, errorMsg);
+        }
+
+        private void pageResolved() {
+            inFlight--;
+            requestedAmount -= amount;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * Set of questions by their content, to tell repeated questions apart
+ * no matter which request, dump or game they came from.
+ *
+ * Every question is reduced to a 64 bit hash of its normalized question text and right answer,
+ * see {@link #hashOf(String, String)}, and only the hashes are kept, in an open-addressing table
+ * of primitive longs: 16 bytes per question at most, without an object per question.
+ * Two different questions sharing a hash is possible, but with 64 bits so unlikely
+ * it can be left out of account for the amount of questions the OpenTriviaDB holds.
+ *
+ * Like {@link TriviaGame} a set is not thread-safe, and should only be used from a single thread.
+ */
+public final class QuestionHashSet {
+
+    /** version of the format sets are saved in **/
+    static final int VERSION = 1;
+
+    private static final int MAGIC = ('Q' << 24) | ('H' << 16) | ('S' << 8);
+    private static final int DEFAULT_CAPACITY = 64;
+    /** the hash that marks an empty slot; no question hashes to it **/
+    private static final long EMPTY = 0;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long[] table;
+    private int size;
+
+    /**
+     * Standard constructor; creates an empty set
+     */
+    public QuestionHashSet() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty set with room for a set amount of questions before it needs to grow
+     *
+     * @param expected the amount of questions expected to be added
+     */
+    public QuestionHashSet(int expected) {
+        // keep the table at most half full, so probes stay short
+        int capacity = Integer.highestOneBit(Math.max(expected, DEFAULT_CAPACITY / 2) * 2 - 1) << 1;
+        table = new long[capacity];
+    }
+
+    /**
+     * Gets the amount of questions in the set
+     *
+     * @return the amount of distinct hashes added
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Adds a question to the set
+     *
+     * @param question the question to add; its question and right answer are decoded if they were not yet
+     * @return true if it was added, false if it was a repeat of a question in the set
+     */
+    public boolean add(@NonNull TriviaQuestion question) {
+        return add(hashOf(question));
+    }
+
+    /**
+     * Adds a question to the set by its hash
+     *
+     * @param hash the hash of the question, as returned by {@link #hashOf(String, String)}
+     * @return true if it was added, false if the set held the hash already
+     */
+    public boolean add(long hash) {
+        if((size + 1) * 2 > table.length) {
+            grow();
+        }
+        int mask = table.length - 1;
+        for(int slot = slotOf(hash, mask); ; slot = (slot + 1) & mask) {
+            long current = table[slot];
+            if(current == EMPTY) {
+                table[slot] = hash;
+                size++;
+                return true;
+            }
+            if(current == hash) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Adds every question of another set
+     *
+     * @param other the set to add the questions of
+     */
+    public void addAll(@NonNull QuestionHashSet other) {
+        for(long hash : other.table) {
+            if(hash != EMPTY) {
+                add(hash);
+            }
+        }
+    }
+
+    /**
+     * Checks if a question is in the set
+     *
+     * @param question the question to look for; its question and right answer are decoded if they were not yet
+     * @return true if the set holds a question with the same content
+     */
+    public boolean contains(@NonNull TriviaQuestion question) {
+        return contains(hashOf(question));
+    }
+
+    /**
+     * Checks if a question is in the set by its hash
+     *
+     * @param hash the hash of the question, as returned by {@link #hashOf(String, String)}
+     * @return true if the set holds the hash
+     */
+    public boolean contains(long hash) {
+        int mask = table.length - 1;
+        for(int slot = slotOf(hash, mask); ; slot = (slot + 1) & mask) {
+            long current = table[slot];
+            if(current == EMPTY) {
+                return false;
+            }
+            if(current == hash) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes every question from the set
+     */
+    public void clear() {
+        Arrays.fill(table, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Writes the set to a stream
+     *
+     * @param out the stream to write to; left open
+     * @throws IOException when the set could not be written
+     */
+    public void writeTo(@NonNull OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC | VERSION);
+        data.writeInt(size);
+        for(long hash : table) {
+            if(hash != EMPTY) {
+                data.writeLong(hash);
+            }
+        }
+        data.flush();
+    }
+
+    /**
+     * Reads a set written by {@link #writeTo(OutputStream)}
+     *
+     * @param in the stream to read from; left open
+     * @return the set that was written
+     * @throws IOException when the set could not be read or was written in another version
+     */
+    public static QuestionHashSet readFrom(@NonNull InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int header = data.readInt();
+        if(header != (MAGIC | VERSION)) {
+            throw new IOException("not a question hash set of version " + VERSION);
+        }
+        int count = data.readInt();
+        if(count < 0) {
+            throw new IOException("corrupt question hash set of " + count + " questions");
+        }
+        QuestionHashSet set = new QuestionHashSet(count);
+        for(int i=0;i<count;i++) {
+            set.add(data.readLong());
+        }
+        return set;
+    }
+
+    /**
+     * Hashes the content of a question
+     *
+     * @param question the question to hash
+     * @return the hash of its question and right answer
+     * @see #hashOf(String, String)
+     */
+    public static long hashOf(@NonNull TriviaQuestion question) {
+        return hashOf(question.getQuestion(), question.getRightAnswer());
+    }
+
+    /**
+     * Hashes the content of a question, normalized so that questions only differing in case,
+     * accents, punctuation or whitespace hash the same:
+     * the text is decomposed, accents are dropped, letters are lowercased,
+     * and every run of anything but letters and digits counts as a single space.
+     *
+     * @param question the decoded question text
+     * @param rightAnswer the decoded right answer
+     * @return a 64 bit hash of both; never 0
+     */
+    public static long hashOf(@NonNull String question, @NonNull String rightAnswer) {
+        long hash = hash(FNV_OFFSET, question);
+        // keep "a b" + "c" apart from "a" + "b c"
+        hash = (hash ^ 0xFF) * FNV_PRIME;
+        hash = hash(hash, rightAnswer);
+        // spread the bits, as the table slots on the low bits only
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (hash == EMPTY) ? 1 : hash;
+    }
+
+    /**
+     * Adds the normalized text of a string to an FNV-1a hash
+     */
+    private static long hash(long hash, String str) {
+        if(!isAscii(str)) {
+            str = Normalizer.normalize(str, Normalizer.Form.NFKD);
+        }
+        boolean separate = false;
+        boolean empty = true;
+        for(int i=0;i<str.length();) {
+            int c = str.codePointAt(i);
+            i += Character.charCount(c);
+            if(Character.isLetterOrDigit(c)) {
+                if(separate && !empty) {
+                    hash = (hash ^ ' ') * FNV_PRIME;
+                }
+                separate = false;
+                empty = false;
+                hash = (hash ^ Character.toLowerCase(c)) * FNV_PRIME;
+            } else if(Character.getType(c) != Character.NON_SPACING_MARK) {
+                separate = true;
+            }
+        }
+        return hash;
+    }
+
+    private static boolean isAscii(String str) {
+        for(int i=0;i<str.length();i++) {
+            if(str.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int slotOf(long hash, int mask) {
+        return (int) hash & mask;
+    }
+
+    private void grow() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        size = 0;
+        for(long hash : old) {
+            if(hash != EMPTY) {
+                add(hash);
+            }
+        }
+    }
+}
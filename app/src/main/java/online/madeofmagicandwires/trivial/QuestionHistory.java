@@ -0,0 +1,209 @@
+package online.madeofmagicandwires.trivial;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Persistent record of every question that has been put in a game, by content,
+ * so questions are not repeated across games even once the session token
+ * of the OpenTriviaDB has been reset or lost.
+ *
+ * Questions are kept in a {@link QuestionHashSet}, which is saved to the app's files
+ * in the background whenever questions are recorded, and loaded again on the next launch.
+ * Once every question of a page turns out to be a repeat, the player has run through
+ * the questions on offer, and the history is cleared, just like an exhausted session token is reset.
+ */
+public class QuestionHistory {
+
+    private static final String FILE_NAME = "question_history.bin";
+
+    private static QuestionHistory instance;
+
+    private final File file;
+    private final Executor ioExecutor;
+    private QuestionHashSet played;
+    private boolean saveScheduled;
+
+    /**
+     * Standard constructor
+     *
+     * @param file the file the history is saved in; created if it does not exist yet
+     * @param ioExecutor the executor the history is loaded and saved on
+     */
+    QuestionHistory(@NonNull File file, @NonNull Executor ioExecutor) {
+        this.file = file;
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * Used to retrieve the QuestionHistory singleton;
+     * starts loading the saved history in the background on first use
+     *
+     * @param appContext the application context, needed to locate the history file
+     * @return the singleton QuestionHistory instance
+     */
+    public static synchronized QuestionHistory getInstance(@NonNull Context appContext) {
+        if(instance == null) {
+            instance = new QuestionHistory(
+                    new File(appContext.getFilesDir(), FILE_NAME),
+                    Executors.newSingleThreadExecutor()
+            );
+            instance.ioExecutor.execute(instance::ensureLoaded);
+        }
+        return instance;
+    }
+
+    /**
+     * Leaves out questions that have been put in a game before;
+     * if that leaves out every question, the history is cleared instead and none are left out
+     *
+     * @param questions the questions to check
+     * @return the questions that have not been put in a game before, in order
+     */
+    public synchronized List<TriviaQuestion> leaveOutRepeats(@NonNull Collection<TriviaQuestion> questions) {
+        ensureLoaded();
+        List<TriviaQuestion> fresh = new ArrayList<>(questions.size());
+        for(TriviaQuestion question : questions) {
+            if(!played.contains(question)) {
+                fresh.add(question);
+            }
+        }
+        if(fresh.isEmpty() && !questions.isEmpty()) {
+            Log.d("QuestionHistory", "Every question has been played; clearing " + played.size() + " questions");
+            played.clear();
+            scheduleSave();
+            return new ArrayList<>(questions);
+        }
+        return fresh;
+    }
+
+    /**
+     * Adds questions from a local index to a game, leaving out questions put in a game before,
+     * and records the questions added; if every matching question was played before,
+     * the history is cleared instead, as with {@link #leaveOutRepeats(Collection)}
+     *
+     * @param game the game to add the questions to
+     * @param index the index of locally stored questions to pick from
+     * @param amount the amount of questions to add
+     * @param random the source of randomness to pick questions with
+     * @return the questions that were added
+     * @see TriviaGame#addNewQuestions(QuestionIndex, int, Random, QuestionHashSet)
+     */
+    public synchronized List<TriviaQuestion> addQuestions(
+            @NonNull TriviaGame game,
+            @NonNull QuestionIndex index,
+            int amount,
+            @NonNull Random random) {
+        ensureLoaded();
+        List<TriviaQuestion> added = game.addNewQuestions(index, amount, random, played);
+        if(added.isEmpty() && amount > 0 && played.size() > 0) {
+            added = game.addNewQuestions(index, amount, random, null);
+            if(!added.isEmpty()) {
+                Log.d("QuestionHistory", "Every question has been played; clearing " + played.size() + " questions");
+                played.clear();
+            }
+        }
+        record(added);
+        return added;
+    }
+
+    /**
+     * Records questions as put in a game, saving the history in the background
+     *
+     * @param questions the questions put in a game
+     */
+    public synchronized void record(@NonNull Collection<TriviaQuestion> questions) {
+        ensureLoaded();
+        boolean changed = false;
+        for(TriviaQuestion question : questions) {
+            changed |= played.add(question);
+        }
+        if(changed) {
+            scheduleSave();
+        }
+    }
+
+    /**
+     * Gets a copy of every question recorded, such as to leave them out of an import
+     *
+     * @return a copy of the recorded questions
+     */
+    public synchronized QuestionHashSet snapshot() {
+        ensureLoaded();
+        QuestionHashSet copy = new QuestionHashSet(played.size());
+        copy.addAll(played);
+        return copy;
+    }
+
+    /**
+     * Gets the amount of questions recorded
+     *
+     * @return the amount of distinct questions put in a game since the history was last cleared
+     */
+    synchronized int size() {
+        ensureLoaded();
+        return played.size();
+    }
+
+    /**
+     * Loads the saved history, if this hasn't been done already.
+     * A history that can't be read is started over, as it only serves to avoid repeats.
+     */
+    private synchronized void ensureLoaded() {
+        if(played != null) {
+            return;
+        }
+        played = new QuestionHashSet();
+        if(!file.exists()) {
+            return;
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            played = QuestionHashSet.readFrom(in);
+        } catch (IOException e) {
+            Log.e("QuestionHistory", "Could not read question history: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the history in the background; records made before the save runs are saved with it
+     */
+    private void scheduleSave() {
+        if(saveScheduled) {
+            return;
+        }
+        saveScheduled = true;
+        ioExecutor.execute(this::save);
+    }
+
+    private void save() {
+        File tmp = new File(file.getPath() + ".tmp");
+        synchronized (this) {
+            saveScheduled = false;
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp))) {
+                played.writeTo(out);
+            } catch (IOException e) {
+                Log.e("QuestionHistory", "Could not save question history: " + e.getMessage());
+                return;
+            }
+        }
+        if(!tmp.renameTo(file)) {
+            Log.e("QuestionHistory", "Could not replace " + file + " with saved history");
+        }
+    }
+}
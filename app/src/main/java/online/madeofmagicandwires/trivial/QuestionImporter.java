@@ -0,0 +1,721 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.google.gson.stream.JsonReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Imports questions in bulk from url3986 encoded dumps in the format of the OpenTriviaDB's questions
+ * endpoint, either a response object with a "results" array or just the array itself,
+ * of any size and without being held back by the 50 questions per request the API allows.
+ *
+ * The dump is streamed rather than read whole: the importing thread only scans the bytes
+ * for where every question object starts and ends, and hands them over in chunks
+ * to a {@link ForkJoinPool}, which parses and decodes them by the same rules as
+ * {@link TriviaQuestionParser#parseQuestion(JsonReader)}. Chunks are handed on to a {@link Sink}
+ * in the order they appear in the dump, leaving out questions that were imported before:
+ * those with the same question and right answer, as told apart by a {@link QuestionHashSet}.
+ * No more than a set amount of chunks are in flight at once, so apart from remembering
+ * which questions were imported, the memory used does not grow with the size of the dump.
+ *
+ * Questions that can't be parsed, are of an unknown type or are too long to be stored
+ * are skipped and counted rather than failing the whole import.
+ */
+public final class QuestionImporter {
+
+    /**
+     * Receives imported questions
+     */
+    public interface Sink {
+        /**
+         * Called on the importing thread with every chunk of new questions, in order
+         *
+         * @param questions the questions, with their text decoded already
+         * @throws IOException when the questions could not be stored; ends the import
+         */
+        void accept(List<TriviaQuestion> questions) throws IOException;
+    }
+
+    /**
+     * The outcome of an import
+     */
+    public static final class Stats {
+        /** the amount of question objects read from the dump **/
+        public final long read;
+        /** the amount of questions handed to the sink **/
+        public final long imported;
+        /** the amount of questions left out because they were imported before **/
+        public final long duplicates;
+        /** the amount of question objects that could not be parsed or were of an unknown type **/
+        public final long skipped;
+        /** the time the import took, in nanoseconds **/
+        public final long elapsedNanos;
+        /** the amount of threads the questions were parsed on **/
+        public final int cores;
+
+        Stats(long read, long imported, long duplicates, long skipped, long elapsedNanos, int cores) {
+            this.read = read;
+            this.imported = imported;
+            this.duplicates = duplicates;
+            this.skipped = skipped;
+            this.elapsedNanos = elapsedNanos;
+            this.cores = cores;
+        }
+
+        /**
+         * Gets the throughput of the import
+         *
+         * @return the amount of question objects read per second, over all cores
+         */
+        public double questionsPerSecond() {
+            return (elapsedNanos == 0) ? 0 : read * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Gets the throughput of the import per parsing thread
+         *
+         * @return the amount of question objects read per second per core
+         */
+        public double questionsPerSecondPerCore() {
+            return questionsPerSecond() / cores;
+        }
+
+        /**
+         * Adds up the outcome of two imports, such as of several dumps one after the other
+         *
+         * @param other the outcome of the other import
+         * @return the outcome of both imports
+         */
+        public Stats plus(@NonNull Stats other) {
+            return new Stats(read + other.read, imported + other.imported, duplicates + other.duplicates,
+                    skipped + other.skipped, elapsedNanos + other.elapsedNanos, Math.max(cores, other.cores));
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "read %d, imported %d, %d duplicates, %d skipped in %d ms; %.0f questions/s/core on %d cores",
+                    read, imported, duplicates, skipped, elapsedNanos / 1000000,
+                    questionsPerSecondPerCore(), cores);
+        }
+    }
+
+    /** amount of questions per chunk handed to the pool **/
+    static final int DEFAULT_CHUNK_SIZE = 256;
+    /** largest question object accepted, in bytes **/
+    static final int MAX_QUESTION_BYTES = 1 << 16;
+
+    private static final int READ_BUFFER_SIZE = 1 << 16;
+    /** longest string a store record holds, in bytes of modified UTF-8 **/
+    private static final int MAX_UTF_LENGTH = 65535;
+
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+    private final int maxChunksInFlight;
+    private final QuestionHashSet seen;
+
+    /**
+     * Standard constructor; parses on the common pool
+     */
+    public QuestionImporter() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates an importer parsing on a set pool
+     *
+     * @param pool the pool to parse questions on
+     * @param chunkSize the amount of questions parsed in a single task
+     */
+    public QuestionImporter(@NonNull ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = Math.max(chunkSize, 1);
+        // enough to keep every thread busy while the importing thread scans and the sink stores
+        this.maxChunksInFlight = pool.getParallelism() * 2;
+        this.seen = new QuestionHashSet();
+    }
+
+    /**
+     * Imports the questions of a dump; questions imported before by this importer,
+     * from this or an earlier dump, are left out
+     *
+     * @param in the stream of the dump; left open
+     * @param sink the sink to hand the new questions to
+     * @return the outcome of the import
+     * @throws TriviaQuestionParser.ResponseCodeException when the dump is a response with a non-zero response code
+     * @throws IOException when the dump could not be read or is not a questions response or array,
+     *                     or the sink could not store the questions
+     */
+    public Stats importFrom(@NonNull InputStream in, @NonNull Sink sink) throws IOException {
+        long start = System.nanoTime();
+        Scanner scanner = new Scanner(in);
+        ArrayDeque<ForkJoinTask<Parsed>> inFlight = new ArrayDeque<>();
+        Counts counts = new Counts();
+
+        Chunk chunk = new Chunk();
+        while (scanner.nextQuestion(chunk)) {
+            if(chunk.count == chunkSize) {
+                if(inFlight.size() == maxChunksInFlight) {
+                    deliver(inFlight.poll(), sink, counts);
+                }
+                final Chunk full = chunk.seal();
+                inFlight.add(pool.submit(() -> parse(full)));
+                chunk = new Chunk();
+            }
+        }
+        if(scanner.responseCode != 0) {
+            throw new TriviaQuestionParser.ResponseCodeException(scanner.responseCode);
+        }
+        if(chunk.count > 0) {
+            final Chunk last = chunk.seal();
+            inFlight.add(pool.submit(() -> parse(last)));
+        }
+        while (!inFlight.isEmpty()) {
+            deliver(inFlight.poll(), sink, counts);
+        }
+        return new Stats(counts.read, counts.imported, counts.duplicates, counts.skipped,
+                System.nanoTime() - start, pool.getParallelism());
+    }
+
+    /**
+     * Marks a question as imported already, so it is left out of later imports,
+     * such as one that is stored already
+     *
+     * @param question the question to leave out
+     */
+    public void exclude(@NonNull TriviaQuestion question) {
+        seen.add(question);
+    }
+
+    /**
+     * Waits for a chunk to be parsed, and hands its new questions to the sink
+     */
+    private void deliver(ForkJoinTask<Parsed> task, Sink sink, Counts counts) throws IOException {
+        Parsed parsed;
+        try {
+            parsed = task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("could not parse questions: " + e.getCause(), e.getCause());
+        }
+        List<TriviaQuestion> fresh = new ArrayList<>(parsed.questions.size());
+        for(int i=0;i<parsed.questions.size();i++) {
+            if(seen.add(parsed.keys[i])) {
+                fresh.add(parsed.questions.get(i));
+            } else {
+                counts.duplicates++;
+            }
+        }
+        counts.read += parsed.questions.size() + parsed.skipped;
+        counts.skipped += parsed.skipped;
+        counts.imported += fresh.size();
+        if(!fresh.isEmpty()) {
+            sink.accept(fresh);
+        }
+    }
+
+    /**
+     * Parses and decodes the questions of a chunk; runs on the pool
+     *
+     * @param chunk the chunk of question objects
+     * @return the questions and their keys
+     */
+    static Parsed parse(Chunk chunk) {
+        try {
+            return parseAll(chunk);
+        } catch (IOException | RuntimeException e) {
+            // a malformed question leaves the reader unusable for the rest of the chunk
+            return parseEach(chunk);
+        }
+    }
+
+    /**
+     * Parses the questions of a chunk in one go, as a single array
+     *
+     * @throws IOException when any of the questions is malformed
+     * @throws IllegalArgumentException when any of the questions was not validly encoded
+     */
+    private static Parsed parseAll(Chunk chunk) throws IOException {
+        List<TriviaQuestion> questions = new ArrayList<>(chunk.count);
+        long[] keys = new long[chunk.count];
+        int skipped = 0;
+        JsonReader reader = new JsonReader(new InputStreamReader(
+                new ByteArrayInputStream(chunk.bytes, 0, chunk.length), StandardCharsets.UTF_8));
+        reader.beginArray();
+        for(int i=0;i<chunk.count;i++) {
+            TriviaQuestion question = TriviaQuestionParser.parseQuestion(reader);
+            if(question == null) {
+                skipped++;
+                continue;
+            }
+            // decode here rather than when the questions are stored or shown
+            keys[questions.size()] = keyOf(question);
+            questions.add(question);
+        }
+        reader.endArray();
+        return new Parsed(questions, keys, skipped);
+    }
+
+    /**
+     * Parses the questions of a chunk one by one, skipping those that are malformed
+     */
+    private static Parsed parseEach(Chunk chunk) {
+        List<TriviaQuestion> questions = new ArrayList<>(chunk.count);
+        long[] keys = new long[chunk.count];
+        int skipped = 0;
+        for(int i=0;i<chunk.count;i++) {
+            String json = new String(chunk.bytes, chunk.starts[i], chunk.ends[i] - chunk.starts[i],
+                    StandardCharsets.UTF_8);
+            try {
+                TriviaQuestion question = TriviaQuestionParser.parseQuestion(new JsonReader(new StringReader(json)));
+                if(question == null) {
+                    skipped++;
+                    continue;
+                }
+                keys[questions.size()] = keyOf(question);
+                questions.add(question);
+            } catch (IOException | RuntimeException e) {
+                skipped++;
+            }
+        }
+        return new Parsed(questions, keys, skipped);
+    }
+
+    /**
+     * Decodes a question and hashes its content, to tell repeated questions apart
+     *
+     * @return the hash of the question, as by {@link QuestionHashSet#hashOf(TriviaQuestion)}
+     * @throws IOException when the decoded question is too long to be stored
+     */
+    private static long keyOf(TriviaQuestion question) throws IOException {
+        // the hash only needs the question and right answer, but decode the other answers as well
+        question.getAnswers();
+        if(!isStorable(question)) {
+            throw new IOException("question too long to store");
+        }
+        return QuestionHashSet.hashOf(question);
+    }
+
+    /**
+     * Checks whether a question can be written as a single record of the {@link QuestionStore},
+     * as {@link java.io.DataOutputStream#writeUTF(String)} only takes strings of up to 65535 bytes,
+     * and only the difficulty and category may be missing
+     *
+     * @param question the question to check
+     * @return true if all of its text is there and fits, false otherwise
+     */
+    static boolean isStorable(@NonNull TriviaQuestion question) {
+        if(question.getQuestion() == null || question.getRightAnswer() == null) {
+            return false;
+        }
+        if(!fitsUTF(question.getQuestion()) || !fitsUTF(question.getRightAnswer())
+                || !fitsUTF(question.getDifficulty()) || !fitsUTF(question.getCategory())) {
+            return false;
+        }
+        if(question instanceof MultipleChoiceQuestion) {
+            String[] wrongAnswers = ((MultipleChoiceQuestion) question).getWrongAnswers();
+            if(wrongAnswers == null || wrongAnswers.length > 0xFF) {
+                return false;
+            }
+            for(String wrongAnswer : wrongAnswers) {
+                if(wrongAnswer == null || !fitsUTF(wrongAnswer)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a string fits in a single {@link java.io.DataOutputStream#writeUTF(String)}
+     */
+    private static boolean fitsUTF(@Nullable String str) {
+        if(str == null || str.length() <= MAX_UTF_LENGTH / 3) {
+            return true;
+        }
+        int length = 0;
+        for(int i=0;i<str.length();i++) {
+            char c = str.charAt(i);
+            if(c >= 0x0001 && c <= 0x007F) {
+                length++;
+            } else if(c > 0x07FF) {
+                length += 3;
+            } else {
+                length += 2;
+            }
+        }
+        return length <= MAX_UTF_LENGTH;
+    }
+
+    private static final class Counts {
+        long read;
+        long imported;
+        long duplicates;
+        long skipped;
+    }
+
+    /**
+     * The parsed questions of a chunk
+     */
+    static final class Parsed {
+        final List<TriviaQuestion> questions;
+        /** the key of every question, in the same order **/
+        final long[] keys;
+        final int skipped;
+
+        Parsed(List<TriviaQuestion> questions, long[] keys, int skipped) {
+            this.questions = questions;
+            this.keys = keys;
+            this.skipped = skipped;
+        }
+    }
+
+    /**
+     * The raw bytes of a run of question objects, as the elements of a JSON array
+     */
+    static final class Chunk {
+        byte[] bytes = new byte[4096];
+        int length;
+        /** where every question object starts and ends in the bytes **/
+        int[] starts = new int[16];
+        int[] ends = new int[16];
+        int count;
+
+        Chunk() {
+            append('[');
+        }
+
+        void append(int b) {
+            if(length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) b;
+        }
+
+        void append(byte[] source, int offset, int count) {
+            if(length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + count));
+            }
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        void startQuestion() {
+            if(count == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                ends = Arrays.copyOf(ends, ends.length * 2);
+            }
+            if(count > 0) {
+                append(',');
+            }
+            starts[count] = length;
+        }
+
+        void endQuestion() {
+            ends[count++] = length;
+        }
+
+        /**
+         * Closes the array; no more questions can be added after
+         */
+        Chunk seal() {
+            append(']');
+            return this;
+        }
+    }
+
+    /**
+     * Finds the question objects in a dump, copying their bytes without parsing them
+     */
+    static final class Scanner {
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[READ_BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private int peeked = -2;
+
+        private boolean started;
+        /** whether the dump is just the array of questions, rather than a response **/
+        private boolean arrayDump;
+        /** whether the scanner is inside the array of questions **/
+        private boolean inResults;
+        private boolean done;
+        /** the response code of a response, 0 if the dump did not include one **/
+        int responseCode;
+
+        Scanner(InputStream in) {
+            this.in = in;
+        }
+
+        /**
+         * Copies the next question object of the dump into a chunk
+         *
+         * @param chunk the chunk to copy the question into
+         * @return true if a question was copied, false if the dump has ended
+         * @throws IOException when the dump could not be read or is malformed
+         */
+        boolean nextQuestion(Chunk chunk) throws IOException {
+            if(done) {
+                return false;
+            }
+            if(!inResults && !findResults()) {
+                done = true;
+                return false;
+            }
+            int c = skipWhitespace();
+            if(c == ',') {
+                c = skipWhitespace();
+            }
+            if(c == ']') {
+                inResults = false;
+                if(!findResults()) {
+                    done = true;
+                    return false;
+                }
+                c = skipWhitespace();
+            }
+            if(c == -1) {
+                throw new IOException("unexpected end of questions");
+            }
+            chunk.startQuestion();
+            copyValue(c, chunk);
+            chunk.endQuestion();
+            return true;
+        }
+
+        /**
+         * Moves on to the start of the array of questions, reading the response code along the way
+         *
+         * @return true if the scanner is inside the array, false if there is none (left)
+         */
+        private boolean findResults() throws IOException {
+            int c = skipWhitespace();
+            if(!started) {
+                started = true;
+                if(c == '[') {
+                    // the dump is just the array of questions
+                    arrayDump = true;
+                    inResults = true;
+                    return true;
+                }
+                if(c != '{') {
+                    throw new IOException("not a questions response");
+                }
+                c = skipWhitespace();
+            } else if(arrayDump) {
+                return false;
+            }
+            while (c != '}') {
+                if(c == ',') {
+                    c = skipWhitespace();
+                    continue;
+                }
+                if(c != '"') {
+                    throw new IOException("not a questions response");
+                }
+                String key = readKey();
+                if(skipWhitespace() != ':') {
+                    throw new IOException("not a questions response");
+                }
+                c = skipWhitespace();
+                if(key.equals("results")) {
+                    if(c != '[') {
+                        throw new IOException("results is not an array");
+                    }
+                    inResults = true;
+                    return true;
+                } else if(key.equals("response_code")) {
+                    responseCode = readInt(c);
+                } else {
+                    skipValue(c);
+                }
+                c = skipWhitespace();
+            }
+            return false;
+        }
+
+        private String readKey() throws IOException {
+            StringBuilder key = new StringBuilder();
+            int c;
+            while ((c = read()) != '"') {
+                if(c == -1) {
+                    throw new IOException("unexpected end of dump");
+                }
+                if(c == '\\') {
+                    c = read();
+                }
+                key.append((char) c);
+            }
+            return key.toString();
+        }
+
+        private int readInt(int c) throws IOException {
+            boolean negative = c == '-';
+            if(negative) {
+                c = read();
+            }
+            int value = 0;
+            while (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                c = read();
+            }
+            unread(c);
+            return negative ? -value : value;
+        }
+
+        private void skipValue(int c) throws IOException {
+            Chunk discard = new Chunk();
+            copyValue(c, discard);
+        }
+
+        /**
+         * Copies a JSON value, keeping track of nesting and strings, but not checking it otherwise
+         *
+         * @param c the first byte of the value
+         * @param out the chunk to copy the value into
+         */
+        private void copyValue(int c, Chunk out) throws IOException {
+            int depth = 0;
+            int start = out.length;
+            while (true) {
+                if(c == -1) {
+                    throw new IOException("unexpected end of dump");
+                }
+                if(c == '"') {
+                    out.append(c);
+                    copyString(out, start);
+                    if(depth == 0) {
+                        return;
+                    }
+                } else if(c == '{' || c == '[') {
+                    out.append(c);
+                    depth++;
+                } else if(c == '}' || c == ']') {
+                    if(depth == 0) {
+                        // the end of the enclosing array, after a bare value
+                        unread(c);
+                        return;
+                    }
+                    out.append(c);
+                    if(--depth == 0) {
+                        return;
+                    }
+                } else if(depth == 0 && (c == ',' || isWhitespace(c))) {
+                    unread(c);
+                    return;
+                } else {
+                    out.append(c);
+                }
+                checkSize(out, start);
+                c = read();
+            }
+        }
+
+        /**
+         * Checks a value being copied has not grown past {@link #MAX_QUESTION_BYTES}
+         *
+         * @param out the chunk the value is copied into
+         * @param start the offset of the value in the chunk
+         * @throws IOException when the value is too large
+         */
+        private static void checkSize(Chunk out, int start) throws IOException {
+            if(out.length - start > MAX_QUESTION_BYTES) {
+                throw new IOException("value of over " + MAX_QUESTION_BYTES + " bytes");
+            }
+        }
+
+        /**
+         * Copies the rest of a string, up to and including its closing quote;
+         * runs of plain bytes are copied straight out of the read buffer,
+         * checking the size of the value after each of them
+         *
+         * @param out the chunk to copy the string into, after its opening quote
+         * @param start the offset in the chunk of the value the string is part of
+         */
+        private void copyString(Chunk out, int start) throws IOException {
+            while (true) {
+                if(position == limit && !fill()) {
+                    throw new IOException("unexpected end of dump");
+                }
+                int end = position;
+                while (end < limit && buffer[end] != '"' && buffer[end] != '\\') {
+                    end++;
+                }
+                out.append(buffer, position, end - position);
+                position = end;
+                checkSize(out, start);
+                if(position < limit) {
+                    int c = buffer[position++];
+                    out.append(c);
+                    if(c == '"') {
+                        return;
+                    }
+                    // an escaped character, which may be a quote
+                    c = read();
+                    if(c == -1) {
+                        throw new IOException("unexpected end of dump");
+                    }
+                    out.append(c);
+                }
+            }
+        }
+
+        private int skipWhitespace() throws IOException {
+            int c;
+            do {
+                c = read();
+            } while (isWhitespace(c));
+            return c;
+        }
+
+        private static boolean isWhitespace(int c) {
+            return c == ' ' || c == '\n' || c == '\r' || c == '\t';
+        }
+
+        private void unread(int c) {
+            peeked = c;
+        }
+
+        private int read() throws IOException {
+            if(peeked != -2) {
+                int c = peeked;
+                peeked = -2;
+                return c;
+            }
+            if(position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        /**
+         * Reads the next part of the dump into the buffer
+         *
+         * @return false if the dump has ended
+         */
+        private boolean fill() throws IOException {
+            limit = Math.max(in.read(buffer, 0, buffer.length), 0);
+            position = 0;
+            return limit > 0;
+        }
+    }
+}
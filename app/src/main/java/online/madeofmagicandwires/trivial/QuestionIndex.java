@@ -0,0 +1,378 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Index over the questions of a {@link QuestionBank}, to select questions by category,
+ * difficulty and type without going back to the OpenTriviaDB.
+ *
+ * Every category, difficulty and question type has a bitset of the questions belonging to it;
+ * a selection intersects the bitsets of the requested values and leaves out the questions
+ * that were already asked, then samples from what is left.
+ * Difficulties are matched regardless of case, as the OpenTriviaDB uses "easy"
+ * where {@link TriviaGame.Difficulty} uses "Easy".
+ *
+ * The bank is append-only, so the index only needs to look at questions added since
+ * it was last {@link #update() updated}. Like the bank, an index is not thread-safe.
+ */
+public class QuestionIndex {
+
+    private static final int TYPE_MULTIPLE = 0;
+    private static final int TYPE_BOOLEAN = 1;
+
+    private final QuestionBank bank;
+    private final QuestionDictionary dictionary;
+    /** the amount of questions of the bank that have been indexed **/
+    private int indexed;
+    /** the amount of longs every bitset holds **/
+    private int words;
+
+    /** bitsets of every category, by category index + 1 so questions without category fit in **/
+    private long[][] byCategory;
+    /** bitsets of every difficulty, by the slot of its lower case name **/
+    private long[][] byDifficulty;
+    private final long[][] byType;
+    private long[] seen;
+
+    /** lower case difficulty names and the slot of their bitset **/
+    private final Map<String, Integer> difficultySlots;
+    /** the slot of every difficulty code, by code + 1; -1 when not looked up yet **/
+    private int[] slotOfCode;
+
+    /**
+     * Standard constructor; indexes all questions already in the bank
+     *
+     * @param bank the bank to index
+     */
+    public QuestionIndex(@NonNull QuestionBank bank) {
+        this.bank = bank;
+        this.dictionary = QuestionDictionary.getInstance();
+        this.byCategory = new long[0][];
+        this.byDifficulty = new long[0][];
+        this.byType = new long[2][];
+        this.seen = new long[0];
+        this.difficultySlots = new HashMap<>();
+        this.slotOfCode = new int[0];
+        update();
+    }
+
+    /**
+     * Gets the bank this index is built on
+     * @return the indexed bank
+     */
+    public QuestionBank getBank() {
+        return bank;
+    }
+
+    /**
+     * Indexes the questions added to the bank since the index was last updated
+     */
+    public void update() {
+        int size = bank.size();
+        if(size == indexed) {
+            return;
+        }
+        ensureWords((size + 63) >>> 6);
+        for(int i=indexed;i<size;i++) {
+            set(categoryBitset(bank.getCategoryIndex(i) + 1), i);
+            set(difficultyBitset(difficultySlot(bank.getDifficultyCode(i))), i);
+            set(typeBitset(bank.isMultipleChoice(i) ? TYPE_MULTIPLE : TYPE_BOOLEAN), i);
+        }
+        indexed = size;
+    }
+
+    /**
+     * Counts the questions that have not been asked yet matching a selection
+     *
+     * @param categoryId the OpenTriviaDB id of the category, or null or -1 for any category
+     * @param difficulty the difficulty, or null for any difficulty
+     * @param type the type of question, or null for any type
+     * @return the amount of matching questions
+     */
+    public int count(
+            @Nullable Integer categoryId,
+            @Nullable @TriviaGame.Difficulty String difficulty,
+            @Nullable @TriviaGame.QuestionType String type) {
+        long[] candidates = select(categoryId, difficulty, type);
+        if(candidates == null) {
+            return 0;
+        }
+        int count = 0;
+        for(long word : candidates) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Picks random questions that have not been asked yet matching a selection,
+     * without picking any question twice
+     *
+     * @param categoryId the OpenTriviaDB id of the category, or null or -1 for any category
+     * @param difficulty the difficulty, or null for any difficulty
+     * @param type the type of question, or null for any type
+     * @param amount the amount of questions to pick
+     * @param random the source of randomness to pick with
+     * @return the indices of the picked questions in the bank, in random order;
+     *         fewer than amount if not enough questions matched
+     */
+    public int[] sample(
+            @Nullable Integer categoryId,
+            @Nullable @TriviaGame.Difficulty String difficulty,
+            @Nullable @TriviaGame.QuestionType String type,
+            int amount,
+            @NonNull Random random) {
+        long[] candidates = select(categoryId, difficulty, type);
+        if(candidates == null || amount <= 0) {
+            return new int[0];
+        }
+        int count = 0;
+        for(long word : candidates) {
+            count += Long.bitCount(word);
+        }
+        int picks = Math.min(amount, count);
+
+        // choose which of the matches to pick by their rank, using Floyd's algorithm
+        long[] chosen = new long[(count + 63) >>> 6];
+        for(int j=count-picks;j<count;j++) {
+            int rank = random.nextInt(j + 1);
+            if(isSet(chosen, rank)) {
+                rank = j;
+            }
+            set(chosen, rank);
+        }
+
+        // walk both bitsets in order to find the questions of the chosen ranks
+        int[] result = new int[picks];
+        int found = 0;
+        int word = 0;
+        // the amount of matches before the current word
+        int base = 0;
+        for(int c=0;c<chosen.length;c++) {
+            long picked = chosen[c];
+            while (picked != 0) {
+                int pickedRank = (c << 6) + Long.numberOfTrailingZeros(picked);
+                picked &= picked - 1;
+                while (pickedRank >= base + Long.bitCount(candidates[word])) {
+                    base += Long.bitCount(candidates[word]);
+                    word++;
+                }
+                result[found++] = (word << 6) + nthSetBit(candidates[word], pickedRank - base);
+            }
+        }
+
+        // ranks come out in order of the bank, so shuffle them
+        for(int i=picks-1;i>0;i--) {
+            int j = random.nextInt(i + 1);
+            int swap = result[i];
+            result[i] = result[j];
+            result[j] = swap;
+        }
+        return result;
+    }
+
+    /**
+     * Marks questions as asked, so they will no longer be counted or picked
+     *
+     * @param questions the indices of the questions in the bank
+     */
+    public void markSeen(@NonNull int... questions) {
+        for(int question : questions) {
+            ensureWords((question >>> 6) + 1);
+            set(seen, question);
+        }
+    }
+
+    /**
+     * Makes questions available again, such as those that were picked but turned out not to be wanted
+     *
+     * @param questions the indices of the questions in the bank
+     */
+    public void unmarkSeen(@NonNull int... questions) {
+        for(int question : questions) {
+            if((question >>> 6) < seen.length) {
+                seen[question >>> 6] &= ~(1L << question);
+            }
+        }
+    }
+
+    /**
+     * Checks if a question was marked as asked
+     *
+     * @param question the index of the question in the bank
+     * @return true if it was marked by {@link #markSeen(int...)}
+     */
+    public boolean isSeen(int question) {
+        return (question >>> 6) < seen.length && isSet(seen, question);
+    }
+
+    /**
+     * Forgets which questions were asked, making all questions available again
+     */
+    public void clearSeen() {
+        Arrays.fill(seen, 0);
+    }
+
+    /**
+     * Builds the bitset of questions matching a selection that have not been asked yet
+     *
+     * @return a new bitset of matching questions, or null if no question can match
+     */
+    private long[] select(Integer categoryId, String difficulty, String type) {
+        update();
+        long[] result = new long[words];
+        if(indexed == 0) {
+            return null;
+        }
+        // start out with every question in the bank
+        Arrays.fill(result, 0, indexed >>> 6, -1L);
+        if((indexed & 63) != 0) {
+            result[indexed >>> 6] = (1L << (indexed & 63)) - 1;
+        }
+
+        if(categoryId != null && categoryId != -1) {
+            int category = dictionary.indexOfCategoryId(categoryId);
+            if(category == QuestionDictionary.NONE || !intersect(result, bitsetOrNull(byCategory, category + 1))) {
+                return null;
+            }
+        }
+        if(difficulty != null) {
+            Integer slot = difficultySlots.get(difficulty.toLowerCase(Locale.ROOT));
+            if(slot == null || !intersect(result, bitsetOrNull(byDifficulty, slot))) {
+                return null;
+            }
+        }
+        if(type != null) {
+            int typeSlot = TriviaGame.QuestionType.MULTIPLE.equals(type) ? TYPE_MULTIPLE : TYPE_BOOLEAN;
+            if(!intersect(result, byType[typeSlot])) {
+                return null;
+            }
+        }
+        for(int i=0;i<result.length;i++) {
+            result[i] &= ~seen[i];
+        }
+        return result;
+    }
+
+    /**
+     * Intersects a bitset with another
+     *
+     * @return false if there was no other bitset to intersect with, meaning nothing matches
+     */
+    private static boolean intersect(long[] result, @Nullable long[] bitset) {
+        if(bitset == null) {
+            return false;
+        }
+        for(int i=0;i<result.length;i++) {
+            result[i] &= bitset[i];
+        }
+        return true;
+    }
+
+    private int difficultySlot(byte code) {
+        int key = code + 1;
+        if(key >= slotOfCode.length) {
+            int oldLength = slotOfCode.length;
+            slotOfCode = Arrays.copyOf(slotOfCode, key + 1);
+            Arrays.fill(slotOfCode, oldLength, slotOfCode.length, -1);
+        }
+        if(slotOfCode[key] == -1) {
+            String difficulty = dictionary.getDifficulty(code);
+            String name = (difficulty != null) ? difficulty.toLowerCase(Locale.ROOT) : "";
+            Integer slot = difficultySlots.get(name);
+            if(slot == null) {
+                slot = difficultySlots.size();
+                difficultySlots.put(name, slot);
+            }
+            slotOfCode[key] = slot;
+        }
+        return slotOfCode[key];
+    }
+
+    private long[] categoryBitset(int slot) {
+        if(slot >= byCategory.length) {
+            byCategory = Arrays.copyOf(byCategory, slot + 1);
+        }
+        if(byCategory[slot] == null) {
+            byCategory[slot] = new long[words];
+        }
+        return byCategory[slot];
+    }
+
+    private long[] difficultyBitset(int slot) {
+        if(slot >= byDifficulty.length) {
+            byDifficulty = Arrays.copyOf(byDifficulty, slot + 1);
+        }
+        if(byDifficulty[slot] == null) {
+            byDifficulty[slot] = new long[words];
+        }
+        return byDifficulty[slot];
+    }
+
+    private long[] typeBitset(int slot) {
+        if(byType[slot] == null) {
+            byType[slot] = new long[words];
+        }
+        return byType[slot];
+    }
+
+    private static long[] bitsetOrNull(long[][] bitsets, int slot) {
+        return (slot < bitsets.length) ? bitsets[slot] : null;
+    }
+
+    /**
+     * Grows every bitset to hold at least a set amount of longs
+     */
+    private void ensureWords(int required) {
+        if(required <= words) {
+            return;
+        }
+        int capacity = Math.max(required, words * 2);
+        for(int i=0;i<byCategory.length;i++) {
+            if(byCategory[i] != null) {
+                byCategory[i] = Arrays.copyOf(byCategory[i], capacity);
+            }
+        }
+        for(int i=0;i<byDifficulty.length;i++) {
+            if(byDifficulty[i] != null) {
+                byDifficulty[i] = Arrays.copyOf(byDifficulty[i], capacity);
+            }
+        }
+        for(int i=0;i<byType.length;i++) {
+            if(byType[i] != null) {
+                byType[i] = Arrays.copyOf(byType[i], capacity);
+            }
+        }
+        seen = Arrays.copyOf(seen, capacity);
+        words = capacity;
+    }
+
+    private static void set(long[] bitset, int bit) {
+        bitset[bit >>> 6] |= 1L << bit;
+    }
+
+    private static boolean isSet(long[] bitset, int bit) {
+        return (bitset[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Finds the position of the nth set bit of a word
+     *
+     * @param word the word to search
+     * @param n the amount of set bits to skip
+     * @return the position of the set bit, from 0 to 63
+     */
+    private static int nthSetBit(long word, int n) {
+        for(int i=0;i<n;i++) {
+            word &= word - 1;
+        }
+        return Long.numberOfTrailingZeros(word);
+    }
+}
@@ -0,0 +1,379 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Read-only pack of trivia questions, memory-mapped from a file rather than read into memory,
+ * so a game can be played without ever having reached the OpenTriviaDB.
+ * Packs are built from recorded OpenTriviaDB responses by the QuestionPackWriter of the benchmark module
+ * and shipped as an uncompressed asset, or placed in the app's files.
+ *
+ * A pack is laid out as follows, with every number big-endian and every offset counted
+ * from the start of the pack:
+ * <pre>
+ *   header          'T' 'Q' 'P' 'K', version, question count, name count,
+ *                   offset of the name table, offset of the question table; each an int
+ *   name table      the offset of every difficulty name, then of every category name; an int each
+ *   question table  per question: the offset of its record (int), its type (byte),
+ *                   its difficulty and category as a name number (byte and short, 0 if it has none)
+ *   payload         names and question records; a record is its amount of strings (byte)
+ *                   followed by the question, and for multiple choice questions the right answer
+ *                   and wrong answers; every string is its length (unsigned short) and UTF-8 bytes
+ * </pre>
+ *
+ * Opening a pack only checks its header, so it takes the same time whatever its size;
+ * the question table is read one entry at a time as questions are asked for,
+ * and {@link #get(int)} returns views that only decode their text when it is first needed.
+ * A pack can be read from any thread.
+ */
+public final class QuestionPack {
+
+    /** version of the pack layout **/
+    static final int VERSION = 1;
+
+    static final byte[] MAGIC = {'T', 'Q', 'P', 'K'};
+    static final int HEADER_SIZE = 24;
+    static final int ENTRY_SIZE = 8;
+
+    static final byte TYPE_MULTIPLE = 0;
+    static final byte TYPE_TRUE = 1;
+    static final byte TYPE_FALSE = 2;
+
+    private static final int UNRESOLVED = Integer.MIN_VALUE;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int nameTable;
+    private final int questionTable;
+    /** the dictionary index or code of every name, looked up the first time it is used **/
+    private final int[] resolvedNames;
+
+    private QuestionPack(ByteBuffer buffer, int size, int names, int nameTable, int questionTable) {
+        this.buffer = buffer;
+        this.size = size;
+        this.nameTable = nameTable;
+        this.questionTable = questionTable;
+        this.resolvedNames = new int[names];
+        Arrays.fill(resolvedNames, UNRESOLVED);
+    }
+
+    /**
+     * Maps a pack file into memory
+     *
+     * @param file the pack file
+     * @return the opened pack
+     * @throws IOException when the file could not be mapped or is not a pack of this version
+     */
+    public static QuestionPack open(@NonNull File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            // the mapping stays valid after the channel is closed
+            return map(raf.getChannel(), 0, raf.length());
+        }
+    }
+
+    /**
+     * Maps a pack stored in part of a file into memory, such as an uncompressed asset inside the APK
+     *
+     * @param channel the channel of the file holding the pack
+     * @param offset the offset of the pack within the file
+     * @param length the length of the pack in bytes
+     * @return the opened pack
+     * @throws IOException when the file could not be mapped or is not a pack of this version
+     */
+    public static QuestionPack map(@NonNull FileChannel channel, long offset, long length) throws IOException {
+        if(length > Integer.MAX_VALUE) {
+            throw new IOException("question pack too large: " + length + " bytes");
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+        return wrap(mapped);
+    }
+
+    /**
+     * Opens a pack held in a buffer
+     *
+     * @param buffer the buffer holding the pack, from its position to its limit; it is not modified
+     * @return the opened pack
+     * @throws IOException when the buffer does not hold a pack of this version
+     */
+    public static QuestionPack wrap(@NonNull ByteBuffer buffer) throws IOException {
+        ByteBuffer pack = buffer.slice();
+        if(pack.remaining() < HEADER_SIZE) {
+            throw new IOException("not a question pack: " + pack.remaining() + " bytes");
+        }
+        for(int i=0;i<MAGIC.length;i++) {
+            if(pack.get(i) != MAGIC[i]) {
+                throw new IOException("not a question pack");
+            }
+        }
+        int version = pack.getInt(4);
+        if(version != VERSION) {
+            throw new IOException("unsupported question pack version " + version);
+        }
+        int size = pack.getInt(8);
+        int names = pack.getInt(12);
+        int nameTable = pack.getInt(16);
+        int questionTable = pack.getInt(20);
+        if(size < 0 || names < 0 || names > Short.MAX_VALUE
+                || !fits(pack, nameTable, (long) names * 4)
+                || !fits(pack, questionTable, (long) size * ENTRY_SIZE)) {
+            throw new IOException("corrupt question pack header");
+        }
+        return new QuestionPack(pack, size, names, nameTable, questionTable);
+    }
+
+    private static boolean fits(ByteBuffer pack, int offset, long length) {
+        return offset >= HEADER_SIZE && offset + length <= pack.limit();
+    }
+
+    /**
+     * Gets the amount of questions in the pack
+     *
+     * @return the amount of questions
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets a question in the pack
+     *
+     * @param index the index of the question
+     * @return a new view of the question, which decodes its text from the pack when it is first needed
+     * @throws IndexOutOfBoundsException when there is no question under that index,
+     *                                   or the pack is corrupt
+     */
+    public TriviaQuestion get(int index) {
+        if(index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int entry = questionTable + index * ENTRY_SIZE;
+        int record = buffer.getInt(entry);
+        byte type = buffer.get(entry + 4);
+        byte difficulty = difficultyCode(buffer.get(entry + 5) & 0xFF);
+        int category = categoryIndex(buffer.getShort(entry + 6));
+        if(type == TYPE_MULTIPLE) {
+            return new MultipleChoiceView(this, record, difficulty, category);
+        }
+        return new TrueFalseView(this, record, type == TYPE_TRUE, difficulty, category);
+    }
+
+    /**
+     * Picks questions from the pack at random, without picking any question twice
+     *
+     * @param amount the amount of questions to pick; all questions are picked if there are fewer
+     * @param random the source of randomness
+     * @return views of the picked questions, in random order
+     */
+    public List<TriviaQuestion> sample(int amount, @NonNull Random random) {
+        return pick(null, size, amount, random);
+    }
+
+    /**
+     * Picks questions from the pack at random matching a selection, without picking any question twice.
+     * Questions are matched on their entry in the question table, without reading their records;
+     * difficulties are matched regardless of case, like in a {@link QuestionIndex}
+     *
+     * @param categoryId the OpenTriviaDB id of the category, or null or -1 for any category
+     * @param difficulty the difficulty, or null for any difficulty
+     * @param type the type of question, or null for any type
+     * @param amount the amount of questions to pick
+     * @param random the source of randomness
+     * @return views of the picked questions, in random order; fewer than amount if not enough matched
+     */
+    public List<TriviaQuestion> sample(
+            @Nullable Integer categoryId,
+            @Nullable @TriviaGame.Difficulty String difficulty,
+            @Nullable @TriviaGame.QuestionType String type,
+            int amount,
+            @NonNull Random random) {
+        QuestionDictionary dictionary = QuestionDictionary.getInstance();
+        boolean anyCategory = categoryId == null || categoryId == -1;
+        int category = anyCategory ? QuestionDictionary.NONE : dictionary.indexOfCategoryId(categoryId);
+        if(!anyCategory && category == QuestionDictionary.NONE) {
+            return new ArrayList<>(0);
+        }
+        boolean multiple = TriviaGame.QuestionType.MULTIPLE.equals(type);
+
+        int[] matches = new int[size];
+        int count = 0;
+        for(int i=0;i<size;i++) {
+            int entry = questionTable + i * ENTRY_SIZE;
+            if(type != null && (buffer.get(entry + 4) == TYPE_MULTIPLE) != multiple) {
+                continue;
+            }
+            if(!anyCategory && categoryIndex(buffer.getShort(entry + 6)) != category) {
+                continue;
+            }
+            if(difficulty != null && !difficulty.equalsIgnoreCase(
+                    dictionary.getDifficulty(difficultyCode(buffer.get(entry + 5) & 0xFF)))) {
+                continue;
+            }
+            matches[count++] = i;
+        }
+        return pick(matches, count, amount, random);
+    }
+
+    /**
+     * Picks distinct questions at random
+     *
+     * @param candidates the indices of the questions to pick from, or null to pick from the whole pack
+     * @param count the amount of candidates
+     * @param amount the amount of questions to pick
+     * @param random the source of randomness
+     * @return views of the picked questions, in random order
+     */
+    private List<TriviaQuestion> pick(@Nullable int[] candidates, int count, int amount, Random random) {
+        int picks = Math.min(Math.max(amount, 0), count);
+        // Floyd's algorithm: picks distinct indices in as many steps as there are picks
+        Set<Integer> picked = new HashSet<>(picks * 2);
+        List<TriviaQuestion> questions = new ArrayList<>(picks);
+        for(int i=count - picks;i<count;i++) {
+            int index = random.nextInt(i + 1);
+            if(!picked.add(index)) {
+                index = i;
+                picked.add(index);
+            }
+            questions.add(get((candidates != null) ? candidates[index] : index));
+        }
+        Collections.shuffle(questions, random);
+        return questions;
+    }
+
+    private byte difficultyCode(int name) {
+        if(name == 0) {
+            return QuestionDictionary.NONE;
+        }
+        int code = resolvedNames[name - 1];
+        if(code == UNRESOLVED) {
+            code = QuestionDictionary.getInstance().codeOfDifficulty(readName(name - 1));
+            resolvedNames[name - 1] = code;
+        }
+        return (byte) code;
+    }
+
+    private int categoryIndex(short name) {
+        if(name == 0) {
+            return QuestionDictionary.NONE;
+        }
+        int index = resolvedNames[name - 1];
+        if(index == UNRESOLVED) {
+            index = QuestionDictionary.getInstance().indexOfCategory(readName(name - 1));
+            resolvedNames[name - 1] = index;
+        }
+        return index;
+    }
+
+    private String readName(int name) {
+        if(name >= resolvedNames.length) {
+            throw new IndexOutOfBoundsException("corrupt question pack: no name " + name);
+        }
+        return readString(buffer.getInt(nameTable + name * 4));
+    }
+
+    /**
+     * Decodes a string of a question record
+     *
+     * @param record the offset of the record
+     * @param string the index of the string within the record
+     * @return the decoded string
+     */
+    private String readString(int record, int string) {
+        int offset = record + 1;
+        for(int i=0;i<string;i++) {
+            offset += 2 + (buffer.getShort(offset) & 0xFFFF);
+        }
+        return readString(offset);
+    }
+
+    /**
+     * Decodes a string of the payload
+     *
+     * @param offset the offset of the string's length
+     * @return the decoded string
+     */
+    private String readString(int offset) {
+        int length = buffer.getShort(offset) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        // read through a duplicate, so the shared buffer's position is never touched
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset + 2);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Multiple choice question decoding its text from a pack when first needed
+     */
+    private static final class MultipleChoiceView extends MultipleChoiceQuestion {
+
+        private final QuestionPack pack;
+        private final int record;
+
+        MultipleChoiceView(QuestionPack pack, int record, byte difficultyCode, int categoryIndex) {
+            super(null, null, null, difficultyCode, categoryIndex);
+            this.pack = pack;
+            this.record = record;
+        }
+
+        @Override
+        String loadQuestion() {
+            return pack.readString(record, 0);
+        }
+
+        @Override
+        String loadRightAnswer() {
+            return pack.readString(record, 1);
+        }
+
+        @Override
+        String[] loadWrongAnswers() {
+            String[] decoded = new String[getAnswerCount() - 1];
+            for(int i=0;i<decoded.length;i++) {
+                decoded[i] = pack.readString(record, i + 2);
+            }
+            return decoded;
+        }
+
+        @Override
+        public int getAnswerCount() {
+            // the question itself is not one of the answers
+            return pack.buffer.get(record) - 1;
+        }
+    }
+
+    /**
+     * True or false question decoding its text from a pack when first needed
+     */
+    private static final class TrueFalseView extends TrueFalseQuestion {
+
+        private final QuestionPack pack;
+        private final int record;
+
+        TrueFalseView(QuestionPack pack, int record, boolean answer, byte difficultyCode, int categoryIndex) {
+            super(null, answer, difficultyCode, categoryIndex);
+            this.pack = pack;
+            this.record = record;
+        }
+
+        @Override
+        String loadQuestion() {
+            return pack.readString(record, 0);
+        }
+    }
+}
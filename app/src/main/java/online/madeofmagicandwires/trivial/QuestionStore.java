@@ -0,0 +1,647 @@
+package online.madeofmagicandwires.trivial;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Persistent on-disk store of prefetched trivia questions,
+ * so a game can be started without waiting for the network.
+ *
+ * Questions are kept in an append-only file: every batch of retrieved questions is appended to it,
+ * and every batch of questions taken from the store is recorded as a single take record.
+ * On startup the file is replayed into a {@link QuestionBank}, and once enough questions have been taken
+ * it is compacted by rewriting only the questions that are left.
+ *
+ * The store holds questions of all categories, difficulties and types, and puts the ones
+ * matching a game in it through a {@link QuestionIndex}, marking them as seen once taken.
+ * It is refilled through the {@link TriviaRequestHelper} whenever it drops below
+ * {@link #LOW_WATER_MARK} questions, and holds at most {@link #MAX_STORED} questions that have not
+ * been taken yet; questions added beyond that are left out. Taken questions stay in memory until the
+ * next compaction, so at most about twice that amount is resident at any time.
+ */
+public class QuestionStore implements TriviaRequestHelper.QuestionResponseListener {
+
+    /** amount of stored questions below which the store is refilled **/
+    public static final int LOW_WATER_MARK = 50;
+    /** amount of questions requested per refill; the maximum the API allows in one request **/
+    public static final int REFILL_AMOUNT = 50;
+    /** most questions that are stored and not taken yet; bounds the memory the store takes up **/
+    static final int MAX_STORED = 2000;
+    /** amount of taken questions after which the store file gets compacted **/
+    private static final int COMPACT_THRESHOLD = 200;
+
+    private static final String FILE_NAME = "question_store.bin";
+
+    private static final byte RECORD_BOOLEAN = 1;
+    private static final byte RECORD_MULTIPLE = 2;
+    private static final byte RECORD_TAKE = 3;
+    private static final byte RECORD_TAKE_INDICES = 4;
+
+    private static QuestionStore instance;
+
+    private final File file;
+    private final ExecutorService ioExecutor;
+    private final Executor callbackExecutor;
+    private final Random random;
+    private TriviaRequestHelper helper;
+
+    /** every question stored since the file was last compacted, in the order they were stored **/
+    private QuestionBank bank;
+    /** index over the bank, in which the questions taken are marked as seen **/
+    private QuestionIndex index;
+    /** the first question of the bank that may not have been taken yet **/
+    private int head;
+    /** the amount of questions that have not been taken yet **/
+    private int remaining;
+
+    private boolean loaded;
+    private int takenSinceCompaction;
+    private volatile boolean refilling;
+
+    /**
+     * Standard constructor
+     *
+     * @param file the file the questions are stored in; created if it does not exist yet
+     * @param callbackExecutor the executor listeners will be called on
+     */
+    QuestionStore(@NonNull File file, @NonNull Executor callbackExecutor) {
+        this.file = file;
+        this.callbackExecutor = callbackExecutor;
+        this.ioExecutor = Executors.newSingleThreadExecutor();
+        this.random = new Random();
+        this.bank = new QuestionBank();
+        this.index = new QuestionIndex(bank);
+        this.head = 0;
+        this.remaining = 0;
+        this.loaded = false;
+        this.takenSinceCompaction = 0;
+        this.refilling = false;
+    }
+
+    /**
+     * Used to retrieve the QuestionStore singleton;
+     * starts loading the stored questions in the background on first use
+     *
+     * @param appContext the application context, needed to locate the store file
+     *                   and the TriviaRequestHelper used for refilling
+     * @return the singleton QuestionStore instance
+     */
+    public static QuestionStore getInstance(@NonNull Context appContext) {
+        if(instance == null) {
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            instance = new QuestionStore(
+                    new File(appContext.getFilesDir(), FILE_NAME),
+                    mainHandler::post
+            );
+            instance.helper = TriviaRequestHelper.getInstance(appContext);
+            instance.ioExecutor.execute(instance::ensureLoaded);
+        }
+        return instance;
+    }
+
+    /**
+     * Retrieves a set amount of stored questions, removing them from the store.
+     * The store is refilled in the background if this leaves it below {@link #LOW_WATER_MARK}.
+     *
+     * @param amount the amount of questions to retrieve
+     * @param listener the event listener to be called with the questions,
+     *                 or with an error if fewer than amount questions are stored
+     */
+    public void requestQuestions(int amount, @NonNull TriviaRequestHelper.QuestionResponseListener listener) {
+        ioExecutor.execute(() -> {
+            List<TriviaQuestion> taken;
+            try {
+                taken = take(amount);
+            } catch (IOException e) {
+                Log.e("QuestionStore", "Could not update question store: " + e.getMessage());
+                taken = null;
+            }
+
+            final List<TriviaQuestion> result = taken;
+            callbackExecutor.execute(() -> {
+                if(result != null) {
+                    listener.OnQuestionsResponse(result);
+                    refill();
+                } else {
+                    listener.OnErrorResponse(
+                            TriviaRequestHelper.EndPoint.TRIVIA,
+                            "not enough stored questions"
+                    );
+                }
+            });
+        });
+    }
+
+    /**
+     * Retrieves a set amount of stored questions, removing them from the store
+     *
+     * @param amount the amount of questions to retrieve
+     * @return a future completed with the questions on the main thread,
+     *         or with a {@link TriviaRequestHelper.RequestFailedException}
+     *         if fewer than amount questions are stored
+     * @see #requestQuestions(int, TriviaRequestHelper.QuestionResponseListener)
+     */
+    public CompletableFuture<List<TriviaQuestion>> requestQuestionsAsync(int amount) {
+        CompletableFuture<List<TriviaQuestion>> future = new CompletableFuture<>();
+        requestQuestions(amount, TriviaRequestHelper.futureListener(future));
+        return future;
+    }
+
+    /**
+     * Puts stored questions matching the category, difficulty and question type of a game in it,
+     * in the background, leaving out questions played before; see
+     * {@link QuestionHistory#addQuestions(TriviaGame, QuestionIndex, int, Random)}.
+     * The questions put in the game are removed from the store, while those played before stay stored,
+     * as the history may be cleared. The game must not be used until the future has completed.
+     *
+     * @param game the game to put the questions in
+     * @param history the questions put in earlier games
+     * @param amount the amount of questions to put in the game
+     * @return a future completed on the main thread with the questions put in the game;
+     *         fewer than amount if not enough stored questions matched
+     */
+    public CompletableFuture<List<TriviaQuestion>> addQuestionsAsync(
+            @NonNull TriviaGame game, @NonNull QuestionHistory history, int amount) {
+        CompletableFuture<List<TriviaQuestion>> future = new CompletableFuture<>();
+        ioExecutor.execute(() -> {
+            List<TriviaQuestion> added = addQuestions(game, history, amount);
+            callbackExecutor.execute(() -> future.complete(added));
+        });
+        return future;
+    }
+
+    /**
+     * Imports questions in bulk from a dump in the format of the OpenTriviaDB's questions endpoint,
+     * leaving out questions that are stored already; see {@link QuestionImporter}.
+     * Questions that have been played before are stored as well, as the {@link QuestionHistory}
+     * may be cleared; they are left out when a game is put together instead.
+     * Other requests to the store wait until the import is done.
+     *
+     * @param dump the file holding the dump
+     * @return a future completed with the outcome of the import on the main thread,
+     *         or with the IOException if the dump could not be read or the questions not stored
+     */
+    public CompletableFuture<QuestionImporter.Stats> importQuestionsAsync(@NonNull File dump) {
+        CompletableFuture<QuestionImporter.Stats> future = new CompletableFuture<>();
+        ioExecutor.execute(() -> {
+            try (InputStream in = new FileInputStream(dump)) {
+                QuestionImporter.Stats stats = importQuestions(in);
+                Log.i("QuestionStore", "Imported " + dump.getName() + ": " + stats);
+                callbackExecutor.execute(() -> future.complete(stats));
+            } catch (IOException e) {
+                Log.e("QuestionStore", "Could not import " + dump.getName() + ": " + e.getMessage());
+                callbackExecutor.execute(() -> future.completeExceptionally(e));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Requests new questions from the OpenTriviaDB if the store is below {@link #LOW_WATER_MARK}
+     * and no refill is in progress already. Must be called from the main thread.
+     */
+    public void refill() {
+        if(helper == null || refilling) {
+            return;
+        }
+        refilling = true;
+        ioExecutor.execute(() -> {
+            final boolean needed = size() < LOW_WATER_MARK;
+            callbackExecutor.execute(() -> {
+                if(needed) {
+                    helper.requestQuestions(
+                            REFILL_AMOUNT,
+                            null,
+                            TriviaGame.Difficulty.ANY,
+                            this
+                    );
+                } else {
+                    refilling = false;
+                }
+            });
+        });
+    }
+
+    /**
+     * Called when a refill request has resolved; stores the retrieved questions in the background
+     *
+     * @param questions the questions retrieved from the OpenTriviaDB
+     */
+    @Override
+    public void OnQuestionsResponse(List<TriviaQuestion> questions) {
+        ioExecutor.execute(() -> {
+            try {
+                add(questions);
+            } catch (IOException | RuntimeException e) {
+                Log.e("QuestionStore", "Could not store questions: " + e);
+            } finally {
+                refilling = false;
+            }
+        });
+    }
+
+    /**
+     * Called when a refill request has failed
+     *
+     * @param lastRequest the endpoint of the request
+     * @param errorMsg the error message included.
+     */
+    @Override
+    public void OnErrorResponse(String lastRequest, @Nullable String errorMsg) {
+        Log.e("QuestionStore", "refill request to " + lastRequest + " failed: " + errorMsg);
+        refilling = false;
+    }
+
+    /**
+     * Gets the amount of questions currently stored
+     *
+     * @return the amount of questions that can still be taken from the store
+     */
+    synchronized int size() {
+        ensureLoaded();
+        return remaining;
+    }
+
+    /**
+     * Appends questions to the store, leaving out those that do not fit under {@link #MAX_STORED}
+     * and those that can't be stored, see {@link QuestionImporter#isStorable(TriviaQuestion)}
+     *
+     * @param newQuestions the questions to be stored
+     * @return the amount of questions stored
+     * @throws IOException when the questions could not be written to the store file
+     */
+    synchronized int add(@NonNull List<TriviaQuestion> newQuestions) throws IOException {
+        ensureLoaded();
+        // checked up front, as a record failing halfway would leave the file torn
+        List<TriviaQuestion> storable = new ArrayList<>(newQuestions.size());
+        for(TriviaQuestion question : newQuestions) {
+            if(QuestionImporter.isStorable(question)) {
+                storable.add(question);
+            } else {
+                Log.w("QuestionStore", "Leaving out question that can't be stored");
+            }
+        }
+        int room = Math.max(0, MAX_STORED - remaining);
+        List<TriviaQuestion> stored = (storable.size() > room)
+                ? storable.subList(0, room)
+                : storable;
+        if(stored.isEmpty()) {
+            return 0;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            for(TriviaQuestion question : stored) {
+                writeQuestion(out, question);
+            }
+        }
+        bank.addAll(stored);
+        remaining += stored.size();
+        return stored.size();
+    }
+
+    /**
+     * Imports questions in bulk, appending them to the store a chunk at a time;
+     * once the store holds {@link #MAX_STORED} questions the rest of the dump is read but not stored
+     *
+     * @param in the stream of the dump; left open
+     * @return the outcome of the import
+     * @throws IOException when the dump could not be read or the questions not stored
+     */
+    QuestionImporter.Stats importQuestions(@NonNull InputStream in) throws IOException {
+        QuestionImporter importer = new QuestionImporter();
+        synchronized (this) {
+            ensureLoaded();
+            for(int i=head;i<bank.size();i++) {
+                if(!index.isSeen(i)) {
+                    importer.exclude(bank.get(i));
+                }
+            }
+        }
+        return importer.importFrom(in, this::add);
+    }
+
+    /**
+     * Removes a set amount of questions from the store
+     *
+     * @param amount the amount of questions to take
+     * @return the questions taken, in the order they were stored,
+     *         or null if fewer than amount questions are stored
+     * @throws IOException when the take could not be recorded in the store file
+     */
+    @Nullable
+    synchronized List<TriviaQuestion> take(int amount) throws IOException {
+        ensureLoaded();
+        if(amount > remaining) {
+            return null;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true))) {
+            out.writeByte(RECORD_TAKE);
+            out.writeInt(amount);
+        }
+        List<TriviaQuestion> taken = takeFromHead(amount);
+        takenSinceCompaction += amount;
+        compactIfNeeded();
+        return taken;
+    }
+
+    /**
+     * Puts stored questions matching a game in it, removing them from the store
+     *
+     * @param game the game to put the questions in
+     * @param history the questions put in earlier games, which are left out
+     * @param amount the amount of questions to put in the game
+     * @return the questions put in the game
+     * @see #addQuestionsAsync(TriviaGame, QuestionHistory, int)
+     */
+    synchronized List<TriviaQuestion> addQuestions(
+            @NonNull TriviaGame game, @NonNull QuestionHistory history, int amount) {
+        ensureLoaded();
+        List<TriviaQuestion> added = history.addQuestions(game, index, amount, random);
+        if(added.isEmpty()) {
+            return added;
+        }
+        remaining -= added.size();
+        takenSinceCompaction += added.size();
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file, true)))) {
+                out.writeByte(RECORD_TAKE_INDICES);
+                out.writeInt(added.size());
+                for(TriviaQuestion question : added) {
+                    out.writeInt(bank.indexOf(question));
+                }
+            }
+            compactIfNeeded();
+        } catch (IOException e) {
+            // the game has the questions either way; they are only stored again after a restart
+            Log.e("QuestionStore", "Could not record taken questions: " + e.getMessage());
+        }
+        return added;
+    }
+
+    /**
+     * Marks the questions stored first that have not been taken yet as taken
+     *
+     * @param amount the amount of questions to take
+     * @return the questions taken, in the order they were stored;
+     *         fewer than amount if not enough questions are left
+     */
+    private List<TriviaQuestion> takeFromHead(int amount) {
+        List<TriviaQuestion> taken = new ArrayList<>(Math.min(amount, remaining));
+        while (taken.size() < amount && head < bank.size()) {
+            if(!index.isSeen(head)) {
+                index.markSeen(head);
+                taken.add(bank.get(head));
+            }
+            head++;
+        }
+        remaining -= taken.size();
+        return taken;
+    }
+
+    /**
+     * Marks questions as taken by their index in the bank, ignoring those that were taken already
+     *
+     * @param taken the indices of the questions in the bank
+     */
+    private void takeIndices(int[] taken) {
+        for(int question : taken) {
+            if(question >= 0 && question < bank.size() && !index.isSeen(question)) {
+                index.markSeen(question);
+                remaining--;
+            }
+        }
+    }
+
+    /**
+     * Compacts the store file once enough questions have been taken since it was last compacted
+     */
+    private void compactIfNeeded() throws IOException {
+        if(takenSinceCompaction >= COMPACT_THRESHOLD && takenSinceCompaction > remaining) {
+            compact();
+        }
+    }
+
+    /**
+     * Replays the store file into memory, if this hasn't been done already, streaming it record by record.
+     * A record that was only partially written is cut off the end of the file,
+     * and a file holding more than {@link #MAX_STORED} questions is compacted down to that amount.
+     */
+    private synchronized void ensureLoaded() {
+        if(loaded) {
+            return;
+        }
+        loaded = true;
+        if(!file.exists()) {
+            return;
+        }
+
+        long validLength = 0;
+        try (CountingInputStream counter = new CountingInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            DataInputStream in = new DataInputStream(counter);
+            try {
+                int record;
+                while ((record = in.read()) >= 0) {
+                    if(record == RECORD_TAKE) {
+                        int amount = in.readInt();
+                        takeFromHead(amount);
+                        takenSinceCompaction += amount;
+                    } else if(record == RECORD_TAKE_INDICES) {
+                        int[] taken = new int[in.readInt()];
+                        for(int i=0;i<taken.length;i++) {
+                            taken[i] = in.readInt();
+                        }
+                        takeIndices(taken);
+                        takenSinceCompaction += taken.length;
+                    } else {
+                        bank.add(readQuestion(in, (byte) record));
+                        remaining++;
+                    }
+                    validLength = counter.count;
+                }
+            } catch (IOException e) {
+                // partially written or corrupt record; drop everything after the last valid one
+                Log.w("QuestionStore", "Truncating question store at byte " + validLength);
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.setLength(validLength);
+                } catch (IOException truncateError) {
+                    Log.e("QuestionStore", "Could not truncate question store: " + truncateError.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            Log.e("QuestionStore", "Could not read question store: " + e.getMessage());
+            return;
+        }
+
+        if(remaining > MAX_STORED) {
+            try {
+                compact();
+            } catch (IOException e) {
+                Log.e("QuestionStore", "Could not compact question store: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Rewrites the store file with only the questions that have not been taken yet,
+     * up to {@link #MAX_STORED} of them
+     *
+     * @throws IOException when the compacted file could not be written
+     */
+    private void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        int kept = Math.min(remaining, MAX_STORED);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            int written = 0;
+            for(int i=head;i<bank.size() && written < kept;i++) {
+                if(!index.isSeen(i)) {
+                    writeQuestion(out, bank.get(i));
+                    written++;
+                }
+            }
+        }
+        if(!tmp.renameTo(file)) {
+            throw new IOException("Could not replace " + file + " with compacted store");
+        }
+        // questions handed out keep the old bank alive for as long as they are used
+        QuestionBank compacted = new QuestionBank(kept);
+        for(int i=head;i<bank.size() && compacted.size() < kept;i++) {
+            if(!index.isSeen(i)) {
+                compacted.add(bank, i);
+            }
+        }
+        bank = compacted;
+        index = new QuestionIndex(compacted);
+        head = 0;
+        remaining = kept;
+        takenSinceCompaction = 0;
+    }
+
+    /**
+     * Writes a single question record
+     *
+     * @param out the stream to write the record to
+     * @param question the question to write
+     * @throws IOException when the record could not be written
+     */
+    private static void writeQuestion(DataOutputStream out, TriviaQuestion question) throws IOException {
+        if(question instanceof MultipleChoiceQuestion) {
+            out.writeByte(RECORD_MULTIPLE);
+        } else {
+            out.writeByte(RECORD_BOOLEAN);
+        }
+        out.writeUTF(question.getQuestion());
+        writeNullableUTF(out, question.getDifficulty());
+        writeNullableUTF(out, question.getCategory());
+        out.writeUTF(question.getRightAnswer());
+        if(question instanceof MultipleChoiceQuestion) {
+            String[] wrongAnswers = ((MultipleChoiceQuestion) question).getWrongAnswers();
+            out.writeByte(wrongAnswers.length);
+            for(String wrongAnswer : wrongAnswers) {
+                out.writeUTF(wrongAnswer);
+            }
+        }
+    }
+
+    /**
+     * Reads a single question record
+     *
+     * @param in the stream to read the record from, positioned after the record type
+     * @param record the record type that was read
+     * @return the question stored in the record
+     * @throws IOException when the record could not be read or is of an unknown type
+     */
+    private static TriviaQuestion readQuestion(DataInputStream in, byte record) throws IOException {
+        if(record != RECORD_BOOLEAN && record != RECORD_MULTIPLE) {
+            throw new IOException("Unknown record type " + record);
+        }
+        String question = in.readUTF();
+        String difficulty = readNullableUTF(in);
+        String category = readNullableUTF(in);
+        String rightAnswer = in.readUTF();
+        if(record == RECORD_BOOLEAN) {
+            return new TrueFalseQuestion(question, Boolean.parseBoolean(rightAnswer), difficulty, category);
+        }
+
+        String[] wrongAnswers = new String[in.readUnsignedByte()];
+        for(int i=0;i<wrongAnswers.length;i++) {
+            wrongAnswers[i] = in.readUTF();
+        }
+        return new MultipleChoiceQuestion(question, rightAnswer, wrongAnswers, difficulty, category);
+    }
+
+    private static void writeNullableUTF(DataOutputStream out, @Nullable String str) throws IOException {
+        out.writeBoolean(str != null);
+        if(str != null) {
+            out.writeUTF(str);
+        }
+    }
+
+    @Nullable
+    private static String readNullableUTF(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Stream that keeps count of the bytes read through it,
+     * so the end of the last valid record is known while the store file is replayed
+     */
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if(b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if(n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,369 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.Request;
+import com.android.volley.VolleyError;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how requests to every endpoint perform: how long they waited to be sent,
+ * how long the network took, how long their responses took to parse, how large they were
+ * and which errors they failed with.
+ *
+ * Recording takes a few atomic increments, so it can be done from the network threads
+ * on every request; latencies are kept in {@link LatencyHistogram}s in microseconds.
+ * A summary can be taken at any time with {@link #getSnapshot(String)},
+ * or written out periodically with {@link #startDumping(long, File)}.
+ */
+public class RequestMetrics {
+
+    /**
+     * Summary of the performance of a single endpoint
+     */
+    public static class Snapshot {
+
+        /** the endpoint the requests were made to **/
+        public final String endPoint;
+        /** the amount of responses received **/
+        public final long responses;
+        /** the amount of failed attempts, including ones that were retried **/
+        public final long errors;
+        /**
+         * the amount of failed attempts by error code: the response code of the OpenTriviaDB,
+         * the HTTP status code, or {@link #ERROR_NO_RESPONSE} if no response was received
+         */
+        public final Map<Integer, Long> errorCodes;
+        /** the total amount of response bytes received **/
+        public final long bytes;
+        /** the size of the largest response, in bytes **/
+        public final long maxBytes;
+        /** the median time requests waited to be sent, in microseconds **/
+        public final long queueWaitP50Us;
+        /** the 99th percentile of the time requests waited to be sent, in microseconds **/
+        public final long queueWaitP99Us;
+        /** the longest time a request waited to be sent, in microseconds **/
+        public final long queueWaitMaxUs;
+        /** the median time spent on the network, in milliseconds **/
+        public final long networkP50Ms;
+        /** the 99th percentile of the time spent on the network, in milliseconds **/
+        public final long networkP99Ms;
+        /** the longest time spent on the network, in milliseconds **/
+        public final long networkMaxMs;
+        /** the median time responses took to parse, in microseconds **/
+        public final long parseP50Us;
+        /** the 99th percentile of the time responses took to parse, in microseconds **/
+        public final long parseP99Us;
+        /** the longest time a response took to parse, in microseconds **/
+        public final long parseMaxUs;
+
+        Snapshot(String endPoint, long errors, Map<Integer, Long> errorCodes,
+                 LatencyHistogram.Snapshot queueWait, LatencyHistogram.Snapshot network,
+                 LatencyHistogram.Snapshot parse, LatencyHistogram.Snapshot size) {
+            this.endPoint = endPoint;
+            this.responses = parse.count;
+            this.errors = errors;
+            this.errorCodes = errorCodes;
+            this.bytes = size.sum;
+            this.maxBytes = size.max;
+            this.queueWaitP50Us = queueWait.p50;
+            this.queueWaitP99Us = queueWait.p99;
+            this.queueWaitMaxUs = queueWait.max;
+            this.networkP50Ms = network.p50;
+            this.networkP99Ms = network.p99;
+            this.networkMaxMs = network.max;
+            this.parseP50Us = parse.p50;
+            this.parseP99Us = parse.p99;
+            this.parseMaxUs = parse.max;
+        }
+
+        /**
+         * Builds a JSON representation of this snapshot
+         *
+         * @return the snapshot as a JSON object
+         * @throws JSONException never in practice, as only numbers and strings are added
+         */
+        public JSONObject toJson() throws JSONException {
+            JSONObject errorJson = new JSONObject();
+            for(Map.Entry<Integer, Long> entry : errorCodes.entrySet()) {
+                errorJson.put(String.valueOf(entry.getKey()), entry.getValue());
+            }
+            return new JSONObject()
+                    .put("responses", responses)
+                    .put("errors", errors)
+                    .put("error_codes", errorJson)
+                    .put("bytes", bytes)
+                    .put("max_bytes", maxBytes)
+                    .put("queue_wait_us", percentilesJson(queueWaitP50Us, queueWaitP99Us, queueWaitMaxUs))
+                    .put("network_ms", percentilesJson(networkP50Ms, networkP99Ms, networkMaxMs))
+                    .put("parse_us", percentilesJson(parseP50Us, parseP99Us, parseMaxUs));
+        }
+
+        private static JSONObject percentilesJson(long p50, long p99, long max) throws JSONException {
+            return new JSONObject()
+                    .put("p50", p50)
+                    .put("p99", p99)
+                    .put("max", max);
+        }
+
+        @Override
+        public String toString() {
+            return endPoint + ": responses=" + responses + " errors=" + errorCodes + " bytes=" + bytes
+                    + " queueWait=" + queueWaitP50Us + "/" + queueWaitP99Us + "/" + queueWaitMaxUs + "us"
+                    + " network=" + networkP50Ms + "/" + networkP99Ms + "/" + networkMaxMs + "ms"
+                    + " parse=" + parseP50Us + "/" + parseP99Us + "/" + parseMaxUs + "us"
+                    + " (p50/p99/max)";
+        }
+    }
+
+    /**
+     * Ties a request to the endpoint and metrics it is recorded under,
+     * so the request can record its own response once it has parsed it
+     */
+    static final class Tag {
+        final RequestMetrics metrics;
+        final String endPoint;
+
+        Tag(RequestMetrics metrics, String endPoint) {
+            this.metrics = metrics;
+            this.endPoint = endPoint;
+        }
+    }
+
+    /**
+     * The metrics of a single endpoint
+     */
+    private static class EndPointMetrics {
+        final LatencyHistogram queueWait = new LatencyHistogram();
+        final LatencyHistogram network = new LatencyHistogram();
+        final LatencyHistogram parse = new LatencyHistogram();
+        final LatencyHistogram size = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final Map<Integer, LongAdder> errorCodes = new ConcurrentHashMap<>();
+    }
+
+    /** error code of attempts that failed without a response, such as on a timeout **/
+    public static final int ERROR_NO_RESPONSE = -1;
+
+    private final Map<String, EndPointMetrics> endPoints;
+    private ScheduledExecutorService dumper;
+    private ScheduledFuture<?> dump;
+
+    /**
+     * Standard constructor
+     */
+    public RequestMetrics() {
+        this.endPoints = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Records the time a request waited in its endpoint's queue before it was sent
+     *
+     * @param endPoint the endpoint of the request
+     * @param waitNanos the time waited, in nanoseconds
+     */
+    void recordQueueWait(@NonNull String endPoint, long waitNanos) {
+        get(endPoint).queueWait.record(TimeUnit.NANOSECONDS.toMicros(waitNanos));
+    }
+
+    /**
+     * Records a response received and parsed by a request
+     *
+     * @param endPoint the endpoint of the request
+     * @param response the raw network response
+     * @param parseNanos the time it took to parse the response, in nanoseconds
+     */
+    void recordResponse(@NonNull String endPoint, @NonNull NetworkResponse response, long parseNanos) {
+        EndPointMetrics metrics = get(endPoint);
+        metrics.network.record(response.networkTimeMs);
+        metrics.parse.record(TimeUnit.NANOSECONDS.toMicros(parseNanos));
+        metrics.size.record((response.data != null) ? response.data.length : 0);
+    }
+
+    /**
+     * Records a failed attempt of a request
+     *
+     * @param endPoint the endpoint of the request
+     * @param error the error the attempt failed with
+     */
+    void recordError(@NonNull String endPoint, @Nullable VolleyError error) {
+        recordError(endPoint, errorCodeOf(error));
+    }
+
+    /**
+     * Records a request that failed with an error code,
+     * such as a response with a non-zero OpenTriviaDB response code
+     *
+     * @param endPoint the endpoint of the request
+     * @param errorCode the code the request failed with
+     */
+    void recordError(@NonNull String endPoint, int errorCode) {
+        EndPointMetrics metrics = get(endPoint);
+        metrics.errors.increment();
+        metrics.errorCodes.computeIfAbsent(errorCode, code -> new LongAdder()).increment();
+    }
+
+    /**
+     * Records the response of a request that was sent by a {@link RequestScheduler},
+     * if it was tagged with the metrics to record it under
+     *
+     * @param request the request that parsed the response
+     * @param response the raw network response
+     * @param parseStartNanos the {@link System#nanoTime()} parsing started at
+     */
+    static void recordResponse(@NonNull Request<?> request, @NonNull NetworkResponse response, long parseStartNanos) {
+        if(request.getTag() instanceof Tag) {
+            Tag tag = (Tag) request.getTag();
+            tag.metrics.recordResponse(tag.endPoint, response, System.nanoTime() - parseStartNanos);
+        }
+    }
+
+    /**
+     * Summarises the performance of an endpoint so far
+     *
+     * @param endPoint the endpoint to summarise
+     * @return a snapshot of the endpoint's metrics
+     */
+    @NonNull
+    public Snapshot getSnapshot(@NonNull String endPoint) {
+        EndPointMetrics metrics = get(endPoint);
+        Map<Integer, Long> errorCodes = new TreeMap<>();
+        for(Map.Entry<Integer, LongAdder> entry : metrics.errorCodes.entrySet()) {
+            errorCodes.put(entry.getKey(), entry.getValue().sum());
+        }
+        return new Snapshot(
+                endPoint,
+                metrics.errors.sum(),
+                errorCodes,
+                metrics.queueWait.snapshot(),
+                metrics.network.snapshot(),
+                metrics.parse.snapshot(),
+                metrics.size.snapshot()
+        );
+    }
+
+    /**
+     * Summarises the performance of every endpoint requests have been made to
+     *
+     * @return snapshots of the metrics of every endpoint, by endpoint
+     */
+    @NonNull
+    public Map<String, Snapshot> getSnapshots() {
+        Map<String, Snapshot> snapshots = new TreeMap<>();
+        for(String endPoint : endPoints.keySet()) {
+            snapshots.put(endPoint, getSnapshot(endPoint));
+        }
+        return snapshots;
+    }
+
+    /**
+     * Builds a JSON representation of the metrics of every endpoint
+     *
+     * @return a JSON object with a snapshot of every endpoint, by endpoint
+     */
+    @NonNull
+    public JSONObject toJson() {
+        JSONObject json = new JSONObject();
+        try {
+            for(Snapshot snapshot : getSnapshots().values()) {
+                json.put(snapshot.endPoint, snapshot.toJson());
+            }
+        } catch (JSONException e) {
+            Log.e("RequestMetrics", e.getMessage());
+        }
+        return json;
+    }
+
+    /**
+     * Writes the metrics out periodically in the background:
+     * to logcat, and to a JSON file if one is given
+     *
+     * @param intervalMs the time between dumps, in milliseconds
+     * @param file the file to write the metrics to, replacing it every time; or null for logcat only
+     */
+    public synchronized void startDumping(long intervalMs, @Nullable File file) {
+        stopDumping();
+        if(dumper == null) {
+            dumper = Executors.newSingleThreadScheduledExecutor();
+        }
+        dump = dumper.scheduleWithFixedDelay(() -> dump(file), intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops writing out the metrics periodically
+     */
+    public synchronized void stopDumping() {
+        if(dump != null) {
+            dump.cancel(false);
+            dump = null;
+        }
+    }
+
+    /**
+     * Writes the metrics to logcat, and to a file if one is given
+     *
+     * @param file the file to write the metrics to as JSON, or null for logcat only
+     */
+    void dump(@Nullable File file) {
+        for(Snapshot snapshot : getSnapshots().values()) {
+            Log.i("RequestMetrics", snapshot.toString());
+        }
+        if(file == null) {
+            return;
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            writer.write(toJson().toString());
+        } catch (IOException e) {
+            Log.e("RequestMetrics", "Could not write metrics: " + e.getMessage());
+            return;
+        }
+        if(!temp.renameTo(file)) {
+            Log.e("RequestMetrics", "Could not replace " + file);
+        }
+    }
+
+    private EndPointMetrics get(String endPoint) {
+        EndPointMetrics metrics = endPoints.get(endPoint);
+        if(metrics == null) {
+            metrics = endPoints.computeIfAbsent(endPoint, e -> new EndPointMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Gets the code an error is counted under
+     *
+     * @param error the error a request failed with
+     * @return the OpenTriviaDB response code, the HTTP status code, or {@link #ERROR_NO_RESPONSE}
+     */
+    static int errorCodeOf(@Nullable VolleyError error) {
+        if(error != null && error.getCause() instanceof TriviaQuestionParser.ResponseCodeException) {
+            return ((TriviaQuestionParser.ResponseCodeException) error.getCause()).getResponseCode();
+        }
+        if(error != null && error.networkResponse != null) {
+            return error.networkResponse.statusCode;
+        }
+        return ERROR_NO_RESPONSE;
+    }
+}
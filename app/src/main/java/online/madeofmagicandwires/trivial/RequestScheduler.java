@@ -0,0 +1,436 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.NoConnectionError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces requests before they are handed to the {@link Transport}.
+ *
+ * Every endpoint gets its own token bucket, or shares one with other endpoints of an API
+ * that limits its clients as a whole: a request is only sent once its bucket holds a token,
+ * otherwise it waits in the bucket's queue until one has been refilled.
+ * Endpoints sharing a bucket share its queue as well, so their requests are sent in the order they were made.
+ * Requests that failed because of a timeout, a dropped connection, throttling or a server error
+ * are retried with an exponential, jittered backoff, up to {@link #MAX_RETRIES} times.
+ * Endpoints without a rate limit set are sent straight away.
+ */
+public class RequestScheduler {
+
+    /**
+     * Builds a fresh Volley request for every attempt, as a finished request can't be re-queued
+     */
+    public interface RequestFactory {
+        /**
+         * Builds the request for a single attempt
+         *
+         * @param errorListener the listener the request must report its errors to
+         * @return the request to be sent
+         */
+        Request<?> create(Response.ErrorListener errorListener);
+    }
+
+    /**
+     * Snapshot of the scheduling statistics of a single endpoint
+     */
+    public static class EndPointStats {
+        /** the amount of requests currently waiting for a token **/
+        public final int queueDepth;
+        /** the total amount of requests sent, including retries **/
+        public final long dispatched;
+        /** the total amount of retries **/
+        public final long retried;
+        /** the total amount of requests that were merged into an identical pending one **/
+        public final long coalesced;
+        /** the total time requests spent waiting for a token, in milliseconds **/
+        public final long totalWaitMs;
+        /** the longest time a single request spent waiting for a token, in milliseconds **/
+        public final long maxWaitMs;
+
+        EndPointStats(int queueDepth, long dispatched, long retried, long coalesced,
+                      long totalWaitMs, long maxWaitMs) {
+            this.queueDepth = queueDepth;
+            this.dispatched = dispatched;
+            this.retried = retried;
+            this.coalesced = coalesced;
+            this.totalWaitMs = totalWaitMs;
+            this.maxWaitMs = maxWaitMs;
+        }
+
+        /**
+         * Gets the average time a request spent waiting for a token
+         * @return the average wait in milliseconds, or 0 if nothing has been sent yet
+         */
+        public long getAverageWaitMs() {
+            return (dispatched > 0) ? totalWaitMs / dispatched : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "queued=" + queueDepth + " dispatched=" + dispatched + " retried=" + retried
+                    + " coalesced=" + coalesced + " avgWait=" + getAverageWaitMs() + "ms"
+                    + " maxWait=" + maxWaitMs + "ms";
+        }
+    }
+
+    /**
+     * Token bucket rate limiter; holds at most capacity tokens
+     * and refills one token every refill interval
+     */
+    static class TokenBucket {
+
+        private final int capacity;
+        private final long refillIntervalNanos;
+        private double tokens;
+        private long lastRefill;
+
+        /**
+         * Standard constructor; the bucket starts out full
+         *
+         * @param capacity the maximum amount of requests that can be sent in a burst
+         * @param refillIntervalMs the time it takes to refill a single token, in milliseconds
+         * @param now the current time in nanoseconds
+         */
+        TokenBucket(int capacity, long refillIntervalMs, long now) {
+            this.capacity = capacity;
+            this.refillIntervalNanos = TimeUnit.MILLISECONDS.toNanos(refillIntervalMs);
+            this.tokens = capacity;
+            this.lastRefill = now;
+        }
+
+        /**
+         * Tries to take a token from the bucket
+         *
+         * @param now the current time in nanoseconds
+         * @return 0 if a token was taken,
+         *         otherwise the time in nanoseconds until the next token is available
+         */
+        long tryAcquire(long now) {
+            tokens = Math.min(capacity, tokens + (double) (now - lastRefill) / refillIntervalNanos);
+            lastRefill = now;
+            if(tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) * refillIntervalNanos);
+        }
+    }
+
+    /**
+     * A request waiting to be sent or retried
+     */
+    private class PendingRequest implements Response.ErrorListener {
+
+        private final String endPoint;
+        private final RequestFactory factory;
+        private final Response.ErrorListener errorListener;
+        private long enqueuedAt;
+        private int attempt;
+
+        PendingRequest(String endPoint, RequestFactory factory, Response.ErrorListener errorListener) {
+            this.endPoint = endPoint;
+            this.factory = factory;
+            this.errorListener = errorListener;
+            this.attempt = 0;
+        }
+
+        /**
+         * Called when an attempt of this request has failed;
+         * schedules a retry, or passes the error on if it can't be retried
+         *
+         * @param error exception containing information on what went wrong
+         */
+        @Override
+        public void onErrorResponse(VolleyError error) {
+            metrics.recordError(endPoint, error);
+            if(attempt < MAX_RETRIES && isRetryable(error)) {
+                attempt++;
+                long delay = getBackoffMs(attempt);
+                Log.w("RequestScheduler", "retrying " + endPoint + " in " + delay + "ms");
+                synchronized (RequestScheduler.this) {
+                    getState(endPoint).retried++;
+                }
+                timer.schedule(() -> enqueue(this), delay, TimeUnit.MILLISECONDS);
+            } else {
+                errorListener.onErrorResponse(error);
+            }
+        }
+    }
+
+    /**
+     * Queue and rate limit of one or more endpoints
+     */
+    private static class Lane {
+        final ArrayDeque<PendingRequest> queue = new ArrayDeque<>();
+        final TokenBucket bucket;
+        boolean drainScheduled;
+
+        Lane(@Nullable TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+    }
+
+    /**
+     * Lane and statistics of a single endpoint
+     */
+    private static class EndPointState {
+        Lane lane = new Lane(null);
+        long dispatched;
+        long retried;
+        long coalesced;
+        long totalWaitMs;
+        long maxWaitMs;
+    }
+
+    /** the maximum amount of times a single request is retried **/
+    public static final int MAX_RETRIES = 3;
+    /** the backoff before the first retry, in milliseconds; doubles for every retry after **/
+    public static final long BASE_BACKOFF_MS = 1000;
+
+    private final Transport transport;
+    private final RequestMetrics metrics;
+    private final ScheduledExecutorService timer;
+    private final Map<String, EndPointState> endPoints;
+    private final Random jitter;
+
+    /**
+     * Standard constructor
+     *
+     * @param transport the transport to send requests with once they may be sent
+     */
+    public RequestScheduler(@NonNull Transport transport) {
+        this(transport, new RequestMetrics());
+    }
+
+    /**
+     * Constructor recording the performance of every request
+     *
+     * @param transport the transport to send requests with once they may be sent
+     * @param metrics the metrics to record the queue wait, responses and errors of requests in
+     */
+    public RequestScheduler(@NonNull Transport transport, @NonNull RequestMetrics metrics) {
+        this.transport = transport;
+        this.metrics = metrics;
+        this.timer = Executors.newSingleThreadScheduledExecutor();
+        this.endPoints = new HashMap<>();
+        this.jitter = new Random();
+    }
+
+    /**
+     * Limits the rate at which requests are sent to an endpoint
+     *
+     * @param endPoint the endpoint to limit
+     * @param burst the maximum amount of requests that can be sent at once
+     * @param refillIntervalMs the time after which another request may be sent, in milliseconds
+     */
+    public synchronized void setRateLimit(@NonNull String endPoint, int burst, long refillIntervalMs) {
+        moveTo(endPoint, new Lane(new TokenBucket(burst, refillIntervalMs, System.nanoTime())));
+    }
+
+    /**
+     * Limits the rate at which requests are sent to a group of endpoints together,
+     * for APIs that limit the requests of a client over all of their endpoints
+     *
+     * @param endPoints the endpoints to limit
+     * @param burst the maximum amount of requests that can be sent at once, to any of the endpoints
+     * @param refillIntervalMs the time after which another request may be sent, in milliseconds
+     */
+    public synchronized void setSharedRateLimit(@NonNull String[] endPoints, int burst, long refillIntervalMs) {
+        Lane shared = new Lane(new TokenBucket(burst, refillIntervalMs, System.nanoTime()));
+        for(String endPoint : endPoints) {
+            moveTo(endPoint, shared);
+        }
+    }
+
+    /**
+     * Lifts the rate limit of an endpoint; requests waiting for a token are sent straight away.
+     * Other endpoints it shared a rate limit with stay limited.
+     *
+     * @param endPoint the endpoint to stop limiting
+     */
+    public synchronized void removeRateLimit(@NonNull String endPoint) {
+        moveTo(endPoint, new Lane(null));
+    }
+
+    /**
+     * Schedules a request to be sent as soon as its endpoint's rate limit allows it
+     *
+     * @param endPoint the endpoint the request is made to
+     * @param factory builds the request for every attempt
+     * @param errorListener the listener to be called if the request failed after all retries
+     */
+    public void submit(
+            @NonNull String endPoint,
+            @NonNull RequestFactory factory,
+            @NonNull Response.ErrorListener errorListener) {
+        enqueue(new PendingRequest(endPoint, factory, errorListener));
+    }
+
+    /**
+     * Records that a request was merged into an identical pending request instead of being sent
+     *
+     * @param endPoint the endpoint of the merged request
+     */
+    public synchronized void recordCoalesced(@NonNull String endPoint) {
+        getState(endPoint).coalesced++;
+    }
+
+    /**
+     * Gets the metrics the performance of requests is recorded in
+     * @return the request metrics
+     */
+    public RequestMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the scheduling statistics of an endpoint
+     *
+     * @param endPoint the endpoint to get the statistics of
+     * @return a snapshot of the endpoint's statistics
+     */
+    public synchronized EndPointStats getStats(@NonNull String endPoint) {
+        EndPointState state = getState(endPoint);
+        int queueDepth = 0;
+        for(PendingRequest request : state.lane.queue) {
+            if(request.endPoint.equals(endPoint)) {
+                queueDepth++;
+            }
+        }
+        return new EndPointStats(
+                queueDepth,
+                state.dispatched,
+                state.retried,
+                state.coalesced,
+                state.totalWaitMs,
+                state.maxWaitMs
+        );
+    }
+
+    /**
+     * Adds a request to its endpoint's queue and tries to send it
+     *
+     * @param request the request to be sent
+     */
+    private synchronized void enqueue(PendingRequest request) {
+        request.enqueuedAt = System.nanoTime();
+        Lane lane = getState(request.endPoint).lane;
+        lane.queue.add(request);
+        drain(lane);
+    }
+
+    /**
+     * Puts an endpoint in another lane, taking its waiting requests along in their order,
+     * and sends them as far as the new lane's rate limit allows
+     *
+     * @param endPoint the endpoint to move
+     * @param lane the lane to put the endpoint in
+     */
+    private void moveTo(String endPoint, Lane lane) {
+        EndPointState state = getState(endPoint);
+        Iterator<PendingRequest> waiting = state.lane.queue.iterator();
+        while (waiting.hasNext()) {
+            PendingRequest request = waiting.next();
+            if(request.endPoint.equals(endPoint)) {
+                waiting.remove();
+                lane.queue.add(request);
+            }
+        }
+        state.lane = lane;
+        drain(lane);
+    }
+
+    /**
+     * Sends as many queued requests of a lane as its rate limit allows,
+     * and schedules another drain once the next token is available
+     *
+     * @param lane the lane to send the requests of
+     */
+    private synchronized void drain(Lane lane) {
+        while (!lane.queue.isEmpty()) {
+            long now = System.nanoTime();
+            long wait = (lane.bucket != null) ? lane.bucket.tryAcquire(now) : 0;
+            if(wait > 0) {
+                if(!lane.drainScheduled) {
+                    lane.drainScheduled = true;
+                    timer.schedule(() -> {
+                        synchronized (RequestScheduler.this) {
+                            lane.drainScheduled = false;
+                            drain(lane);
+                        }
+                    }, wait, TimeUnit.NANOSECONDS);
+                }
+                return;
+            }
+
+            PendingRequest request = lane.queue.poll();
+            String endPoint = request.endPoint;
+            EndPointState state = getState(endPoint);
+            long waitedMs = TimeUnit.NANOSECONDS.toMillis(now - request.enqueuedAt);
+            state.dispatched++;
+            state.totalWaitMs += waitedMs;
+            state.maxWaitMs = Math.max(state.maxWaitMs, waitedMs);
+            metrics.recordQueueWait(endPoint, now - request.enqueuedAt);
+
+            Request<?> attempt = request.factory.create(request);
+            // lets the request record its own response once it has parsed it
+            attempt.setTag(new RequestMetrics.Tag(metrics, endPoint));
+            transport.send(attempt);
+        }
+    }
+
+    private EndPointState getState(String endPoint) {
+        EndPointState state = endPoints.get(endPoint);
+        if(state == null) {
+            state = new EndPointState();
+            endPoints.put(endPoint, state);
+        }
+        return state;
+    }
+
+    /**
+     * Gets the jittered backoff before a retry
+     *
+     * @param attempt the number of the retry, starting at 1
+     * @return the time to wait before retrying, in milliseconds;
+     *         between half and one and a half times the exponential backoff
+     */
+    private long getBackoffMs(int attempt) {
+        long backoff = BASE_BACKOFF_MS << (attempt - 1);
+        return backoff / 2 + (long) (jitter.nextDouble() * backoff);
+    }
+
+    /**
+     * Checks whether a failed request is worth retrying
+     *
+     * @param error the error the request failed with
+     * @return true for timeouts, dropped connections, throttling and server errors
+     */
+    static boolean isRetryable(@Nullable VolleyError error) {
+        if(error instanceof TimeoutError || error instanceof NoConnectionError) {
+            return true;
+        }
+        if(error != null && error.getCause() instanceof TriviaQuestionParser.ResponseCodeException) {
+            return ((TriviaQuestionParser.ResponseCodeException) error.getCause()).getResponseCode()
+                    == TriviaRequestHelper.RESPONSE_CODE_RATE_LIMIT;
+        }
+        NetworkResponse response = (error != null) ? error.networkResponse : null;
+        return response != null && (response.statusCode == 429 || response.statusCode >= 500);
+    }
+}
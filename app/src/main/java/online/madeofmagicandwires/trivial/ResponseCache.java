@@ -0,0 +1,296 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Two-tiered cache for JSON responses that rarely change, keyed by request url.
+ *
+ * Entries are kept in an in-memory LRU map, backed by one file per entry on disk
+ * so they survive the app being restarted. The cache itself does not expire anything;
+ * callers decide whether an entry is fresh, stale or expired through a {@link Policy}.
+ */
+public class ResponseCache {
+
+    /**
+     * How long the responses of an endpoint may be served from the cache
+     */
+    public static class Policy {
+
+        /** time in milliseconds an entry is served without revalidating it **/
+        public final long ttlMs;
+        /** time in milliseconds after the ttl an entry is still served while it is revalidated **/
+        public final long staleMs;
+
+        /**
+         * Standard constructor
+         *
+         * @param ttlMs time in milliseconds an entry is served without revalidating it
+         * @param staleMs time in milliseconds after the ttl an entry is still served
+         *                while it is revalidated in the background
+         */
+        public Policy(long ttlMs, long staleMs) {
+            this.ttlMs = ttlMs;
+            this.staleMs = staleMs;
+        }
+
+        /**
+         * Checks whether an entry should be revalidated
+         * @param entry the entry to check
+         * @param now the current time in milliseconds
+         * @return true if the entry is older than the ttl
+         */
+        public boolean isStale(@NonNull Entry entry, long now) {
+            return now - entry.storedAt > ttlMs;
+        }
+
+        /**
+         * Checks whether an entry may no longer be served at all
+         * @param entry the entry to check
+         * @param now the current time in milliseconds
+         * @return true if the entry is older than the ttl plus the stale window
+         */
+        public boolean isExpired(@NonNull Entry entry, long now) {
+            return now - entry.storedAt > ttlMs + staleMs;
+        }
+    }
+
+    /**
+     * A single cached response
+     */
+    public static class Entry {
+
+        private final String body;
+        private JSONObject json;
+        private final String etag;
+        private final String lastModified;
+        private volatile long storedAt;
+
+        /**
+         * Standard constructor
+         *
+         * @param body the response body
+         * @param json the parsed response body, or null to parse it on first use
+         * @param etag the ETag header of the response, if any
+         * @param lastModified the Last-Modified header of the response, if any
+         * @param storedAt the time the response was retrieved, in milliseconds
+         */
+        public Entry(
+                @NonNull String body,
+                @Nullable JSONObject json,
+                @Nullable String etag,
+                @Nullable String lastModified,
+                long storedAt) {
+            this.body = body;
+            this.json = json;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.storedAt = storedAt;
+        }
+
+        /**
+         * Gets the parsed response, parsing it the first time
+         * @return the response as a JSONObject
+         * @throws JSONException when the stored body is not a valid JSON object
+         */
+        public synchronized JSONObject getJson() throws JSONException {
+            if(json == null) {
+                json = new JSONObject(body);
+            }
+            return json;
+        }
+
+        public String getBody() {
+            return body;
+        }
+
+        @Nullable
+        public String getEtag() {
+            return etag;
+        }
+
+        @Nullable
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public long getStoredAt() {
+            return storedAt;
+        }
+    }
+
+    private final File directory;
+    private final LinkedHashMap<String, Entry> memory;
+
+    private long hits;
+    private long staleHits;
+    private long misses;
+
+    /**
+     * Standard constructor
+     *
+     * @param directory the directory to keep the disk tier in; created if it does not exist
+     * @param maxMemoryEntries the maximum amount of entries kept in memory
+     */
+    public ResponseCache(@NonNull File directory, final int maxMemoryEntries) {
+        this.directory = directory;
+        // access ordered, so the least recently used entry is evicted first
+        this.memory = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxMemoryEntries;
+            }
+        };
+    }
+
+    /**
+     * Looks up the cached response of a request, falling back to the disk tier on a memory miss,
+     * and counts it as a hit, stale hit or miss
+     *
+     * @param url the url of the request
+     * @param policy the policy deciding whether the entry may be served
+     * @param now the current time in milliseconds
+     * @return the cached response, or null if there is none or it has expired
+     */
+    @Nullable
+    public synchronized Entry get(@NonNull String url, @NonNull Policy policy, long now) {
+        Entry entry = memory.get(url);
+        if(entry == null) {
+            entry = readFromDisk(url);
+            if(entry != null) {
+                memory.put(url, entry);
+            }
+        }
+
+        if(entry == null || policy.isExpired(entry, now)) {
+            misses++;
+            return null;
+        }
+        if(policy.isStale(entry, now)) {
+            staleHits++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    /**
+     * Stores a response in memory and on disk
+     *
+     * @param url the url of the request
+     * @param entry the response to store
+     */
+    public synchronized void put(@NonNull String url, @NonNull Entry entry) {
+        memory.put(url, entry);
+        writeToDisk(url, entry);
+    }
+
+    /**
+     * Marks a cached response as fresh again, after the server confirmed it did not change
+     *
+     * @param url the url of the request
+     * @param entry the cached response that was revalidated
+     * @param now the current time in milliseconds
+     */
+    public synchronized void touch(@NonNull String url, @NonNull Entry entry, long now) {
+        entry.storedAt = now;
+        writeToDisk(url, entry);
+    }
+
+    /**
+     * Gets the amount of lookups served with a fresh entry
+     * @return the amount of fresh hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    /**
+     * Gets the amount of lookups served with a stale entry that needed revalidating
+     * @return the amount of stale hits
+     */
+    public synchronized long getStaleHitCount() {
+        return staleHits;
+    }
+
+    /**
+     * Gets the amount of lookups that had to go to the network
+     * @return the amount of misses
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Gets the file an entry is stored in
+     * @param url the url of the request
+     * @return the file in the cache directory
+     */
+    private File getFile(String url) {
+        return new File(directory, Integer.toHexString(url.hashCode()));
+    }
+
+    @Nullable
+    private Entry readFromDisk(String url) {
+        File file = getFile(url);
+        if(!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            // the file name is only a hash, so check this is really the entry for this url
+            if(!url.equals(in.readUTF())) {
+                return null;
+            }
+            long storedAt = in.readLong();
+            String etag = in.readBoolean() ? in.readUTF() : null;
+            String lastModified = in.readBoolean() ? in.readUTF() : null;
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            return new Entry(new String(body, StandardCharsets.UTF_8), null, etag, lastModified, storedAt);
+        } catch (IOException e) {
+            Log.w("ResponseCache", "Could not read cached response for " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String url, Entry entry) {
+        if(!directory.exists() && !directory.mkdirs()) {
+            Log.w("ResponseCache", "Could not create cache directory " + directory);
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(getFile(url))))) {
+            out.writeUTF(url);
+            out.writeLong(entry.storedAt);
+            out.writeBoolean(entry.etag != null);
+            if(entry.etag != null) {
+                out.writeUTF(entry.etag);
+            }
+            out.writeBoolean(entry.lastModified != null);
+            if(entry.lastModified != null) {
+                out.writeUTF(entry.lastModified);
+            }
+            byte[] body = entry.body.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(body.length);
+            out.write(body);
+        } catch (IOException e) {
+            Log.w("ResponseCache", "Could not write cached response for " + url + ": " + e.getMessage());
+        }
+    }
+}
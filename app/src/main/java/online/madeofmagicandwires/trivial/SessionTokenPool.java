@@ -0,0 +1,242 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of OpenTriviaDB session tokens: the token questions are currently requested with,
+ * and a few spare tokens acquired in advance.
+ *
+ * A spare token can take over straight away when the current one runs out of questions
+ * or is no longer known to the API, without waiting on a round trip.
+ * The pool is saved to a file whenever it changes, so tokens survive between launches
+ * for as long as the API keeps them around.
+ */
+class SessionTokenPool {
+
+    /** the OpenTriviaDB deletes tokens that have not been used for six hours **/
+    static final long TOKEN_LIFETIME_MS = TimeUnit.HOURS.toMillis(6);
+    /** tokens are no longer used this long before they would be deleted, to be on the safe side **/
+    private static final long EXPIRY_MARGIN_MS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * A single token and the last time it was used
+     */
+    private static final class Token {
+        final String value;
+        long lastUsed;
+
+        Token(String value, long lastUsed) {
+            this.value = value;
+            this.lastUsed = lastUsed;
+        }
+
+        boolean isAlive(long now) {
+            return now - lastUsed < TOKEN_LIFETIME_MS - EXPIRY_MARGIN_MS;
+        }
+    }
+
+    @Nullable private final File file;
+    private final Executor ioExecutor;
+    private final ArrayDeque<Token> spares;
+    private Token current;
+
+    /**
+     * Standard constructor; loads the tokens saved by a previous pool
+     *
+     * @param file the file to save the tokens in, or null to keep them in memory only
+     * @param ioExecutor the executor the file is written on
+     */
+    SessionTokenPool(@Nullable File file, @NonNull Executor ioExecutor) {
+        this.file = file;
+        this.ioExecutor = ioExecutor;
+        this.spares = new ArrayDeque<>();
+        load();
+    }
+
+    /**
+     * Gets the token to request questions with, replacing it by a spare token
+     * if it was retired or expired
+     *
+     * @param now the current time in milliseconds
+     * @return the current token, or null if there are no usable tokens
+     */
+    @Nullable
+    synchronized String getCurrent(long now) {
+        if(current != null && !current.isAlive(now)) {
+            current = null;
+        }
+        boolean changed = false;
+        while (current == null && !spares.isEmpty()) {
+            Token spare = spares.poll();
+            if(spare.isAlive(now)) {
+                current = spare;
+            }
+            changed = true;
+        }
+        if(changed) {
+            save();
+        }
+        return (current != null) ? current.value : null;
+    }
+
+    /**
+     * Makes a token the current token, dropping the one it replaces
+     *
+     * @param token the new current token
+     * @param now the current time in milliseconds
+     */
+    synchronized void setCurrent(@NonNull String token, long now) {
+        removeSpare(token);
+        current = new Token(token, now);
+        save();
+    }
+
+    /**
+     * Adds a token to use once the current one can no longer be used
+     *
+     * @param token the spare token
+     * @param now the current time in milliseconds
+     */
+    synchronized void addSpare(@NonNull String token, long now) {
+        if(current != null && current.value.equals(token)) {
+            return;
+        }
+        removeSpare(token);
+        spares.add(new Token(token, now));
+        save();
+    }
+
+    /**
+     * Stops using a token, such as when the API no longer knows it or it ran out of questions
+     *
+     * @param token the token to retire
+     * @return true if the token was in the pool
+     */
+    synchronized boolean retire(@NonNull String token) {
+        boolean found = removeSpare(token);
+        if(current != null && current.value.equals(token)) {
+            current = null;
+            found = true;
+        }
+        if(found) {
+            save();
+        }
+        return found;
+    }
+
+    /**
+     * Marks the current token as used, keeping it alive
+     *
+     * @param now the current time in milliseconds
+     */
+    synchronized void touch(long now) {
+        // not saved, as a token seeming older than it is only makes it expire early
+        if(current != null) {
+            current.lastUsed = now;
+        }
+    }
+
+    /**
+     * Counts the spare tokens that can still be used
+     *
+     * @param now the current time in milliseconds
+     * @return the amount of usable spare tokens
+     */
+    synchronized int getSpareCount(long now) {
+        int count = 0;
+        for(Token spare : spares) {
+            if(spare.isAlive(now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean removeSpare(String token) {
+        Iterator<Token> it = spares.iterator();
+        while (it.hasNext()) {
+            if(it.next().value.equals(token)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the tokens saved by a previous pool, the current token first
+     */
+    private void load() {
+        if(file == null || !file.exists()) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int split = line.indexOf(' ');
+                if(split <= 0) {
+                    continue;
+                }
+                Token token = new Token(line.substring(split + 1), Long.parseLong(line.substring(0, split)));
+                if(current == null) {
+                    current = token;
+                } else {
+                    spares.add(token);
+                }
+            }
+        } catch (IOException | NumberFormatException e) {
+            Log.e("SessionTokenPool", "Could not read session tokens: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the tokens to the file in the background, replacing the previous file as a whole
+     */
+    private void save() {
+        if(file == null) {
+            return;
+        }
+        List<Token> tokens = new ArrayList<>(spares.size() + 1);
+        if(current != null) {
+            tokens.add(new Token(current.value, current.lastUsed));
+        }
+        for(Token spare : spares) {
+            tokens.add(new Token(spare.value, spare.lastUsed));
+        }
+        ioExecutor.execute(() -> write(tokens));
+    }
+
+    private void write(List<Token> tokens) {
+        File temp = new File(file.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for(Token token : tokens) {
+                writer.write(token.lastUsed + " " + token.value + "\n");
+            }
+        } catch (IOException e) {
+            Log.e("SessionTokenPool", "Could not save session tokens: " + e.getMessage());
+            return;
+        }
+        if(!temp.renameTo(file)) {
+            Log.e("SessionTokenPool", "Could not replace " + file);
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package online.madeofmagicandwires.trivial;
+
+import android.os.Build;
+import android.os.Trace;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Trace sections along the way from starting a game to showing its first question,
+ * so a single systrace or Perfetto capture shows where the time to the first question goes.
+ *
+ * Sections are only traced if the build was made with tracing switched on,
+ * see {@link BuildConfig#TRACE_ENABLED}; otherwise every method returns straight away,
+ * as its body is left out at compile time.
+ * Sections named after an endpoint and batch size only build their name when tracing is on,
+ * so callers can pass them in without paying for it in builds without tracing.
+ */
+final class Tracing {
+
+    /** whether trace sections are written; set at build time **/
+    static final boolean ENABLED = BuildConfig.TRACE_ENABLED;
+
+    /** the longest section name systrace accepts **/
+    private static final int MAX_NAME_LENGTH = 127;
+
+    /**
+     * A section that may begin and end on different threads, such as a request in flight
+     */
+    static final class AsyncSection {
+        private final String name;
+        private final int cookie;
+
+        private AsyncSection(String name, int cookie) {
+            this.name = name;
+            this.cookie = cookie;
+        }
+
+        /**
+         * Ends the section; can be called from any thread, but only once
+         */
+        void end() {
+            if(ENABLED && name != null) {
+                invokeAsync(asyncEnd, name, cookie);
+            }
+        }
+    }
+
+    /** returned instead of a section when tracing is off **/
+    private static final AsyncSection NO_SECTION = new AsyncSection(null, 0);
+
+    private static final AtomicInteger cookies = new AtomicInteger();
+    // written once before the first async section begins, read by whichever thread ends it
+    private static volatile Method asyncBegin;
+    private static volatile Method asyncEnd;
+    private static volatile long appTag;
+    private static boolean asyncResolved;
+
+    private Tracing() {
+    }
+
+    /**
+     * Begins a section on the current thread; must be ended by {@link #endSection()} on the same thread
+     *
+     * @param name the name of the section
+     */
+    static void beginSection(@NonNull String name) {
+        if(ENABLED) {
+            Trace.beginSection(truncate(name));
+        }
+    }
+
+    /**
+     * Begins a section on the current thread tagged with an endpoint and batch size;
+     * must be ended by {@link #endSection()} on the same thread
+     *
+     * @param name the name of the section
+     * @param endPoint the endpoint, or other source, the work is done for
+     * @param batchSize the amount of questions the work is done on
+     */
+    static void beginSection(@NonNull String name, @NonNull String endPoint, int batchSize) {
+        if(ENABLED) {
+            Trace.beginSection(truncate(name(name, endPoint, batchSize)));
+        }
+    }
+
+    /**
+     * Ends the most recent section begun on the current thread
+     */
+    static void endSection() {
+        if(ENABLED) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Begins a section that may end on another thread
+     *
+     * @param name the name of the section
+     * @return the section, to end once the work is done
+     */
+    @NonNull
+    static AsyncSection beginAsyncSection(@NonNull String name) {
+        if(!ENABLED) {
+            return NO_SECTION;
+        }
+        AsyncSection section = new AsyncSection(truncate(name), cookies.incrementAndGet());
+        invokeAsync(asyncBegin(), section.name, section.cookie);
+        return section;
+    }
+
+    /**
+     * Begins a section tagged with an endpoint and batch size that may end on another thread
+     *
+     * @param name the name of the section
+     * @param endPoint the endpoint, or other source, the work is done for
+     * @param batchSize the amount of questions the work is done on
+     * @return the section, to end once the work is done
+     */
+    @NonNull
+    static AsyncSection beginAsyncSection(@NonNull String name, @NonNull String endPoint, int batchSize) {
+        if(!ENABLED) {
+            return NO_SECTION;
+        }
+        return beginAsyncSection(name(name, endPoint, batchSize));
+    }
+
+    private static String name(String name, String endPoint, int batchSize) {
+        return (batchSize > 0)
+                ? name + " " + endPoint + " n=" + batchSize
+                : name + " " + endPoint;
+    }
+
+    private static String truncate(String name) {
+        return (name.length() > MAX_NAME_LENGTH) ? name.substring(0, MAX_NAME_LENGTH) : name;
+    }
+
+    /**
+     * Looks up the methods async sections are traced with.
+     * Android 10 made them public as Trace.beginAsyncSection and Trace.endAsyncSection;
+     * before that they exist as hidden methods taking the tag of the app's trace category,
+     * which is what the support library's tracing does as well.
+     *
+     * @return the method beginning an async section, or null if it could not be found
+     */
+    @Nullable
+    private static synchronized Method asyncBegin() {
+        if(asyncResolved) {
+            return asyncBegin;
+        }
+        asyncResolved = true;
+        try {
+            if(Build.VERSION.SDK_INT >= 29) {
+                asyncBegin = Trace.class.getMethod("beginAsyncSection", String.class, int.class);
+                asyncEnd = Trace.class.getMethod("endAsyncSection", String.class, int.class);
+            } else {
+                appTag = Trace.class.getField("TRACE_TAG_APP").getLong(null);
+                asyncBegin = Trace.class.getMethod("asyncTraceBegin", long.class, String.class, int.class);
+                asyncEnd = Trace.class.getMethod("asyncTraceEnd", long.class, String.class, int.class);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Log.w("Tracing", "async trace sections are not available: " + e);
+            asyncBegin = null;
+            asyncEnd = null;
+        }
+        return asyncBegin;
+    }
+
+    private static void invokeAsync(@Nullable Method method, String name, int cookie) {
+        if(method == null) {
+            return;
+        }
+        try {
+            if(method.getParameterTypes().length == 2) {
+                method.invoke(null, name, cookie);
+            } else {
+                method.invoke(null, appTag, name, cookie);
+            }
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            Log.w("Tracing", "could not trace " + name + ": " + e);
+        }
+    }
+}
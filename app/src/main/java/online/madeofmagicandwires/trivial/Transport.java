@@ -0,0 +1,42 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+
+import com.android.volley.Request;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Sends the requests of a {@link VolleyRequestsHelper} over the network.
+ *
+ * Requests are passed on as Volley requests, which parse their own responses
+ * and report them to their own listeners; a transport only decides how they are sent
+ * and on which thread those listeners are called.
+ *
+ * @see VolleyTransport for sending requests through a Volley request queue on Android
+ * @see HttpTransport for sending requests without an Android context, such as on a plain JVM
+ */
+public interface Transport {
+
+    /**
+     * Sends a request; its response or error is delivered through the request's own listeners
+     *
+     * @param request the request to send
+     */
+    void send(@NonNull Request<?> request);
+
+    /**
+     * Gets the executor responses are delivered on,
+     * to hand over results that were finished off that thread in the same way
+     *
+     * @return the executor the request listeners are called on
+     */
+    @NonNull
+    Executor getDelivery();
+
+    /**
+     * Stops sending requests and releases the transport's threads;
+     * requests that are still pending are dropped
+     */
+    void stop();
+}
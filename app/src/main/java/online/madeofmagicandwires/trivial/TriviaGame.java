@@ -1,11 +1,16 @@
 package online.madeofmagicandwires.trivial;
 
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.StringDef;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.IndexOutOfBoundsException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 
 public class TriviaGame {
@@ -36,7 +41,9 @@ public class TriviaGame {
     private boolean gameOver;
     private int questionAmount;
     private int questionIndex;
-    private List<TriviaQuestion> questions;
+    private QuestionBank questions;
+    /** the content of every question in the bank; only kept once repeats are checked for **/
+    private QuestionHashSet questionHashes;
     private int score;
     private @Difficulty String gameDifficulty;
     private int gameCategory;
@@ -159,11 +166,137 @@ public class TriviaGame {
      * @param newQuestions the list of new questions that has been generated or retrieved
      */
     public void setQuestions(List<TriviaQuestion> newQuestions) {
-        if(this.questionIndex != 0 || this.questions == null) {
-            this.questions = newQuestions;
-        } else {
-            this.questions.addAll(newQuestions);
+        if(this.questions == null) {
+            this.questions = new QuestionBank(Math.max(questionAmount, newQuestions.size()));
         }
+        this.questions.addAll(newQuestions);
+        if(questionHashes != null) {
+            for(TriviaQuestion question : newQuestions) {
+                questionHashes.add(question);
+            }
+        }
+    }
+
+    /**
+     * Adds questions that are not in this game yet, leaving out any repeats, whether of
+     * questions added before or of each other; repeats are told apart by their content,
+     * see {@link QuestionHashSet}, rather than by going over the questions of the game
+     *
+     * @param newQuestions the questions to add, in order
+     * @param max the most questions to add
+     * @return the questions that were added
+     */
+    public List<TriviaQuestion> addNewQuestions(@NonNull List<TriviaQuestion> newQuestions, int max) {
+        QuestionHashSet hashes = getQuestionHashes();
+        List<TriviaQuestion> added = new ArrayList<>(Math.min(newQuestions.size(), Math.max(max, 0)));
+        for(TriviaQuestion question : newQuestions) {
+            if(added.size() >= max) {
+                break;
+            }
+            if(hashes.add(question)) {
+                added.add(question);
+            }
+        }
+        if(this.questions == null) {
+            this.questions = new QuestionBank(Math.max(questionAmount, added.size()));
+        }
+        this.questions.addAll(added);
+        return added;
+    }
+
+    /**
+     * Gets the content of every question of this game,
+     * hashing the questions added so far the first time it is needed
+     *
+     * @return the hashes of the questions of this game
+     */
+    private QuestionHashSet getQuestionHashes() {
+        if(questionHashes == null) {
+            int loaded = getLoadedQuestionCount();
+            questionHashes = new QuestionHashSet(Math.max(questionAmount, loaded));
+            for(int i=0;i<loaded;i++) {
+                questionHashes.add(questions.get(i));
+            }
+        }
+        return questionHashes;
+    }
+
+    /**
+     * Adds questions from a local index matching this game's difficulty, category and question type,
+     * rather than requesting them from the OpenTriviaDB.
+     * Added questions are marked as seen in the index, so they won't be picked again for other games.
+     *
+     * @param index the index of locally stored questions to pick from
+     * @param amount the amount of questions to add
+     * @param random the source of randomness to pick questions with
+     * @return the amount of questions added; fewer than amount if not enough unseen questions matched
+     * @see #addNewQuestions(QuestionIndex, int, Random, QuestionHashSet) for how repeats are left out
+     */
+    public int addQuestions(@NonNull QuestionIndex index, int amount, @NonNull Random random) {
+        return addNewQuestions(index, amount, random, null).size();
+    }
+
+    /**
+     * Adds questions from a local index like {@link #addQuestions(QuestionIndex, int, Random)},
+     * leaving out repeats of questions in this game and questions that were played before;
+     * those are picked again until enough questions were added or none match anymore,
+     * and remain available in the index for later games
+     *
+     * @param index the index of locally stored questions to pick from
+     * @param amount the amount of questions to add
+     * @param random the source of randomness to pick questions with
+     * @param played the questions played before, such as those of the {@link QuestionHistory}, if any
+     * @return the questions that were added
+     */
+    public List<TriviaQuestion> addNewQuestions(
+            @NonNull QuestionIndex index,
+            int amount,
+            @NonNull Random random,
+            @Nullable QuestionHashSet played) {
+        String difficulty = Difficulty.UNKNOWN.equals(gameDifficulty) ? Difficulty.ANY : gameDifficulty;
+        QuestionHashSet hashes = getQuestionHashes();
+        QuestionBank bank = index.getBank();
+        if(this.questions == null) {
+            this.questions = new QuestionBank(Math.max(questionAmount, amount));
+        }
+        List<TriviaQuestion> added = new ArrayList<>(Math.max(amount, 0));
+        int[] rejected = new int[0];
+        int rejectedCount = 0;
+        while (added.size() < amount) {
+            int[] picked = index.sample(gameCategory, difficulty, gameQuestionType, amount - added.size(), random);
+            if(picked.length == 0) {
+                break;
+            }
+            // keep them from being picked again, whether they are added or not
+            index.markSeen(picked);
+            for(int question : picked) {
+                TriviaQuestion view = bank.get(question);
+                long hash = QuestionHashSet.hashOf(view);
+                if((played != null && played.contains(hash)) || !hashes.add(hash)) {
+                    if(rejectedCount == rejected.length) {
+                        rejected = Arrays.copyOf(rejected, Math.max(rejectedCount * 2, 8));
+                    }
+                    rejected[rejectedCount++] = question;
+                    continue;
+                }
+                this.questions.add(bank, question);
+                added.add(view);
+            }
+        }
+        if(rejectedCount > 0) {
+            index.unmarkSeen(Arrays.copyOf(rejected, rejectedCount));
+        }
+        return added;
+    }
+
+    /**
+     * Gets the amount of questions that have been set for this game so far
+     *
+     * @return the amount of questions retrieved for this game, including those already asked
+     * @see TriviaGame#setQuestions(List) to add questions to this game
+     */
+    public int getLoadedQuestionCount() {
+        return (questions != null) ? questions.size() : 0;
     }
 
 
@@ -210,6 +343,15 @@ public class TriviaGame {
         this.gameDifficulty = gameDifficulty;
     }
 
+    /**
+     * Gets the type of questions asked this game
+     *
+     * @return one of {@link QuestionType}; {@link QuestionType#ANY} if questions of all types are asked
+     */
+    @QuestionType String getGameQuestionType() {
+        return gameQuestionType;
+    }
+
     /**
      * Gets the amount of questions to be asked this game before it ends
      * If set to 0 it means the game will go on forever
@@ -263,6 +405,43 @@ public class TriviaGame {
         }
     }
 
+    /**
+     * Ends the game before all of its questions were asked, such as when no more questions could be loaded
+     */
+    public void endGame() {
+        this.gameOver = true;
+    }
+
+    /**
+     * Gets the bank the questions of this game are kept in
+     *
+     * @return the bank, or null if no questions have been set yet
+     */
+    QuestionBank getQuestionBank() {
+        return questions;
+    }
+
+    /**
+     * Replaces the questions of this game by those of a bank, such as a decoded saved game
+     *
+     * @param bank the bank holding the questions, which the game takes over
+     */
+    void setQuestionBank(@NonNull QuestionBank bank) {
+        this.questions = bank;
+        this.questionHashes = null;
+    }
+
+    /**
+     * Puts a restored game back where it was left
+     *
+     * @param questionIndex the index of the question the player was at
+     * @param gameOver whether the game had already ended
+     */
+    void restoreProgress(int questionIndex, boolean gameOver) {
+        this.questionIndex = questionIndex;
+        this.gameOver = gameOver;
+    }
+
     /**
      * Checks if the game is currently still in progress or ended.
      * @return a boolean representing the state of the game;
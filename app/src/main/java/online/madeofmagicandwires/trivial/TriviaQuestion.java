@@ -9,9 +9,11 @@ import java.util.List;
 abstract public class TriviaQuestion {
 
 
-    private String question;
-    private @TriviaGame.Difficulty String difficulty;
-    private String category;
+    /** the question; for questions whose text is loaded when first asked for, null until then **/
+    private volatile String question;
+    /** the difficulty and category, as their code and index in the {@link QuestionDictionary} **/
+    private final byte difficulty;
+    private final int category;
 
 
     /**
@@ -25,9 +27,23 @@ abstract public class TriviaQuestion {
             String question,
             @TriviaGame.Difficulty String difficulty,
             String category) {
+        QuestionDictionary dictionary = QuestionDictionary.getInstance();
         this.question = question;
-        this.difficulty = difficulty;
-        this.category = category;
+        this.difficulty = dictionary.codeOfDifficulty(difficulty);
+        this.category = dictionary.indexOfCategory(category);
+    }
+
+    /**
+     * Constructor for questions whose difficulty and category are already in the {@link QuestionDictionary}
+     *
+     * @param question the question to be asked
+     * @param difficultyCode the code of the difficulty level of the question
+     * @param categoryIndex the index of the category the question belongs to
+     */
+    TriviaQuestion(String question, byte difficultyCode, int categoryIndex) {
+        this.question = question;
+        this.difficulty = difficultyCode;
+        this.category = categoryIndex;
     }
 
     /**
@@ -53,12 +69,29 @@ abstract public class TriviaQuestion {
 
 
     /**
-     * Getter for the actual question
+     * Getter for the actual question, loaded through {@link #loadQuestion()} the first time it is called
+     * if it was not given to the constructor
      *
      * @return a human-readable string of the actual question being asked
      */
     public String getQuestion() {
-        return question;
+        // racing threads may both load the question, but will publish equal strings
+        String loaded = question;
+        if(loaded == null) {
+            loaded = loadQuestion();
+            question = loaded;
+        }
+        return loaded;
+    }
+
+    /**
+     * Loads the question of a question whose text is only loaded when first asked for,
+     * such as one that is still url encoded or held by a {@link QuestionBank}
+     *
+     * @return the human-readable question; null for questions that were given their text
+     */
+    String loadQuestion() {
+        return null;
     }
 
     /**
@@ -75,6 +108,14 @@ abstract public class TriviaQuestion {
      * @return the difficulty of the question rated
      */
     public @TriviaGame.Difficulty String getDifficulty() {
+        return QuestionDictionary.getInstance().getDifficulty(difficulty);
+    }
+
+    /**
+     * Gets the code of the difficulty of the question, to compare difficulties without comparing strings
+     * @return the code of the difficulty in the {@link QuestionDictionary}
+     */
+    public byte getDifficultyCode() {
         return difficulty;
     }
 
@@ -83,7 +124,15 @@ abstract public class TriviaQuestion {
      * @return human readable representation of which category this question belongs to
      */
     public String getCategory() {
-        return this.category;
+        return QuestionDictionary.getInstance().getCategory(category);
+    }
+
+    /**
+     * Gets the category this question belongs to, to compare categories without comparing strings
+     * @return the index of the category in the {@link QuestionDictionary}
+     */
+    public int getCategoryIndex() {
+        return category;
     }
 
     /**
@@ -101,9 +150,78 @@ abstract public class TriviaQuestion {
     abstract public String getRightAnswer();
 
     /**
-     * Returns all the choices to choose from, shuffled in a random order
+     * Checks if the answer at the given position of {@link #getAnswers()} is the right one,
+     * without comparing the answers themselves
      *
-     * @return a list of human-readable possible answers to the question
+     * @param index the position of the answer chosen by the user
+     * @return true if it was the right answer, false if it wasn't
+     * @throws IndexOutOfBoundsException if there is no answer at that position
+     */
+    public abstract boolean checkAnswer(int index);
+
+    /**
+     * Returns all the choices to choose from, shuffled in a random order.
+     * The order is the same every time it is called for the same question.
+     *
+     * @return an unmodifiable list of human-readable possible answers to the question
      */
     abstract public List<String> getAnswers();
+
+    /**
+     * Gets the amount of choices to choose from
+     *
+     * @return the size of {@link #getAnswers()}
+     */
+    abstract public int getAnswerCount();
+
+    /**
+     * Gets a single choice, without building the list of all of them
+     *
+     * @param index the position of the answer in {@link #getAnswers()}
+     * @return the human-readable answer at that position
+     * @throws IndexOutOfBoundsException if there is no answer at that position
+     */
+    abstract public String getAnswer(int index);
+
+    /**
+     * Shuffles the indices of a question's answers.
+     * The shuffle is seeded, so the same seed always results in the same order.
+     *
+     * @param count the amount of answers, up to {@link Byte#MAX_VALUE}
+     * @param seed the seed of the shuffle, usually derived from the question
+     * @return the answer indices in their shuffled order
+     */
+    static byte[] shuffleAnswerOrder(int count, long seed) {
+        if(count > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("too many answers to shuffle: " + count);
+        }
+        byte[] order = new byte[count];
+        for(int i=0;i<count;i++) {
+            order[i] = (byte) i;
+        }
+        // Fisher-Yates shuffle, using SplitMix64 as random number generator
+        long state = seed;
+        for(int i=count-1;i>0;i--) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z = z ^ (z >>> 31);
+            int j = (int) ((z >>> 1) % (i + 1));
+            byte swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+
+    /**
+     * Gets the seed to shuffle the answers of a question with
+     *
+     * @param question the question to be asked
+     * @return a seed that is the same for every instance of the question
+     */
+    static long answerSeed(String question) {
+        return (question != null) ? question.hashCode() : 0;
+    }
 }
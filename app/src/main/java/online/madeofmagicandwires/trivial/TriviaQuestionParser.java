@@ -0,0 +1,321 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming parser for question responses of the OpenTriviaDB.
+ * Reads a response token by token and builds {@link TriviaQuestion} objects in a single pass,
+ * without keeping the response as a String or JSON tree in memory.
+ */
+public class TriviaQuestionParser {
+
+    /**
+     * Thrown when the OpenTriviaDB responded with a response code other than 0
+     */
+    public static class ResponseCodeException extends IOException {
+
+        private final int responseCode;
+
+        /**
+         * Standard constructor
+         * @param responseCode the response code returned by the OpenTriviaDB
+         */
+        public ResponseCodeException(int responseCode) {
+            super(getResponseCodeMessage(responseCode));
+            this.responseCode = responseCode;
+        }
+
+        /**
+         * Gets the response code returned by the OpenTriviaDB
+         * @return the response code of the failed request
+         */
+        public int getResponseCode() {
+            return responseCode;
+        }
+    }
+
+    /** response code the OpenTriviaDB returns when it is called too often **/
+    static final int RESPONSE_CODE_RATE_LIMIT = 5;
+
+    private TriviaQuestionParser() {
+        // static helper class, not to be instantiated
+    }
+
+    /**
+     * Parses an UTF-8 encoded question response
+     *
+     * @param in the stream to read the response from; is closed after parsing
+     * @return the list of questions contained in the response
+     * @throws ResponseCodeException when the response code of the response was not 0
+     * @throws IOException when the stream could not be read or did not contain valid JSON
+     */
+    public static List<TriviaQuestion> parseQuestions(@NonNull InputStream in) throws IOException {
+        return parseQuestions(in, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Parses a question response
+     *
+     * @param in the stream to read the response from; is closed after parsing
+     * @param charset the character set the response is encoded in
+     * @return the list of questions contained in the response
+     * @throws ResponseCodeException when the response code of the response was not 0
+     * @throws IOException when the stream could not be read or did not contain valid JSON
+     */
+    public static List<TriviaQuestion> parseQuestions(
+            @NonNull InputStream in,
+            @NonNull Charset charset) throws IOException {
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, charset))) {
+            return parseQuestions(reader);
+        } catch (IllegalStateException | NumberFormatException e) {
+            // thrown by JsonReader when a value has an unexpected type
+            throw new IOException("Could not parse question response", e);
+        }
+    }
+
+    /**
+     * Parses a question response from a reader positioned at the start of the response object
+     *
+     * @param reader the reader to read the response from
+     * @return the list of questions contained in the response
+     * @throws ResponseCodeException when the response code of the response was not 0
+     * @throws IOException when the response could not be read
+     */
+    public static List<TriviaQuestion> parseQuestions(@NonNull JsonReader reader) throws IOException {
+        int responseCode = -1;
+        List<TriviaQuestion> results = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "response_code":
+                    responseCode = reader.nextInt();
+                    break;
+                case "results":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        TriviaQuestion question = parseQuestion(reader);
+                        if(question != null) {
+                            results.add(question);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if(responseCode != 0) {
+            throw new ResponseCodeException(responseCode);
+        }
+        return results;
+    }
+
+    /**
+     * Parses a single question object from the results array
+     *
+     * @param reader the reader, positioned at the start of the question object
+     * @return a TriviaQuestion object containing the parsed data, which decodes its text on first access,
+     *         or null if the object did not contain a known question type
+     * @throws IOException when the question could not be read or its answer was not validly encoded
+     */
+    static TriviaQuestion parseQuestion(@NonNull JsonReader reader) throws IOException {
+        String type = null;
+        String difficulty = null;
+        String category = null;
+        String question = null;
+        String correctAnswer = null;
+        List<String> wrongAnswers = new ArrayList<>(3);
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "type":
+                    type = reader.nextString();
+                    break;
+                case "difficulty":
+                    difficulty = reader.nextString();
+                    break;
+                case "category":
+                    category = reader.nextString();
+                    break;
+                case "question":
+                    question = reader.nextString();
+                    break;
+                case "correct_answer":
+                    correctAnswer = reader.nextString();
+                    break;
+                case "incorrect_answers":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        if(reader.peek() == JsonToken.NULL) {
+                            reader.nextNull();
+                        } else {
+                            wrongAnswers.add(reader.nextString());
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if(type == null || question == null || correctAnswer == null) {
+            return null;
+        }
+        QuestionDictionary dictionary = QuestionDictionary.getInstance();
+        try {
+            switch (type) {
+                case TriviaGame.QuestionType.BOOLEAN:
+                    return new LazyTrueFalseQuestion(
+                            question,
+                            Boolean.parseBoolean(decodeResponseStr(correctAnswer)),
+                            dictionary.codeOfDifficulty(difficulty),
+                            indexOfCategory(dictionary, category)
+                    );
+                case TriviaGame.QuestionType.MULTIPLE:
+                    return new LazyMultipleChoiceQuestion(
+                            question,
+                            correctAnswer,
+                            wrongAnswers.toArray(new String[0]),
+                            dictionary.codeOfDifficulty(difficulty),
+                            indexOfCategory(dictionary, category)
+                    );
+                default:
+                    return null;
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("malformed question: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Looks up the index of a url encoded category name in the {@link QuestionDictionary},
+     * so every category is only decoded once, falling back to "Unknown" when none was included;
+     * questions are built with the index, rather than looking the name up again
+     *
+     * @param dictionary the dictionary to look the category up in
+     * @param category the url encoded category name, or null
+     * @return the index of the category, shared by all questions of the category
+     * @throws IllegalArgumentException when the name was not validly encoded
+     */
+    private static int indexOfCategory(QuestionDictionary dictionary, String category) {
+        if(category == null) {
+            return dictionary.indexOfCategory("Unknown");
+        }
+        return dictionary.indexOfEncodedCategory(category);
+    }
+
+    /**
+     * Parses a JSONObject for any trivia questions provided by the OpenTriviaDB
+     *
+     * @param question the JSONObject to parse for any question
+     * @return a TriviaQuestion object containing the data parsed from the JSONObject
+     * @throws JSONException when the object did not contain a valid question
+     * @see #parseQuestions(InputStream) for parsing a whole response without building JSONObjects
+     */
+    static TriviaQuestion parseQuestionJSON(JSONObject question) throws JSONException {
+        try {
+            return decodeQuestionJSON(question);
+        } catch (IllegalArgumentException e) {
+            throw new JSONException("malformed question: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Builds a question out of a JSONObject, leaving its text to be decoded on first access
+     *
+     * @param question the JSONObject to parse for any question
+     * @return a TriviaQuestion object containing the data parsed from the JSONObject
+     * @throws JSONException when the object did not contain a valid question
+     * @throws IllegalArgumentException when the answer of a true or false question was not validly encoded
+     */
+    private static TriviaQuestion decodeQuestionJSON(JSONObject question) throws JSONException {
+        @TriviaGame.QuestionType String qType = question.getString("type");
+        QuestionDictionary dictionary = QuestionDictionary.getInstance();
+        switch (qType) {
+            case TriviaGame.QuestionType.BOOLEAN:
+                return new LazyTrueFalseQuestion(
+                        question.getString("question"),
+                        Boolean.parseBoolean(decodeResponseStr(question.getString("correct_answer"))),
+                        dictionary.codeOfDifficulty(question.getString("difficulty")),
+                        indexOfCategory(dictionary, question.getString("category"))
+                );
+            case TriviaGame.QuestionType.MULTIPLE:
+                // Parse incorrect_answers array
+                JSONArray wrongAnswersArr = question.getJSONArray("incorrect_answers");
+                String[] wrongAnswers = new String[wrongAnswersArr.length()];
+                for(int i=0;i<wrongAnswersArr.length();i++){
+                    wrongAnswers[i] = wrongAnswersArr.getString(i);
+                }
+
+                return new LazyMultipleChoiceQuestion(
+                        question.getString("question"),
+                        question.getString("correct_answer"),
+                        wrongAnswers,
+                        dictionary.codeOfDifficulty(question.getString("difficulty")),
+                        indexOfCategory(dictionary, question.getString("category"))
+                );
+            default:
+                throw new JSONException("Could not find trivia question from JSON Object");
+        }
+    }
+
+    /**
+     * Gets the human-readable message belonging to an OpenTriviaDB response code
+     *
+     * @param responseCode the response code included in the response
+     * @return a message describing the response code
+     */
+    static String getResponseCodeMessage(int responseCode) {
+        switch (responseCode) {
+            case 0:
+                return "success";
+            case 1:
+                return "no results";
+            case 2:
+                return "contained an invalid parameter";
+            case 3:
+                return "Token Not Found";
+            case 4:
+                return "no remaining questions";
+            case RESPONSE_CODE_RATE_LIMIT:
+                return "rate limit exceeded";
+            default:
+                return "unknown response code " + responseCode;
+        }
+    }
+
+    /**
+     * Returns a URL encoded response to a human-readable UTF-8 String
+     *
+     * @param encoded the string to be decoded
+     * @return the decoded string
+     * @throws IllegalArgumentException when the string is not validly encoded
+     * @see PercentDecoder for the RFC 3986 decoding used
+     */
+    static String decodeResponseStr(String encoded) {
+        return PercentDecoder.decode(encoded);
+    }
+}
@@ -0,0 +1,114 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.Response;
+import com.android.volley.toolbox.HttpHeaderParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * Volley request for OpenTriviaDB questions.
+ * Parses the response bytes directly into {@link TriviaQuestion} objects
+ * using the {@link TriviaQuestionParser}, rather than building a {@link org.json.JSONObject} first.
+ */
+public class TriviaQuestionsRequest extends Request<List<TriviaQuestion>> {
+
+    private Response.Listener<List<TriviaQuestion>> listener;
+    /** the amount of questions requested, to tag the parse trace section with **/
+    private final int amount;
+
+    /**
+     * Standard constructor
+     *
+     * @param url the url to request the questions from, including query parameters
+     * @param listener the listener to be called with the parsed questions
+     * @param errorListener the listener to be called when the request or parsing failed
+     */
+    public TriviaQuestionsRequest(
+            @NonNull String url,
+            @NonNull Response.Listener<List<TriviaQuestion>> listener,
+            Response.ErrorListener errorListener) {
+        this(url, 0, listener, errorListener);
+    }
+
+    /**
+     * Constructor for requests of a known amount of questions
+     *
+     * @param url the url to request the questions from, including query parameters
+     * @param amount the amount of questions requested
+     * @param listener the listener to be called with the parsed questions
+     * @param errorListener the listener to be called when the request or parsing failed
+     */
+    public TriviaQuestionsRequest(
+            @NonNull String url,
+            int amount,
+            @NonNull Response.Listener<List<TriviaQuestion>> listener,
+            Response.ErrorListener errorListener) {
+        super(Method.GET, url, errorListener);
+        this.listener = listener;
+        this.amount = amount;
+    }
+
+    /**
+     * Parses the raw network response into a list of questions.
+     * Called on one of Volley's network threads.
+     *
+     * @param response the raw network response
+     * @return the parsed questions, or a {@link ParseError} wrapping what went wrong
+     */
+    @WorkerThread
+    @Override
+    protected Response<List<TriviaQuestion>> parseNetworkResponse(NetworkResponse response) {
+        long start = System.nanoTime();
+        Tracing.beginSection("TriviaQuestionsRequest.parse", TriviaRequestHelper.EndPoint.TRIVIA, amount);
+        try {
+            Charset charset = Charset.forName(HttpHeaderParser.parseCharset(response.headers, "UTF-8"));
+            List<TriviaQuestion> questions = TriviaQuestionParser.parseQuestions(
+                    new ByteArrayInputStream(response.data),
+                    charset
+            );
+            return Response.success(questions, HttpHeaderParser.parseCacheHeaders(response));
+        } catch (IOException | IllegalArgumentException e) {
+            return Response.error(new ParseError(e));
+        } finally {
+            Tracing.endSection();
+            RequestMetrics.recordResponse(this, response, start);
+        }
+    }
+
+    /**
+     * Delivers the parsed questions to the listener
+     *
+     * @param response the parsed questions
+     */
+    @MainThread
+    @Override
+    protected void deliverResponse(List<TriviaQuestion> response) {
+        if(listener != null) {
+            Tracing.beginSection("TriviaQuestionsRequest.deliver", TriviaRequestHelper.EndPoint.TRIVIA, response.size());
+            try {
+                listener.onResponse(response);
+            } finally {
+                Tracing.endSection();
+            }
+        }
+    }
+
+    /**
+     * Cancels the request and releases the listener
+     */
+    @Override
+    public void cancel() {
+        super.cancel();
+        listener = null;
+    }
+}
@@ -1,9 +1,12 @@
 package online.madeofmagicandwires.trivial;
 
 import android.content.Context;
+import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringDef;
+import android.support.annotation.VisibleForTesting;
+import android.support.annotation.WorkerThread;
 import android.util.Log;
 import android.util.SparseArray;
 
@@ -15,13 +18,20 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.UnsupportedEncodingException;
+import java.io.File;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.net.URLDecoder;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * A Helper class for the making and interpreting requests to the OpenTriviaDB API.
@@ -35,8 +45,7 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
     private interface ErrorResponseListener {
         /**
          * called when an error occurs during a request to the OpenTrivia API
-         * @param lastRequest the endpoint of the request;
-         *                    note that this might not be entirely accurate due to async requests
+         * @param lastRequest the endpoint of the request that failed
          * @param errorMsg the error message included.
          */
         void OnErrorResponse(@TriviaRequestHelper.EndPoint String lastRequest, @Nullable String errorMsg);
@@ -49,7 +58,9 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
 
         /**
          * Called when a TriviaDB categories request has successfully resolved
-         * @param categories a JSONObject containing the categories under the "trivia_categories" key
+         * @param categories a JSONObject containing the categories under the "trivia_categories" key;
+         *                   shared with other listeners while it is served from the cache,
+         *                   so it should not be modified
          */
         void OnCategoriesResponse(SparseArray<String> categories);
 
@@ -61,11 +72,13 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
      */
     public interface QuestionResponseListener extends ErrorResponseListener {
         /**
-         * Called when a TriviaDB question request successfully resolved
+         * Called when a TriviaDB question request successfully resolved,
+         * on the thread responses are delivered on; the questions were parsed before that
          * @param questions a {@link List} of {@link TriviaQuestion} objects
          *                  representing the trivia questions that were retrieved from the TriviaDB
          * @see TriviaRequestHelper#requestQuestions(int, QuestionResponseListener)
          */
+        @MainThread
         void OnQuestionsResponse(List<TriviaQuestion> questions);
 
 
@@ -162,17 +175,234 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
         String COUNT = "api_count_global.php";
     }
 
+    /**
+     * Exception a future returned by one of the async request methods is completed with
+     * when its request failed
+     */
+    public static class RequestFailedException extends Exception {
+
+        private final @EndPoint String endPoint;
+
+        /**
+         * Standard constructor
+         *
+         * @param endPoint the endpoint of the request that failed
+         * @param errorMsg the error message included
+         */
+        public RequestFailedException(@EndPoint String endPoint, @Nullable String errorMsg) {
+            super("request to " + endPoint + " failed: " + errorMsg);
+            this.endPoint = endPoint;
+        }
+
+        /**
+         * Gets the endpoint of the request that failed
+         * @return the endpoint of the failed request
+         */
+        public @EndPoint String getEndPoint() {
+            return endPoint;
+        }
+    }
+
+    /**
+     * Result of a question count request
+     *
+     * @see #requestQuestionCountAsync(Integer)
+     */
+    public static class QuestionCount {
+
+        /** the total amount of (verified) questions, or -1 if it could not be retrieved **/
+        public final int total;
+        /**
+         * the amount of questions of this session's category for global counts,
+         * or of this session's difficulty for category counts;
+         * the same as total if those are not set, or -1 if it could not be retrieved
+         */
+        public final int count;
+
+        QuestionCount(int total, int count) {
+            this.total = total;
+            this.count = count;
+        }
+    }
+
+    /** response code the OpenTriviaDB returns when it does not know a session token **/
+    static final int RESPONSE_CODE_TOKEN_NOT_FOUND = 3;
+    /** response code the OpenTriviaDB returns when a session token has been served every question **/
+    static final int RESPONSE_CODE_TOKEN_EMPTY = 4;
+    /** response code the OpenTriviaDB returns when it is called too often **/
+    static final int RESPONSE_CODE_RATE_LIMIT = TriviaQuestionParser.RESPONSE_CODE_RATE_LIMIT;
+
+    /** the amount of session tokens kept ready to replace the current one **/
+    static final int SPARE_TOKENS = 2;
+    /** name of the file session tokens are saved in between launches **/
+    private static final String TOKENS_FILE = "session_tokens";
+    /** name of the file the request metrics are written to **/
+    private static final String METRICS_FILE = "request_metrics.json";
+    /** time between writing out the request metrics, in milliseconds **/
+    private static final long METRICS_DUMP_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+
+    /** the amount of requests that can be sent to the API in a burst, over all of its endpoints **/
+    private static final int RATE_LIMIT_BURST = 1;
+    /** the time after which another request can be sent to the API, in milliseconds **/
+    private static final long RATE_LIMIT_INTERVAL_MS = 5000;
+
+    /** time the list of categories is served from the cache without revalidating, in milliseconds **/
+    private static final long CATEGORY_CACHE_TTL_MS = TimeUnit.DAYS.toMillis(1);
+    /** time the list of categories is still served while it is being revalidated, in milliseconds **/
+    private static final long CATEGORY_CACHE_STALE_MS = TimeUnit.DAYS.toMillis(7);
+    /** time question counts are served from the cache without revalidating, in milliseconds **/
+    private static final long COUNT_CACHE_TTL_MS = TimeUnit.HOURS.toMillis(1);
+    /** time question counts are still served while they are being revalidated, in milliseconds **/
+    private static final long COUNT_CACHE_STALE_MS = TimeUnit.DAYS.toMillis(1);
+
     /** root url for the API **/
     private final static String API_URL = "https://opentdb.com/";
 
     private static TriviaRequestHelper instance;
 
-    private @EndPoint String lastRequest;
-    private ErrorResponseListener listener;
-    private String sessionToken;
+    /** used to time out futures without blocking the thread waiting on them **/
+    private static ScheduledExecutorService timeoutScheduler;
+
+    /** parses question responses that arrive as JSON, so the main thread only receives finished questions **/
+    private static ExecutorService parseExecutor;
+
+    /** root url of the API this helper makes its requests to **/
+    private final String apiUrl;
+
+    /** the current session token and its spares **/
+    private final SessionTokenPool tokens;
+    /** the amount of spare session tokens that have been requested but not received yet **/
+    private int pendingSpareTokens;
     private Integer category;
     private @TriviaGame.Difficulty String difficulty;
 
+    /** the last categories response, and the categories parsed from it **/
+    private JSONObject categoriesResponse;
+    private SparseArray<String> parsedCategories;
+
+    /**
+     * Context of a single request to the OpenTriviaDB.
+     * Keeps track of the endpoint, the event listener and the session settings at the time the
+     * request was made, so any number of requests can be in flight at the same time
+     * without their responses getting mixed up.
+     */
+    private class TriviaRequest implements ResponseHandler {
+
+        private final @EndPoint String endPoint;
+        private final ErrorResponseListener listener;
+        private final Integer categoryId;
+        private final @TriviaGame.Difficulty String difficulty;
+        /** the amount of questions requested **/
+        private final int amount;
+        /** whether this request is sent again after its session token could not be used **/
+        private final boolean replayed;
+        /** the session token sent along with the request, if any **/
+        private String token;
+        /** whether a requested session token is to be kept as a spare **/
+        private boolean spareToken;
+        /** traces the request from when it is made until it is resolved **/
+        private final Tracing.AsyncSection trace;
+        private boolean traceEnded;
+
+        /**
+         * Standard constructor
+         *
+         * @param endPoint the endpoint the request is made to
+         * @param listener the event listener to be called once the request has been resolved
+         * @param categoryId the category questions or counts are requested for, or null for any
+         * @param difficulty the difficulty questions or counts are requested for, or null for any
+         */
+        TriviaRequest(
+                @EndPoint String endPoint,
+                ErrorResponseListener listener,
+                @Nullable Integer categoryId,
+                @Nullable @TriviaGame.Difficulty String difficulty) {
+            this(endPoint, listener, categoryId, difficulty, 0, false);
+        }
+
+        /**
+         * Constructor for question requests
+         *
+         * @param endPoint the endpoint the request is made to
+         * @param listener the event listener to be called once the request has been resolved
+         * @param categoryId the category questions are requested for, or null for any
+         * @param difficulty the difficulty questions are requested for, or null for any
+         * @param amount the amount of questions requested
+         * @param replayed whether the request is sent again after a session token failed
+         */
+        TriviaRequest(
+                @EndPoint String endPoint,
+                ErrorResponseListener listener,
+                @Nullable Integer categoryId,
+                @Nullable @TriviaGame.Difficulty String difficulty,
+                int amount,
+                boolean replayed) {
+            this.endPoint = endPoint;
+            this.listener = listener;
+            this.categoryId = categoryId;
+            this.difficulty = difficulty;
+            this.amount = amount;
+            this.replayed = replayed;
+            this.trace = Tracing.beginAsyncSection(replayed ? "TriviaDB replay" : "TriviaDB", endPoint, amount);
+        }
+
+        /**
+         * Ends the trace of this request once it has been resolved, whichever way it was resolved
+         */
+        private void endTrace() {
+            if(!traceEnded) {
+                traceEnded = true;
+                trace.end();
+            }
+        }
+
+        /**
+         * Called when a text/json response is received for this request
+         *
+         * @param response response to the request in JSON format
+         */
+        @Override
+        public void onResponse(JSONObject response) {
+            endTrace();
+            handleResponse(this, response);
+        }
+
+        /**
+         * Called when a question request has been parsed by a {@link TriviaQuestionsRequest}
+         *
+         * @param questions the questions retrieved from the TriviaDB
+         */
+        void onQuestionsResponse(List<TriviaQuestion> questions) {
+            endTrace();
+            // notify listener if available
+            if(listener instanceof QuestionResponseListener) {
+                ((QuestionResponseListener) listener).OnQuestionsResponse(questions);
+            }
+        }
+
+        /**
+         * Called when this request has failed
+         *
+         * @param error exception containing information on what went wrong
+         */
+        @Override
+        public void onErrorResponse(VolleyError error) {
+            endTrace();
+            handleError(this, error);
+        }
+
+        /**
+         * Notifies the listener that this request has failed
+         *
+         * @param errorMsg the error message to pass on
+         */
+        void notifyError(@Nullable String errorMsg) {
+            if(listener != null) {
+                listener.OnErrorResponse(endPoint, errorMsg);
+            }
+        }
+    }
+
     /**
      * Standard constructor
      *
@@ -180,6 +410,65 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
      */
     private TriviaRequestHelper(@NonNull Context appContext){
         super(appContext);
+        this.apiUrl = API_URL;
+        this.tokens = new SessionTokenPool(
+                new File(appContext.getFilesDir(), TOKENS_FILE),
+                Executors.newSingleThreadExecutor());
+        configureEndPoints();
+        getMetrics().startDumping(METRICS_DUMP_INTERVAL_MS, new File(appContext.getFilesDir(), METRICS_FILE));
+    }
+
+    /**
+     * Constructor for making requests to another server than the OpenTriviaDB over any transport,
+     * such as to a local stand-in server from a plain JVM
+     *
+     * @param transport the transport to send the requests with
+     * @param cacheDir the directory to keep cached responses in
+     * @param apiUrl the root url of the API, ending in a slash
+     */
+    @VisibleForTesting
+    TriviaRequestHelper(@NonNull Transport transport, @NonNull File cacheDir, @NonNull String apiUrl) {
+        this(transport, cacheDir, apiUrl, null, Runnable::run);
+    }
+
+    /**
+     * Constructor for making requests to another server than the OpenTriviaDB over any transport,
+     * saving session tokens between instances
+     *
+     * @param transport the transport to send the requests with
+     * @param cacheDir the directory to keep cached responses in
+     * @param apiUrl the root url of the API, ending in a slash
+     * @param tokensFile the file to save session tokens in, or null to keep them in memory only
+     * @param ioExecutor the executor session tokens are saved on
+     */
+    @VisibleForTesting
+    TriviaRequestHelper(
+            @NonNull Transport transport,
+            @NonNull File cacheDir,
+            @NonNull String apiUrl,
+            @Nullable File tokensFile,
+            @NonNull Executor ioExecutor) {
+        super(transport, cacheDir);
+        this.apiUrl = apiUrl;
+        this.tokens = new SessionTokenPool(tokensFile, ioExecutor);
+        configureEndPoints();
+    }
+
+    /**
+     * Sets the rate limits and cache policies of the API's endpoints
+     */
+    private void configureEndPoints() {
+        // the OpenTriviaDB allows one request per 5 seconds per IP address, whichever endpoint it is to
+        getScheduler().setSharedRateLimit(new String[] {
+                EndPoint.SESSION, EndPoint.TRIVIA, EndPoint.CATEGORY,
+                EndPoint.CATEGORY_COUNT, EndPoint.COUNT},
+                RATE_LIMIT_BURST, RATE_LIMIT_INTERVAL_MS);
+        // every token request has to hand out a token of its own, so each of them takes up a slot as well
+        setUncoalesced(EndPoint.SESSION);
+        // categories and question counts hardly ever change, so don't ask for them every time
+        setCachePolicy(EndPoint.CATEGORY, CATEGORY_CACHE_TTL_MS, CATEGORY_CACHE_STALE_MS);
+        setCachePolicy(EndPoint.COUNT, COUNT_CACHE_TTL_MS, COUNT_CACHE_STALE_MS);
+        setCachePolicy(EndPoint.CATEGORY_COUNT, COUNT_CACHE_TTL_MS, COUNT_CACHE_STALE_MS);
     }
 
     /**
@@ -217,13 +506,23 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
     /**
      * Gets the session token, if initialized
      * @return the session token in string format, or null if one isn't requested yet
+     *         or the last one expired
      * @see #requestSessionToken(SessionTokenResponseListener)
      */
     public String getSessionToken() {
-        return sessionToken;
+        return tokens.getCurrent(System.currentTimeMillis());
     }
 
 
+    /**
+     * Counts the spare session tokens ready to replace the current one
+     * @return the amount of usable spare tokens
+     */
+    @VisibleForTesting
+    int getSpareTokenCount() {
+        return tokens.getSpareCount(System.currentTimeMillis());
+    }
+
     /**
      * Gets the difficulty of this session
      * @return the difficulty of this session;
@@ -271,10 +570,12 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
      * @see TriviaRequestHelper.SessionTokenResponseListener for the listener interface
      */
     public void requestSessionToken(SessionTokenResponseListener listener) {
-        // pre-request
-        prepareForRequest(EndPoint.SESSION, listener);
-
-        makeRequest(Request.Method.GET, API_URL + EndPoint.SESSION, "command=request");
+        makeRequest(
+                Request.Method.GET,
+                apiUrl + EndPoint.SESSION,
+                "command=request",
+                newRequest(EndPoint.SESSION, listener)
+        );
     }
 
     /**
@@ -283,21 +584,10 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
      * @see TriviaRequestHelper.SessionTokenResponseListener for the listener interface
      */
     public void resetSessionToken(SessionTokenResponseListener listener) {
-        // pre-request
-        prepareForRequest(EndPoint.SESSION, listener);
-
+        String sessionToken = getSessionToken();
         // session token exists
-        if(this.sessionToken != null && !this.sessionToken.isEmpty()) {
-
-            // set the query parameters and make the request
-            HashMap<String, String> params = new HashMap<>();
-            params.put("command", "reset");
-            params.put("token", this.sessionToken);
-            makeRequest(
-                    Request.Method.GET,
-                    API_URL + EndPoint.SESSION,
-                    params
-            );
+        if(sessionToken != null && !sessionToken.isEmpty()) {
+            resetSessionToken(sessionToken, listener, false);
         } else { // just request a new token if none exists already
             requestSessionToken(listener);
         }
@@ -305,43 +595,94 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
     }
 
     /**
-     * Requests the available Trivia categories from the TriviaDB
+     * Request to reset a specific session token from the OpenTriviaDB
+     *
+     * @param token the session token to reset
+     * @param listener the event listener interface to be called after requests have been resolved
+     * @param spare whether to keep the token as a spare once reset, instead of making it current
+     */
+    private void resetSessionToken(String token, SessionTokenResponseListener listener, boolean spare) {
+        // set the query parameters and make the request
+        HashMap<String, String> params = new HashMap<>();
+        params.put("command", "reset");
+        params.put("token", token);
+        TriviaRequest request = newRequest(EndPoint.SESSION, listener);
+        request.spareToken = spare;
+        makeRequest(Request.Method.GET, apiUrl + EndPoint.SESSION, params, request);
+    }
+
+    /**
+     * Requests the available Trivia categories from the TriviaDB,
+     * or passes them on straight away if they have been cached
      *
      * @param listener the event listener interface to be called after requests have been resolved
      * @see TriviaRequestHelper.CategoriesResponseListener for the event listener interface
      */
     public void requestCategories(CategoriesResponseListener listener) {
-        prepareForRequest(EndPoint.CATEGORY, listener);
-        makeRequest(API_URL + EndPoint.CATEGORY);
+        makeRequest(apiUrl + EndPoint.CATEGORY, newRequest(EndPoint.CATEGORY, listener));
     }
 
     /**
-     * Requests a set amount of questions from the OpenTriviaDB
+     * Requests a set amount of questions of this session's category and difficulty
+     * from the OpenTriviaDB
      * @param amount the amount of questions to request, up to a maximum of 50
      * @param listener the event listener interface to be called after requests have been resolved
      * @see TriviaRequestHelper.QuestionResponseListener for the listener interface
      */
     public void requestQuestions(int amount, QuestionResponseListener listener) {
-        //pre-request
-        prepareForRequest(EndPoint.TRIVIA, listener);
+        requestQuestions(amount, category, difficulty, listener);
+    }
+
+    /**
+     * Requests a set amount of questions from the OpenTriviaDB,
+     * regardless of this session's category and difficulty
+     * @param amount the amount of questions to request, up to a maximum of 50
+     * @param categoryId the category to request questions from; set to null for any category
+     * @param difficulty the difficulty of the questions to request;
+     *                   set to {@link TriviaGame.Difficulty#ANY} for any difficulty
+     * @param listener the event listener interface to be called after requests have been resolved
+     * @see TriviaRequestHelper.QuestionResponseListener for the listener interface
+     */
+    public void requestQuestions(
+            int amount,
+            @Nullable Integer categoryId,
+            @Nullable @TriviaGame.Difficulty String difficulty,
+            QuestionResponseListener listener) {
+        sendQuestionsRequest(new TriviaRequest(EndPoint.TRIVIA, listener, categoryId, difficulty, amount, false));
+    }
 
+    /**
+     * Sends a question request with the current session token
+     *
+     * @param request the context of the request, holding what questions to request
+     */
+    private void sendQuestionsRequest(TriviaRequest request) {
         //set the query parameters: amount of questions, encoding, and session token if available
         HashMap<String, String> params = new HashMap<>();
         // pass on the amount of questions to be requested, maximum of 50.
-        params.put("amount", (amount < 50) ? String.valueOf(amount) : String.valueOf(50));
+        params.put("amount", (request.amount < 50) ? String.valueOf(request.amount) : String.valueOf(50));
         // set value encoding to ISO 3986
         params.put("encode", "url3986");
+        long now = System.currentTimeMillis();
+        String sessionToken = tokens.getCurrent(now);
         if(sessionToken != null && !sessionToken.isEmpty()) {
             params.put("token", sessionToken);
+            request.token = sessionToken;
+            tokens.touch(now);
         }
-        if(difficulty != null) {
-            params.put("difficulty", difficulty);
+        if(request.difficulty != null) {
+            params.put("difficulty", request.difficulty);
         }
-        if(category != null && category > 0) {
-            params.put("category", category.toString());
+        if(request.categoryId != null && request.categoryId > 0) {
+            params.put("category", request.categoryId.toString());
         }
 
-        makeRequest(Request.Method.GET, API_URL + EndPoint.TRIVIA, params);
+        String url = buildUrl(apiUrl + EndPoint.TRIVIA, params);
+        submitRequest(
+                url,
+                errorListener -> new TriviaQuestionsRequest(url, request.amount, request::onQuestionsResponse, errorListener),
+                request
+        );
 
     }
 
@@ -360,17 +701,16 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
             @Nullable Integer categoryId) {
         // check specific category
         if(categoryId != null && categoryId != -1) {
-            prepareForRequest(EndPoint.CATEGORY_COUNT, listener);
             makeRequest(
                     Request.Method.GET,
-                    API_URL + EndPoint.CATEGORY_COUNT,
-                    "category=" + categoryId
+                    apiUrl + EndPoint.CATEGORY_COUNT,
+                    "category=" + categoryId,
+                    newRequest(EndPoint.CATEGORY_COUNT, listener)
             );
         }
 
         else {
-            prepareForRequest(EndPoint.COUNT, listener);
-            makeRequest(API_URL + EndPoint.COUNT);
+            makeRequest(apiUrl + EndPoint.COUNT, newRequest(EndPoint.COUNT, listener));
         }
 
     }
@@ -384,12 +724,219 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
         requestQuestionCount(listener, null);
     }
 
+    /**
+     * Requests a session token from the OpenTriviaDB
+     *
+     * @return a future completed with the session token on the main thread,
+     *         or with a {@link RequestFailedException} if the request failed
+     * @see #requestSessionToken(SessionTokenResponseListener)
+     */
+    public CompletableFuture<String> requestSessionTokenAsync() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        requestSessionToken(new SessionTokenResponseListener() {
+            @Override
+            public void OnRequestTokenResponse(String token) {
+                future.complete(token);
+            }
+
+            @Override
+            public void OnResetTokenResponse(String token) {
+                future.complete(token);
+            }
+
+            @Override
+            public void OnErrorResponse(String lastRequest, @Nullable String errorMsg) {
+                future.completeExceptionally(new RequestFailedException(lastRequest, errorMsg));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Gets a session token, from the tokens saved earlier if any of them can still be used,
+     * otherwise by requesting a new one; either way spare tokens are topped up in the background
+     *
+     * @return a future completed with the session token,
+     *         straight away if a saved token could be used and otherwise on the main thread,
+     *         or with a {@link RequestFailedException} if the request failed
+     */
+    public CompletableFuture<String> acquireSessionTokenAsync() {
+        Tracing.AsyncSection trace = Tracing.beginAsyncSection("acquireSessionToken");
+        String token = getSessionToken();
+        CompletableFuture<String> future = (token != null)
+                ? CompletableFuture.completedFuture(token)
+                : requestSessionTokenAsync();
+        future.whenComplete((t, error) -> trace.end());
+        topUpSpareTokens();
+        return future;
+    }
+
+    /**
+     * Resets the session token, or requests a new one if none exists already
+     *
+     * @return a future completed with the session token on the main thread,
+     *         or with a {@link RequestFailedException} if the request failed
+     * @see #resetSessionToken(SessionTokenResponseListener)
+     */
+    public CompletableFuture<String> resetSessionTokenAsync() {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        resetSessionToken(new SessionTokenResponseListener() {
+            @Override
+            public void OnRequestTokenResponse(String token) {
+                future.complete(token);
+            }
+
+            @Override
+            public void OnResetTokenResponse(String token) {
+                future.complete(token);
+            }
+
+            @Override
+            public void OnErrorResponse(String lastRequest, @Nullable String errorMsg) {
+                future.completeExceptionally(new RequestFailedException(lastRequest, errorMsg));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Requests the available Trivia categories from the TriviaDB
+     *
+     * @return a future completed with the categories, by id, on the main thread,
+     *         or with a {@link RequestFailedException} if the request failed
+     * @see #requestCategories(CategoriesResponseListener)
+     */
+    public CompletableFuture<SparseArray<String>> requestCategoriesAsync() {
+        CompletableFuture<SparseArray<String>> future = new CompletableFuture<>();
+        requestCategories(new CategoriesResponseListener() {
+            @Override
+            public void OnCategoriesResponse(SparseArray<String> categories) {
+                future.complete(categories);
+            }
+
+            @Override
+            public void OnErrorResponse(String lastRequest, @Nullable String errorMsg) {
+                future.completeExceptionally(new RequestFailedException(lastRequest, errorMsg));
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Requests a set amount of questions of this session's category and difficulty
+     *
+     * @param amount the amount of questions to request, up to a maximum of 50
+     * @return a future completed with the questions on the main thread,
+     *         or with a {@link RequestFailedException} if the request failed
+     * @see #requestQuestions(int, QuestionResponseListener)
+     */
+    public CompletableFuture<List<TriviaQuestion>> requestQuestionsAsync(int amount) {
+        return requestQuestionsAsync(amount, category, difficulty);
+    }
+
+    /**
+     * Requests a set amount of questions, regardless of this session's category and difficulty
+     *
+     * @param amount the amount of questions to request, up to a maximum of 50
+     * @param categoryId the category to request questions from; set to null for any category
+     * @param difficulty the difficulty of the questions to request;
+     *                   set to {@link TriviaGame.Difficulty#ANY} for any difficulty
+     * @return a future completed with the questions on the main thread,
+     *         or with a {@link RequestFailedException} if the request failed
+     * @see #requestQuestions(int, Integer, String, QuestionResponseListener)
+     */
+    public CompletableFuture<List<TriviaQuestion>> requestQuestionsAsync(
+            int amount,
+            @Nullable Integer categoryId,
+            @Nullable @TriviaGame.Difficulty String difficulty) {
+        CompletableFuture<List<TriviaQuestion>> future = new CompletableFuture<>();
+        requestQuestions(amount, categoryId, difficulty, futureListener(future));
+        return future;
+    }
+
+    /**
+     * Requests the amount of (verified) questions in the TriviaDB database
+     *
+     * @param categoryId the id of a specific category to check,
+     *                   if set to null the global count is requested
+     * @return a future completed with the question count on the main thread,
+     *         or with a {@link RequestFailedException} if the request failed
+     * @see #requestQuestionCount(QuestionCountResponseListener, Integer)
+     */
+    public CompletableFuture<QuestionCount> requestQuestionCountAsync(@Nullable Integer categoryId) {
+        CompletableFuture<QuestionCount> future = new CompletableFuture<>();
+        requestQuestionCount(new QuestionCountResponseListener() {
+            @Override
+            public void OnQuestionCountResponse(int total, int categoryCount) {
+                future.complete(new QuestionCount(total, categoryCount));
+            }
+
+            @Override
+            public void OnCategoryQuestionCountResponse(int total, int difficultyCount) {
+                future.complete(new QuestionCount(total, difficultyCount));
+            }
+
+            @Override
+            public void OnErrorResponse(String lastRequest, @Nullable String errorMsg) {
+                future.completeExceptionally(new RequestFailedException(lastRequest, errorMsg));
+            }
+        }, categoryId);
+        return future;
+    }
+
+    /**
+     * Creates a question listener that completes a future
+     *
+     * @param future the future to complete with the retrieved questions
+     * @return the listener to pass along with the request
+     */
+    static QuestionResponseListener futureListener(CompletableFuture<List<TriviaQuestion>> future) {
+        return new QuestionResponseListener() {
+            @Override
+            public void OnQuestionsResponse(List<TriviaQuestion> questions) {
+                future.complete(questions);
+            }
+
+            @Override
+            public void OnErrorResponse(String lastRequest, @Nullable String errorMsg) {
+                future.completeExceptionally(new RequestFailedException(lastRequest, errorMsg));
+            }
+        };
+    }
+
+    /**
+     * Completes a future exceptionally with a {@link TimeoutException}
+     * if it has not completed within the given time; never blocks the calling thread
+     *
+     * @param future the future to time out
+     * @param timeout the time to wait before timing out
+     * @param unit the unit of the timeout
+     * @param <T> the result type of the future
+     * @return the same future, for chaining
+     */
+    public static synchronized <T> CompletableFuture<T> withTimeout(
+            CompletableFuture<T> future,
+            long timeout,
+            TimeUnit unit) {
+        if(timeoutScheduler == null) {
+            timeoutScheduler = Executors.newSingleThreadScheduledExecutor();
+        }
+        ScheduledFuture<?> timer = timeoutScheduler.schedule(
+                () -> future.completeExceptionally(new TimeoutException("timed out after " + timeout + " " + unit)),
+                timeout,
+                unit
+        );
+        future.whenComplete((result, error) -> timer.cancel(false));
+        return future;
+    }
+
     /**
      * Called when a text/json response is received.
      *
      * Handles the various types of responses and calls the right event listener when the request
      * has been resolved
      *
+     * @param request the request the response belongs to
      * @param response response to the request in JSON format
      *
      * @see CategoriesResponseListener interface called when the response contains  trivia categories
@@ -397,13 +944,20 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
      * @see SessionTokenResponseListener interface called when the response contains a session token
      *
      */
-    @Override
-    public void onResponse(JSONObject response) {
+    private void handleResponse(TriviaRequest request, JSONObject response) {
+        ErrorResponseListener listener = request.listener;
         switch (response.optInt("response_code", -1)) {
             case 0:
                 // Session Token parsing
                 if(response.has("token")) {
-                    sessionToken = response.optString("token", "");
+                    String sessionToken = response.optString("token", "");
+                    if(!sessionToken.isEmpty()) {
+                        if(request.spareToken) {
+                            tokens.addSpare(sessionToken, System.currentTimeMillis());
+                        } else {
+                            tokens.setCurrent(sessionToken, System.currentTimeMillis());
+                        }
+                    }
 
                     // notify listener if available
                     if(listener instanceof SessionTokenResponseListener) {
@@ -416,57 +970,57 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
                     }
 
                 }
-                // Trivia questions parsing
+                // Trivia questions parsing, on the parse thread rather than the main thread;
+                // question requests normally parse their own responses on a network thread instead
                 if(response.has("results")) {
-                    // parse each question and add them to a list
                     JSONArray questions = response.optJSONArray("results");
-                    List<TriviaQuestion> results = new ArrayList<>();
-                    for(int i=0;i<questions.length();i++) {
-                        try {
-                            TriviaQuestion question = parseQuestionJSON(questions.getJSONObject(i));
-                            results.add(question);
-                        } catch (JSONException e) {
-                            Log.e("TriviaRequestHelper", e.getMessage());
-                            e.printStackTrace();
-                        }
-                    }
-
-                    // notify listener if available
-                    if(listener instanceof QuestionResponseListener) {
-                        ((QuestionResponseListener) listener).OnQuestionsResponse(results);
-                    }
+                    Executor delivery = getTransport().getDelivery();
+                    getParseExecutor().execute(() -> {
+                        List<TriviaQuestion> results = parseQuestions(questions);
+                        delivery.execute(() -> request.onQuestionsResponse(results));
+                    });
                 }
 
                 break;
+            case RESPONSE_CODE_TOKEN_NOT_FOUND:
+            case RESPONSE_CODE_TOKEN_EMPTY:
+                if(recoverSession(request, response.optInt("response_code"))) {
+                    break;
+                }
+                // fall through
             case 1:
-                listener.OnErrorResponse(lastRequest, "no results");
-                break;
             case 2:
-                listener.OnErrorResponse(lastRequest, "contained an invalid parameter");
-                break;
-            case 3:
-                listener.OnErrorResponse(lastRequest, "Token Not Found");
-                break;
-            case 4:
-                listener.OnErrorResponse(lastRequest, "no remaining questions");
+            // only once the scheduler gave up retrying
+            case RESPONSE_CODE_RATE_LIMIT:
+                getMetrics().recordError(request.endPoint, response.optInt("response_code"));
+                request.notifyError(TriviaQuestionParser.getResponseCodeMessage(response.optInt("response_code")));
                 break;
 
             default:
                 // Handle Trivia Categories request
                 if(response.has("trivia_categories")) {
                     if(listener instanceof CategoriesResponseListener) {
-                        SparseArray<String> categories = new SparseArray<>();
-                        JSONArray categoryArr = response.optJSONArray("trivia_categories");
-                        for(int i=0;i<categoryArr.length();i++){
-                            JSONObject entry = categoryArr.optJSONObject(i);
-                            if(entry != null) {
-                                categories.append(
-                                        entry.optInt("id", -1),
-                                        entry.optString("name", "Unknown")
-                                );
-                            }
+                        // cached responses are passed on as the same object every time,
+                        // so only parse them the first time
+                        if(response != categoriesResponse) {
+                            SparseArray<String> categories = new SparseArray<>();
+                            QuestionDictionary dictionary = QuestionDictionary.getInstance();
+                            JSONArray categoryArr = response.optJSONArray("trivia_categories");
+                            for(int i=0;i<categoryArr.length();i++){
+                                JSONObject entry = categoryArr.optJSONObject(i);
+                                if(entry != null) {
+                                    int id = entry.optInt("id", -1);
+                                    // share the name with the questions of the category
+                                    String name = dictionary.getCategory(
+                                            dictionary.registerCategory(id, entry.optString("name", "Unknown")));
+                                    categories.append(id, name);
+                                }
 
+                            }
+                            categoriesResponse = response;
+                            parsedCategories = categories;
                         }
+                        SparseArray<String> categories = parsedCategories;
 
                         // notify listener if available
                         if(listener instanceof CategoriesResponseListener) {
@@ -483,8 +1037,8 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
                     overallQuestionCount = response.optJSONObject("overall").optInt("total_num_of_verified_questions", -1);
 
                     // if a session category is set, set categoryQuestion to respective value from response
-                    if(getCategoryId() != null && getCategoryId() != -1 && response.has("categories")) {
-                        JSONObject category = response.optJSONObject("categories").optJSONObject(String.valueOf(getCategoryId()));
+                    if(request.categoryId != null && request.categoryId != -1 && response.has("categories")) {
+                        JSONObject category = response.optJSONObject("categories").optJSONObject(String.valueOf(request.categoryId));
                         if(category != null) {
                             categoryQuestionCount = category.optInt("total_num_of_verified_questions", -1);
                         } else {
@@ -512,8 +1066,8 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
                     totalCount = category.optInt("total_question_count", -1);
 
                     // if session difficulty is set difficultyCount to respective value from response
-                    if(getDifficulty() != null) {
-                        switch (getDifficulty()) {
+                    if(request.difficulty != null) {
+                        switch (request.difficulty) {
                             case TriviaGame.Difficulty.EASY:
                                 difficultyCount = category
                                         .optInt("total_easy_question_count", -1);
@@ -547,10 +1101,7 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
 
                 // Otherwise, we don't know what this is, error out
                 else {
-                    listener.OnErrorResponse(
-                            lastRequest,
-                            "Could not parse retrieved JSON object: " + response.toString()
-                    );
+                    request.notifyError("Could not parse retrieved JSON object: " + response.toString());
                 }
 
 
@@ -560,85 +1111,192 @@ public class TriviaRequestHelper extends VolleyRequestsHelper {
     }
 
     /**
-     * Callback method that an error has been occurred with the provided error code and optional
+     * Parses the questions of a JSON question response
+     *
+     * @param questions the results array of the response
+     * @return the questions that could be parsed
+     */
+    @WorkerThread
+    private static List<TriviaQuestion> parseQuestions(JSONArray questions) {
+        Tracing.beginSection("parseQuestionJSON", EndPoint.TRIVIA, questions.length());
+        try {
+            List<TriviaQuestion> results = new ArrayList<>(questions.length());
+            for(int i=0;i<questions.length();i++) {
+                try {
+                    results.add(TriviaQuestionParser.parseQuestionJSON(questions.getJSONObject(i)));
+                } catch (JSONException e) {
+                    Log.e("TriviaRequestHelper", e.getMessage());
+                    e.printStackTrace();
+                }
+            }
+            return results;
+        } finally {
+            Tracing.endSection();
+        }
+    }
+
+    /**
+     * Gets the executor question responses that arrive as JSON are parsed on
+     * @return the single parse thread, started on first use
+     */
+    private static synchronized ExecutorService getParseExecutor() {
+        if(parseExecutor == null) {
+            parseExecutor = Executors.newSingleThreadExecutor();
+        }
+        return parseExecutor;
+    }
+
+    /**
+     * Called when an error has occurred during a request, with the provided error code and optional
      * user-readable message.
      *
+     * @param request the request that failed
      * @param error exception containing information on what went wrong
      */
-    @Override
-    public void onErrorResponse(VolleyError error) {
+    private void handleError(TriviaRequest request, VolleyError error) {
         error.printStackTrace();
         VolleyLog.e("TriviaRequestHelper", error.getLocalizedMessage());
-        if(listener != null) {
-            listener.OnErrorResponse(lastRequest, error.getLocalizedMessage());
+        // questions requests report non-zero response codes through a ParseError
+        if(error.getCause() instanceof TriviaQuestionParser.ResponseCodeException) {
+            int responseCode = ((TriviaQuestionParser.ResponseCodeException) error.getCause()).getResponseCode();
+            if(!recoverSession(request, responseCode)) {
+                request.notifyError(error.getCause().getMessage());
+            }
+        } else {
+            request.notifyError(error.getLocalizedMessage());
         }
     }
 
     /**
-     * Handles pre-request necessities
+     * Recovers a question request that failed because of its session token,
+     * by moving on to a spare token or resetting the token, and then sending the request again.
+     * Requests are only sent again once, so a failing API can't keep them going forever.
      *
-     * @param endPoint sets the last request's that can be used for error handling
-     * @param listener sets the event listener for the current request
+     * @param request the question request that failed
+     * @param responseCode the response code it failed with
+     * @return true if the request will be sent again, false if the failure should be passed on
      */
-    private void prepareForRequest(@EndPoint String endPoint, ErrorResponseListener listener) {
-        this.lastRequest = endPoint;
-        if(listener != this.listener) {
-            this.listener = listener;
+    private boolean recoverSession(TriviaRequest request, int responseCode) {
+        if(!EndPoint.TRIVIA.equals(request.endPoint) || request.replayed || request.token == null) {
+            return false;
         }
-    }
+        String failedToken = request.token;
+        TriviaRequest replay = new TriviaRequest(
+                request.endPoint, request.listener, request.categoryId, request.difficulty, request.amount, true);
+        long now = System.currentTimeMillis();
+
+        switch (responseCode) {
+            case RESPONSE_CODE_TOKEN_NOT_FOUND:
+                // the token expired or was never valid, so it is no use resetting it
+                tokens.retire(failedToken);
+                if(tokens.getCurrent(now) != null) {
+                    sendQuestionsRequest(replay);
+                } else {
+                    requestSessionToken(replayListener(replay, request));
+                }
+                break;
 
+            case RESPONSE_CODE_TOKEN_EMPTY:
+                // other requests sent with the same token may have retired it already
+                boolean retired = tokens.retire(failedToken);
+                if(tokens.getCurrent(now) != null) {
+                    // continue with a spare straight away, the used up token becomes a spare once reset
+                    sendQuestionsRequest(replay);
+                    if(retired) {
+                        pendingSpareTokens++;
+                        resetSessionToken(failedToken, spareTokenListener(), true);
+                    }
+                } else {
+                    resetSessionToken(failedToken, replayListener(replay, request), false);
+                }
+                break;
 
+            default:
+                return false;
+        }
+        topUpSpareTokens();
+        return true;
+    }
 
     /**
-     * Returns a URL encoded response to a human-readable UTF-8 String
-     *
-     * @param encoded the string to be decoded
-     * @return the decoded string
+     * Requests new spare session tokens until there are {@link #SPARE_TOKENS} of them
      */
-    private String decodeResponseStr(String encoded) {
-        try {
-            return URLDecoder.decode(encoded, "UTF-8");
-        } catch (UnsupportedEncodingException e) {
-            return null;
+    private void topUpSpareTokens() {
+        int missing = SPARE_TOKENS - tokens.getSpareCount(System.currentTimeMillis()) - pendingSpareTokens;
+        for(int i=0;i<missing;i++) {
+            pendingSpareTokens++;
+            TriviaRequest request = newRequest(EndPoint.SESSION, spareTokenListener());
+            request.spareToken = true;
+            makeRequest(Request.Method.GET, apiUrl + EndPoint.SESSION, "command=request", request);
         }
     }
 
     /**
-     * Parses a JSONObject for any trivia questions provided by the OpenTriviaDB
-     *
-     * @param question the JSONObject to parse for any question
-     * @return a TriviaQuestion object containing the data parsed from the JSONObject
-     */
-    private TriviaQuestion parseQuestionJSON(JSONObject question) throws JSONException {
-        @TriviaGame.QuestionType String qType = question.getString("type");
-        switch (qType) {
-            case TriviaGame.QuestionType.BOOLEAN:
-                return new TrueFalseQuestion(
-                        decodeResponseStr(question.getString("question")),
-                        Boolean.parseBoolean(question.getString("correct_answer")),
-                        question.getString("difficulty"),
-                        decodeResponseStr(question.getString("category"))
-                );
-            case TriviaGame.QuestionType.MULTIPLE:
-                // Parse incorrect_answers array
-                JSONArray wrongAnswersArr = question.getJSONArray("incorrect_answers");
-                String[] wrongAnswers = new String[wrongAnswersArr.length()];
-                for(int i=0;i<wrongAnswersArr.length();i++){
-                    wrongAnswers[i] = decodeResponseStr(wrongAnswersArr.getString(i));
-                }
-
-                return new MultipleChoiceQuestion(
-                        decodeResponseStr(question.getString("question")),
-                        decodeResponseStr("correct_answer"),
-                        wrongAnswers,
-                        question.getString("difficulty"),
-                        decodeResponseStr(question.getString("category"))
-                );
-
+     * Creates a listener for a spare session token request, which only keeps count of
+     * the outstanding requests; the token itself is added to the pool when the response is handled
+     */
+    private SessionTokenResponseListener spareTokenListener() {
+        return new SessionTokenResponseListener() {
+            @Override
+            public void OnRequestTokenResponse(String token) {
+                pendingSpareTokens--;
+            }
+
+            @Override
+            public void OnResetTokenResponse(String token) {
+                pendingSpareTokens--;
+            }
+
+            @Override
+            public void OnErrorResponse(String lastRequest, @Nullable String errorMsg) {
+                pendingSpareTokens--;
+                Log.e("TriviaRequestHelper", "Could not get a spare session token: " + errorMsg);
+            }
+        };
+    }
 
-                default:
-                    throw new JSONException("Could not find trivia question from JSON Object");
+    /**
+     * Creates a listener that sends a question request again once a usable session token
+     * has been retrieved; if that fails, a new token is requested instead of a reset one,
+     * and if that fails too the original request fails
+     *
+     * @param replay the question request to send again
+     * @param failed the question request that failed
+     */
+    private SessionTokenResponseListener replayListener(TriviaRequest replay, TriviaRequest failed) {
+        return new SessionTokenResponseListener() {
+            private boolean requestedNew;
+
+            @Override
+            public void OnRequestTokenResponse(String token) {
+                sendQuestionsRequest(replay);
+            }
+
+            @Override
+            public void OnResetTokenResponse(String token) {
+                sendQuestionsRequest(replay);
+            }
+
+            @Override
+            public void OnErrorResponse(String lastRequest, @Nullable String errorMsg) {
+                if(!requestedNew) {
+                    requestedNew = true;
+                    requestSessionToken(this);
+                } else {
+                    failed.notifyError(errorMsg);
+                }
+            }
+        };
+    }
 
-        }
+    /**
+     * Creates the context for a new request, using this session's category and difficulty
+     *
+     * @param endPoint the endpoint the request is made to
+     * @param listener the event listener for the request
+     * @return the context to route the request's response through
+     */
+    private TriviaRequest newRequest(@EndPoint String endPoint, ErrorResponseListener listener) {
+        return new TriviaRequest(endPoint, listener, category, difficulty);
     }
 }
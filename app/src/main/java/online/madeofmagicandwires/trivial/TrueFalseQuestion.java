@@ -1,6 +1,6 @@
 package online.madeofmagicandwires.trivial;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -8,6 +8,11 @@ public class TrueFalseQuestion extends TriviaQuestion {
 
     private boolean correctAnswer;
 
+    /** shuffled order of the answers; index 0 is the right answer, 1 the wrong one **/
+    private volatile byte[] answerOrder;
+    /** the answers in their shuffled order, built the first time they are needed **/
+    private volatile List<String> answers;
+
     /**
      * Most verbose constructor, sets the difficulty and category of the question
      *
@@ -20,6 +25,18 @@ public class TrueFalseQuestion extends TriviaQuestion {
         this.correctAnswer = correctAnswer;
     }
 
+    /**
+     * Constructor for questions whose difficulty and category are already in the {@link QuestionDictionary}
+     *
+     * @param question       the question to be asked
+     * @param difficultyCode the code of the difficulty level of the question
+     * @param categoryIndex  the index of the category the question belongs to
+     */
+    TrueFalseQuestion(String question, boolean correctAnswer, byte difficultyCode, int categoryIndex) {
+        super(question, difficultyCode, categoryIndex);
+        this.correctAnswer = correctAnswer;
+    }
+
     /**
      * Less verbose constructor, automatically sets the category to "Unknown"
      *
@@ -29,7 +46,6 @@ public class TrueFalseQuestion extends TriviaQuestion {
     public TrueFalseQuestion(String question, boolean correctAnswer, String difficulty) {
         super(question, difficulty);
         this.correctAnswer = correctAnswer;
-
     }
 
     /**
@@ -53,6 +69,17 @@ public class TrueFalseQuestion extends TriviaQuestion {
         return answer.equals(correctAnswer);
     }
 
+    /**
+     * Checks if the answer at the given position of {@link #getAnswers()} is the right one
+     *
+     * @param index the position of the answer chosen by the user
+     * @return true if it was the right answer, false if it wasn't
+     */
+    @Override
+    public boolean checkAnswer(int index) {
+        return answerOrder()[index] == 0;
+    }
+
     /**
      * Shows the correct answer in human-readable string format
      *
@@ -65,16 +92,53 @@ public class TrueFalseQuestion extends TriviaQuestion {
 
 
     /**
-     * Returns all the choices to choose from, shuffled in a random order
+     * Returns all the choices to choose from, shuffled in a random order.
+     * The order is the same every time it is called for the same question.
      *
-     * @return a list of human-readable possible answers to the question
+     * @return an unmodifiable list of human-readable possible answers to the question
      */
     @Override
     public List<String> getAnswers() {
-        List<String> choices = new ArrayList<>();
-        choices.add(Boolean.toString(correctAnswer));
-        choices.add(Boolean.toString(!correctAnswer));
-        Collections.shuffle(choices);
-        return choices;
+        List<String> built = answers;
+        if(built == null) {
+            built = Collections.unmodifiableList(Arrays.asList(getAnswer(0), getAnswer(1)));
+            answers = built;
+        }
+        return built;
+    }
+
+    /**
+     * Gets the amount of choices to choose from
+     *
+     * @return always 2; true and false
+     */
+    @Override
+    public int getAnswerCount() {
+        return 2;
+    }
+
+    /**
+     * Gets a single choice, without building the list of all of them
+     *
+     * @param index the position of the answer in {@link #getAnswers()}
+     * @return "true" or "false"
+     */
+    @Override
+    public String getAnswer(int index) {
+        return Boolean.toString((answerOrder()[index] == 0) == correctAnswer);
+    }
+
+    /**
+     * Gets the shuffled order of the answers, shuffling them the first time it is needed
+     *
+     * @return the answer indices in their shuffled order
+     */
+    private byte[] answerOrder() {
+        byte[] order = answerOrder;
+        if(order == null) {
+            order = shuffleAnswerOrder(2, answerSeed(getQuestion()));
+            answerOrder = order;
+        }
+        return order;
     }
 }
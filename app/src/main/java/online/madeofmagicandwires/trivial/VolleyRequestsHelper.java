@@ -10,48 +10,186 @@ import android.support.annotation.RequiresApi;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
 import com.android.volley.Request;
-import com.android.volley.RequestQueue;
 import com.android.volley.Response;
 import com.android.volley.VolleyError;
 import com.android.volley.toolbox.JsonObjectRequest;
-import com.android.volley.toolbox.Volley;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
-public abstract class VolleyRequestsHelper implements Response.ErrorListener, Response.Listener<JSONObject> {
+public abstract class VolleyRequestsHelper {
 
+    /**
+     * Handles both the response and the error of a single request,
+     * so every request can be routed to its own callbacks
+     */
+    public interface ResponseHandler extends Response.Listener<JSONObject>, Response.ErrorListener {
 
-    /** context to be used by Volley **/
-    private RequestQueue queue;
+    }
+
+    /**
+     * Passes a single response on to every handler of identical requests
+     * that were made while it was pending
+     */
+    private class CoalescedHandler implements ResponseHandler {
+
+        private final String url;
+        private final List<ResponseHandler> handlers;
+
+        CoalescedHandler(String url, ResponseHandler handler) {
+            this.url = url;
+            this.handlers = new ArrayList<>(1);
+            this.handlers.add(handler);
+        }
+
+        @Override
+        public void onResponse(JSONObject response) {
+            for(ResponseHandler handler : resolve()) {
+                handler.onResponse(response);
+            }
+        }
+
+        @Override
+        public void onErrorResponse(VolleyError error) {
+            for(ResponseHandler handler : resolve()) {
+                handler.onErrorResponse(error);
+            }
+        }
+
+        /**
+         * Stops merging new requests into this one
+         * @return the handlers to pass the response on to
+         */
+        private List<ResponseHandler> resolve() {
+            synchronized (pendingGets) {
+                pendingGets.remove(url);
+                return handlers;
+            }
+        }
+    }
+
+    /** directory in the app's cache directory holding the cached responses **/
+    private static final String CACHE_DIR = "responses";
+    /** the maximum amount of responses kept in memory **/
+    private static final int MAX_CACHED_RESPONSES = 32;
+
+    /** sends the requests over the network **/
+    private final Transport transport;
+
+    /** paces the requests added to the queue **/
+    private RequestScheduler scheduler;
+
+    /** pending GET requests by url, so identical ones can be merged **/
+    private final Map<String, CoalescedHandler> pendingGets;
+
+    /** responses of endpoints that rarely change **/
+    private final ResponseCache cache;
+
+    /** how long responses may be served from the cache, by endpoint **/
+    private final Map<String, ResponseCache.Policy> cachePolicies;
+
+    /** urls of cached responses currently being revalidated **/
+    private final Set<String> revalidating;
+
+    /** endpoints whose identical requests must not be merged **/
+    private final Set<String> uncoalesced;
 
     /**
      * Standard Constructor
      * @param context application context used to create a requestqueue
      */
     public VolleyRequestsHelper(@NonNull Context context) {
-        this.queue = Volley.newRequestQueue(context);
+        this(new VolleyTransport(context), new File(context.getCacheDir(), CACHE_DIR));
+    }
+
+    /**
+     * Constructor for sending requests over a custom transport,
+     * for example to run without an Android context
+     * @param transport the transport to send the requests with
+     * @param cacheDir the directory to keep cached responses in
+     */
+    public VolleyRequestsHelper(@NonNull Transport transport, @NonNull File cacheDir) {
+        this.transport = transport;
+        this.scheduler = new RequestScheduler(transport);
+        this.pendingGets = new HashMap<>();
+        this.cache = new ResponseCache(cacheDir, MAX_CACHED_RESPONSES);
+        this.cachePolicies = new HashMap<>();
+        this.revalidating = new HashSet<>();
+        this.uncoalesced = new HashSet<>();
+    }
+
+    /**
+     * Gets the transport the requests of this helper are sent with
+     * @return the transport
+     */
+    public Transport getTransport() {
+        return transport;
+    }
+
+    /**
+     * Gets the scheduler pacing the requests of this helper,
+     * to set rate limits or inspect its statistics
+     * @return the request scheduler
+     */
+    public RequestScheduler getScheduler() {
+        return scheduler;
     }
 
     /**
-     * Callback method that an error has been occurred with the provided error code and optional
-     * user-readable message.
+     * Gets the metrics the performance of the requests of this helper is recorded in,
+     * by endpoint
+     * @return the request metrics
+     */
+    public RequestMetrics getMetrics() {
+        return scheduler.getMetrics();
+    }
+
+    /**
+     * Gets the cache the responses of cached endpoints are kept in,
+     * to inspect its hit and miss counts
+     * @return the response cache
+     */
+    public ResponseCache getResponseCache() {
+        return cache;
+    }
+
+    /**
+     * Caches the plain GET responses of an endpoint.
+     * Fresh responses are passed on straight from the cache, without making a request;
+     * stale responses are passed on as well, but are revalidated in the background.
+     * Should be set before any requests are made to the endpoint.
      *
-     * @param error exception containing information on what went wrong
+     * @param endPoint the endpoint to cache the responses of
+     * @param ttlMs time in milliseconds a response is served without revalidating it
+     * @param staleMs time in milliseconds after the ttl a response is still served while it is revalidated
      */
-    @Override
-    abstract public void onErrorResponse(VolleyError error);
+    public void setCachePolicy(@NonNull String endPoint, long ttlMs, long staleMs) {
+        cachePolicies.put(endPoint, new ResponseCache.Policy(ttlMs, staleMs));
+    }
 
     /**
-     * Called when a response is received in JSON format.
-     * Parses the JSON Response into an array of Strings representing each category.
+     * Stops identical GET requests to an endpoint from being merged into one,
+     * for endpoints that answer every request differently
      *
-     * @param response response object
+     * @param endPoint the endpoint every request has to be sent to separately
      */
-    @Override
-    abstract public void onResponse(JSONObject response);
+    public void setUncoalesced(@NonNull String endPoint) {
+        uncoalesced.add(endPoint);
+    }
 
 
     /**
@@ -59,22 +197,11 @@ public abstract class VolleyRequestsHelper implements Response.ErrorListener, Re
      * @param method the method to be used, must be one of {@link com.android.volley.Request.Method}
      * @param url the URI to send the request to
      * @param data possible data to send along with the request
-     * @see #makeRequest(int, String, Map) for using query parameters instead of attaching POST data
+     * @param handler the handler to be called once this request has resolved
+     * @see #makeRequest(int, String, Map, ResponseHandler) for using query parameters instead of attaching POST data
      */
-    public void makeRequest(int method, Uri url, @Nullable JSONObject data) {
-        Log.d("makeRequest", url.toString());
-        try {
-            JsonObjectRequest request = new JsonObjectRequest(
-                    method,
-                    url.toString(),
-                    data,
-                    this,
-                    this
-            );
-            queue.add(request);
-        } catch (NullPointerException e) {
-            onErrorResponse(new VolleyError(e.getMessage()));
-        }
+    public void makeRequest(int method, Uri url, @Nullable JSONObject data, @NonNull ResponseHandler handler) {
+        makeRequest(method, url.toString(), data, handler);
     }
 
 
@@ -83,36 +210,212 @@ public abstract class VolleyRequestsHelper implements Response.ErrorListener, Re
      * @param method the method to be used, must be one of {@link com.android.volley.Request.Method}
      * @param url the endpoint to send the request to
      * @param data possible data to send along with the request
-     * @see #makeRequest(int, String, Map) for using query parameters instead of attaching POST data
+     * @param handler the handler to be called once this request has resolved;
+     *                cached responses are passed on through the transport's delivery, like any other
+     * @see #makeRequest(int, String, Map, ResponseHandler) for using query parameters instead of attaching POST data
+     * @see #setCachePolicy(String, long, long) for caching the responses of an endpoint
      */
-    public void makeRequest( int method,  String url, @Nullable JSONObject data) {
+    public void makeRequest(
+            int method,
+            String url,
+            @Nullable JSONObject data,
+            @NonNull ResponseHandler handler) {
         Log.d("makeRequest", url);
         try {
-            JsonObjectRequest request = new JsonObjectRequest(
-                    method,
-                    url,
-                    data,
-                    this,
-                    this
-            );
-            queue.add(request);
+            String endPoint = getEndPoint(url);
+            ResponseCache.Policy policy = null;
+
+            // merge plain GET requests into an identical one that is still pending
+            if(method == Request.Method.GET && data == null && !uncoalesced.contains(endPoint)) {
+                policy = cachePolicies.get(endPoint);
+                if(policy != null && serveFromCache(url, endPoint, policy, handler)) {
+                    return;
+                }
+                synchronized (pendingGets) {
+                    CoalescedHandler pending = pendingGets.get(url);
+                    if(pending != null) {
+                        pending.handlers.add(handler);
+                        scheduler.recordCoalesced(endPoint);
+                        return;
+                    }
+                    pending = new CoalescedHandler(url, handler);
+                    pendingGets.put(url, pending);
+                    handler = pending;
+                }
+            }
+
+            final ResponseHandler requestHandler = handler;
+            if(policy != null) {
+                scheduler.submit(
+                        endPoint,
+                        errorListener -> new CachedJsonRequest(
+                                url,
+                                null,
+                                entry -> {
+                                    if(isCacheable(entry)) {
+                                        cache.put(url, entry);
+                                    }
+                                    deliverCached(entry, requestHandler);
+                                },
+                                errorListener
+                        ),
+                        requestHandler
+                );
+            } else {
+                scheduler.submit(
+                        endPoint,
+                        errorListener -> new JsonObjectRequest(
+                                method,
+                                url,
+                                data,
+                                requestHandler,
+                                errorListener
+                        ) {
+                            @Override
+                            protected Response<JSONObject> parseNetworkResponse(NetworkResponse response) {
+                                long start = System.nanoTime();
+                                Response<JSONObject> parsed = super.parseNetworkResponse(response);
+                                RequestMetrics.recordResponse(this, response, start);
+                                ParseError rateLimited = rateLimitError(parsed.result);
+                                return (rateLimited != null) ? Response.error(rateLimited) : parsed;
+                            }
+                        },
+                        requestHandler
+                );
+            }
 
 
         } catch (NullPointerException e) {
-            onErrorResponse(new VolleyError(e.getMessage()));
+            handler.onErrorResponse(new VolleyError(e.getMessage()));
         }
 
     }
 
+    /**
+     * Passes on a cached response if there is one that may still be served,
+     * revalidating it in the background if it has gone stale
+     *
+     * @param url the url of the request
+     * @param endPoint the endpoint of the request
+     * @param policy the cache policy of the endpoint
+     * @param handler the handler to pass the cached response on to
+     * @return true if the response was served from the cache, false if it has to be requested
+     */
+    private boolean serveFromCache(
+            String url,
+            String endPoint,
+            ResponseCache.Policy policy,
+            ResponseHandler handler) {
+        long now = System.currentTimeMillis();
+        ResponseCache.Entry entry = cache.get(url, policy, now);
+        if(entry == null) {
+            return false;
+        }
+        if(policy.isStale(entry, now)) {
+            revalidate(url, endPoint, entry);
+        }
+        transport.getDelivery().execute(() -> deliverCached(entry, handler));
+        return true;
+    }
+
+    /**
+     * Requests a stale cached response again, conditional on it having changed,
+     * and updates the cache with the result; does nothing if it is already being revalidated
+     *
+     * @param url the url of the request
+     * @param endPoint the endpoint of the request
+     * @param stale the cached response to revalidate
+     */
+    private void revalidate(String url, String endPoint, ResponseCache.Entry stale) {
+        synchronized (revalidating) {
+            if(!revalidating.add(url)) {
+                return;
+            }
+        }
+        Log.d("revalidate", url);
+        scheduler.submit(
+                endPoint,
+                errorListener -> new CachedJsonRequest(
+                        url,
+                        stale,
+                        entry -> {
+                            if(entry == stale) {
+                                cache.touch(url, stale, System.currentTimeMillis());
+                            } else if(isCacheable(entry)) {
+                                cache.put(url, entry);
+                            }
+                            synchronized (revalidating) {
+                                revalidating.remove(url);
+                            }
+                        },
+                        errorListener
+                ),
+                error -> {
+                    // keep serving the stale response until it expires
+                    Log.w("revalidate", "could not revalidate " + url + ": " + error.getMessage());
+                    synchronized (revalidating) {
+                        revalidating.remove(url);
+                    }
+                }
+        );
+    }
+
+    /**
+     * Turns a response the OpenTriviaDB sent because it was called too often into an error,
+     * so the {@link RequestScheduler} retries it with its backoff, like throttling over HTTP
+     *
+     * @param json the parsed response, if any
+     * @return the error to fail the attempt with, or null if the response was not rate limited
+     */
+    @Nullable
+    static ParseError rateLimitError(@Nullable JSONObject json) {
+        if(json != null && json.optInt("response_code", 0) == TriviaQuestionParser.RESPONSE_CODE_RATE_LIMIT) {
+            return new ParseError(new TriviaQuestionParser.ResponseCodeException(
+                    TriviaQuestionParser.RESPONSE_CODE_RATE_LIMIT));
+        }
+        return null;
+    }
+
+    /**
+     * Checks if a response may be cached: error responses of the OpenTriviaDB,
+     * such as being rate limited or an unknown token, are sent with a 200 as well,
+     * but must not be served again from the cache
+     *
+     * @param entry the response
+     * @return true if the response has no response code, or a response code of 0
+     */
+    private static boolean isCacheable(ResponseCache.Entry entry) {
+        try {
+            return entry.getJson().optInt("response_code", 0) == 0;
+        } catch (JSONException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Passes a cached response on to a handler
+     *
+     * @param entry the cached response
+     * @param handler the handler to pass it on to
+     */
+    private static void deliverCached(ResponseCache.Entry entry, ResponseHandler handler) {
+        try {
+            handler.onResponse(entry.getJson());
+        } catch (JSONException e) {
+            handler.onErrorResponse(new ParseError(e));
+        }
+    }
+
     /**
      * Make a Volley Request using a query parameter instead of attaching data
      * @param method the method to be used; must be one of {@link com.android.volley.Request.Method}
      * @param url the endpoint to send the request to
      * @param queryParams the query parameters to attach to the request url
-     * @see #makeRequest(int, String, Map) for passing more than one one two query parameters
+     * @param handler the handler to be called once this request has resolved
+     * @see #makeRequest(int, String, Map, ResponseHandler) for passing more than one one two query parameters
      */
-    public void makeRequest(int method, String url, String queryParams) {
-        makeRequest(method, url + "?" + queryParams, (JSONObject) null);
+    public void makeRequest(int method, String url, String queryParams, @NonNull ResponseHandler handler) {
+        makeRequest(method, url + "?" + queryParams, (JSONObject) null, handler);
     }
 
     /**
@@ -120,22 +423,104 @@ public abstract class VolleyRequestsHelper implements Response.ErrorListener, Re
      * @param method the method to be used; must be one of {@link com.android.volley.Request.Method}
      * @param url the endpoint to send the request to
      * @param queryParams an array of query parameters to attach to the request url
-     * @see #makeRequest(int, String, String) to pass query parameters as a string;
+     * @param handler the handler to be called once this request has resolved
+     * @see #makeRequest(int, String, String, ResponseHandler) to pass query parameters as a string;
      *                                        useful when you've got fewer parameters
      */
-    public void makeRequest(int method, String url, Map<String, String> queryParams) {
-        Uri.Builder queryUri = Uri.parse(url).buildUpon();
-        queryParams.forEach(queryUri::appendQueryParameter);
-        makeRequest(method, queryUri.build(), null);
+    public void makeRequest(
+            int method,
+            String url,
+            Map<String, String> queryParams,
+            @NonNull ResponseHandler handler) {
+        makeRequest(method, buildUrl(url, queryParams), (JSONObject) null, handler);
     }
 
     /**
      * Make a simple GET Volley request
      * @param url the endpoint to send the request to
+     * @param handler the handler to be called once this request has resolved
+     */
+    public void makeRequest(String url, @NonNull ResponseHandler handler) {
+        makeRequest(Request.Method.GET, url, (JSONObject) null, handler);
+    }
+
+    /**
+     * Schedules a custom Volley request;
+     * used for requests that do not result in a {@link JSONObject}
+     * @param url the url the request is sent to
+     * @param factory builds the request for every attempt
+     * @param errorListener the listener to be called if the request failed after all retries
+     */
+    public void submitRequest(
+            @NonNull String url,
+            @NonNull RequestScheduler.RequestFactory factory,
+            @NonNull Response.ErrorListener errorListener) {
+        Log.d("submitRequest", url);
+        scheduler.submit(getEndPoint(url), factory, errorListener);
+    }
+
+    /**
+     * Gets the endpoint of an url, used to pace requests per endpoint
+     * @param url the url to get the endpoint of
+     * @return the last path segment of the url
+     */
+    public static String getEndPoint(String url) {
+        try {
+            String path = URI.create(url).getPath();
+            if(path != null) {
+                int end = path.endsWith("/") ? path.length() - 1 : path.length();
+                String endPoint = path.substring(path.lastIndexOf('/', end - 1) + 1, end);
+                if(!endPoint.isEmpty()) {
+                    return endPoint;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            Log.w("getEndPoint", "could not parse " + url);
+        }
+        return url;
+    }
+
+    /**
+     * Attaches query parameters to an url
+     * @param url the endpoint to attach the query parameters to
+     * @param queryParams the query parameters to attach
+     * @return the url including the query parameters
      */
-    public void makeRequest(String url) {
-        makeRequest(Request.Method.GET, url, (JSONObject) null);
+    public static Uri buildUri(String url, Map<String, String> queryParams) {
+        return Uri.parse(buildUrl(url, queryParams));
     }
 
+    /**
+     * Attaches query parameters to an url, without going through {@link Uri}
+     * so it can be used off Android as well
+     * @param url the endpoint to attach the query parameters to
+     * @param queryParams the query parameters to attach
+     * @return the url including the percent-encoded query parameters
+     */
+    public static String buildUrl(String url, Map<String, String> queryParams) {
+        StringBuilder query = new StringBuilder(url);
+        char separator = (url.indexOf('?') < 0) ? '?' : '&';
+        for(Map.Entry<String, String> param : queryParams.entrySet()) {
+            query.append(separator)
+                    .append(encodeQueryParam(param.getKey()))
+                    .append('=')
+                    .append(encodeQueryParam(param.getValue()));
+            separator = '&';
+        }
+        return query.toString();
+    }
 
+    /**
+     * Percent-encodes a query parameter name or value
+     * @param param the name or value to encode
+     * @return the encoded name or value, with spaces as %20 as {@link Uri} encodes them
+     */
+    private static String encodeQueryParam(String param) {
+        try {
+            return URLEncoder.encode(param, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            // every JVM supports UTF-8
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -0,0 +1,62 @@
+package online.madeofmagicandwires.trivial;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+
+import com.android.volley.Request;
+import com.android.volley.RequestQueue;
+import com.android.volley.toolbox.Volley;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Transport sending requests through a default Volley request queue;
+ * responses are delivered on the main thread
+ */
+public class VolleyTransport implements Transport {
+
+    private final RequestQueue queue;
+    private final Executor mainThread;
+
+    /**
+     * Standard constructor
+     *
+     * @param context context used to create the request queue
+     */
+    public VolleyTransport(@NonNull Context context) {
+        this.queue = Volley.newRequestQueue(context);
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        this.mainThread = mainHandler::post;
+    }
+
+    /**
+     * Adds a request to the Volley request queue
+     *
+     * @param request the request to send
+     */
+    @Override
+    public void send(@NonNull Request<?> request) {
+        queue.add(request);
+    }
+
+    /**
+     * Gets the main thread, which Volley delivers its responses on
+     *
+     * @return an executor posting to the main looper
+     */
+    @NonNull
+    @Override
+    public Executor getDelivery() {
+        return mainThread;
+    }
+
+    /**
+     * Stops the Volley request queue
+     */
+    @Override
+    public void stop() {
+        queue.stop();
+    }
+}
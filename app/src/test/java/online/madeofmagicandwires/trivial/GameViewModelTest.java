@@ -0,0 +1,133 @@
+package online.madeofmagicandwires.trivial;
+
+import android.app.Application;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class GameViewModelTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<TriviaQuestion> questions(int amount) {
+        List<TriviaQuestion> questions = new ArrayList<>();
+        for(int i=0;i<amount;i++) {
+            if(i % 3 == 0) {
+                questions.add(new TrueFalseQuestion("Statement " + i, i % 2 == 0, TriviaGame.Difficulty.HARD, "Testing"));
+            } else {
+                questions.add(new MultipleChoiceQuestion(
+                        "Question " + i,
+                        "right " + i,
+                        new String[] {"wrong", "answers"},
+                        TriviaGame.Difficulty.EASY,
+                        "Testing"));
+            }
+        }
+        return questions;
+    }
+
+    @Test
+    public void gameSurvivesSnapshot() throws IOException {
+        TriviaGame game = new TriviaGame(10, TriviaGame.Difficulty.MEDIUM, TriviaGame.QuestionType.MULTIPLE, 9);
+        game.setQuestions(questions(10));
+        for(int i=0;i<4;i++) {
+            game.addScore(1);
+            game.nextQuestion();
+        }
+
+        byte[] snapshot = GameViewModel.writeGame(game);
+        TriviaGame restored = GameViewModel.readGame(snapshot);
+
+        assertThat(restored.getQuestionAmount(), is(10));
+        assertThat(restored.getGameDifficulty(), is(TriviaGame.Difficulty.MEDIUM));
+        assertThat(restored.getGameCategoryId(), is(9));
+        assertThat(restored.getQuestionIndex(), is(4));
+        assertThat(restored.getScore(), is(4));
+        assertFalse(restored.isGameOver());
+        assertThat(restored.getLoadedQuestionCount(), is(10));
+        for(int i=0;i<10;i++) {
+            assertThat(restored.getQuestion(i).getQuestion(), is(game.getQuestion(i).getQuestion()));
+            assertThat(restored.getQuestion(i).getRightAnswer(), is(game.getQuestion(i).getRightAnswer()));
+            assertThat(restored.getQuestion(i).getAnswers(), is(game.getQuestion(i).getAnswers()));
+        }
+        // a saved game fits comfortably into an instance state
+        assertTrue("snapshot is " + snapshot.length + " bytes", snapshot.length < 1024);
+    }
+
+    @Test
+    public void unstartedAndFinishedGamesSurviveSnapshot() throws IOException {
+        TriviaGame endless = new TriviaGame();
+        TriviaGame restored = GameViewModel.readGame(GameViewModel.writeGame(endless));
+        assertThat(restored.getQuestionAmount(), is(0));
+        assertNull(restored.getGameDifficulty());
+        assertThat(restored.getLoadedQuestionCount(), is(0));
+
+        TriviaGame finished = new TriviaGame(1);
+        finished.setQuestions(questions(1));
+        finished.nextQuestion();
+        assertTrue(GameViewModel.readGame(GameViewModel.writeGame(finished)).isGameOver());
+    }
+
+    private static int rightAnswer(TriviaQuestion question) {
+        for(int i=0;i<question.getAnswerCount();i++) {
+            if(question.checkAnswer(i)) {
+                return i;
+            }
+        }
+        throw new AssertionError("no right answer to " + question.getQuestion());
+    }
+
+    @Test
+    public void finishedGamesAreRecorded() throws Exception {
+        HighscoreStore highscores = new HighscoreStore(new File(folder.getRoot(), "highscores.log"), Runnable::run);
+        TriviaGame game = new TriviaGame(3, TriviaGame.Difficulty.EASY, TriviaGame.QuestionType.ANY);
+        game.setQuestions(questions(3));
+        GameViewModel model = new GameViewModel(new Application(), game, highscores);
+
+        assertFalse(model.answerQuestion(rightAnswer(game.getCurrentQuestion())));
+        assertFalse(model.answerQuestion(rightAnswer(game.getCurrentQuestion()) == 0 ? 1 : 0));
+        assertTrue(model.answerQuestion(rightAnswer(game.getCurrentQuestion())));
+        assertThat(game.getScore(), is(2));
+
+        assertThat(model.recordScore().get(10, TimeUnit.SECONDS), is(1));
+        // a recreated activity asking again does not record the game twice
+        assertThat(model.recordScore().get(10, TimeUnit.SECONDS), is(1));
+        assertThat(highscores.size(), is(1));
+        List<HighscoreStore.Entry> top = highscores.requestTopScoresAsync(
+                HighscoreStore.Mode.CLASSIC, HighscoreStore.ANY_CATEGORY, TriviaGame.Difficulty.ANY, 10)
+                .get(10, TimeUnit.SECONDS);
+        assertThat(top.size(), is(1));
+        assertThat(top.get(0).score, is(2));
+    }
+
+    @Test
+    public void gamesEndWhenQuestionsRunOut() {
+        HighscoreStore highscores = new HighscoreStore(new File(folder.getRoot(), "highscores.log"), Runnable::run);
+        TriviaGame game = new TriviaGame(10);
+        game.setQuestions(questions(2));
+        GameViewModel model = new GameViewModel(new Application(), game, highscores);
+
+        assertFalse(model.answerQuestion(0));
+        assertTrue(model.answerQuestion(0));
+        assertTrue(game.isGameOver());
+        assertThat(game.getQuestionIndex(), is(2));
+    }
+
+    @Test(expected = IOException.class)
+    public void otherSnapshotVersionsAreRejected() throws IOException {
+        byte[] snapshot = GameViewModel.writeGame(new TriviaGame(10));
+        snapshot[0] = 0;
+        GameViewModel.readGame(snapshot);
+    }
+}
@@ -0,0 +1,166 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class HighscoreStoreTest {
+
+    private static final int CLASSIC = HighscoreStore.Mode.CLASSIC;
+    private static final int ENDLESS = HighscoreStore.Mode.ENDLESS;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File logFile;
+
+    @Before
+    public void setUp() {
+        logFile = new File(folder.getRoot(), "highscores.log");
+    }
+
+    private HighscoreStore newStore() {
+        return new HighscoreStore(logFile, Runnable::run);
+    }
+
+    private static HighscoreStore.Entry entry(int score, long timestamp, int mode, int category, String difficulty) {
+        return new HighscoreStore.Entry(score, timestamp, mode, category, difficulty);
+    }
+
+    @Test
+    public void leaderboardRanksAndKeepsBestGames() {
+        Leaderboard leaderboard = new Leaderboard(3);
+        int[] scores = {5, 200, 5, 0, 70, 3};
+        for(int i=0;i<scores.length;i++) {
+            leaderboard.add(entry(scores[i], i, CLASSIC, 9, null));
+        }
+        assertThat(leaderboard.size(), is(scores.length));
+        assertThat(leaderboard.rank(1000), is(1));
+        assertThat(leaderboard.rank(200), is(1));
+        assertThat(leaderboard.rank(70), is(2));
+        assertThat(leaderboard.rank(5), is(3));
+        assertThat(leaderboard.rank(4), is(5));
+        assertThat(leaderboard.rank(-1), is(7));
+
+        List<HighscoreStore.Entry> top = leaderboard.getTopScores(10);
+        assertThat(top.size(), is(3));
+        assertThat(top.get(0).score, is(200));
+        assertThat(top.get(1).score, is(70));
+        // the earlier of two equal scores ranks first
+        assertThat(top.get(2).score, is(5));
+        assertThat(top.get(2).timestamp, is(0L));
+    }
+
+    @Test
+    public void recordsRollUpToAnyCategoryAndDifficulty() throws IOException {
+        HighscoreStore store = newStore();
+        assertThat(store.record(entry(10, 1, CLASSIC, 9, "easy")), is(1));
+        assertThat(store.record(entry(20, 2, CLASSIC, 9, TriviaGame.Difficulty.HARD)), is(1));
+        assertThat(store.record(entry(5, 3, CLASSIC, 12, TriviaGame.Difficulty.EASY)), is(1));
+        assertThat(store.record(entry(50, 4, ENDLESS, 9, TriviaGame.Difficulty.UNKNOWN)), is(1));
+
+        assertThat(store.getTopScores(CLASSIC, 9, TriviaGame.Difficulty.EASY, 10).size(), is(1));
+        assertThat(store.getTopScores(CLASSIC, 9, null, 10).size(), is(2));
+        assertThat(store.getTopScores(CLASSIC, HighscoreStore.ANY_CATEGORY, "EASY", 10).size(), is(2));
+        assertThat(store.getTopScores(CLASSIC, HighscoreStore.ANY_CATEGORY, null, 10).size(), is(3));
+        assertThat(store.getTopScores(ENDLESS, HighscoreStore.ANY_CATEGORY, null, 10).size(), is(1));
+        assertThat(store.getTopScores(ENDLESS, 12, null, 10).size(), is(0));
+
+        assertThat(store.rank(CLASSIC, HighscoreStore.ANY_CATEGORY, null, 15), is(2));
+        assertThat(store.rank(ENDLESS, 12, null, 0), is(1));
+    }
+
+    @Test
+    public void rebuildsFromLog() throws IOException {
+        HighscoreStore store = newStore();
+        for(int i=0;i<5000;i++) {
+            store.record(entry(i % 1000, i, (i % 2 == 0) ? CLASSIC : ENDLESS, i % 7, null));
+        }
+        store.close();
+
+        HighscoreStore replayed = newStore();
+        assertThat(replayed.size(), is(5000));
+        for(int mode : new int[] {CLASSIC, ENDLESS}) {
+            List<HighscoreStore.Entry> expected = store.getTopScores(mode, HighscoreStore.ANY_CATEGORY, null, 100);
+            List<HighscoreStore.Entry> actual = replayed.getTopScores(mode, HighscoreStore.ANY_CATEGORY, null, 100);
+            assertThat(actual.size(), is(expected.size()));
+            for(int i=0;i<expected.size();i++) {
+                assertThat(actual.get(i).score, is(expected.get(i).score));
+                assertThat(actual.get(i).timestamp, is(expected.get(i).timestamp));
+                assertThat(actual.get(i).categoryId, is(expected.get(i).categoryId));
+            }
+            assertThat(replayed.rank(mode, 3, null, 500), is(store.rank(mode, 3, null, 500)));
+        }
+
+        // appending after a replay continues the log
+        replayed.record(entry(5000, 5000, CLASSIC, 0, null));
+        replayed.close();
+        assertThat(newStore().size(), is(5001));
+    }
+
+    @Test
+    public void truncatesTornAndCorruptRecords() throws IOException {
+        HighscoreStore store = newStore();
+        for(int i=0;i<10;i++) {
+            store.record(entry(i, i, CLASSIC, 9, null));
+        }
+        store.close();
+        long length = logFile.length();
+
+        // a record that was only partially written
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.seek(length);
+            raf.write(new byte[] {1, 2, 3, 4, 5});
+        }
+        assertThat(newStore().size(), is(10));
+        assertThat(logFile.length(), is(length));
+
+        // a record whose bytes were changed after the checksum was written
+        long recordSize = (length - 4) / 10;
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.seek(4 + recordSize * 7 + 10);
+            raf.write(0x7F);
+        }
+        HighscoreStore recovered = newStore();
+        assertThat(recovered.size(), is(7));
+        assertThat(logFile.length(), is(4 + recordSize * 7));
+        assertThat(recovered.getTopScores(CLASSIC, 9, null, 1).get(0).score, is(6));
+    }
+
+    @Test
+    public void movesAsideLogsOfOtherFormats() throws IOException {
+        HighscoreStore store = newStore();
+        for(int i=0;i<3;i++) {
+            store.record(entry(i, i, CLASSIC, 9, null));
+        }
+        store.close();
+        long length = logFile.length();
+        // a log written by a later version of the format
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            raf.seek(3);
+            raf.write(2);
+        }
+
+        HighscoreStore reopened = newStore();
+        assertThat(reopened.size(), is(0));
+        File[] files = folder.getRoot().listFiles();
+        assertThat(files.length, is(1));
+        assertThat(files[0].getName(), startsWith("highscores.log."));
+        assertThat(files[0].length(), is(length));
+
+        // a fresh log is started next to it
+        assertThat(reopened.record(entry(1, 10, CLASSIC, 9, null)), is(1));
+        reopened.close();
+        assertThat(newStore().size(), is(1));
+        assertThat(folder.getRoot().listFiles().length, is(2));
+    }
+}
@@ -0,0 +1,62 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketsCoverEveryValue() {
+        for(long value = 0; value < 100_000; value++) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(value <= LatencyHistogram.highestValueOf(bucket));
+            assertTrue(bucket == 0 || value > LatencyHistogram.highestValueOf(bucket - 1));
+        }
+        int last = LatencyHistogram.bucketOf(LatencyHistogram.MAX_VALUE);
+        assertThat(LatencyHistogram.highestValueOf(last), is(LatencyHistogram.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for(long value = 1; value <= 10_000; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertThat(snapshot.count, is(10_000L));
+        assertThat(snapshot.sum, is(10_000L * 10_001L / 2));
+        assertThat(snapshot.max, is(10_000L));
+        assertTrue(snapshot.p50 >= 5_000 && snapshot.p50 <= 5_000 * 1.0625);
+        assertTrue(snapshot.p99 >= 9_900 && snapshot.p99 <= 10_000);
+    }
+
+    @Test
+    public void outliersDoNotMoveTheMedian() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(42);
+        for(int i=0;i<1000;i++) {
+            histogram.record(100 + random.nextInt(10));
+        }
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertThat(snapshot.count, is(1002L));
+        assertTrue(snapshot.p50 >= 100 && snapshot.p50 <= 110);
+        assertThat(snapshot.max, is(LatencyHistogram.MAX_VALUE));
+    }
+
+    @Test
+    public void emptyHistogramReportsZeroes() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertThat(snapshot.count, is(0L));
+        assertThat(snapshot.p50, is(0L));
+        assertThat(snapshot.p99, is(0L));
+        assertThat(snapshot.max, is(0L));
+    }
+}
@@ -0,0 +1,61 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class PercentDecoderTest {
+
+    @Test
+    public void returnsUnescapedStringsAsIs() {
+        String plain = "Central Processing Unit";
+        assertSame(plain, PercentDecoder.decode(plain));
+        assertThat(PercentDecoder.decode(""), is(""));
+    }
+
+    @Test
+    public void decodesEscapes() {
+        assertThat(PercentDecoder.decode("What%20does%20CPU%20stand%20for%3F"), is("What does CPU stand for?"));
+        assertThat("'+' is not a space in RFC 3986", PercentDecoder.decode("C%2B%2B+Java"), is("C+++Java"));
+        assertThat(PercentDecoder.decode(new StringBuilder("%2a%2A")), is("**"));
+    }
+
+    @Test
+    public void decodesMultiByteCharacters() {
+        assertThat(PercentDecoder.decode("Diego%20Vel%C3%A1zquez"), is("Diego Velázquez"));
+        assertThat(PercentDecoder.decode("%E2%82%AC5"), is("€5"));
+        assertThat(PercentDecoder.decode("%F0%9F%98%80"), is("😀"));
+    }
+
+    @Test
+    public void decodesByteRanges() {
+        byte[] bytes = "xx%C3%BCber%20allesxx".getBytes(StandardCharsets.US_ASCII);
+        assertThat(PercentDecoder.decode(bytes, 2, bytes.length - 4), is("über alles"));
+    }
+
+    @Test
+    public void rejectsMalformedInput() {
+        String[] malformed = {
+                "%4",           // incomplete escape
+                "abc%",         // incomplete escape
+                "%zz",          // invalid hex
+                "%C3%28",       // invalid continuation byte
+                "%80",          // lone continuation byte
+                "%C0%AF",       // overlong encoding
+                "%ED%A0%80",    // surrogate code point
+                "%E2%82",       // truncated sequence
+                "%F5%80%80%80"  // beyond U+10FFFF
+        };
+        for(String input : malformed) {
+            try {
+                PercentDecoder.decode(input);
+                fail("decoded malformed input " + input);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class QuestionBankTest {
+
+    private List<TriviaQuestion> testQs;
+    private QuestionBank bank;
+
+    @Before
+    public void setUp() {
+        testQs = new ArrayList<>();
+        for(int i=0;i<100;i++) {
+            testQs.add(new MultipleChoiceQuestion(
+                    "Question #" + i + ": what is caf\u00e9 in \u65e5\u672c\u8a9e \ud83d\ude00?",
+                    "Answer " + i,
+                    new String[] {"Wrong 1", "Wrong 2", "Wrong 3"},
+                    (i % 2 == 0) ? TriviaGame.Difficulty.EASY : TriviaGame.Difficulty.HARD,
+                    (i % 3 == 0) ? "Geography" : "Testing"));
+        }
+        testQs.add(new TrueFalseQuestion("Is this true?", true, TriviaGame.Difficulty.HARD, "Testing"));
+        testQs.add(new TrueFalseQuestion("Is this false?", false, TriviaGame.Difficulty.HARD, "Testing"));
+
+        // start small so the columns and arena have to grow
+        bank = new QuestionBank(1);
+        bank.addAll(testQs);
+    }
+
+    @Test
+    public void viewsMatchTheAddedQuestions() {
+        assertThat(bank.size(), is(testQs.size()));
+        for(int i=0;i<testQs.size();i++) {
+            TriviaQuestion expected = testQs.get(i);
+            TriviaQuestion view = bank.get(i);
+
+            assertThat(view.getClass().getSuperclass(), is((Object) expected.getClass()));
+            assertEquals(expected.getQuestion(), view.getQuestion());
+            assertEquals(expected.getRightAnswer(), view.getRightAnswer());
+            assertEquals(expected.getCategory(), view.getCategory());
+            assertEquals(expected.getDifficulty(), view.getDifficulty());
+            assertEquals(expected.getAnswers(), view.getAnswers());
+            assertThat(view.getAnswerCount(), is(expected.getAnswerCount()));
+            for(int j=0;j<view.getAnswerCount();j++) {
+                assertThat(view.checkAnswer(j), is(expected.checkAnswer(j)));
+            }
+        }
+        MultipleChoiceQuestion multiple = (MultipleChoiceQuestion) bank.get(0);
+        assertArrayEquals(new String[] {"Wrong 1", "Wrong 2", "Wrong 3"}, multiple.getWrongAnswers());
+    }
+
+    @Test
+    public void selectScansColumns() {
+        int geography = QuestionDictionary.getInstance().indexOfCategory("Geography");
+        byte easy = QuestionDictionary.getInstance().codeOfDifficulty(TriviaGame.Difficulty.EASY);
+
+        int[] found = new int[bank.size()];
+        int count = bank.select(geography, easy, found);
+        // every sixth question is both easy and about geography
+        assertThat(count, is(17));
+        for(int i=0;i<count;i++) {
+            assertThat(found[i], is(i * 6));
+        }
+
+        assertThat(bank.select(QuestionBank.ANY, QuestionBank.ANY, found), is(bank.size()));
+        assertThat(bank.select(QuestionBank.ANY, QuestionBank.ANY, new int[5]), is(5));
+        assertFalse(bank.isMultipleChoice(bank.size() - 1));
+        assertThat(bank.getCategoryIndex(0), is(geography));
+    }
+
+    @Test
+    public void parsedQuestionsAreStoredEncoded() throws IOException {
+        String response = "{\"response_code\":0,\"results\":["
+                + "{\"category\":\"Science%3A%20Computers\",\"type\":\"multiple\",\"difficulty\":\"easy\","
+                + "\"question\":\"What%20does%20%22CPU%22%20stand%20for%3F\","
+                + "\"correct_answer\":\"Central%20Processing%20Unit\","
+                + "\"incorrect_answers\":[\"Central%20Process%20Unit\",\"Z%C3%BCrich\"]},"
+                + "{\"category\":\"Geography\",\"type\":\"boolean\",\"difficulty\":\"medium\","
+                + "\"question\":\"Z%C3%BCrich%20is%20the%20capital%20of%20Switzerland.\","
+                + "\"correct_answer\":\"False\",\"incorrect_answers\":[\"True\"]}"
+                + "]}";
+        List<TriviaQuestion> parsed = TriviaQuestionParser.parseQuestions(
+                new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)));
+        QuestionBank parsedBank = new QuestionBank();
+        parsedBank.addAll(parsed);
+
+        MultipleChoiceQuestion multiple = (MultipleChoiceQuestion) parsedBank.get(0);
+        assertEquals("What does \"CPU\" stand for?", multiple.getQuestion());
+        assertEquals("Central Processing Unit", multiple.getRightAnswer());
+        assertArrayEquals(new String[] {"Central Process Unit", "Z\u00fcrich"}, multiple.getWrongAnswers());
+        assertEquals(parsed.get(0).getAnswers(), multiple.getAnswers());
+
+        TriviaQuestion trueFalse = parsedBank.get(1);
+        assertEquals("Z\u00fcrich is the capital of Switzerland.", trueFalse.getQuestion());
+        assertEquals("false", trueFalse.getRightAnswer());
+        assertEquals("Geography", trueFalse.getCategory());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void getOutOfBounds() {
+        bank.get(bank.size());
+    }
+}
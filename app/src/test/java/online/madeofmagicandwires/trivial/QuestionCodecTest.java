@@ -0,0 +1,136 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class QuestionCodecTest {
+
+    private List<TriviaQuestion> testQs;
+
+    @Before
+    public void setUp() {
+        testQs = new ArrayList<>();
+        for(int i=0;i<100;i++) {
+            testQs.add(new MultipleChoiceQuestion(
+                    "Question #" + i + ": what is caf\u00e9 in \u65e5\u672c\u8a9e \ud83d\ude00?",
+                    "Answer " + (i % 10),
+                    new String[] {"Wrong 1", "Wrong 2", "Wrong 3"},
+                    (i % 2 == 0) ? TriviaGame.Difficulty.EASY : TriviaGame.Difficulty.HARD,
+                    (i % 3 == 0) ? "Geography" : "Testing"));
+        }
+        testQs.add(new TrueFalseQuestion("Is this true?", true, TriviaGame.Difficulty.HARD, "Testing"));
+        testQs.add(new TrueFalseQuestion("Is this false?", false, null, null));
+    }
+
+    private static void assertSameQuestions(List<TriviaQuestion> expected, QuestionBank bank) {
+        assertThat(bank.size(), is(expected.size()));
+        for(int i=0;i<expected.size();i++) {
+            TriviaQuestion question = bank.get(i);
+            assertEquals(expected.get(i).getQuestion(), question.getQuestion());
+            assertEquals(expected.get(i).getRightAnswer(), question.getRightAnswer());
+            assertEquals(expected.get(i).getAnswers(), question.getAnswers());
+            assertEquals(expected.get(i).getCategory(), question.getCategory());
+            assertEquals(expected.get(i).getDifficulty(), question.getDifficulty());
+            assertThat(bank.isMultipleChoice(i), is(expected.get(i) instanceof MultipleChoiceQuestion));
+        }
+    }
+
+    @Test
+    public void questionsSurviveEncoding() throws IOException {
+        byte[] encoded = QuestionCodec.encodeQuestions(testQs);
+        assertSameQuestions(testQs, QuestionCodec.decodeQuestions(ByteBuffer.wrap(encoded)));
+
+        // shared strings are only stored once
+        int stored = encoded.length;
+        int text = 0;
+        for(TriviaQuestion question : testQs) {
+            for(String answer : question.getAnswers()) {
+                text += answer.getBytes(StandardCharsets.UTF_8).length;
+            }
+            text += question.getQuestion().getBytes(StandardCharsets.UTF_8).length;
+        }
+        assertTrue("encoded " + stored + " bytes of " + text + " bytes of text", stored < text);
+    }
+
+    @Test
+    public void decodesFromDirectBuffersAtAnyPosition() throws IOException {
+        byte[] encoded = QuestionCodec.encodeQuestions(testQs);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.length + 10);
+        buffer.position(7);
+        buffer.put(encoded);
+        buffer.position(7);
+
+        assertSameQuestions(testQs, QuestionCodec.decodeQuestions(buffer));
+        assertThat(buffer.position(), is(7 + encoded.length));
+    }
+
+    @Test
+    public void encodedQuestionsStayEncoded() throws IOException {
+        String response = "{\"response_code\":0,\"results\":[{\"category\":\"Science%3A%20Computers\","
+                + "\"type\":\"multiple\",\"difficulty\":\"easy\",\"question\":\"What%20is%201%2B1%3F\","
+                + "\"correct_answer\":\"2\",\"incorrect_answers\":[\"1\",\"3\",\"11\"]},"
+                + "{\"category\":\"Science%3A%20Computers\",\"type\":\"boolean\",\"difficulty\":\"easy\","
+                + "\"question\":\"Caf%C3%A9%20is%20French.\",\"correct_answer\":\"True\",\"incorrect_answers\":[\"False\"]}]}";
+        List<TriviaQuestion> parsed = TriviaQuestionParser.parseQuestions(
+                new ByteArrayInputStream(response.getBytes(StandardCharsets.UTF_8)));
+
+        QuestionBank decoded = QuestionCodec.decodeQuestions(ByteBuffer.wrap(QuestionCodec.encodeQuestions(parsed)));
+        assertTrue(decoded.isEncoded(0));
+        assertSameQuestions(parsed, decoded);
+        assertThat(decoded.get(0).getQuestion(), is("What is 1+1?"));
+        assertThat(decoded.get(1).getQuestion(), is("Caf\u00e9 is French."));
+    }
+
+    @Test
+    public void gameSurvivesEncoding() throws IOException {
+        TriviaGame game = new TriviaGame(0, TriviaGame.Difficulty.HARD, TriviaGame.QuestionType.BOOLEAN, -1);
+        game.setQuestions(testQs);
+        for(int i=0;i<60;i++) {
+            game.nextQuestion();
+        }
+        game.setScore(-3);
+
+        TriviaGame decoded = QuestionCodec.decodeGame(ByteBuffer.wrap(QuestionCodec.encodeGame(game)));
+        assertThat(decoded.getQuestionAmount(), is(0));
+        assertThat(decoded.getGameDifficulty(), is(TriviaGame.Difficulty.HARD));
+        assertThat(decoded.getGameQuestionType(), is(TriviaGame.QuestionType.BOOLEAN));
+        assertThat(decoded.getGameCategoryId(), is(-1));
+        assertThat(decoded.getQuestionIndex(), is(60));
+        assertThat(decoded.getScore(), is(-3));
+        assertSameQuestions(testQs, decoded.getQuestionBank());
+    }
+
+    @Test
+    public void rejectsMalformedEncodings() {
+        byte[] encoded = QuestionCodec.encodeQuestions(testQs);
+        List<byte[]> broken = new ArrayList<>();
+        broken.add(Arrays.copyOf(encoded, encoded.length / 2));
+        byte[] version = encoded.clone();
+        version[2] = (byte) (QuestionCodec.VERSION + 1);
+        broken.add(version);
+        byte[] kind = encoded.clone();
+        kind[3] = 2;
+        broken.add(kind);
+        broken.add(new byte[] {'T', 'Q', (byte) QuestionCodec.VERSION, 1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F});
+
+        for(byte[] bytes : broken) {
+            try {
+                QuestionCodec.decodeQuestions(ByteBuffer.wrap(bytes));
+                fail("decoded a malformed encoding");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+}
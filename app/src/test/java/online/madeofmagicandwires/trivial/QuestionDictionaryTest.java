@@ -0,0 +1,65 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class QuestionDictionaryTest {
+
+    private QuestionDictionary dictionary;
+
+    @Before
+    public void setUp() {
+        dictionary = new QuestionDictionary();
+    }
+
+    @Test
+    public void categoriesAreIndexedOnce() {
+        int science = dictionary.indexOfCategory("Science: Computers");
+        int geography = dictionary.indexOfCategory("Geography");
+
+        assertThat(dictionary.indexOfCategory(new String("Science: Computers")), is(science));
+        assertThat(geography, is(not(science)));
+        assertEquals("Geography", dictionary.getCategory(geography));
+        assertThat(dictionary.indexOfEncodedCategory("Science%3A%20Computers"), is(science));
+        assertThat(dictionary.indexOfCategory(null), is(QuestionDictionary.NONE));
+        assertNull(dictionary.getCategory(QuestionDictionary.NONE));
+    }
+
+    @Test
+    public void registeredCategoriesKeepTheirIndex() {
+        int index = dictionary.indexOfCategory("Geography");
+        assertThat(dictionary.getCategoryId(index), is(QuestionDictionary.UNKNOWN_ID));
+
+        assertThat(dictionary.registerCategory(22, "Geography"), is(index));
+        assertThat(dictionary.getCategoryId(index), is(22));
+        assertThat(dictionary.indexOfCategoryId(22), is(index));
+        assertThat(dictionary.indexOfCategoryId(9), is(QuestionDictionary.NONE));
+    }
+
+    @Test
+    public void difficultiesAreCoded() {
+        byte easy = dictionary.codeOfDifficulty(TriviaGame.Difficulty.EASY);
+        byte hard = dictionary.codeOfDifficulty(TriviaGame.Difficulty.HARD);
+
+        assertThat(dictionary.codeOfDifficulty(new String(TriviaGame.Difficulty.EASY)), is(easy));
+        assertThat(hard, is(not(easy)));
+        assertSame(TriviaGame.Difficulty.HARD, dictionary.getDifficulty(hard));
+        assertThat(dictionary.codeOfDifficulty(null), is((byte) QuestionDictionary.NONE));
+    }
+
+    @Test
+    public void questionsShareTheirCategory() {
+        TriviaQuestion first = new TrueFalseQuestion("Is this true?", true,
+                TriviaGame.Difficulty.EASY, new String("Testing"));
+        TriviaQuestion second = new TrueFalseQuestion("Is this false?", false,
+                TriviaGame.Difficulty.EASY, new String("Testing"));
+
+        assertThat(first.getCategoryIndex(), is(second.getCategoryIndex()));
+        assertSame(first.getCategory(), second.getCategory());
+        assertThat(first.getDifficultyCode(), is(second.getDifficultyCode()));
+        assertEquals(TriviaGame.Difficulty.EASY, first.getDifficulty());
+    }
+}
@@ -0,0 +1,108 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class QuestionHashSetTest {
+
+    private static TriviaQuestion question(String question, String rightAnswer) {
+        return new MultipleChoiceQuestion(
+                question,
+                rightAnswer,
+                new String[] {"wrong", "answers"},
+                TriviaGame.Difficulty.EASY,
+                "Testing");
+    }
+
+    @Test
+    public void normalizesQuestions() {
+        long hash = QuestionHashSet.hashOf("What is the capital of France?", "Paris");
+        assertEquals(hash, QuestionHashSet.hashOf("what is the CAPITAL of france", "paris"));
+        assertEquals(hash, QuestionHashSet.hashOf("  What is the capital\tof France ?!", "\"Paris\""));
+        assertEquals(QuestionHashSet.hashOf("Caf\u00e9 or cafe\u0301?", "Cr\u00e8me"),
+                QuestionHashSet.hashOf("cafe or cafe", "creme"));
+
+        assertNotEquals(hash, QuestionHashSet.hashOf("What is the capital of France?", "Lyon"));
+        assertNotEquals(hash, QuestionHashSet.hashOf("What is the capital of Frances?", "Paris"));
+        assertNotEquals(QuestionHashSet.hashOf("a b", "c"), QuestionHashSet.hashOf("a", "b c"));
+        assertNotEquals(QuestionHashSet.hashOf("ab", "c"), QuestionHashSet.hashOf("a b", "c"));
+    }
+
+    @Test
+    public void addsQuestionsOnce() {
+        QuestionHashSet set = new QuestionHashSet();
+        assertTrue(set.add(question("Is this a repeat?", "No")));
+        assertFalse(set.add(question("is this a REPEAT", "no")));
+        assertFalse(set.contains(question("Is this a repeat?", "Yes")));
+        assertThat(set.size(), is(1));
+
+        // grow well past the initial capacity
+        for(int i=0;i<10000;i++) {
+            assertTrue(set.add(question("Question #" + i, "Answer")));
+        }
+        assertThat(set.size(), is(10001));
+        for(int i=0;i<10000;i++) {
+            assertTrue(set.contains(question("question " + i, "answer")));
+        }
+
+        set.clear();
+        assertThat(set.size(), is(0));
+        assertFalse(set.contains(question("Is this a repeat?", "No")));
+    }
+
+    @Test
+    public void setsSurviveWriting() throws IOException {
+        QuestionHashSet set = new QuestionHashSet();
+        for(int i=0;i<500;i++) {
+            set.add(question("Question #" + i, "Answer"));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        set.writeTo(out);
+
+        QuestionHashSet read = QuestionHashSet.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(read.size(), is(500));
+        for(int i=0;i<500;i++) {
+            assertTrue(read.contains(question("Question #" + i, "Answer")));
+        }
+        assertFalse(read.contains(question("Question #500", "Answer")));
+
+        byte[] bytes = out.toByteArray();
+        bytes[3] = (byte) (QuestionHashSet.VERSION + 1);
+        try {
+            QuestionHashSet.readFrom(new ByteArrayInputStream(bytes));
+            fail("read a set of another version");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), containsString("version"));
+        }
+    }
+
+    @Test
+    public void gamesLeaveOutRepeats() {
+        TriviaGame game = new TriviaGame(4, TriviaGame.Difficulty.ANY, TriviaGame.QuestionType.ANY);
+        game.setQuestions(new ArrayList<>(Arrays.asList(question("Question 1", "right"))));
+
+        List<TriviaQuestion> added = game.addNewQuestions(Arrays.asList(
+                question("question 1?", "Right"),
+                question("Question 2", "right"),
+                question("Question 2", "right"),
+                question("Question 3", "right"),
+                question("Question 4", "right")), 2);
+        assertThat(added.size(), is(2));
+        assertEquals("Question 2", added.get(0).getQuestion());
+        assertEquals("Question 3", added.get(1).getQuestion());
+        assertThat(game.getLoadedQuestionCount(), is(3));
+
+        added = game.addNewQuestions(Arrays.asList(question("Question 3", "right"), question("Question 4", "right")), 5);
+        assertThat(added.size(), is(1));
+        assertThat(game.getLoadedQuestionCount(), is(4));
+    }
+}
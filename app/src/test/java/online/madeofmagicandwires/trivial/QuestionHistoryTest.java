@@ -0,0 +1,108 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class QuestionHistoryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File historyFile;
+    private List<TriviaQuestion> testQs;
+
+    @Before
+    public void setUp() {
+        historyFile = new File(folder.getRoot(), "history.bin");
+        testQs = new ArrayList<>();
+        for(int i=0;i<10;i++) {
+            testQs.add(new MultipleChoiceQuestion(
+                    "Question " + i,
+                    "right",
+                    new String[] {"wrong", "answers"},
+                    TriviaGame.Difficulty.EASY,
+                    "Testing"));
+        }
+    }
+
+    private QuestionHistory newHistory() {
+        return new QuestionHistory(historyFile, Runnable::run);
+    }
+
+    @Test
+    public void leavesOutPlayedQuestions() {
+        QuestionHistory history = newHistory();
+        history.record(testQs.subList(0, 4));
+
+        List<TriviaQuestion> fresh = history.leaveOutRepeats(testQs);
+        assertThat(fresh.size(), is(6));
+        assertSame(testQs.get(4), fresh.get(0));
+        assertThat(history.snapshot().size(), is(4));
+    }
+
+    @Test
+    public void remembersAcrossLaunches() {
+        newHistory().record(testQs.subList(0, 4));
+        assertTrue(historyFile.exists());
+
+        QuestionHistory history = newHistory();
+        assertThat(history.size(), is(4));
+        assertThat(history.leaveOutRepeats(testQs).size(), is(6));
+    }
+
+    @Test
+    public void startsOverOnceEverythingWasPlayed() {
+        QuestionHistory history = newHistory();
+        history.record(testQs);
+
+        // nothing left to play, so the player gets to see the questions again
+        assertThat(history.leaveOutRepeats(testQs.subList(0, 3)).size(), is(3));
+        assertThat(history.size(), is(0));
+        assertThat(newHistory().size(), is(0));
+    }
+
+    @Test
+    public void startsOverOnUnreadableHistory() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(historyFile)) {
+            out.write(new byte[] {1, 2, 3});
+        }
+        QuestionHistory history = newHistory();
+        assertThat(history.size(), is(0));
+        history.record(testQs);
+        assertThat(newHistory().size(), is(testQs.size()));
+    }
+
+    @Test
+    public void addsUnplayedQuestionsFromIndex() {
+        QuestionBank bank = new QuestionBank();
+        for(TriviaQuestion question : testQs) {
+            bank.add(question);
+        }
+        QuestionIndex index = new QuestionIndex(bank);
+        QuestionHistory history = newHistory();
+        history.record(testQs.subList(0, 4));
+
+        TriviaGame game = new TriviaGame(10);
+        List<TriviaQuestion> added = history.addQuestions(game, index, 10, new Random(42));
+        assertThat(added.size(), is(6));
+        assertThat(history.size(), is(testQs.size()));
+
+        // nothing left to play, so the history starts over rather than leaving the next game empty
+        index.clearSeen();
+        TriviaGame next = new TriviaGame(10);
+        assertThat(history.addQuestions(next, index, 10, new Random(42)).size(), is(testQs.size()));
+        assertThat(history.size(), is(testQs.size()));
+    }
+}
@@ -0,0 +1,182 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class QuestionImporterTest {
+
+    private ForkJoinPool pool;
+    private QuestionImporter importer;
+    private List<TriviaQuestion> imported;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+        // small chunks, so even small dumps are parsed in several tasks
+        importer = new QuestionImporter(pool, 7);
+        imported = new ArrayList<>();
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    private static String question(int i) {
+        return "{\"category\":\"Science%3A%20Computers\",\"type\":\"multiple\",\"difficulty\":\"easy\","
+                + "\"question\":\"Question%20%23" + i + "%3F\",\"correct_answer\":\"Right%20" + i + "\","
+                + "\"incorrect_answers\":[\"Wrong\",\"Also%20wrong\",\"Caf%C3%A9\"]}";
+    }
+
+    private static InputStream dump(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String response(int amount) {
+        StringBuilder json = new StringBuilder("{\"response_code\":0,\"results\":[");
+        for(int i=0;i<amount;i++) {
+            if(i > 0) {
+                json.append(",\n  ");
+            }
+            json.append(question(i));
+        }
+        return json.append("]}").toString();
+    }
+
+    @Test
+    public void importsQuestionsInOrder() throws IOException {
+        QuestionImporter.Stats stats = importer.importFrom(dump(response(100)), imported::addAll);
+
+        assertThat(stats.read, is(100L));
+        assertThat(stats.imported, is(100L));
+        assertThat(stats.skipped, is(0L));
+        assertThat(stats.cores, is(4));
+        assertThat(imported.size(), is(100));
+        for(int i=0;i<imported.size();i++) {
+            TriviaQuestion question = imported.get(i);
+            assertEquals("Question #" + i + "?", question.getQuestion());
+            assertEquals("Right " + i, question.getRightAnswer());
+            assertThat(question.getAnswers(), hasItem("Caf\u00e9"));
+            assertEquals("Science: Computers", question.getCategory());
+            assertEquals("easy", question.getDifficulty());
+        }
+    }
+
+    @Test
+    public void readsDumpsInAnyPieces() throws IOException {
+        // hand the dump over a few bytes at a time, splitting strings and escapes over reads
+        InputStream trickle = new FilterInputStream(dump(response(20))) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return super.read(b, off, Math.min(len, 3));
+            }
+        };
+        QuestionImporter.Stats stats = importer.importFrom(trickle, imported::addAll);
+        assertThat(stats.imported, is(20L));
+        assertEquals("Question #19?", imported.get(19).getQuestion());
+    }
+
+    @Test
+    public void leavesOutDuplicates() throws IOException {
+        String json = "[" + question(1) + "," + question(2) + "," + question(1) + "]";
+        QuestionImporter.Stats stats = importer.importFrom(dump(json), imported::addAll);
+        assertThat(stats.imported, is(2L));
+        assertThat(stats.duplicates, is(1L));
+
+        // questions of an earlier dump are left out as well
+        stats = importer.importFrom(dump(response(5)), imported::addAll);
+        assertThat(stats.imported, is(3L));
+        assertThat(stats.duplicates, is(2L));
+        assertThat(imported.size(), is(5));
+    }
+
+    @Test
+    public void skipsMalformedQuestions() throws IOException {
+        String json = "{\"results\":[" + question(0)
+                + ",{\"type\":\"essay\",\"question\":\"Why%3F\",\"correct_answer\":\"because\"}"
+                + ",{\"type\":\"boolean\",\"question\":\"Broken%ZZ\"}"
+                + ",42"
+                + ",{\"type\":\"boolean\",\"question\":\"Braces%20%7B%20and%20%22quotes%5C%22\","
+                + "\"correct_answer\":\"True\",\"nested\":{\"a\":[1,{\"b\":\"\\\"}]\"}]}}"
+                + "],\"response_code\":0}";
+        QuestionImporter.Stats stats = importer.importFrom(dump(json), imported::addAll);
+
+        assertThat(stats.read, is(5L));
+        assertThat(stats.skipped, is(3L));
+        assertThat(imported.size(), is(2));
+        assertEquals("Braces { and \"quotes\\\"", imported.get(1).getQuestion());
+        assertThat(imported.get(1), instanceOf(TrueFalseQuestion.class));
+    }
+
+    @Test
+    public void skipsQuestionsTooLongToStore() throws IOException {
+        // under the size limit as read, but too long for the store once decoded
+        StringBuilder emoji = new StringBuilder();
+        for(int i=0;i<12000;i++) {
+            emoji.append("\ud83d\ude00");
+        }
+        String json = "[" + question(0)
+                + ",{\"type\":\"boolean\",\"question\":\"" + emoji + "\",\"correct_answer\":\"True\"}"
+                + "," + question(1) + "]";
+        QuestionImporter.Stats stats = importer.importFrom(dump(json), imported::addAll);
+
+        assertThat(stats.skipped, is(1L));
+        assertThat(imported.size(), is(2));
+        assertEquals("Question #1?", imported.get(1).getQuestion());
+    }
+
+    @Test
+    public void stopsReadingOversizedStrings() {
+        // a question with a 64 MB string, which is given up on long before the end of it
+        byte[] head = "[{\"question\":\"".getBytes(StandardCharsets.UTF_8);
+        long size = 64L << 20;
+        long[] read = new long[1];
+        InputStream huge = new InputStream() {
+            @Override
+            public int read() {
+                if(read[0] >= size) {
+                    return -1;
+                }
+                return (read[0] < head.length) ? head[(int) read[0]++] : (int) (++read[0] % 26) + 'a';
+            }
+        };
+        try {
+            importer.importFrom(huge, imported::addAll);
+            fail("imported an oversized question");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), containsString("bytes"));
+        }
+        assertTrue(read[0] < 4 * QuestionImporter.MAX_QUESTION_BYTES);
+    }
+
+    @Test(expected = TriviaQuestionParser.ResponseCodeException.class)
+    public void failsOnResponseCode() throws IOException {
+        importer.importFrom(dump("{\"response_code\":1,\"results\":[]}"), imported::addAll);
+    }
+
+    @Test
+    public void rejectsOtherDocuments() {
+        String[] documents = {"", "\"results\"", "{\"results\":{}}", "{\"results\":[" + question(0)};
+        for(String document : documents) {
+            try {
+                importer.importFrom(dump(document), imported::addAll);
+                fail("imported " + document);
+            } catch (IOException expected) {
+                // not a dump of questions
+            }
+        }
+    }
+}
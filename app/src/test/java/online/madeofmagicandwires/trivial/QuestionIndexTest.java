@@ -0,0 +1,163 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class QuestionIndexTest {
+
+    private static final int SIZE = 1000;
+    // ids the OpenTriviaDB does not use, so they don't clash with other tests sharing the dictionary
+    private static final int HISTORY = 1001;
+    private static final int SCIENCE = 1002;
+
+    private QuestionBank bank;
+    private QuestionIndex index;
+    private Random random;
+
+    @Before
+    public void setUp() {
+        QuestionDictionary.getInstance().registerCategory(HISTORY, "Index: History");
+        QuestionDictionary.getInstance().registerCategory(SCIENCE, "Index: Science");
+
+        bank = new QuestionBank();
+        for(int i=0;i<SIZE;i++) {
+            bank.add(question(i));
+        }
+        index = new QuestionIndex(bank);
+        random = new Random(42);
+    }
+
+    /**
+     * Builds the question of a position; history and science alternate,
+     * every third question is easy and every fifth is a true or false question
+     */
+    private static TriviaQuestion question(int i) {
+        String category = (i % 2 == 0) ? "Index: History" : "Index: Science";
+        // the OpenTriviaDB returns difficulties in lower case
+        String difficulty = (i % 3 == 0) ? "easy" : "hard";
+        if(i % 5 == 0) {
+            return new TrueFalseQuestion("Statement #" + i, true, difficulty, category);
+        }
+        return new MultipleChoiceQuestion("Question #" + i, "Right", new String[] {"Wrong"}, difficulty, category);
+    }
+
+    private static boolean matches(int i, Integer category, String difficulty, String type) {
+        return (category == null || category == ((i % 2 == 0) ? HISTORY : SCIENCE))
+                && (difficulty == null || difficulty.equalsIgnoreCase((i % 3 == 0) ? "easy" : "hard"))
+                && (type == null || type.equals((i % 5 == 0)
+                        ? TriviaGame.QuestionType.BOOLEAN : TriviaGame.QuestionType.MULTIPLE));
+    }
+
+    @Test
+    public void countMatchesEverySelection() {
+        for(Integer category : new Integer[] {null, HISTORY, SCIENCE}) {
+            for(String difficulty : new String[] {null, TriviaGame.Difficulty.EASY, TriviaGame.Difficulty.HARD}) {
+                for(String type : new String[] {null, TriviaGame.QuestionType.MULTIPLE, TriviaGame.QuestionType.BOOLEAN}) {
+                    int expected = 0;
+                    for(int i=0;i<SIZE;i++) {
+                        if(matches(i, category, difficulty, type)) {
+                            expected++;
+                        }
+                    }
+                    assertThat(category + "/" + difficulty + "/" + type,
+                            index.count(category, difficulty, type), is(expected));
+                }
+            }
+        }
+        assertThat(index.count(-1, null, null), is(SIZE));
+        assertThat(index.count(9, null, null), is(0));
+        assertThat(index.count(null, TriviaGame.Difficulty.MEDIUM, null), is(0));
+    }
+
+    @Test
+    public void sampleWithoutReplacement() {
+        int[] picked = index.sample(SCIENCE, TriviaGame.Difficulty.EASY, null, 50, random);
+        assertThat(picked.length, is(50));
+
+        Set<Integer> unique = new HashSet<>();
+        for(int question : picked) {
+            assertTrue(matches(question, SCIENCE, TriviaGame.Difficulty.EASY, null));
+            assertTrue(unique.add(question));
+        }
+
+        int available = index.count(SCIENCE, TriviaGame.Difficulty.EASY, null);
+        assertThat(index.sample(SCIENCE, TriviaGame.Difficulty.EASY, null, SIZE, random).length, is(available));
+    }
+
+    @Test
+    public void seenQuestionsAreExcluded() {
+        int available = index.count(HISTORY, null, TriviaGame.QuestionType.BOOLEAN);
+        Set<Integer> picked = new HashSet<>();
+        while (picked.size() < available) {
+            int[] sample = index.sample(HISTORY, null, TriviaGame.QuestionType.BOOLEAN, 7, random);
+            assertThat(sample.length, is(not(0)));
+            for(int question : sample) {
+                assertFalse(index.isSeen(question));
+                assertTrue(picked.add(question));
+            }
+            index.markSeen(sample);
+        }
+        assertThat(index.count(HISTORY, null, TriviaGame.QuestionType.BOOLEAN), is(0));
+        assertThat(index.sample(HISTORY, null, TriviaGame.QuestionType.BOOLEAN, 7, random).length, is(0));
+
+        index.clearSeen();
+        assertThat(index.count(HISTORY, null, TriviaGame.QuestionType.BOOLEAN), is(available));
+    }
+
+    @Test
+    public void indexesAddedQuestions() {
+        int before = index.count(null, null, null);
+        for(int i=SIZE;i<SIZE+100;i++) {
+            bank.add(question(i));
+        }
+        assertThat(index.count(null, null, null), is(before + 100));
+    }
+
+    @Test
+    public void addQuestionsToGame() {
+        TriviaGame game = new TriviaGame(20, TriviaGame.Difficulty.HARD, TriviaGame.QuestionType.MULTIPLE, HISTORY);
+        assertThat(game.addQuestions(index, 20, random), is(20));
+        assertThat(game.getLoadedQuestionCount(), is(20));
+
+        for(int i=0;i<20;i++) {
+            TriviaQuestion question = game.getQuestion(i);
+            assertThat(question, is(instanceOf(MultipleChoiceQuestion.class)));
+            assertEquals("Index: History", question.getCategory());
+            assertEquals("hard", question.getDifficulty());
+            assertTrue(question.getQuestion().startsWith("Question #"));
+        }
+    }
+
+    @Test
+    public void addQuestionsLeavesOutRepeatsAndPlayedQuestions() {
+        // the same questions once more, as importing the same dump twice would store them
+        for(int i=0;i<SIZE;i++) {
+            bank.add(question(i));
+        }
+        QuestionHashSet played = new QuestionHashSet();
+        for(int i=0;i<SIZE;i+=2) {
+            played.add(question(i));
+        }
+        TriviaGame game = new TriviaGame(SIZE);
+
+        List<TriviaQuestion> added = game.addNewQuestions(index, SIZE, random, played);
+        assertThat(added.size(), is(SIZE / 2));
+        assertThat(game.getLoadedQuestionCount(), is(SIZE / 2));
+        Set<String> seen = new HashSet<>();
+        for(TriviaQuestion question : added) {
+            int i = Integer.parseInt(question.getQuestion().substring(question.getQuestion().indexOf('#') + 1));
+            assertTrue("added a played question: " + i, i % 2 == 1);
+            assertTrue("added a question twice: " + i, seen.add(question.getQuestion()));
+        }
+        // the questions left out stay available to other games
+        assertThat(index.count(null, null, null), is(SIZE * 2 - SIZE / 2));
+    }
+}
@@ -0,0 +1,209 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class QuestionStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File storeFile;
+    private List<TriviaQuestion> testQs;
+
+    @Before
+    public void setUp() throws IOException {
+        storeFile = new File(folder.getRoot(), "store.bin");
+        testQs = new ArrayList<>();
+        for(int i=0;i<10;i++) {
+            testQs.add(new MultipleChoiceQuestion(
+                    "Question " + i,
+                    "right",
+                    new String[] {"wrong", "answers"},
+                    TriviaGame.Difficulty.EASY,
+                    "Testing"));
+        }
+        testQs.add(new TrueFalseQuestion("Is this true?", true, TriviaGame.Difficulty.HARD, "Testing"));
+    }
+
+    private QuestionStore newStore() {
+        return new QuestionStore(storeFile, Runnable::run);
+    }
+
+    @Test
+    public void takeReturnsQuestionsInOrder() throws IOException {
+        QuestionStore store = newStore();
+        store.add(testQs);
+        List<TriviaQuestion> taken = store.take(2);
+        assertThat(taken.size(), is(2));
+        assertEquals(testQs.get(0).getQuestion(), taken.get(0).getQuestion());
+        assertEquals(testQs.get(1).getQuestion(), taken.get(1).getQuestion());
+        assertThat(store.size(), is(testQs.size() - 2));
+        assertNull("took more questions than were stored!", store.take(testQs.size()));
+    }
+
+    @Test
+    public void replaysStoreFile() throws IOException {
+        QuestionStore store = newStore();
+        store.add(testQs);
+        store.take(3);
+
+        QuestionStore reopened = newStore();
+        assertThat(reopened.size(), is(testQs.size() - 3));
+        TriviaQuestion first = reopened.take(1).get(0);
+        assertEquals("Question 3", first.getQuestion());
+        assertEquals("right", first.getRightAnswer());
+        assertEquals(TriviaGame.Difficulty.EASY, first.getDifficulty());
+        assertEquals("Testing", first.getCategory());
+
+        TriviaQuestion last = reopened.take(reopened.size()).get(testQs.size() - 5);
+        assertThat(last, instanceOf(TrueFalseQuestion.class));
+        assertTrue(last.checkAnswer(true));
+    }
+
+    @Test
+    public void truncatesPartialRecord() throws IOException {
+        newStore().add(testQs);
+        long validLength = storeFile.length();
+        try (FileOutputStream out = new FileOutputStream(storeFile, true)) {
+            out.write(new byte[] {2, 0});
+        }
+
+        assertThat(newStore().size(), is(testQs.size()));
+        assertThat(storeFile.length(), is(validLength));
+    }
+
+    @Test
+    public void leavesOutQuestionsTooLongToStore() throws IOException {
+        StringBuilder longText = new StringBuilder();
+        for(int i=0;i<30000;i++) {
+            longText.append('\u65e5');
+        }
+        List<TriviaQuestion> questions = new ArrayList<>(testQs);
+        questions.add(1, new MultipleChoiceQuestion("Long?", longText.toString(), new String[] {"short"}));
+        questions.add(2, new TrueFalseQuestion(longText.toString(), true));
+
+        QuestionStore store = newStore();
+        assertThat(store.add(questions), is(testQs.size()));
+        assertThat(store.size(), is(testQs.size()));
+        assertThat(newStore().size(), is(testQs.size()));
+        assertEquals("Question 1", newStore().take(2).get(1).getQuestion());
+    }
+
+    @Test
+    public void leavesOutIncompleteQuestions() throws IOException {
+        List<TriviaQuestion> questions = new ArrayList<>(testQs);
+        questions.add(0, new TrueFalseQuestion(null, true));
+        questions.add(new MultipleChoiceQuestion("No answer?", null, new String[] {"wrong"}));
+        questions.add(new MultipleChoiceQuestion("No wrong answer?", "right", new String[] {"wrong", null}));
+
+        QuestionStore store = newStore();
+        assertThat(store.add(questions), is(testQs.size()));
+        assertThat(newStore().size(), is(testQs.size()));
+        assertEquals("Question 0", newStore().take(1).get(0).getQuestion());
+    }
+
+    @Test
+    public void importsLeavingOutStoredQuestions() throws IOException {
+        QuestionStore store = newStore();
+        store.add(Collections.singletonList(
+                new MultipleChoiceQuestion("Question #3?", "Right 3",
+                        new String[] {"Wrong", "Also wrong", "Caf\u00e9"}, null, null)));
+
+        QuestionImporter.Stats stats = store.importQuestions(new ByteArrayInputStream(
+                QuestionImporterTest.response(10).getBytes(StandardCharsets.UTF_8)));
+        assertThat(stats.imported, is(9L));
+        assertThat(stats.duplicates, is(1L));
+        assertThat(store.size(), is(10));
+        assertEquals("Question #0?", store.take(2).get(1).getQuestion());
+    }
+
+    @Test
+    public void addsQuestionsMatchingGame() throws Exception {
+        QuestionStore store = newStore();
+        store.add(testQs);
+        QuestionHistory history = new QuestionHistory(new File(folder.getRoot(), "history.bin"), Runnable::run);
+
+        TriviaGame game = new TriviaGame(3, TriviaGame.Difficulty.ANY, TriviaGame.QuestionType.BOOLEAN);
+        List<TriviaQuestion> added = store.addQuestionsAsync(game, history, 3).get(10, TimeUnit.SECONDS);
+        assertThat(added.size(), is(1));
+        assertThat(game.getCurrentQuestion(), instanceOf(TrueFalseQuestion.class));
+        assertThat(store.size(), is(testQs.size() - 1));
+
+        // played questions stay stored, for once the history has been cleared
+        history.record(testQs.subList(0, 4));
+        game = new TriviaGame(10, TriviaGame.Difficulty.EASY, TriviaGame.QuestionType.MULTIPLE);
+        assertThat(store.addQuestions(game, history, 10).size(), is(6));
+        assertThat(store.size(), is(4));
+
+        // the taken questions are left out after a restart as well
+        QuestionStore reopened = newStore();
+        assertThat(reopened.size(), is(4));
+        List<TriviaQuestion> left = reopened.take(4);
+        for(int i=0;i<left.size();i++) {
+            assertEquals("Question " + i, left.get(i).getQuestion());
+        }
+    }
+
+    @Test
+    public void compactsAfterTakingMatchingQuestions() throws IOException {
+        QuestionStore store = newStore();
+        List<TriviaQuestion> many = new ArrayList<>();
+        for(int i=0;i<300;i++) {
+            many.add(new TrueFalseQuestion("Statement " + i, i % 2 == 0, TriviaGame.Difficulty.EASY, null));
+        }
+        store.add(many);
+        store.add(testQs);
+        QuestionHistory history = new QuestionHistory(new File(folder.getRoot(), "history.bin"), Runnable::run);
+        long length = storeFile.length();
+
+        TriviaGame game = new TriviaGame(300, TriviaGame.Difficulty.EASY, TriviaGame.QuestionType.BOOLEAN);
+        assertThat(store.addQuestions(game, history, 300).size(), is(300));
+        assertThat(store.size(), is(testQs.size()));
+        assertTrue("store file was not compacted", storeFile.length() < length);
+
+        QuestionStore reopened = newStore();
+        assertThat(reopened.size(), is(testQs.size()));
+        assertEquals("Question 0", reopened.take(1).get(0).getQuestion());
+    }
+
+    @Test
+    public void capsStoredQuestions() throws IOException {
+        List<TriviaQuestion> many = new ArrayList<>();
+        for(int i=0;i<QuestionStore.MAX_STORED + 10;i++) {
+            many.add(new TrueFalseQuestion("Statement " + i, i % 2 == 0, TriviaGame.Difficulty.EASY, null));
+        }
+        // a second store on the same file, loaded while it was empty, writes past the cap
+        QuestionStore store = newStore();
+        QuestionStore other = newStore();
+        assertThat(other.size(), is(0));
+
+        assertThat(store.add(many), is(QuestionStore.MAX_STORED));
+        assertThat(store.size(), is(QuestionStore.MAX_STORED));
+        assertThat(store.add(testQs), is(0));
+        assertThat(other.add(testQs), is(testQs.size()));
+
+        // replaying a file holding too many questions compacts it down to the cap
+        long length = storeFile.length();
+        QuestionStore reopened = newStore();
+        assertThat(reopened.size(), is(QuestionStore.MAX_STORED));
+        assertTrue("store file was not compacted", storeFile.length() < length);
+        assertEquals("Statement 0", reopened.take(1).get(0).getQuestion());
+        assertThat(newStore().size(), is(QuestionStore.MAX_STORED - 1));
+    }
+}
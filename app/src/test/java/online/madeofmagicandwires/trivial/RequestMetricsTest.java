@@ -0,0 +1,65 @@
+package online.madeofmagicandwires.trivial;
+
+import com.android.volley.NetworkResponse;
+
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class RequestMetricsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static NetworkResponse response(int size, long networkTimeMs) {
+        return new NetworkResponse(200, new byte[size],
+                Collections.<String, String>emptyMap(), false, networkTimeMs);
+    }
+
+    @Test
+    public void recordsPerEndPoint() {
+        RequestMetrics metrics = new RequestMetrics();
+        for(int i=1;i<=100;i++) {
+            metrics.recordQueueWait("api.php", TimeUnit.MICROSECONDS.toNanos(i));
+            metrics.recordResponse("api.php", response(1000, i), TimeUnit.MICROSECONDS.toNanos(50));
+        }
+        metrics.recordError("api.php", 4);
+        metrics.recordError("api.php", RequestMetrics.ERROR_NO_RESPONSE);
+        metrics.recordResponse("api_count.php", response(10, 5), 0);
+
+        RequestMetrics.Snapshot trivia = metrics.getSnapshot("api.php");
+        assertThat(trivia.responses, is(100L));
+        assertThat(trivia.errors, is(2L));
+        assertThat(trivia.errorCodes.get(4), is(1L));
+        assertThat(trivia.bytes, is(100_000L));
+        assertThat(trivia.maxBytes, is(1000L));
+        assertThat(trivia.networkMaxMs, is(100L));
+        assertTrue(trivia.networkP99Ms >= 99);
+        assertTrue(trivia.queueWaitP50Us >= 50 && trivia.queueWaitP50Us <= 53);
+
+        assertThat(metrics.getSnapshot("api_count.php").responses, is(1L));
+        assertThat(metrics.getSnapshots().size(), is(2));
+    }
+
+    @Test
+    public void dumpsToJson() throws Exception {
+        RequestMetrics metrics = new RequestMetrics();
+        metrics.recordResponse("api.php", response(42, 7), 0);
+        File file = new File(folder.getRoot(), "metrics.json");
+        metrics.dump(file);
+
+        JSONObject json = new JSONObject(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        assertThat(json.toString(), containsString("api.php"));
+        assertThat(json.toString(), containsString("\"bytes\":42"));
+    }
+}
@@ -0,0 +1,100 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
+import com.android.volley.ServerError;
+import com.android.volley.TimeoutError;
+import com.android.volley.VolleyError;
+import com.android.volley.toolbox.StringRequest;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RequestSchedulerTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void tokenBucketAllowsBurst() {
+        RequestScheduler.TokenBucket bucket = new RequestScheduler.TokenBucket(2, 1000, 0);
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals("bucket did not run dry after its burst!", SECOND, bucket.tryAcquire(0));
+    }
+
+    @Test
+    public void tokenBucketRefills() {
+        RequestScheduler.TokenBucket bucket = new RequestScheduler.TokenBucket(1, 1000, 0);
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(SECOND / 2, bucket.tryAcquire(SECOND / 2));
+        assertEquals(0, bucket.tryAcquire(SECOND));
+        // never holds more tokens than its capacity
+        assertEquals(0, bucket.tryAcquire(10 * SECOND));
+        assertTrue(bucket.tryAcquire(10 * SECOND) > 0);
+    }
+
+    @Test
+    public void isRetryable() {
+        assertTrue(RequestScheduler.isRetryable(new TimeoutError()));
+        assertTrue(RequestScheduler.isRetryable(new ServerError(response(503))));
+        assertTrue(RequestScheduler.isRetryable(new VolleyError(response(429))));
+        assertTrue(RequestScheduler.isRetryable(new ParseError(
+                new TriviaQuestionParser.ResponseCodeException(TriviaRequestHelper.RESPONSE_CODE_RATE_LIMIT))));
+
+        assertFalse(RequestScheduler.isRetryable(new VolleyError(response(404))));
+        assertFalse(RequestScheduler.isRetryable(new ParseError(
+                new TriviaQuestionParser.ResponseCodeException(4))));
+    }
+
+    @Test
+    public void sharedRateLimitSpansEndPoints() {
+        List<String> sent = new ArrayList<>();
+        RequestScheduler scheduler = new RequestScheduler(new Transport() {
+            @Override
+            public void send(@NonNull Request<?> request) {
+                sent.add(request.getUrl());
+            }
+
+            @NonNull
+            @Override
+            public Executor getDelivery() {
+                return Runnable::run;
+            }
+
+            @Override
+            public void stop() {
+            }
+        });
+        scheduler.setSharedRateLimit(new String[] {"a", "b"}, 1, TimeUnit.MINUTES.toMillis(1));
+
+        for(String endPoint : new String[] {"a", "b", "c", "a"}) {
+            scheduler.submit(endPoint,
+                    errorListener -> new StringRequest(endPoint, response -> {}, errorListener),
+                    error -> fail(error.toString()));
+        }
+        // the other endpoint has to wait for the token the first one took; unlimited ones don't
+        assertEquals(Arrays.asList("a", "c"), sent);
+        assertEquals(1, scheduler.getStats("a").queueDepth);
+        assertEquals(1, scheduler.getStats("b").queueDepth);
+
+        scheduler.removeRateLimit("b");
+        assertEquals(Arrays.asList("a", "c", "b"), sent);
+        assertEquals(0, scheduler.getStats("b").queueDepth);
+        assertEquals(1, scheduler.getStats("a").queueDepth);
+    }
+
+    private static NetworkResponse response(int statusCode) {
+        return new NetworkResponse(statusCode, new byte[0], Collections.<String, String>emptyMap(), false);
+    }
+}
@@ -0,0 +1,81 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class ResponseCacheTest {
+
+    private static final String URL = "https://opentdb.com/api_category.php";
+    private static final String BODY = "{\"trivia_categories\":[{\"id\":9,\"name\":\"General Knowledge\"}]}";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheDir;
+    private ResponseCache.Policy policy;
+
+    @Before
+    public void setUp() {
+        cacheDir = new File(folder.getRoot(), "responses");
+        policy = new ResponseCache.Policy(1000, 5000);
+    }
+
+    @Test
+    public void countsFreshStaleAndExpiredLookups() {
+        ResponseCache cache = new ResponseCache(cacheDir, 4);
+        assertNull(cache.get(URL, policy, 0));
+
+        cache.put(URL, new ResponseCache.Entry(BODY, null, "\"abc\"", null, 0));
+        assertNotNull(cache.get(URL, policy, 500));
+        assertNotNull("stale entries should still be served", cache.get(URL, policy, 2000));
+        assertNull("expired entries should not be served", cache.get(URL, policy, 7000));
+
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getStaleHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(2L));
+    }
+
+    @Test
+    public void readsEntriesBackFromDisk() {
+        new ResponseCache(cacheDir, 4).put(URL, new ResponseCache.Entry(BODY, null, "\"abc\"", null, 100));
+
+        ResponseCache.Entry entry = new ResponseCache(cacheDir, 4).get(URL, policy, 200);
+        assertNotNull("entry was not written to disk!", entry);
+        assertThat(entry.getBody(), is(BODY));
+        assertThat(entry.getEtag(), is("\"abc\""));
+        assertNull(entry.getLastModified());
+        assertThat(entry.getStoredAt(), is(100L));
+    }
+
+    @Test
+    public void touchRefreshesEntry() {
+        ResponseCache cache = new ResponseCache(cacheDir, 4);
+        ResponseCache.Entry entry = new ResponseCache.Entry(BODY, null, null, "Mon, 01 Oct 2018 00:00:00 GMT", 0);
+        cache.put(URL, entry);
+        cache.touch(URL, entry, 3000);
+
+        assertThat(cache.get(URL, policy, 3500), is(sameInstance(entry)));
+        assertThat(new ResponseCache(cacheDir, 4).get(URL, policy, 3500).getStoredAt(), is(3000L));
+        assertThat(cache.getStaleHitCount(), is(0L));
+    }
+
+    @Test
+    public void evictedEntriesFallBackToDisk() {
+        ResponseCache cache = new ResponseCache(cacheDir, 1);
+        ResponseCache.Entry entry = new ResponseCache.Entry(BODY, null, null, null, 0);
+        cache.put(URL, entry);
+        cache.put(URL + "?other", new ResponseCache.Entry("{}", null, null, null, 0));
+
+        ResponseCache.Entry reloaded = cache.get(URL, policy, 0);
+        assertNotNull(reloaded);
+        assertThat(reloaded, is(not(sameInstance(entry))));
+        assertThat(reloaded.getBody(), is(BODY));
+    }
+}
@@ -0,0 +1,68 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class SessionTokenPoolTest {
+
+    private static final long HOUR = 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void sparesReplaceRetiredTokens() {
+        SessionTokenPool pool = new SessionTokenPool(null, Runnable::run);
+        assertNull(pool.getCurrent(0));
+
+        pool.setCurrent("a", 0);
+        pool.addSpare("b", 0);
+        pool.addSpare("c", 0);
+        // the current token is not its own spare
+        pool.addSpare("a", 0);
+        assertThat(pool.getSpareCount(0), is(2));
+
+        assertTrue(pool.retire("a"));
+        assertFalse(pool.retire("a"));
+        assertThat(pool.getCurrent(0), is("b"));
+        assertThat(pool.getSpareCount(0), is(1));
+    }
+
+    @Test
+    public void expiredTokensAreSkipped() {
+        SessionTokenPool pool = new SessionTokenPool(null, Runnable::run);
+        pool.setCurrent("a", 0);
+        pool.addSpare("b", 0);
+        pool.addSpare("c", 5 * HOUR);
+
+        // using a token keeps it alive
+        pool.touch(4 * HOUR);
+        assertThat(pool.getCurrent(8 * HOUR), is("a"));
+
+        pool.retire("a");
+        assertThat(pool.getSpareCount(8 * HOUR), is(1));
+        assertThat(pool.getCurrent(8 * HOUR), is("c"));
+        assertNull(pool.getCurrent(12 * HOUR));
+    }
+
+    @Test
+    public void tokensAreSaved() {
+        File file = new File(folder.getRoot(), "tokens");
+        SessionTokenPool pool = new SessionTokenPool(file, Runnable::run);
+        pool.setCurrent("a", HOUR);
+        pool.addSpare("b", 2 * HOUR);
+
+        SessionTokenPool loaded = new SessionTokenPool(file, Runnable::run);
+        assertThat(loaded.getCurrent(3 * HOUR), is("a"));
+        assertThat(loaded.getSpareCount(3 * HOUR), is(1));
+        loaded.retire("a");
+
+        assertThat(new SessionTokenPool(file, Runnable::run).getCurrent(3 * HOUR), is("b"));
+    }
+}
@@ -0,0 +1,248 @@
+package online.madeofmagicandwires.trivial;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for the OpenTriviaDB, serving generated responses in the same format
+ * on all endpoints the {@link TriviaRequestHelper} uses, so it can be tested without a network.
+ *
+ * Session tokens are tracked the way the real API does, answering with response code 3
+ * for unknown tokens and 4 once a token has been served every question.
+ */
+class StubTriviaServer {
+
+    /** the amount of questions available to a single session token **/
+    static final int QUESTION_POOL = 10000;
+
+    private static final String CATEGORIES =
+            "{\"trivia_categories\":[{\"id\":9,\"name\":\"General Knowledge\"},"
+            + "{\"id\":18,\"name\":\"Science: Computers\"},{\"id\":22,\"name\":\"Geography\"}]}";
+    private static final String CATEGORIES_ETAG = "\"categories-1\"";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, AtomicInteger> tokens;
+    private final Map<String, AtomicLong> hits;
+    private final Map<String, AtomicInteger> rateLimited;
+    private volatile int questionPool = QUESTION_POOL;
+
+    /**
+     * Starts the server on a free port of the loopback interface
+     *
+     * @param threads the amount of threads serving requests
+     * @throws IOException when the server could not be started
+     */
+    StubTriviaServer(int threads) throws IOException {
+        tokens = new ConcurrentHashMap<>();
+        hits = new ConcurrentHashMap<>();
+        rateLimited = new ConcurrentHashMap<>();
+        // otherwise Nagle's algorithm holds back every response body for the delayed ack
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Gets the root url of the server, to be used in place of the API url
+     * @return the root url, ending in a slash
+     */
+    String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Gets the amount of requests that reached an endpoint
+     * @param endPoint the endpoint to check
+     * @return the amount of requests made to it
+     */
+    long getHits(String endPoint) {
+        AtomicLong count = hits.get(endPoint);
+        return (count != null) ? count.get() : 0;
+    }
+
+    /**
+     * Sets the amount of questions available to a single session token
+     * @param questionPool the amount of questions a token can be served before it runs out
+     */
+    void setQuestionPool(int questionPool) {
+        this.questionPool = questionPool;
+    }
+
+    /**
+     * Answers the next requests to an endpoint with response code 5,
+     * as the real API does when requests are made too quickly
+     *
+     * @param endPoint the endpoint to rate limit
+     * @param requests the amount of requests to answer with response code 5
+     */
+    void rateLimit(String endPoint, int requests) {
+        rateLimited.put(endPoint, new AtomicInteger(requests));
+    }
+
+    /**
+     * Forgets all session tokens handed out, as the real API does after six hours of inactivity
+     */
+    void forgetTokens() {
+        tokens.clear();
+    }
+
+    /**
+     * Stops the server
+     */
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String endPoint = exchange.getRequestURI().getPath().substring(1);
+        Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+        hits.computeIfAbsent(endPoint, e -> new AtomicLong()).incrementAndGet();
+        AtomicInteger limited = rateLimited.get(endPoint);
+        if(limited != null && limited.getAndDecrement() > 0) {
+            respond(exchange, 200, "{\"response_code\":5,\"results\":[]}");
+            return;
+        }
+
+        switch (endPoint) {
+            case TriviaRequestHelper.EndPoint.SESSION:
+                respond(exchange, 200, session(params));
+                break;
+            case TriviaRequestHelper.EndPoint.TRIVIA:
+                respond(exchange, 200, questions(params));
+                break;
+            case TriviaRequestHelper.EndPoint.CATEGORY:
+                exchange.getResponseHeaders().set("ETag", CATEGORIES_ETAG);
+                if(CATEGORIES_ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    respond(exchange, 304, null);
+                } else {
+                    respond(exchange, 200, CATEGORIES);
+                }
+                break;
+            case TriviaRequestHelper.EndPoint.COUNT:
+                respond(exchange, 200, "{\"overall\":{\"total_num_of_questions\":4200,"
+                        + "\"total_num_of_verified_questions\":4000},\"categories\":{"
+                        + "\"9\":{\"total_num_of_questions\":300,\"total_num_of_verified_questions\":280}}}");
+                break;
+            case TriviaRequestHelper.EndPoint.CATEGORY_COUNT:
+                respond(exchange, 200, "{\"category_id\":" + params.get("category")
+                        + ",\"category_question_count\":{\"total_question_count\":280}}");
+                break;
+            default:
+                respond(exchange, 404, "");
+                break;
+        }
+    }
+
+    private String session(Map<String, String> params) {
+        if("reset".equals(params.get("command"))) {
+            String token = params.get("token");
+            if(token == null || !tokens.containsKey(token)) {
+                return "{\"response_code\":3,\"token\":\"\"}";
+            }
+            tokens.put(token, new AtomicInteger());
+            return "{\"response_code\":0,\"token\":\"" + token + "\"}";
+        }
+        String token = UUID.randomUUID().toString().replace("-", "");
+        tokens.put(token, new AtomicInteger());
+        return "{\"response_code\":0,\"response_message\":\"Token Generated Successfully!\","
+                + "\"token\":\"" + token + "\"}";
+    }
+
+    private String questions(Map<String, String> params) {
+        int amount = Integer.parseInt(params.getOrDefault("amount", "10"));
+        String token = params.get("token");
+        int first = 0;
+        if(token != null) {
+            AtomicInteger served = tokens.get(token);
+            if(served == null) {
+                return "{\"response_code\":3,\"results\":[]}";
+            }
+            first = served.getAndAdd(amount);
+            if(first + amount > questionPool) {
+                return "{\"response_code\":4,\"results\":[]}";
+            }
+        }
+
+        String difficulty = params.getOrDefault("difficulty", TriviaGame.Difficulty.EASY);
+        StringBuilder json = new StringBuilder("{\"response_code\":0,\"results\":[");
+        for(int i=first;i<first+amount;i++) {
+            if(i > first) {
+                json.append(',');
+            }
+            json.append("{\"category\":\"").append(encode("Science: Computers"))
+                    .append("\",\"difficulty\":\"").append(difficulty);
+            if(i % 3 == 2) {
+                json.append("\",\"type\":\"boolean\",\"question\":\"")
+                        .append(encode("Is question #" + i + " true?"))
+                        .append("\",\"correct_answer\":\"True\",\"incorrect_answers\":[\"False\"]}");
+            } else {
+                json.append("\",\"type\":\"multiple\",\"question\":\"")
+                        .append(encode("What is the answer to question #" + i + "?"))
+                        .append("\",\"correct_answer\":\"").append(encode("Answer " + i))
+                        .append("\",\"incorrect_answers\":[\"").append(encode("Wrong & 1"))
+                        .append("\",\"").append(encode("Wrong & 2"))
+                        .append("\",\"").append(encode("Wrong & 3")).append("\"]}");
+            }
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        if(body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if(query != null) {
+            for(String param : query.split("&")) {
+                int split = param.indexOf('=');
+                if(split > 0) {
+                    params.put(param.substring(0, split),
+                            TriviaQuestionParser.decodeResponseStr(param.substring(split + 1)));
+                }
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Encodes a string the way the API does with encode=url3986
+     */
+    private static String encode(String str) {
+        try {
+            return URLEncoder.encode(str, "UTF-8").replace("+", "%20");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -9,25 +9,28 @@ import java.util.List;
 import static org.hamcrest.CoreMatchers.*;
 import static org.junit.Assert.*;
 
-public class TriviaGameTest implements TriviaGame.QuestionsHandler {
+public class TriviaGameTest {
 
     public TriviaGame testGame;
     List<TriviaQuestion> testQs;
 
     @Before
     public void setUp() {
-        testGame = new TriviaGame(1, TriviaGame.Difficulty.EASY);
+        testGame = new TriviaGame(1, TriviaGame.Difficulty.EASY, TriviaGame.QuestionType.ANY);
+        testQs = retrieveQuestions(2);
     }
 
 
     @Test
     public void createTriviaGame() {
-        testGame = new TriviaGame(0, TriviaGame.Difficulty.UNKNOWN);
+        testGame = new TriviaGame(0, TriviaGame.Difficulty.UNKNOWN, TriviaGame.QuestionType.ANY, 9);
         assertNotNull(testGame);
+        assertThat(testGame.getGameCategoryId(), is(9));
         testGame = new TriviaGame(0);
         assertNotNull(testGame);
-        testGame = new TriviaGame(TriviaGame.Difficulty.EASY);
+        testGame = new TriviaGame(TriviaGame.Difficulty.EASY, TriviaGame.QuestionType.BOOLEAN, 9);
         assertNotNull(testGame);
+        assertThat(testGame.getQuestionAmount(), is(0));
         testGame = new TriviaGame();
         assertNotNull(testGame);
     }
@@ -60,49 +63,34 @@ public class TriviaGameTest implements TriviaGame.QuestionsHandler {
                 qIndex < testGame.getQuestionIndex());
     }
 
-    @Test(expected = TriviaGame.NoQuestionHandlerProvidedException.class)
-    public void getQuestionsHandler() throws TriviaGame.NoQuestionHandlerProvidedException {
-        testGame.setQuestionsHandler(this);
-
-        assertEquals(
-                "QuestionHandler was not set or retrieved correctly!",
-                this,
-                testGame.getQuestionsHandler()
-        );
-
-        testGame.setQuestionsHandler(null);
-        testGame.getQuestionsHandler();
-    }
-
     @Test
-    public void getCurrentQuestion() throws TriviaGame.NoQuestionHandlerProvidedException {
-        testGame.setQuestionsHandler(this);
+    public void getCurrentQuestion() {
+        testGame.setQuestions(testQs);
         TriviaQuestion testQ = testGame.getCurrentQuestion();
-        System.out.println(testQ.getQuestion());
-        System.out.println(testQ.getRightAnswer());
-        assertEquals(testQ, testQs.get(0));
+        assertEquals(testQs.get(0).getQuestion(), testQ.getQuestion());
+        assertEquals(testQs.get(0).getRightAnswer(), testQ.getRightAnswer());
     }
 
-    @Test(expected = TriviaGame.NoQuestionHandlerProvidedException.class)
-    public void getCurrentQuestionExceptionThrowing() throws TriviaGame.NoQuestionHandlerProvidedException {
+    @Test(expected = NullPointerException.class)
+    public void getCurrentQuestionExceptionThrowing() {
         testGame.getCurrentQuestion();
     }
 
-    @Test(expected = TriviaGame.NoQuestionHandlerProvidedException.class)
-    public void updateQuestions() throws TriviaGame.NoQuestionHandlerProvidedException {
-        testGame.setQuestionsHandler(this);
-        testGame.updateQuestions(1);
+    @Test
+    public void updateQuestions() {
+        testGame.setQuestions(testQs.subList(0, 1));
         TriviaQuestion testQ = testGame.getCurrentQuestion();
-        testGame.updateQuestions(1);
-        // assertEquals(testQ.getQuestion(), testGame.getCurrentQuestion().getQuestion());
-        assertNotSame(
-                "Questions have not been updated!",
-                testQ,
-                testGame.getCurrentQuestion()
+        testGame.setQuestions(testQs.subList(1, 2));
+        assertThat("Questions have not been added!", testGame.getLoadedQuestionCount(), is(2));
+        assertEquals(
+                "Questions were replaced rather than added!",
+                testQ.getQuestion(),
+                testGame.getCurrentQuestion().getQuestion()
         );
 
-        testGame.setQuestionsHandler(null);
-        testGame.getQuestionsHandler();
+        // the same questions are not added twice
+        assertThat(testGame.addNewQuestions(testQs, 5).size(), is(0));
+        assertThat(testGame.getLoadedQuestionCount(), is(2));
     }
 
 
@@ -111,28 +99,33 @@ public class TriviaGameTest implements TriviaGame.QuestionsHandler {
         assertFalse(testGame.isGameOver());
         testGame.nextQuestion();
         assertTrue(testGame.isGameOver());
+
+        TriviaGame endless = new TriviaGame(0);
+        for(int i=0;i<100;i++) {
+            endless.nextQuestion();
+        }
+        assertFalse(endless.isGameOver());
     }
 
 
     /**
-     * Generates or Retrieves a set amount of TriviaQuestion objects for a TriviaGame
+     * Generates a set amount of TriviaQuestion objects for a TriviaGame
      *
-     * @param amount the amount of questions to be generated or retrieved
-     * @return the list of questions generated or retrieved
+     * @param amount the amount of questions to be generated
+     * @return the list of questions generated
      */
-    @Override
-    public List<TriviaQuestion> retrieveQuestions(int amount) {
-        testQs = new ArrayList<>();
+    private static List<TriviaQuestion> retrieveQuestions(int amount) {
+        List<TriviaQuestion> questions = new ArrayList<>();
 
         for(int i=0;i<amount;i++) {
             MultipleChoiceQuestion q = new MultipleChoiceQuestion(
                     "How many questions?",
                     (i+1) + " so far",
                     new String[] {"wrong", "answers", "will", "fail"});
-            testQs.add(q);
+            questions.add(q);
         }
 
-        return testQs;
+        return questions;
     }
 
     @Test
@@ -142,4 +135,4 @@ public class TriviaGameTest implements TriviaGame.QuestionsHandler {
         testGame.addScore(10);
         assertThat(testGame.getScore(), is(20));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,85 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class TriviaQuestionParserTest {
+
+    // url3986 encoded response as returned by the OpenTriviaDB
+    private static final String RESPONSE = "{\"response_code\":0,\"results\":["
+            + "{\"category\":\"Science%3A%20Computers\",\"type\":\"multiple\",\"difficulty\":\"easy\","
+            + "\"question\":\"What%20does%20%22CPU%22%20stand%20for%3F\","
+            + "\"correct_answer\":\"Central%20Processing%20Unit\","
+            + "\"incorrect_answers\":[\"Central%20Process%20Unit\",\"Computer%20Personal%20Unit\","
+            + "\"Central%20Processor%20Unit\"]},"
+            + "{\"category\":\"Geography\",\"type\":\"boolean\",\"difficulty\":\"medium\","
+            + "\"question\":\"Z%C3%BCrich%20is%20the%20capital%20of%20Switzerland.\","
+            + "\"correct_answer\":\"False\",\"incorrect_answers\":[\"True\"]}"
+            + "]}";
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void parseQuestions() throws IOException {
+        List<TriviaQuestion> questions = TriviaQuestionParser.parseQuestions(stream(RESPONSE));
+        assertThat(questions.size(), is(2));
+
+        TriviaQuestion multiple = questions.get(0);
+        assertThat(multiple, instanceOf(MultipleChoiceQuestion.class));
+        assertEquals("What does \"CPU\" stand for?", multiple.getQuestion());
+        assertEquals("Science: Computers", multiple.getCategory());
+        assertEquals("easy", multiple.getDifficulty());
+        assertEquals("Central Processing Unit", multiple.getRightAnswer());
+        assertThat(multiple.getAnswers(), hasItems("Central Process Unit", "Central Processing Unit"));
+
+        TriviaQuestion trueFalse = questions.get(1);
+        assertThat(trueFalse, instanceOf(TrueFalseQuestion.class));
+        assertEquals("Z\u00fcrich is the capital of Switzerland.", trueFalse.getQuestion());
+        assertEquals("false", trueFalse.getRightAnswer());
+    }
+
+    @Test
+    public void parsedQuestionsDecodeOnce() throws IOException {
+        List<TriviaQuestion> questions = TriviaQuestionParser.parseQuestions(stream(RESPONSE));
+        MultipleChoiceQuestion lazy = (MultipleChoiceQuestion) questions.get(0);
+        MultipleChoiceQuestion eager = new MultipleChoiceQuestion(
+                "What does \"CPU\" stand for?",
+                "Central Processing Unit",
+                new String[] {"Central Process Unit", "Computer Personal Unit", "Central Processor Unit"},
+                TriviaGame.Difficulty.EASY,
+                "Science: Computers");
+
+        assertSame(lazy.getQuestion(), lazy.getQuestion());
+        assertSame(lazy.getWrongAnswers(), lazy.getWrongAnswers());
+        assertEquals(eager.getAnswers(), lazy.getAnswers());
+        for(int i=0;i<eager.getAnswerCount();i++) {
+            assertThat(lazy.checkAnswer(i), is(eager.checkAnswer(i)));
+        }
+        assertTrue(lazy.checkAnswer("Central Processing Unit"));
+    }
+
+    @Test
+    public void parseQuestionsResponseCode() throws IOException {
+        try {
+            TriviaQuestionParser.parseQuestions(stream("{\"response_code\":4,\"results\":[]}"));
+            fail("non-zero response code did not throw!");
+        } catch (TriviaQuestionParser.ResponseCodeException e) {
+            assertThat(e.getResponseCode(), is(4));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void parseQuestionsMalformed() throws IOException {
+        TriviaQuestionParser.parseQuestions(stream("{\"response_code\":0,\"results\":[{"));
+    }
+}
@@ -2,7 +2,6 @@ package online.madeofmagicandwires.trivial;
 
 import org.junit.Before;
 import org.junit.Test;
-import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -33,22 +32,11 @@ public class TriviaQuestionTest {
 
     @Test
     public void getQuestionType() {
-
-        String[] possibleTypes = {
-                TriviaQuestion.Type.MULTIPLE,
-                TriviaQuestion.Type.BOOLEAN,
-                TriviaQuestion.Type.UNKNOWN};
-
-        assertThat(
-                "Returned question type was not a valid one!",
-                Arrays.asList(possibleTypes),
-                hasItem(testQuestion.getQuestionType()));
-        assertNotEquals(
-                "question type was set to unknown! Should be Multiple choice",
-                testQuestion.getQuestionType(),
-                TriviaQuestion.Type.UNKNOWN);
-
-
+        assertEquals(
+                "question type was not multiple choice!",
+                MultipleChoiceQuestion.class,
+                testQuestion.getQuestionType());
+        assertEquals(TrueFalseQuestion.class, new TrueFalseQuestion(QUESTION, true).getQuestionType());
     }
 
     @Test
@@ -64,4 +52,33 @@ public class TriviaQuestionTest {
         assertThat(answers, hasItems(WRONG_ANSWERS));
         assertThat(answers, hasItems(ANSWER));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void answerOrderIsStable() {
+        List<String> answers = testQuestion.getAnswers();
+        assertSame(answers, testQuestion.getAnswers());
+
+        MultipleChoiceQuestion sameQuestion = new MultipleChoiceQuestion(
+                QUESTION,
+                ANSWER,
+                WRONG_ANSWERS,
+                TriviaGame.Difficulty.EASY);
+        assertEquals("same question was shuffled differently!", answers, sameQuestion.getAnswers());
+    }
+
+    @Test
+    public void checkAnswerByIndex() {
+        assertThat(testQuestion.getAnswerCount(), is(WRONG_ANSWERS.length + 1));
+        int right = testQuestion.getAnswers().indexOf(ANSWER);
+        for(int i=0;i<testQuestion.getAnswerCount();i++) {
+            assertEquals(testQuestion.getAnswers().get(i), testQuestion.getAnswer(i));
+            assertThat(testQuestion.checkAnswer(i), is(i == right));
+        }
+
+        TrueFalseQuestion trueFalse = new TrueFalseQuestion(QUESTION, false);
+        int rightBool = trueFalse.getAnswers().indexOf("false");
+        assertTrue(trueFalse.checkAnswer(rightBool));
+        assertFalse(trueFalse.checkAnswer(1 - rightBool));
+        assertThat(trueFalse.getAnswers(), hasItems("true", "false"));
+    }
+}
@@ -0,0 +1,225 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+/**
+ * Runs the {@link TriviaRequestHelper} on the JVM against a {@link StubTriviaServer},
+ * sending its requests over an {@link HttpTransport}
+ */
+public class TriviaRequestHelperLocalTest {
+
+    private static final long TIMEOUT = 10;
+    private static final int LOAD_REQUESTS = 2000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private StubTriviaServer server;
+    private ExecutorService mainThread;
+    private HttpTransport transport;
+    private TriviaRequestHelper helper;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubTriviaServer(8);
+        // stands in for the main thread responses are delivered on
+        mainThread = Executors.newSingleThreadExecutor();
+        transport = new HttpTransport(8, mainThread);
+        helper = new TriviaRequestHelper(transport, folder.newFolder(), server.getUrl());
+        for(String endPoint : new String[] {
+                TriviaRequestHelper.EndPoint.SESSION, TriviaRequestHelper.EndPoint.TRIVIA,
+                TriviaRequestHelper.EndPoint.CATEGORY, TriviaRequestHelper.EndPoint.CATEGORY_COUNT,
+                TriviaRequestHelper.EndPoint.COUNT}) {
+            helper.getScheduler().removeRateLimit(endPoint);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        transport.stop();
+        server.stop();
+        mainThread.shutdownNow();
+    }
+
+    @Test
+    public void requestQuestionsWithSessionToken() throws Exception {
+        String token = helper.requestSessionTokenAsync().get(TIMEOUT, TimeUnit.SECONDS);
+        assertFalse("Retrieved session token was empty!", token.isEmpty());
+
+        List<TriviaQuestion> questions = helper.requestQuestionsAsync(10).get(TIMEOUT, TimeUnit.SECONDS);
+        assertThat(questions.size(), is(10));
+        assertThat(((MultipleChoiceQuestion) questions.get(0)).getWrongAnswers()[0], is("Wrong & 1"));
+        assertThat(questions.get(2), is(instanceOf(TrueFalseQuestion.class)));
+    }
+
+    @Test
+    public void rotatesToSpareTokenWhenQuestionsRunOut() throws Exception {
+        server.setQuestionPool(20);
+        String first = helper.acquireSessionTokenAsync().get(TIMEOUT, TimeUnit.SECONDS);
+        awaitSpareTokens(helper);
+
+        for(int i=0;i<5;i++) {
+            List<TriviaQuestion> questions = helper.requestQuestionsAsync(10).get(TIMEOUT, TimeUnit.SECONDS);
+            assertThat(questions.size(), is(10));
+        }
+        assertThat(helper.getSessionToken(), is(not(first)));
+        // the used up tokens were reset in the background rather than replaced
+        assertThat(server.getHits(TriviaRequestHelper.EndPoint.TRIVIA), is(7L));
+    }
+
+    @Test
+    public void resetsTokenWithoutSpares() throws Exception {
+        server.setQuestionPool(10);
+        String token = helper.requestSessionTokenAsync().get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertThat(helper.requestQuestionsAsync(10).get(TIMEOUT, TimeUnit.SECONDS).size(), is(10));
+        assertThat(helper.requestQuestionsAsync(10).get(TIMEOUT, TimeUnit.SECONDS).size(), is(10));
+        assertThat(helper.getSessionToken(), is(token));
+    }
+
+    @Test
+    public void replacesForgottenTokens() throws Exception {
+        String token = helper.requestSessionTokenAsync().get(TIMEOUT, TimeUnit.SECONDS);
+        server.forgetTokens();
+
+        assertThat(helper.requestQuestionsAsync(10).get(TIMEOUT, TimeUnit.SECONDS).size(), is(10));
+        assertThat(helper.getSessionToken(), is(not(token)));
+    }
+
+    @Test
+    public void savedTokensAreReusedAcrossInstances() throws Exception {
+        File tokensFile = new File(folder.getRoot(), "tokens");
+        TriviaRequestHelper first = new TriviaRequestHelper(
+                transport, folder.newFolder(), server.getUrl(), tokensFile, Runnable::run);
+        first.getScheduler().removeRateLimit(TriviaRequestHelper.EndPoint.SESSION);
+        String token = first.acquireSessionTokenAsync().get(TIMEOUT, TimeUnit.SECONDS);
+        awaitSpareTokens(first);
+        long requested = server.getHits(TriviaRequestHelper.EndPoint.SESSION);
+
+        TriviaRequestHelper second = new TriviaRequestHelper(
+                transport, folder.newFolder(), server.getUrl(), tokensFile, Runnable::run);
+        assertThat(second.acquireSessionTokenAsync().get(TIMEOUT, TimeUnit.SECONDS), is(token));
+        assertThat(server.getHits(TriviaRequestHelper.EndPoint.SESSION), is(requested));
+    }
+
+    /**
+     * Waits for the spare session tokens requested in the background to come in
+     */
+    private void awaitSpareTokens(TriviaRequestHelper helper) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT);
+        while (mainThread.submit(helper::getSpareTokenCount).get() < TriviaRequestHelper.SPARE_TOKENS) {
+            assertTrue("spare tokens were not retrieved in time!", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void questionCountIsServedFromCache() throws Exception {
+        TriviaRequestHelper.QuestionCount first =
+                helper.requestQuestionCountAsync(null).get(TIMEOUT, TimeUnit.SECONDS);
+        TriviaRequestHelper.QuestionCount second =
+                helper.requestQuestionCountAsync(null).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertThat(first.total, is(4000));
+        assertThat(second.total, is(4000));
+        assertThat(server.getHits(TriviaRequestHelper.EndPoint.COUNT), is(1L));
+        assertThat(helper.getResponseCache().getHitCount(), is(1L));
+    }
+
+    @Test
+    public void rateLimitedResponsesAreNotCached() throws Exception {
+        server.rateLimit(TriviaRequestHelper.EndPoint.COUNT, 1);
+        TriviaRequestHelper.QuestionCount first =
+                helper.requestQuestionCountAsync(null).get(TIMEOUT, TimeUnit.SECONDS);
+        TriviaRequestHelper.QuestionCount second =
+                helper.requestQuestionCountAsync(null).get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertThat(first.total, is(4000));
+        assertThat(second.total, is(4000));
+        assertThat(server.getHits(TriviaRequestHelper.EndPoint.COUNT), is(2L));
+        assertThat(helper.getResponseCache().getHitCount(), is(1L));
+    }
+
+    @Test
+    public void retriesRateLimitedTokenRequests() throws Exception {
+        server.rateLimit(TriviaRequestHelper.EndPoint.SESSION, 1);
+        String token = helper.requestSessionTokenAsync().get(TIMEOUT, TimeUnit.SECONDS);
+
+        assertFalse("Retrieved session token was empty!", token.isEmpty());
+        assertThat(server.getHits(TriviaRequestHelper.EndPoint.SESSION), is(2L));
+        assertThat(helper.getScheduler().getStats(TriviaRequestHelper.EndPoint.SESSION).retried, is(1L));
+    }
+
+    @Test
+    public void fetcherGivesUpOnPagesWithoutNewQuestions() throws Exception {
+        // without a session token every page holds the same questions
+        List<TriviaQuestion> played = helper.requestQuestionsAsync(10).get(TIMEOUT, TimeUnit.SECONDS);
+        TriviaGame game = new TriviaGame(20);
+        game.setQuestions(new ArrayList<>(played));
+        game.restoreProgress(10, false);
+        QuestionHistory history = new QuestionHistory(new File(folder.getRoot(), "history"), Runnable::run);
+
+        QuestionFetcher fetcher = new QuestionFetcher(helper, game, history);
+        CompletableFuture<Void> firstPage = mainThread.submit(fetcher::start).get();
+        try {
+            firstPage.get(TIMEOUT, TimeUnit.SECONDS);
+            fail("completed without adding a question");
+        } catch (ExecutionException expected) {
+            assertThat(expected.getCause(), is(instanceOf(TriviaRequestHelper.RequestFailedException.class)));
+        }
+        assertThat(game.getLoadedQuestionCount(), is(10));
+        assertThat(server.getHits(TriviaRequestHelper.EndPoint.TRIVIA), is(1L + QuestionFetcher.MAX_EMPTY_PAGES));
+    }
+
+    @Test
+    public void resolvesThousandsOfConcurrentRequests() throws InterruptedException {
+        CountDownLatch signal = new CountDownLatch(LOAD_REQUESTS);
+        AtomicInteger failures = new AtomicInteger();
+        TriviaRequestHelper.QuestionResponseListener listener = new TriviaRequestHelper.QuestionResponseListener() {
+            @Override
+            public void OnQuestionsResponse(List<TriviaQuestion> questions) {
+                signal.countDown();
+            }
+
+            @Override
+            public void OnErrorResponse(String lastRequest, String errorMsg) {
+                failures.incrementAndGet();
+                signal.countDown();
+            }
+        };
+
+        mainThread.execute(() -> {
+            for(int i=0;i<LOAD_REQUESTS;i++) {
+                helper.requestQuestions(5, listener);
+            }
+        });
+        assertTrue("not all requests resolved in time!", signal.await(60, TimeUnit.SECONDS));
+        assertThat(failures.get(), is(0));
+        assertThat(server.getHits(TriviaRequestHelper.EndPoint.TRIVIA), is((long) LOAD_REQUESTS));
+
+        RequestMetrics.Snapshot metrics = helper.getMetrics().getSnapshot(TriviaRequestHelper.EndPoint.TRIVIA);
+        assertThat(metrics.responses, is((long) LOAD_REQUESTS));
+        assertThat(metrics.errors, is(0L));
+        assertTrue("no response bytes were recorded!", metrics.bytes > 0);
+        assertTrue(metrics.errorCodes.isEmpty());
+    }
+}
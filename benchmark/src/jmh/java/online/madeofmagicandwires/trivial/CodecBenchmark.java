@@ -0,0 +1,108 @@
+package online.madeofmagicandwires.trivial;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks writing and reading the recorded 50 question response in the binary
+ * {@link QuestionCodec} format against the OpenTriviaDB's own JSON format.
+ * Setting up fails if the binary format is not the smaller of the two.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CodecBenchmark {
+
+    private List<TriviaQuestion> questions;
+    private TriviaGame game;
+    private byte[] binary;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws IOException {
+        questions = Payloads.questions(50);
+        game = new TriviaGame(questions.size());
+        game.setQuestions(questions);
+        binary = QuestionCodec.encodeQuestions(questions);
+        json = Payloads.load(Payloads.QUESTIONS);
+        if(binary.length >= json.length) {
+            throw new IllegalStateException("binary questions of " + binary.length
+                    + " bytes are not smaller than the json of " + json.length + " bytes");
+        }
+    }
+
+    /**
+     * Writes the questions in the binary format
+     */
+    @Benchmark
+    public byte[] encodeBinary() {
+        return QuestionCodec.encodeQuestions(questions);
+    }
+
+    /**
+     * Writes a game and its questions in the binary format, as it is saved into the instance state
+     */
+    @Benchmark
+    public byte[] encodeGame() {
+        return QuestionCodec.encodeGame(game);
+    }
+
+    /**
+     * Writes the questions as a JSON response would have them
+     */
+    @Benchmark
+    public byte[] encodeJson() throws JSONException {
+        JSONArray results = new JSONArray();
+        for(TriviaQuestion question : questions) {
+            JSONObject result = new JSONObject();
+            result.put("category", question.getCategory());
+            result.put("difficulty", question.getDifficulty());
+            result.put("question", question.getQuestion());
+            result.put("correct_answer", question.getRightAnswer());
+            JSONArray incorrect = new JSONArray();
+            if(question instanceof MultipleChoiceQuestion) {
+                result.put("type", TriviaGame.QuestionType.MULTIPLE);
+                for(String answer : ((MultipleChoiceQuestion) question).getWrongAnswers()) {
+                    incorrect.put(answer);
+                }
+            } else {
+                result.put("type", TriviaGame.QuestionType.BOOLEAN);
+            }
+            result.put("incorrect_answers", incorrect);
+            results.put(result);
+        }
+        return new JSONObject().put("response_code", 0).put("results", results)
+                .toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the questions from the binary format
+     */
+    @Benchmark
+    public QuestionBank decodeBinary() throws IOException {
+        return QuestionCodec.decodeQuestions(ByteBuffer.wrap(binary));
+    }
+
+    /**
+     * Reads the questions from the JSON response through the streaming parser
+     */
+    @Benchmark
+    public List<TriviaQuestion> decodeJson() throws IOException {
+        return TriviaQuestionParser.parseQuestions(new ByteArrayInputStream(json));
+    }
+}
@@ -0,0 +1,78 @@
+package online.madeofmagicandwires.trivial;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the {@link PercentDecoder} against {@link URLDecoder},
+ * which decodeResponseStr used before, on every encoded string of a recorded response
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DecoderBenchmark {
+
+    private String[] encodedStrings;
+    private byte[][] encodedBytes;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        JSONArray results = new JSONObject(new String(Payloads.load(Payloads.QUESTIONS), StandardCharsets.UTF_8))
+                .getJSONArray("results");
+        List<String> encoded = new ArrayList<>();
+        for(int i=0;i<results.length();i++) {
+            JSONObject question = results.getJSONObject(i);
+            encoded.add(question.getString("category"));
+            encoded.add(question.getString("difficulty"));
+            encoded.add(question.getString("question"));
+            encoded.add(question.getString("correct_answer"));
+            JSONArray wrongAnswers = question.getJSONArray("incorrect_answers");
+            for(int j=0;j<wrongAnswers.length();j++) {
+                encoded.add(wrongAnswers.getString(j));
+            }
+        }
+        encodedStrings = encoded.toArray(new String[0]);
+        encodedBytes = new byte[encodedStrings.length][];
+        for(int i=0;i<encodedStrings.length;i++) {
+            encodedBytes[i] = encodedStrings[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Benchmark
+    public void urlDecoder(Blackhole bh) throws UnsupportedEncodingException {
+        for(String encoded : encodedStrings) {
+            bh.consume(URLDecoder.decode(encoded, "UTF-8"));
+        }
+    }
+
+    @Benchmark
+    public void percentDecoder(Blackhole bh) {
+        for(String encoded : encodedStrings) {
+            bh.consume(PercentDecoder.decode(encoded));
+        }
+    }
+
+    @Benchmark
+    public void percentDecoderBytes(Blackhole bh) {
+        for(byte[] encoded : encodedBytes) {
+            bh.consume(PercentDecoder.decode(encoded, 0, encoded.length));
+        }
+    }
+}
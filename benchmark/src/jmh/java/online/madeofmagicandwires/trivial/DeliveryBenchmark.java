@@ -0,0 +1,79 @@
+package online.madeofmagicandwires.trivial;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the work left on the main thread when a 50 question response is delivered,
+ * up to showing its first question; every frame this takes over the frame budget is a dropped frame.
+ *
+ * Before, the response was delivered as a JSONObject and its questions were parsed on the main thread;
+ * now they are parsed before delivery and the main thread only receives the finished questions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DeliveryBenchmark {
+
+    private byte[] payload;
+    private JSONArray results;
+    private List<TriviaQuestion> parsed;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        payload = Payloads.load(Payloads.QUESTIONS);
+        results = new JSONObject(new String(payload, StandardCharsets.UTF_8)).getJSONArray("results");
+    }
+
+    /**
+     * Parses the response again before every delivery, off the clock,
+     * as parsed questions only decode their text once
+     */
+    @Setup(Level.Invocation)
+    public void parse() throws IOException {
+        parsed = TriviaQuestionParser.parseQuestions(new ByteArrayInputStream(payload));
+    }
+
+    /**
+     * Parses the questions of a delivered JSONObject, then starts a game with them
+     */
+    @Benchmark
+    public String deliverJsonObject() throws JSONException {
+        List<TriviaQuestion> questions = new ArrayList<>();
+        for(int i=0;i<results.length();i++) {
+            questions.add(TriviaQuestionParser.parseQuestionJSON(results.getJSONObject(i)));
+        }
+        return startGame(questions);
+    }
+
+    /**
+     * Starts a game with questions that were parsed before they were delivered
+     */
+    @Benchmark
+    public String deliverParsedQuestions() {
+        return startGame(parsed);
+    }
+
+    private static String startGame(List<TriviaQuestion> questions) {
+        TriviaGame game = new TriviaGame(questions.size());
+        game.setQuestions(questions);
+        TriviaQuestion first = game.getCurrentQuestion();
+        return first.getQuestion() + first.getAnswers();
+    }
+}
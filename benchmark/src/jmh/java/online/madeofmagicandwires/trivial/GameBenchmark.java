@@ -0,0 +1,96 @@
+package online.madeofmagicandwires.trivial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks loading large amounts of questions into a game and playing through them
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GameBenchmark {
+
+    /** the amount of questions in the game **/
+    @Param({"1000", "100000"})
+    public int size;
+
+    /** the amount of questions added to the game at once, as the fetcher adds a page at a time **/
+    private static final int PAGE_SIZE = 50;
+
+    private List<TriviaQuestion> questions;
+    private TriviaGame loadedGame;
+
+    @Setup
+    public void setUp() throws IOException {
+        questions = Payloads.questions(size);
+    }
+
+    @Setup(Level.Iteration)
+    public void loadGame() {
+        loadedGame = new TriviaGame(size);
+        loadedGame.setQuestions(questions);
+    }
+
+    /**
+     * Adds all questions to a new game at once
+     */
+    @Benchmark
+    public TriviaGame setQuestions() {
+        TriviaGame game = new TriviaGame(size);
+        game.setQuestions(questions);
+        return game;
+    }
+
+    /**
+     * Adds all questions to a new game page by page
+     */
+    @Benchmark
+    public TriviaGame setQuestionsPaged() {
+        TriviaGame game = new TriviaGame(size);
+        for(int from=0;from<size;from+=PAGE_SIZE) {
+            game.setQuestions(questions.subList(from, Math.min(from + PAGE_SIZE, size)));
+        }
+        return game;
+    }
+
+    /**
+     * Plays through a whole game, looking at every question and its answers
+     */
+    @Benchmark
+    public void playThrough(Blackhole bh) {
+        TriviaGame game = new TriviaGame(size);
+        game.setQuestions(questions);
+        while (!game.isGameOver()) {
+            TriviaQuestion question = game.getCurrentQuestion();
+            bh.consume(question.getAnswers());
+            bh.consume(question.checkAnswer(0));
+            game.nextQuestion();
+        }
+    }
+
+    /**
+     * Moves through the questions of an already loaded game;
+     * the game is put back at its first question every invocation, so each plays it through again
+     */
+    @Benchmark
+    public void nextQuestion(Blackhole bh) {
+        loadedGame.restoreProgress(0, false);
+        while (!loadedGame.isGameOver()) {
+            bh.consume(loadedGame.getCurrentQuestion());
+            loadedGame.nextQuestion();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package online.madeofmagicandwires.trivial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks importing a large dump of questions through the streaming parser on a single thread,
+ * against the {@link QuestionImporter} parsing in parallel; both decode the text of every question
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ImportBenchmark {
+
+    /** the amount of questions in the dump **/
+    @Param({"10000"})
+    public int size;
+
+    private byte[] dump;
+
+    @Setup
+    public void setUp() throws IOException {
+        // repeat the results of the recorded response into a single large response
+        String recorded = new String(Payloads.load(Payloads.QUESTIONS), StandardCharsets.UTF_8);
+        String results = recorded.substring(recorded.indexOf('[') + 1, recorded.lastIndexOf(']'));
+        int perResponse = TriviaQuestionParser.parseQuestions(
+                new ByteArrayInputStream(Payloads.load(Payloads.QUESTIONS))).size();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write("{\"response_code\":0,\"results\":[".getBytes(StandardCharsets.UTF_8));
+        for(int i=0;i<size / perResponse;i++) {
+            if(i > 0) {
+                out.write(',');
+            }
+            out.write(results.getBytes(StandardCharsets.UTF_8));
+        }
+        out.write("]}".getBytes(StandardCharsets.UTF_8));
+        dump = out.toByteArray();
+    }
+
+    /**
+     * Parses the whole dump on a single thread and decodes every question
+     */
+    @Benchmark
+    public void parseSequential(Blackhole bh) throws IOException {
+        List<TriviaQuestion> questions = TriviaQuestionParser.parseQuestions(new ByteArrayInputStream(dump));
+        for(TriviaQuestion question : questions) {
+            bh.consume(question.getQuestion());
+            bh.consume(question.getAnswers());
+        }
+    }
+
+    /**
+     * Imports the dump through the importer, parsing and decoding on the common pool
+     */
+    @Benchmark
+    public QuestionImporter.Stats importParallel(Blackhole bh) throws IOException {
+        return new QuestionImporter().importFrom(new ByteArrayInputStream(dump), bh::consume);
+    }
+}
@@ -0,0 +1,72 @@
+package online.madeofmagicandwires.trivial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks selecting the questions of a game from a large local bank
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class IndexBenchmark {
+
+    /** the amount of questions in the bank **/
+    @Param({"100000"})
+    public int size;
+
+    /** the amount of questions in a game **/
+    private static final int GAME_SIZE = 50;
+    /** the OpenTriviaDB id of "General Knowledge" **/
+    private static final int GENERAL_KNOWLEDGE = 9;
+
+    private QuestionIndex index;
+    private Random random;
+
+    @Setup
+    public void setUp() throws IOException {
+        QuestionDictionary.getInstance().registerCategory(GENERAL_KNOWLEDGE, "General Knowledge");
+        QuestionBank bank = new QuestionBank(size);
+        bank.addAll(Payloads.distinctQuestions(size));
+        index = new QuestionIndex(bank);
+        random = new Random(42);
+    }
+
+    /**
+     * Picks the questions of a game of any category, difficulty and type
+     */
+    @Benchmark
+    public int[] sampleAny() {
+        return index.sample(null, null, null, GAME_SIZE, random);
+    }
+
+    /**
+     * Picks the questions of a game of a single category and difficulty
+     */
+    @Benchmark
+    public int[] sampleCategoryAndDifficulty() {
+        return index.sample(GENERAL_KNOWLEDGE, TriviaGame.Difficulty.EASY, null, GAME_SIZE, random);
+    }
+
+    /**
+     * Builds a whole game out of the bank, copying the picked questions into it
+     */
+    @Benchmark
+    public TriviaGame buildGame() {
+        TriviaGame game = new TriviaGame(GAME_SIZE, TriviaGame.Difficulty.ANY, TriviaGame.QuestionType.MULTIPLE, -1);
+        game.addQuestions(index, GAME_SIZE, random);
+        // make the picked questions available again for the next invocation
+        index.clearSeen();
+        return game;
+    }
+}
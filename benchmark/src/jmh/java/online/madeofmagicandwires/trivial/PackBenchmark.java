@@ -0,0 +1,79 @@
+package online.madeofmagicandwires.trivial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks opening question packs of different sizes and starting a game from them;
+ * both should take the same time whatever the size of the pack
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PackBenchmark {
+
+    /** the amount of questions in the pack **/
+    @Param({"1000", "100000"})
+    public int size;
+
+    private File file;
+    private ByteBuffer mapped;
+    private QuestionPack pack;
+    private Random random;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("benchmark", ".pack");
+        try (OutputStream out = new FileOutputStream(file)) {
+            QuestionPackWriter.write(Payloads.questions(size), out);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        pack = QuestionPack.wrap(mapped);
+        random = new Random(42);
+    }
+
+    @TearDown
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Opens the pack once it is mapped; mapping it is left out,
+     * as every mapping holds on to address space until it is garbage collected
+     */
+    @Benchmark
+    public QuestionPack open() throws IOException {
+        return QuestionPack.wrap(mapped);
+    }
+
+    /**
+     * Picks the questions of a 10 question game and loads them into it, decoding their text
+     */
+    @Benchmark
+    public TriviaGame startGame() {
+        List<TriviaQuestion> questions = pack.sample(10, random);
+        TriviaGame game = new TriviaGame(10);
+        game.setQuestions(questions);
+        return game;
+    }
+}
@@ -0,0 +1,108 @@
+package online.madeofmagicandwires.trivial;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks parsing a recorded 50 question response,
+ * both through JSONObjects as the other endpoints are handled, and through the streaming parser
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParserBenchmark {
+
+    private byte[] payload;
+    private String payloadStr;
+    private JSONArray results;
+    private String[] encodedStrings;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        payload = Payloads.load(Payloads.QUESTIONS);
+        payloadStr = new String(payload, StandardCharsets.UTF_8);
+        results = new JSONObject(payloadStr).getJSONArray("results");
+
+        // every encoded string a response contains
+        List<String> encoded = new ArrayList<>();
+        for(int i=0;i<results.length();i++) {
+            JSONObject question = results.getJSONObject(i);
+            encoded.add(question.getString("category"));
+            encoded.add(question.getString("question"));
+            encoded.add(question.getString("correct_answer"));
+            JSONArray wrongAnswers = question.getJSONArray("incorrect_answers");
+            for(int j=0;j<wrongAnswers.length();j++) {
+                encoded.add(wrongAnswers.getString(j));
+            }
+        }
+        encodedStrings = encoded.toArray(new String[0]);
+    }
+
+    /**
+     * Parses the response into a JSONObject, then every question through parseQuestionJSON
+     */
+    @Benchmark
+    public void parseQuestionJSON(Blackhole bh) throws JSONException {
+        JSONArray questions = new JSONObject(payloadStr).getJSONArray("results");
+        for(int i=0;i<questions.length();i++) {
+            bh.consume(TriviaQuestionParser.parseQuestionJSON(questions.getJSONObject(i)));
+        }
+    }
+
+    /**
+     * Parses only the questions of an already parsed JSONObject, isolating parseQuestionJSON itself
+     */
+    @Benchmark
+    public void parseQuestionJSONPreparsed(Blackhole bh) throws JSONException {
+        for(int i=0;i<results.length();i++) {
+            bh.consume(TriviaQuestionParser.parseQuestionJSON(results.getJSONObject(i)));
+        }
+    }
+
+    /**
+     * Parses the raw response bytes with the streaming parser
+     */
+    @Benchmark
+    public List<TriviaQuestion> parseQuestionsStreaming() throws IOException {
+        return TriviaQuestionParser.parseQuestions(new ByteArrayInputStream(payload));
+    }
+
+    /**
+     * Parses the raw response bytes with the streaming parser, then reads every question's text,
+     * so all the decoding the lazy questions put off is included
+     */
+    @Benchmark
+    public void parseQuestionsStreamingAndRead(Blackhole bh) throws IOException {
+        for(TriviaQuestion question : TriviaQuestionParser.parseQuestions(new ByteArrayInputStream(payload))) {
+            bh.consume(question.getQuestion());
+            bh.consume(question.getCategory());
+            bh.consume(question.getAnswers());
+        }
+    }
+
+    /**
+     * Decodes every encoded string of the response
+     */
+    @Benchmark
+    public void decodeResponseStr(Blackhole bh) {
+        for(String encoded : encodedStrings) {
+            bh.consume(TriviaQuestionParser.decodeResponseStr(encoded));
+        }
+    }
+}
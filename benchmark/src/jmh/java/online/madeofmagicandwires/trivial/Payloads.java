@@ -0,0 +1,86 @@
+package online.madeofmagicandwires.trivial;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the recorded OpenTriviaDB responses the benchmarks run on
+ */
+final class Payloads {
+
+    /** a response of 50 url3986 encoded questions, of both types **/
+    static final String QUESTIONS = "/opentdb_questions.json";
+
+    private Payloads() {
+        // static helper class, not to be instantiated
+    }
+
+    /**
+     * Reads a recorded response from the benchmark resources
+     *
+     * @param name the name of the resource
+     * @return the raw bytes of the response
+     * @throws IOException when the resource could not be read
+     */
+    static byte[] load(String name) throws IOException {
+        try (InputStream in = Payloads.class.getResourceAsStream(name)) {
+            if(in == null) {
+                throw new IOException("missing payload " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    /**
+     * Builds a list of questions by repeating the questions of a recorded response
+     *
+     * @param amount the amount of questions to build
+     * @return a list of the requested size
+     * @throws IOException when the response could not be read or parsed
+     */
+    static List<TriviaQuestion> questions(int amount) throws IOException {
+        List<TriviaQuestion> recorded = TriviaQuestionParser.parseQuestions(
+                new ByteArrayInputStream(load(QUESTIONS)));
+        List<TriviaQuestion> questions = new ArrayList<>(amount);
+        for(int i=0;i<amount;i++) {
+            questions.add(recorded.get(i % recorded.size()));
+        }
+        return questions;
+    }
+
+    /**
+     * Builds a list of distinct questions by numbering the repeats of the questions of a recorded response,
+     * for benchmarks that leave out repeated questions as a game does
+     *
+     * @param amount the amount of questions to build
+     * @return a list of the requested size, without two questions of the same content
+     * @throws IOException when the response could not be read or parsed
+     */
+    static List<TriviaQuestion> distinctQuestions(int amount) throws IOException {
+        List<TriviaQuestion> recorded = questions(amount);
+        List<TriviaQuestion> questions = new ArrayList<>(amount);
+        for(int i=0;i<amount;i++) {
+            TriviaQuestion question = recorded.get(i);
+            String text = question.getQuestion() + " (" + i + ")";
+            if(question instanceof MultipleChoiceQuestion) {
+                questions.add(new MultipleChoiceQuestion(text, question.getRightAnswer(),
+                        ((MultipleChoiceQuestion) question).getWrongAnswers(),
+                        question.getDifficulty(), question.getCategory()));
+            } else {
+                questions.add(new TrueFalseQuestion(text, Boolean.parseBoolean(question.getRightAnswer()),
+                        question.getDifficulty(), question.getCategory()));
+            }
+        }
+        return questions;
+    }
+}
@@ -0,0 +1,73 @@
+package online.madeofmagicandwires.trivial;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the calls a question screen makes on every bind: listing the answers and checking one
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QuestionBenchmark {
+
+    private MultipleChoiceQuestion multiple;
+    private TrueFalseQuestion trueFalse;
+    private int multipleRightIndex;
+    private int trueFalseRightIndex;
+
+    @Setup
+    public void setUp() {
+        multiple = new MultipleChoiceQuestion(
+                "What does CPU stand for?",
+                "Central Processing Unit",
+                new String[] {"Central Process Unit", "Computer Personal Unit", "Central Processor Unit"},
+                TriviaGame.Difficulty.EASY,
+                "Science: Computers");
+        trueFalse = new TrueFalseQuestion(
+                "The programming language \"Python\" is named after a snake.",
+                false,
+                TriviaGame.Difficulty.EASY,
+                "Science: Computers");
+        multipleRightIndex = multiple.getAnswers().indexOf(multiple.getRightAnswer());
+        trueFalseRightIndex = trueFalse.getAnswers().indexOf(trueFalse.getRightAnswer());
+    }
+
+    @Benchmark
+    public List<String> getAnswersMultiple() {
+        return multiple.getAnswers();
+    }
+
+    @Benchmark
+    public List<String> getAnswersBoolean() {
+        return trueFalse.getAnswers();
+    }
+
+    @Benchmark
+    public boolean checkAnswerMultiple() {
+        return multiple.checkAnswer("Central Processor Unit");
+    }
+
+    @Benchmark
+    public boolean checkAnswerBoolean() {
+        return trueFalse.checkAnswer(false);
+    }
+
+    @Benchmark
+    public boolean checkAnswerIndexMultiple() {
+        return multiple.checkAnswer(multipleRightIndex);
+    }
+
+    @Benchmark
+    public boolean checkAnswerIndexBoolean() {
+        return trueFalse.checkAnswer(trueFalseRightIndex);
+    }
+}
@@ -0,0 +1,201 @@
+package online.madeofmagicandwires.trivial;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds {@link QuestionPack} files out of questions, such as those of recorded OpenTriviaDB responses.
+ *
+ * Part of the benchmark module rather than the app, which only reads packs;
+ * run it from the command line, on the platform independent parts of the app compiled for the JVM:
+ * <pre>
+ *   ./gradlew :benchmark:packQuestions -Ppack.out=questions.pack -Ppack.in=responses/
+ * </pre>
+ * Every file given, or every .json file in a directory given, is read as a response
+ * of the questions endpoint, or a dump in the same format, through the {@link QuestionImporter}.
+ */
+public final class QuestionPackWriter {
+
+    private QuestionPackWriter() {
+        // static helper class, not to be instantiated
+    }
+
+    /**
+     * Writes questions as a pack
+     *
+     * @param questions the questions to write, in the order they are to be stored
+     * @param out the stream to write the pack to; left open
+     * @throws IOException when the pack could not be written
+     * @throws IllegalArgumentException when a question has more answers, or a string is longer,
+     *                                  than fits in a pack
+     */
+    public static void write(@NonNull List<? extends TriviaQuestion> questions, @NonNull OutputStream out)
+            throws IOException {
+        // difficulties are numbered first, so they fit in the byte of the question table
+        Map<String, Integer> difficulties = new LinkedHashMap<>();
+        Map<String, Integer> categories = new LinkedHashMap<>();
+        for(TriviaQuestion question : questions) {
+            if(question.getDifficulty() != null && !difficulties.containsKey(question.getDifficulty())) {
+                difficulties.put(question.getDifficulty(), difficulties.size());
+            }
+        }
+        for(TriviaQuestion question : questions) {
+            if(question.getCategory() != null && !categories.containsKey(question.getCategory())) {
+                categories.put(question.getCategory(), difficulties.size() + categories.size());
+            }
+        }
+        int names = difficulties.size() + categories.size();
+        if(difficulties.size() > 0xFF || names > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("too many difficulties or categories: " + names);
+        }
+
+        int nameTable = QuestionPack.HEADER_SIZE;
+        int questionTable = nameTable + names * 4;
+        int payloadStart = questionTable + questions.size() * QuestionPack.ENTRY_SIZE;
+
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        int[] nameOffsets = new int[names];
+        int name = 0;
+        for(String difficulty : difficulties.keySet()) {
+            nameOffsets[name++] = payloadStart + payload.size();
+            writeString(payload, difficulty);
+        }
+        for(String category : categories.keySet()) {
+            nameOffsets[name++] = payloadStart + payload.size();
+            writeString(payload, category);
+        }
+
+        DataOutputStream pack = new DataOutputStream(new BufferedOutputStream(out));
+        pack.write(QuestionPack.MAGIC);
+        pack.writeInt(QuestionPack.VERSION);
+        pack.writeInt(questions.size());
+        pack.writeInt(names);
+        pack.writeInt(nameTable);
+        pack.writeInt(questionTable);
+        for(int offset : nameOffsets) {
+            pack.writeInt(offset);
+        }
+        for(TriviaQuestion question : questions) {
+            pack.writeInt(payloadStart + payload.size());
+            String[] wrongAnswers = null;
+            if(question instanceof MultipleChoiceQuestion) {
+                pack.writeByte(QuestionPack.TYPE_MULTIPLE);
+                wrongAnswers = ((MultipleChoiceQuestion) question).getWrongAnswers();
+            } else {
+                pack.writeByte(Boolean.parseBoolean(question.getRightAnswer())
+                        ? QuestionPack.TYPE_TRUE : QuestionPack.TYPE_FALSE);
+            }
+            pack.writeByte(nameRef(difficulties, question.getDifficulty()));
+            pack.writeShort(nameRef(categories, question.getCategory()));
+            writeRecord(payload, question, wrongAnswers);
+        }
+        if((long) payloadStart + payload.size() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("too many questions for a single pack");
+        }
+        payloadBytes.writeTo(pack);
+        pack.flush();
+    }
+
+    /**
+     * Writes a pack file of the questions of recorded responses of the questions endpoint,
+     * or of larger dumps in the same format; questions found more than once are only written once
+     *
+     * @param out the pack file to write
+     * @param responses the response files to read
+     * @return the outcome of importing the responses
+     * @throws IOException when a response could not be read or parsed, or the pack could not be written
+     * @see QuestionImporter
+     */
+    public static QuestionImporter.Stats write(@NonNull File out, @NonNull List<File> responses) throws IOException {
+        List<TriviaQuestion> questions = new ArrayList<>();
+        QuestionImporter importer = new QuestionImporter();
+        QuestionImporter.Stats stats = null;
+        for(File response : responses) {
+            try (InputStream in = new FileInputStream(response)) {
+                QuestionImporter.Stats imported = importer.importFrom(in, questions::addAll);
+                stats = (stats == null) ? imported : stats.plus(imported);
+            }
+        }
+        try (OutputStream stream = new FileOutputStream(out)) {
+            write(questions, stream);
+        }
+        return stats;
+    }
+
+    /**
+     * Command line entry point
+     *
+     * @param args the pack file to write, followed by the response files or directories to read
+     * @throws IOException when a response could not be read or the pack could not be written
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            System.err.println("usage: QuestionPackWriter <pack> <response.json|directory>...");
+            System.exit(2);
+        }
+        List<File> responses = new ArrayList<>();
+        for(int i=1;i<args.length;i++) {
+            File file = new File(args[i]);
+            File[] children = file.listFiles((dir, child) -> child.endsWith(".json"));
+            if(children != null) {
+                Arrays.sort(children);
+                Collections.addAll(responses, children);
+            } else {
+                responses.add(file);
+            }
+        }
+        File out = new File(args[0]);
+        QuestionImporter.Stats stats = write(out, responses);
+        System.out.println(responses.size() + " responses: " + stats);
+        System.out.println("wrote " + stats.imported + " questions to " + out + " (" + out.length() + " bytes)");
+    }
+
+    private static int nameRef(Map<String, Integer> names, @Nullable String name) {
+        return (name == null) ? 0 : names.get(name) + 1;
+    }
+
+    private static void writeRecord(DataOutputStream out, TriviaQuestion question, @Nullable String[] wrongAnswers)
+            throws IOException {
+        if(wrongAnswers == null) {
+            out.writeByte(1);
+            writeString(out, question.getQuestion());
+            return;
+        }
+        if(wrongAnswers.length + 2 > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("too many answers to store: " + wrongAnswers.length);
+        }
+        out.writeByte(wrongAnswers.length + 2);
+        writeString(out, question.getQuestion());
+        writeString(out, question.getRightAnswer());
+        for(String wrongAnswer : wrongAnswers) {
+            writeString(out, wrongAnswer);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        if(bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("string too long to store: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,171 @@
+package online.madeofmagicandwires.trivial;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+public class QuestionPackTest {
+
+    private List<TriviaQuestion> testQs;
+
+    @Before
+    public void setUp() {
+        testQs = new ArrayList<>();
+        for(int i=0;i<100;i++) {
+            testQs.add(new MultipleChoiceQuestion(
+                    "Question #" + i + ": what is caf\u00e9 in \u65e5\u672c\u8a9e \ud83d\ude00?",
+                    "Answer " + (i % 10),
+                    new String[] {"Wrong 1", "Wrong 2", "Wrong 3"},
+                    (i % 2 == 0) ? TriviaGame.Difficulty.EASY : TriviaGame.Difficulty.HARD,
+                    (i % 3 == 0) ? "Geography" : "Testing"));
+        }
+        testQs.add(new TrueFalseQuestion("Is this true?", true, TriviaGame.Difficulty.HARD, "Testing"));
+        testQs.add(new TrueFalseQuestion("Is this false?", false, null, null));
+    }
+
+    private static byte[] writePack(List<TriviaQuestion> questions) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        QuestionPackWriter.write(questions, out);
+        return out.toByteArray();
+    }
+
+    private static void assertSameQuestion(TriviaQuestion expected, TriviaQuestion question) {
+        assertEquals(expected.getQuestion(), question.getQuestion());
+        assertEquals(expected.getRightAnswer(), question.getRightAnswer());
+        assertEquals(expected.getAnswers(), question.getAnswers());
+        assertEquals(expected.getCategory(), question.getCategory());
+        assertEquals(expected.getDifficulty(), question.getDifficulty());
+        assertThat(question instanceof MultipleChoiceQuestion, is(expected instanceof MultipleChoiceQuestion));
+    }
+
+    @Test
+    public void questionsSurviveThePack() throws IOException {
+        QuestionPack pack = QuestionPack.wrap(ByteBuffer.wrap(writePack(testQs)));
+        assertThat(pack.size(), is(testQs.size()));
+        for(int i=0;i<testQs.size();i++) {
+            assertSameQuestion(testQs.get(i), pack.get(i));
+        }
+    }
+
+    @Test
+    public void mapsPackFiles() throws IOException {
+        File file = File.createTempFile("questions", ".pack");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(writePack(testQs));
+        }
+
+        QuestionPack pack = QuestionPack.open(file);
+        assertThat(pack.size(), is(testQs.size()));
+        assertSameQuestion(testQs.get(testQs.size() - 1), pack.get(testQs.size() - 1));
+        assertSameQuestion(testQs.get(42), pack.get(42));
+    }
+
+    @Test
+    public void opensWithoutReadingQuestions() throws IOException {
+        byte[] bytes = writePack(testQs);
+        // wipe everything past the header; opening must not notice, only reading a question
+        for(int i=QuestionPack.HEADER_SIZE;i<bytes.length;i++) {
+            bytes[i] = (byte) 0xFF;
+        }
+        QuestionPack pack = QuestionPack.wrap(ByteBuffer.wrap(bytes));
+        assertThat(pack.size(), is(testQs.size()));
+        try {
+            pack.get(0).getQuestion();
+            fail("read a question out of a wiped pack");
+        } catch (IndexOutOfBoundsException expected) {
+            // the question table now points outside of the pack
+        }
+    }
+
+    @Test
+    public void samplesDistinctQuestions() throws IOException {
+        QuestionPack pack = QuestionPack.wrap(ByteBuffer.wrap(writePack(testQs)));
+
+        List<TriviaQuestion> sample = pack.sample(30, new Random(42));
+        assertThat(sample.size(), is(30));
+        Set<String> seen = new HashSet<>();
+        for(TriviaQuestion question : sample) {
+            assertTrue("picked twice: " + question.getQuestion(), seen.add(question.getQuestion()));
+        }
+
+        assertThat(pack.sample(1000, new Random(42)).size(), is(testQs.size()));
+        assertThat(pack.sample(0, new Random(42)).size(), is(0));
+    }
+
+    @Test
+    public void samplesMatchingQuestions() throws IOException {
+        QuestionPack pack = QuestionPack.wrap(ByteBuffer.wrap(writePack(testQs)));
+        QuestionDictionary.getInstance().registerCategory(22, "Geography");
+
+        List<TriviaQuestion> statements = pack.sample(-1, null, TriviaGame.QuestionType.BOOLEAN, 10, new Random(42));
+        assertThat(statements.size(), is(2));
+        for(TriviaQuestion question : statements) {
+            assertThat(question, instanceOf(TrueFalseQuestion.class));
+        }
+
+        // difficulties are matched regardless of case
+        assertThat(pack.sample(null, "hard", null, 1000, new Random(42)).size(), is(51));
+        List<TriviaQuestion> easy = pack.sample(
+                22, TriviaGame.Difficulty.EASY, TriviaGame.QuestionType.MULTIPLE, 1000, new Random(42));
+        assertThat(easy.size(), is(17));
+        for(TriviaQuestion question : easy) {
+            assertEquals("Geography", question.getCategory());
+            assertEquals(TriviaGame.Difficulty.EASY, question.getDifficulty());
+        }
+        assertThat(pack.sample(22, null, null, 5, new Random(42)).size(), is(5));
+        assertThat(pack.sample(999, null, null, 5, new Random(42)).size(), is(0));
+    }
+
+    @Test
+    public void packedQuestionsCanBeBanked() throws IOException {
+        QuestionPack pack = QuestionPack.wrap(ByteBuffer.wrap(writePack(testQs)));
+        QuestionBank bank = new QuestionBank();
+        for(int i=0;i<pack.size();i++) {
+            bank.add(pack.get(i));
+        }
+        for(int i=0;i<testQs.size();i++) {
+            assertSameQuestion(testQs.get(i), bank.get(i));
+        }
+    }
+
+    @Test
+    public void rejectsMalformedPacks() throws IOException {
+        byte[] bytes = writePack(testQs);
+        byte[][] malformed = {
+                new byte[0],
+                new byte[QuestionPack.HEADER_SIZE],
+                Arrays.copyOf(bytes, QuestionPack.HEADER_SIZE + 4),
+        };
+        for(byte[] pack : malformed) {
+            try {
+                QuestionPack.wrap(ByteBuffer.wrap(pack));
+                fail("opened a malformed pack of " + pack.length + " bytes");
+            } catch (IOException expected) {
+                // not a pack, or a truncated one
+            }
+        }
+
+        bytes[7] = (byte) (QuestionPack.VERSION + 1);
+        try {
+            QuestionPack.wrap(ByteBuffer.wrap(bytes));
+            fail("opened a pack of another version");
+        } catch (IOException expected) {
+            assertThat(expected.getMessage(), containsString("version"));
+        }
+    }
+}